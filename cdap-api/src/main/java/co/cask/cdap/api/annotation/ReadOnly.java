@@ -17,6 +17,7 @@
 package co.cask.cdap.api.annotation;
 
 import co.cask.cdap.api.dataset.Dataset;
+import co.cask.cdap.api.service.http.HttpServiceHandler;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -25,8 +26,14 @@ import java.lang.annotation.Target;
 
 /**
  * Annotation to denote if a {@link Dataset} constructor or method only performs read operations.
+ * <p>
+ * It can also be used on a method of a {@link HttpServiceHandler}, or on the handler class to cover all
+ * of its methods, to denote that the method only reads from datasets. Such methods may run in a transaction
+ * that is shared with other read-only calls and that reflects a recent, but possibly slightly stale, snapshot.
+ * Writing to a dataset from a read-only handler method fails the transaction.
+ * </p>
  */
 @Retention(RetentionPolicy.RUNTIME)
-@Target({ElementType.CONSTRUCTOR, ElementType.METHOD})
+@Target({ElementType.TYPE, ElementType.CONSTRUCTOR, ElementType.METHOD})
 public @interface ReadOnly {
 }
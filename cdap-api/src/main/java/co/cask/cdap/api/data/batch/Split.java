@@ -31,4 +31,14 @@ public abstract class Split {
   public long getLength() {
     return 0;
   }
+
+  /**
+   * By default the locations of the data of a split are not known.
+   *
+   * @return Optional hostnames of the nodes where the data of this split is local. Used only as a hint for
+   *         scheduling the processing of the split on one of these nodes.
+   */
+  public String[] getLocations() {
+    return new String[0];
+  }
 }
@@ -23,5 +23,25 @@ public enum AggregationFunction {
   SUM,
   LATEST,
   MIN,
-  MAX
+  MAX,
+  /**
+   * Approximate number of distinct elements of a {@link MeasureType#DISTINCT} measure.
+   */
+  DISTINCT_COUNT,
+  /**
+   * Approximate median of a {@link MeasureType#DISTRIBUTION} measure.
+   */
+  P50,
+  /**
+   * Approximate 90th percentile of a {@link MeasureType#DISTRIBUTION} measure.
+   */
+  P90,
+  /**
+   * Approximate 95th percentile of a {@link MeasureType#DISTRIBUTION} measure.
+   */
+  P95,
+  /**
+   * Approximate 99th percentile of a {@link MeasureType#DISTRIBUTION} measure.
+   */
+  P99
 }
@@ -23,5 +23,16 @@ import co.cask.cdap.api.annotation.Beta;
 @Beta
 public enum MeasureType {
   COUNTER,
-  GAUGE
+  GAUGE,
+  /**
+   * The value identifies an element, such as a user id, to count the approximate number of distinct elements of.
+   * Query with {@link AggregationFunction#DISTINCT_COUNT}.
+   */
+  DISTINCT,
+  /**
+   * The value is an observation, such as a request latency, to estimate quantiles of the distribution of.
+   * Query with {@link AggregationFunction#P50}, {@link AggregationFunction#P90}, {@link AggregationFunction#P95} or
+   * {@link AggregationFunction#P99}.
+   */
+  DISTRIBUTION
 }
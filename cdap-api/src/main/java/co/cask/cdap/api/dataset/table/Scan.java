@@ -23,6 +23,10 @@ import javax.annotation.Nullable;
 
 /**
  * Scan configuration for {@link Table}.
+ * <p>
+ * Besides the rows to scan, a scan can carry hints on how to fetch the rows from the underlying storage. Hints that
+ * are not set fall back to the defaults of the dataset, and an implementation may ignore hints that do not apply to
+ * its storage.
  */
 @Beta
 public class Scan {
@@ -32,6 +36,14 @@ public class Scan {
   private final byte[] stopRow;
   @Nullable
   private final Filter filter;
+  @Nullable
+  private Integer caching;
+  @Nullable
+  private Long maxResultSize;
+  @Nullable
+  private Boolean cacheBlocks;
+  @Nullable
+  private Integer batch;
 
   /**
    * Creates {@link Scan} for a given start and stop row keys.
@@ -69,12 +81,105 @@ public class Scan {
     return filter;
   }
 
+  /**
+   * Sets the number of rows to fetch from the storage at once. A small number suits scans that only read a few rows,
+   * while a large number reduces the round trips of scans that read many rows.
+   *
+   * @param caching number of rows, must be positive
+   * @return this {@link Scan}
+   */
+  public Scan setCaching(int caching) {
+    if (caching <= 0) {
+      throw new IllegalArgumentException("Caching must be positive: " + caching);
+    }
+    this.caching = caching;
+    return this;
+  }
+
+  /**
+   * @return the number of rows to fetch from the storage at once, or {@code null} if not set
+   */
+  @Nullable
+  public Integer getCaching() {
+    return caching;
+  }
+
+  /**
+   * Sets the maximum size in bytes of the rows fetched from the storage at once, which limits the number of rows
+   * fetched at once if the rows are large.
+   *
+   * @param maxResultSize size in bytes, must be positive
+   * @return this {@link Scan}
+   */
+  public Scan setMaxResultSize(long maxResultSize) {
+    if (maxResultSize <= 0) {
+      throw new IllegalArgumentException("Max result size must be positive: " + maxResultSize);
+    }
+    this.maxResultSize = maxResultSize;
+    return this;
+  }
+
+  /**
+   * @return the maximum size in bytes of the rows fetched from the storage at once, or {@code null} if not set
+   */
+  @Nullable
+  public Long getMaxResultSize() {
+    return maxResultSize;
+  }
+
+  /**
+   * Sets whether the data read by the scan should be kept in the cache of the storage. Scans that read each row once,
+   * such as the scans of batch jobs, should not evict the data of other reads from the cache.
+   *
+   * @param cacheBlocks whether to cache the data read
+   * @return this {@link Scan}
+   */
+  public Scan setCacheBlocks(boolean cacheBlocks) {
+    this.cacheBlocks = cacheBlocks;
+    return this;
+  }
+
+  /**
+   * @return whether the data read by the scan should be cached, or {@code null} if not set
+   */
+  @Nullable
+  public Boolean getCacheBlocks() {
+    return cacheBlocks;
+  }
+
+  /**
+   * Sets the maximum number of columns to fetch from the storage at once, which limits the size of the data fetched
+   * at once for wide rows. Rows are still returned by the scanner with all of their columns.
+   *
+   * @param batch number of columns, must be positive
+   * @return this {@link Scan}
+   */
+  public Scan setBatch(int batch) {
+    if (batch <= 0) {
+      throw new IllegalArgumentException("Batch must be positive: " + batch);
+    }
+    this.batch = batch;
+    return this;
+  }
+
+  /**
+   * @return the maximum number of columns to fetch from the storage at once, or {@code null} if not set
+   */
+  @Nullable
+  public Integer getBatch() {
+    return batch;
+  }
+
   @Override
   public String toString() {
     return "Scan{" +
       "startRow=" + Bytes.toStringBinary(startRow) +
       ", stopRow=" + Bytes.toStringBinary(stopRow) +
       ", filter=" + filter +
+      ", caching=" + caching +
+      ", maxResultSize=" + maxResultSize +
+      ", cacheBlocks=" + cacheBlocks +
+      ", batch=" + batch +
       '}';
   }
 }
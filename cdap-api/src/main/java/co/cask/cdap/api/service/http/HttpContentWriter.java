@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.api.service.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes an HTTP response body in chunks, which are sent to the client as they are written, instead of buffering
+ * the whole body in memory. An instance of this class is returned by one of the {@code sendChunkStart} methods in
+ * {@link HttpServiceResponder}.
+ *
+ * <p>
+ * Chunks are written while the transaction of the handler method is in progress. The response is only completed
+ * after the handler method returns and the transaction is committed. If the handler method fails or the transaction
+ * fails to commit, the connection is closed without completing the response, so that the client can tell that the
+ * response is incomplete.
+ * </p>
+ */
+public interface HttpContentWriter {
+
+  /**
+   * Writes a chunk of the response body. This method blocks while the client is slower in receiving the response
+   * than the handler is in writing it. The given {@link ByteBuffer} can be reused after this method returns.
+   * Writing an empty {@link ByteBuffer} has no effect.
+   *
+   * @param chunk the bytes to write
+   * @throws IOException if failed to write, for example because the client closed the connection
+   */
+  void write(ByteBuffer chunk) throws IOException;
+}
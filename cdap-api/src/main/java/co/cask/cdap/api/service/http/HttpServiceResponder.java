@@ -156,6 +156,46 @@ public interface HttpServiceResponder {
   void send(int status, HttpContentProducer producer, String contentType,
             Iterable<? extends Map.Entry<String, String>> headers);
 
+  /**
+   * Starts sending a response back to client with the response body written through the returned
+   * {@link HttpContentWriter}. The status and headers are sent immediately and the body is sent in chunks as it
+   * is written. The response is completed after the handler method returns and its transaction is committed.
+   * None of the other {@code send} methods may be called after this method.
+   *
+   * @param status status of the HTTP response
+   * @param contentType type of content
+   * @return a {@link HttpContentWriter} for writing the response body
+   */
+  HttpContentWriter sendChunkStart(int status, String contentType);
+
+  /**
+   * Starts sending a response back to client with the response body written through the returned
+   * {@link HttpContentWriter}. The status and headers are sent immediately and the body is sent in chunks as it
+   * is written. The response is completed after the handler method returns and its transaction is committed.
+   * None of the other {@code send} methods may be called after this method.
+   *
+   * @param status status of the HTTP response
+   * @param contentType type of content
+   * @param headers headers to be sent back
+   * @return a {@link HttpContentWriter} for writing the response body
+   */
+  HttpContentWriter sendChunkStart(int status, String contentType, Map<String, String> headers);
+
+  /**
+   * Starts sending a response back to client with the response body written through the returned
+   * {@link HttpContentWriter}. The status and headers are sent immediately and the body is sent in chunks as it
+   * is written. The response is completed after the handler method returns and its transaction is committed.
+   * None of the other {@code send} methods may be called after this method.
+   *
+   * @param status status of the HTTP response
+   * @param contentType type of content
+   * @param headers headers to send; each {@link java.util.Map.Entry} contains the header name and value to be sent,
+   *                allowing multiple values for the same header name
+   * @return a {@link HttpContentWriter} for writing the response body
+   */
+  HttpContentWriter sendChunkStart(int status, String contentType,
+                                   Iterable<? extends Map.Entry<String, String>> headers);
+
   /**
    * Sends response back to client using content in the given {@link Location} as the response body.
    *
@@ -25,7 +25,6 @@ import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
-import co.cask.cdap.common.lang.jar.BundleJarUtil;
 import co.cask.cdap.common.utils.DirUtils;
 import co.cask.cdap.data2.security.Impersonator;
 import co.cask.cdap.internal.app.deploy.pipeline.NamespacedImpersonator;
@@ -36,6 +35,7 @@ import co.cask.cdap.internal.app.runtime.SimpleProgramOptions;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactDetail;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactRepository;
 import co.cask.cdap.internal.app.runtime.artifact.Artifacts;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.internal.app.runtime.service.SimpleRuntimeInfo;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.ProgramType;
@@ -51,7 +51,6 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.io.Closeables;
-import com.google.common.io.Files;
 import com.google.common.util.concurrent.AbstractIdleService;
 import org.apache.twill.api.RunId;
 import org.apache.twill.common.Threads;
@@ -90,15 +89,18 @@ public abstract class AbstractProgramRuntimeService extends AbstractIdleService
   private final ProgramRunnerFactory programRunnerFactory;
   private final ArtifactRepository artifactRepository;
   private final Impersonator impersonator;
+  private final UnpackedArtifactCache unpackedArtifactCache;
 
   protected AbstractProgramRuntimeService(CConfiguration cConf, ProgramRunnerFactory programRunnerFactory,
-                                          ArtifactRepository artifactRepository, Impersonator impersonator) {
+                                          ArtifactRepository artifactRepository, Impersonator impersonator,
+                                          UnpackedArtifactCache unpackedArtifactCache) {
     this.cConf = cConf;
     this.runtimeInfosLock = new ReentrantReadWriteLock();
     this.runtimeInfos = HashBasedTable.create();
     this.programRunnerFactory = programRunnerFactory;
     this.artifactRepository = artifactRepository;
     this.impersonator = impersonator;
+    this.unpackedArtifactCache = unpackedArtifactCache;
   }
 
   @Override
@@ -121,8 +123,12 @@ public abstract class AbstractProgramRuntimeService extends AbstractIdleService
       ProgramOptions optionsWithPlugins = createPluginSnapshot(runtimeProgramOptions, programId, tempDir,
                                                                programDescriptor.getApplicationSpecification());
 
-      // Create and run the program
-      Program executableProgram = createProgram(cConf, runner, programDescriptor, artifactDetail, tempDir);
+      // Create and run the program. The unpacked program jar is shared with other runs of the same artifact,
+      // while each run has its own program ClassLoader.
+      UnpackedArtifactCache.UnpackedArtifact unpackedArtifact = unpackArtifact(programId, artifactDetail);
+      cleanUpTask = createCleanupTask(cleanUpTask, unpackedArtifact);
+      Program executableProgram = createProgram(cConf, runner, programDescriptor, artifactDetail,
+                                                unpackedArtifact.getDirectory());
       cleanUpTask = createCleanupTask(cleanUpTask, executableProgram);
       RuntimeInfo runtimeInfo = createRuntimeInfo(runner.run(executableProgram, optionsWithPlugins), programId);
       monitorProgram(runtimeInfo, cleanUpTask);
@@ -134,32 +140,34 @@ public abstract class AbstractProgramRuntimeService extends AbstractIdleService
     }
   }
 
+  /**
+   * Unpacks the program jar into the {@link UnpackedArtifactCache}, as the user of the program namespace.
+   */
+  private UnpackedArtifactCache.UnpackedArtifact unpackArtifact(ProgramId programId,
+                                                                final ArtifactDetail artifactDetail) throws Exception {
+    return new NamespacedImpersonator(programId.getNamespaceId(), impersonator).impersonate(
+      new Callable<UnpackedArtifactCache.UnpackedArtifact>() {
+        @Override
+        public UnpackedArtifactCache.UnpackedArtifact call() throws IOException {
+          return unpackedArtifactCache.unpack(artifactDetail.getDescriptor().getLocation());
+        }
+      });
+  }
+
   protected ArtifactDetail getArtifactDetail(ArtifactId artifactId) throws Exception {
     return artifactRepository.getArtifact(artifactId.toId());
   }
 
   /**
    * Creates a {@link Program} for the given {@link ProgramRunner} from the given program jar {@link Location}.
+   *
+   * @param unpackedDir the directory where the program jar has been expanded. Since the artifact content is
+   *                    immutable for a given checksum, it doesn't need to be copied to avoid program mutation.
    */
   protected Program createProgram(CConfiguration cConf, ProgramRunner programRunner,
                                   ProgramDescriptor programDescriptor,
-                                  ArtifactDetail artifactDetail, final File tempDir) throws IOException {
-
-    final Location programJarLocation = artifactDetail.getDescriptor().getLocation();
-
-    // Take a snapshot of the JAR file to avoid program mutation
-    final File unpackedDir = new File(tempDir, "unpacked");
-    unpackedDir.mkdirs();
-    try {
-      File programJar = Locations.linkOrCopy(programJarLocation, new File(tempDir, "program.jar"));
-      // Unpack the JAR file
-      BundleJarUtil.unJar(Files.newInputStreamSupplier(programJar), unpackedDir);
-    } catch (IOException ioe) {
-      throw ioe;
-    } catch (Exception e) {
-      // should not happen
-      throw Throwables.propagate(e);
-    }
+                                  ArtifactDetail artifactDetail, File unpackedDir) throws IOException {
+    Location programJarLocation = artifactDetail.getDescriptor().getLocation();
     return Programs.create(cConf, programRunner, programDescriptor, programJarLocation, unpackedDir);
   }
 
@@ -41,31 +41,23 @@ import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.artifact.ApplicationClass;
 import co.cask.cdap.proto.artifact.ArtifactClasses;
-import com.google.common.base.Function;
-import com.google.common.base.Predicate;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
-import com.google.common.collect.AbstractIterator;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.primitives.Primitives;
 import com.google.common.reflect.TypeToken;
+import org.apache.twill.common.Threads;
 import org.apache.twill.filesystem.Location;
-import org.objectweb.asm.AnnotationVisitor;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -73,10 +65,16 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -117,6 +115,7 @@ final class ArtifactInspector {
                             cConf.get(Constants.AppFabric.TEMP_DIR)).toAbsolutePath();
     Files.createDirectories(tmpDir);
     Location artifactLocation = Locations.toLocation(artifactFile);
+    long startTime = System.currentTimeMillis();
 
     Path stageDir = Files.createTempDirectory(tmpDir, artifactFile.getName());
     try {
@@ -132,7 +131,11 @@ final class ArtifactInspector {
         pluginInstantiator.addArtifact(artifactLocation, artifactId.toArtifactId());
         inspectPlugins(builder, artifactFile, artifactId.toArtifactId(), pluginInstantiator);
       }
-      return builder.build();
+      ArtifactClasses artifactClasses = builder.build();
+      LOG.info("Inspected artifact {} in {} ms. Found {} application classes and {} plugin classes.",
+               artifactId, System.currentTimeMillis() - startTime,
+               artifactClasses.getApps().size(), artifactClasses.getPlugins().size());
+      return artifactClasses;
     } finally {
       try {
         DirUtils.deleteDirectoryContents(stageDir.toFile());
@@ -224,19 +227,17 @@ final class ArtifactInspector {
 
     try {
       ClassLoader pluginClassLoader = pluginInstantiator.getArtifactClassLoader(artifactId);
-      for (Class<?> cls : getPluginClasses(exportPackages, pluginClassLoader)) {
+      List<String> classNames = getClassNames(exportPackages, pluginClassLoader);
+
+      // Only the classes that cannot be inspected from their bytecode are loaded
+      for (String className : scanPluginClasses(classNames, pluginClassLoader, builder)) {
+        Class<?> cls = pluginClassLoader.loadClass(className);
         Plugin pluginAnnotation = cls.getAnnotation(Plugin.class);
         if (pluginAnnotation == null) {
           continue;
         }
-        Map<String, PluginPropertyField> pluginProperties = Maps.newHashMap();
         try {
-          String configField = getProperties(TypeToken.of(cls), pluginProperties);
-          Set<String> pluginEndpoints = getPluginEndpoints(cls);
-          PluginClass pluginClass = new PluginClass(pluginAnnotation.type(), getPluginName(cls),
-                                                    getPluginDescription(cls), cls.getName(),
-                                                    configField, pluginProperties, pluginEndpoints);
-          builder.addPlugin(pluginClass);
+          builder.addPlugin(inspectPluginClass(cls, pluginAnnotation));
         } catch (UnsupportedTypeException e) {
           LOG.warn("Plugin configuration type not supported. Plugin ignored. {}", cls, e);
         }
@@ -251,6 +252,66 @@ final class ArtifactInspector {
     return builder;
   }
 
+  /**
+   * Inspects the class files of the given classes in parallel and adds the plugin classes found to the builder.
+   *
+   * @return names of the classes that need to be loaded for inspection
+   */
+  private List<String> scanPluginClasses(List<String> classNames, ClassLoader pluginClassLoader,
+                                         ArtifactClasses.Builder builder) throws InterruptedException {
+    if (classNames.isEmpty()) {
+      return classNames;
+    }
+
+    final PluginClassScanner scanner = new PluginClassScanner(pluginClassLoader);
+    final Queue<String> loadClassNames = new ConcurrentLinkedQueue<>();
+    int threads = Math.min(classNames.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executor = Executors.newFixedThreadPool(
+      threads, Threads.createDaemonThreadFactory("artifact-inspector-%d"));
+    try {
+      List<Future<PluginClass>> futures = new ArrayList<>(classNames.size());
+      for (final String className : classNames) {
+        futures.add(executor.submit(new Callable<PluginClass>() {
+          @Override
+          public PluginClass call() {
+            try {
+              return scanner.scan(className);
+            } catch (PluginClassScanner.CannotScanException e) {
+              LOG.debug("Class {} will be loaded for inspection. {}", className, e.getMessage());
+              loadClassNames.add(className);
+            } catch (UnsupportedTypeException e) {
+              LOG.warn("Plugin configuration type not supported. Plugin ignored. {}", className, e);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<PluginClass> future : futures) {
+        PluginClass pluginClass = future.get();
+        if (pluginClass != null) {
+          builder.addPlugin(pluginClass);
+        }
+      }
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return new ArrayList<>(loadClassNames);
+  }
+
+  /**
+   * Inspects a loaded plugin class through reflection.
+   */
+  @VisibleForTesting
+  PluginClass inspectPluginClass(Class<?> cls, Plugin pluginAnnotation) throws UnsupportedTypeException {
+    Map<String, PluginPropertyField> pluginProperties = Maps.newHashMap();
+    String configField = getProperties(TypeToken.of(cls), pluginProperties);
+    Set<String> pluginEndpoints = getPluginEndpoints(cls);
+    return new PluginClass(pluginAnnotation.type(), getPluginName(cls), getPluginDescription(cls), cls.getName(),
+                           configField, pluginProperties, pluginEndpoints);
+  }
+
   /**
    * Returns the set of package names that are declared in "Export-Package" in the jar file Manifest.
    */
@@ -261,77 +322,31 @@ final class ArtifactInspector {
   }
 
   /**
-   * Returns an {@link Iterable} of class name that are under the given list of package names that are loadable
-   * through the plugin ClassLoader.
+   * Returns the names of the classes that are under the given list of package names in the top level jar file
+   * of the plugin ClassLoader.
    */
-  private Iterable<Class<?>> getPluginClasses(final Iterable<String> packages, final ClassLoader pluginClassLoader) {
-    return new Iterable<Class<?>>() {
-      @Override
-      public Iterator<Class<?>> iterator() {
-        final Iterator<String> packageIterator = packages.iterator();
-
-        return new AbstractIterator<Class<?>>() {
-          Iterator<String> classIterator = ImmutableList.<String>of().iterator();
-          String currentPackage;
-
-          @Override
-          protected Class<?> computeNext() {
-            while (!classIterator.hasNext()) {
-              if (!packageIterator.hasNext()) {
-                return endOfData();
-              }
-              currentPackage = packageIterator.next();
-
-              try {
-                // Gets all package resource URL for the given package
-                String resourceName = currentPackage.replace('.', File.separatorChar);
-                Enumeration<URL> resources = pluginClassLoader.getResources(resourceName);
-                List<Iterator<String>> iterators = new ArrayList<>();
-                // Go though all available resources and collect all class names that are plugin classes.
-                while (resources.hasMoreElements()) {
-                  URL packageResource = resources.nextElement();
-
-                  // Only inspect classes in the top level jar file for Plugins.
-                  // The jar manifest may have packages in Export-Package that are loadable from the bundled jar files,
-                  // which is for classloading purpose. Those classes won't be inspected for plugin classes.
-                  // There should be exactly one of resource that match, because it maps to a directory on the FS.
-                  if (packageResource.getProtocol().equals("file")) {
-                    Iterator<String> classFiles = DirUtils.list(new File(packageResource.toURI()), "class").iterator();
-
-                    // Transform class file into class name and filter by @Plugin class only
-                    iterators.add(Iterators.filter(
-                      Iterators.transform(classFiles, new Function<String, String>() {
-                        @Override
-                        public String apply(String input) {
-                          return getClassName(currentPackage, input);
-                        }
-                      }), new Predicate<String>() {
-                        @Override
-                        public boolean apply(String className) {
-                          return isPlugin(className, pluginClassLoader);
-                        }
-                      }));
-                  }
-                }
-                if (!iterators.isEmpty()) {
-                  classIterator = Iterators.concat(iterators.iterator());
-                }
-              } catch (Exception e) {
-                // Cannot happen
-                throw Throwables.propagate(e);
-              }
-            }
-
-            try {
-              return pluginClassLoader.loadClass(classIterator.next());
-            } catch (ClassNotFoundException | NoClassDefFoundError e) {
-              // Cannot happen, since the class name is from the list of the class files under the classloader.
-              throw Throwables.propagate(e);
-            }
+  private List<String> getClassNames(Iterable<String> packages,
+                                     ClassLoader pluginClassLoader) throws IOException, URISyntaxException {
+    List<String> classNames = new ArrayList<>();
+    for (String packageName : packages) {
+      // Gets all package resource URL for the given package
+      String resourceName = packageName.replace('.', File.separatorChar);
+      Enumeration<URL> resources = pluginClassLoader.getResources(resourceName);
+      while (resources.hasMoreElements()) {
+        URL packageResource = resources.nextElement();
+
+        // Only inspect classes in the top level jar file for Plugins.
+        // The jar manifest may have packages in Export-Package that are loadable from the bundled jar files,
+        // which is for classloading purpose. Those classes won't be inspected for plugin classes.
+        // There should be exactly one of resource that match, because it maps to a directory on the FS.
+        if (packageResource.getProtocol().equals("file")) {
+          for (String classFile : DirUtils.list(new File(packageResource.toURI()), "class")) {
+            classNames.add(getClassName(packageName, classFile));
           }
-        };
+        }
       }
-    };
+    }
+    return classNames;
   }
 
   /**
@@ -481,38 +496,4 @@ final class ArtifactInspector {
 
     return new PluginPropertyField(name, description, rawType.getSimpleName().toLowerCase(), required, macroSupported);
   }
-
-  /**
-   * Detects if a class is annotated with {@link Plugin} without loading the class.
-   *
-   * @param className name of the class
-   * @param classLoader ClassLoader for loading the class file of the given class
-   * @return true if the given class is annotated with {@link Plugin}
-   */
-  private boolean isPlugin(String className, ClassLoader classLoader) {
-    try (InputStream is = classLoader.getResourceAsStream(className.replace('.', '/') + ".class")) {
-      if (is == null) {
-        return false;
-      }
-
-      // Use ASM to inspect the class bytecode to see if it is annotated with @Plugin
-      final boolean[] isPlugin = new boolean[1];
-      ClassReader cr = new ClassReader(is);
-      cr.accept(new ClassVisitor(Opcodes.ASM5) {
-        @Override
-        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-          if (Plugin.class.getName().equals(Type.getType(desc).getClassName()) && visible) {
-            isPlugin[0] = true;
-          }
-          return super.visitAnnotation(desc, visible);
-        }
-      }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-
-      return isPlugin[0];
-    } catch (IOException e) {
-      // If failed to open the class file, then it cannot be a plugin
-      LOG.warn("Failed to open class file for {}", className, e);
-      return false;
-    }
-  }
 }
@@ -102,9 +102,10 @@ public class ArtifactRepository {
   public ArtifactRepository(CConfiguration cConf, ArtifactStore artifactStore, MetadataStore metadataStore,
                             AuthorizerInstantiator authorizerInstantiator, ProgramRunnerFactory programRunnerFactory,
                             Impersonator impersonator, AuthorizationEnforcer authorizationEnforcer,
-                            AuthenticationContext authenticationContext) {
+                            AuthenticationContext authenticationContext, UnpackedArtifactCache unpackedArtifactCache) {
     this.artifactStore = artifactStore;
-    this.artifactClassLoaderFactory = new ArtifactClassLoaderFactory(cConf, programRunnerFactory);
+    this.artifactClassLoaderFactory = new ArtifactClassLoaderFactory(cConf, programRunnerFactory,
+                                                                     unpackedArtifactCache);
     this.artifactInspector = new ArtifactInspector(cConf, artifactClassLoaderFactory);
     this.systemArtifactDirs = new ArrayList<>();
     for (String dir : cConf.get(Constants.AppFabric.SYSTEM_ARTIFACTS_DIR).split(";")) {
@@ -598,6 +599,14 @@ public class ArtifactRepository {
     }
   }
 
+  /**
+   * Indexes the plugins of artifacts that were added before the plugin index existed.
+   * Each batch of plugins is indexed in its own transaction.
+   */
+  public void upgradePluginIndex() {
+    artifactStore.upgradePluginIndex();
+  }
+
   /**
    * Scan all files in the local system artifact directory, looking for jar files and adding them as system artifacts.
    * If the artifact already exists it will not be added again unless it is a snapshot version.
@@ -30,6 +30,8 @@ import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.api.plugin.PluginClass;
 import co.cask.cdap.common.ArtifactAlreadyExistsException;
 import co.cask.cdap.common.ArtifactNotFoundException;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.namespace.NamespacedLocationFactory;
 import co.cask.cdap.common.utils.ImmutablePair;
@@ -54,11 +56,14 @@ import co.cask.tephra.TransactionFailureException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -76,6 +81,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -84,6 +90,9 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
 /**
  * This class manages artifacts as well as metadata for each artifact. Artifacts and their metadata cannot be changed
@@ -106,6 +115,14 @@ import java.util.concurrent.Callable;
  * column {artifact-namespace}:{artifact-name}:{artifact-version},
  * and PluginData as the value
  *
+ * Each plugin is also written to an index row that contains the namespace of the plugin artifact, with
+ * rowkey pn:{parent-namespace}:{parent-name}:{artifact-namespace}:{plugin-type}:{plugin-name},
+ * the same column and the same value. Since plugins are only visible to the namespace of their artifact and the
+ * system namespace, plugin lookups are bounded prefix scans on these rows, instead of scans over the plugins of
+ * all namespaces. Plugin rows written before the index existed are indexed by {@link #upgradePluginIndex()}, which
+ * writes the index marker row once it is done; until then lookups fall back to scanning the plugin rows.
+ * The index rows are omitted from the examples below.
+ *
  * For example, suppose we add a system artifact etlbatch-3.1.0, which contains an ETLBatch application class.
  * The meta table will look like:
  *
@@ -137,12 +154,21 @@ import java.util.concurrent.Callable;
  *
  * With this schema we can perform a scan to look up AppClasses, a scan to look up plugins that extend a specific
  * artifact, and a scan to look up artifacts.
+ *
+ * Results of plugin lookups are cached in memory. The cache is invalidated whenever artifacts are written or deleted
+ * through this store, and entries expire after a configurable time to pick up changes made by other processes.
  */
 public class ArtifactStore {
   private static final String ARTIFACTS_PATH = "artifacts";
   private static final String ARTIFACT_PREFIX = "r";
   private static final String PLUGIN_PREFIX = "p";
   private static final String APPCLASS_PREFIX = "a";
+  private static final String PLUGIN_INDEX_PREFIX = "pn";
+  // Marks that index rows exist for all plugin rows, including the ones written before the index was introduced
+  private static final byte[] PLUGIN_INDEX_MARKER_ROW = Bytes.toBytes("i:" + PLUGIN_INDEX_PREFIX);
+  private static final byte[] PLUGIN_INDEX_MARKER_COLUMN = Bytes.toBytes("v");
+  private static final int PLUGIN_INDEX_UPGRADE_BATCH_SIZE = 100;
+  private static final int PLUGIN_CACHE_MAX_SIZE = 1000;
   private static final Id.DatasetInstance META_ID = Id.DatasetInstance.from(Id.Namespace.SYSTEM, "artifact.meta");
   private static final DatasetProperties META_PROPERTIES =
     DatasetProperties.builder().add(Table.PROPERTY_CONFLICT_LEVEL, ConflictDetection.COLUMN.name()).build();
@@ -152,12 +178,28 @@ public class ArtifactStore {
   private final Transactional<DatasetContext<Table>, Table> metaTable;
   private final Gson gson;
   private final Impersonator impersonator;
+  private final Cache<PluginsCacheKey, SortedMap<ArtifactDescriptor, Set<PluginClass>>> pluginsCache;
+  private final Cache<PluginsCacheKey, SortedMap<ArtifactDescriptor, PluginClass>> pluginCache;
+  // Incremented on every invalidation of the plugin caches, to detect lookups that raced with a modification
+  private final AtomicLong cacheGeneration;
+  private volatile boolean pluginIndexBuilt;
 
   @Inject
-  ArtifactStore(final DatasetFramework datasetFramework,
+  ArtifactStore(CConfiguration cConf,
+                final DatasetFramework datasetFramework,
                 NamespacedLocationFactory namespacedLocationFactory,
                 LocationFactory locationFactory,
                 TransactionExecutorFactory txExecutorFactory, Impersonator impersonator) {
+    long cacheExpireSeconds = cConf.getLong(Constants.AppFabric.ARTIFACT_PLUGIN_CACHE_EXPIRE_SECONDS);
+    this.pluginsCache = CacheBuilder.newBuilder()
+      .maximumSize(PLUGIN_CACHE_MAX_SIZE)
+      .expireAfterWrite(cacheExpireSeconds, TimeUnit.SECONDS)
+      .build();
+    this.pluginCache = CacheBuilder.newBuilder()
+      .maximumSize(PLUGIN_CACHE_MAX_SIZE)
+      .expireAfterWrite(cacheExpireSeconds, TimeUnit.SECONDS)
+      .build();
+    this.cacheGeneration = new AtomicLong();
     this.locationFactory = locationFactory;
     this.namespacedLocationFactory = namespacedLocationFactory;
     this.gson = new GsonBuilder()
@@ -404,7 +446,8 @@ public class ArtifactStore {
                                                                           final Id.Artifact parentArtifactId)
     throws ArtifactNotFoundException, IOException {
 
-    SortedMap<ArtifactDescriptor, Set<PluginClass>> pluginClasses = metaTable.executeUnchecked(
+    SortedMap<ArtifactDescriptor, Set<PluginClass>> pluginClasses = getCachedPlugins(
+      pluginsCache, new PluginsCacheKey(namespace, parentArtifactId, null, null),
       new TransactionExecutor.Function<DatasetContext<Table>, SortedMap<ArtifactDescriptor, Set<PluginClass>>>() {
         @Override
         public SortedMap<ArtifactDescriptor, Set<PluginClass>> apply(DatasetContext<Table> context) throws Exception {
@@ -414,15 +457,8 @@ public class ArtifactStore {
             return null;
           }
 
-          // should be able to scan by column prefix as well... instead, we have to filter out by namespace
-          Scanner scanner = table.scan(scanPlugins(parentArtifactId));
-          Row row;
-          while ((row = scanner.next()) != null) {
-            addPluginsToMap(namespace, parentArtifactId, result, row);
-          }
-          scanner.close();
-
-          return Collections.unmodifiableSortedMap(result);
+          addPlugins(table, namespace, parentArtifactId, null, result);
+          return unmodifiablePlugins(result);
         }
       });
 
@@ -448,7 +484,8 @@ public class ArtifactStore {
                                                                           final String type)
     throws IOException, ArtifactNotFoundException {
 
-    SortedMap<ArtifactDescriptor, Set<PluginClass>> pluginClasses = metaTable.executeUnchecked(
+    SortedMap<ArtifactDescriptor, Set<PluginClass>> pluginClasses = getCachedPlugins(
+      pluginsCache, new PluginsCacheKey(namespace, parentArtifactId, type, null),
       new TransactionExecutor.Function<DatasetContext<Table>, SortedMap<ArtifactDescriptor, Set<PluginClass>>>() {
         @Override
         public SortedMap<ArtifactDescriptor, Set<PluginClass>> apply(DatasetContext<Table> context) throws Exception {
@@ -465,14 +502,8 @@ public class ArtifactStore {
             return null;
           }
 
-          Scanner scanner = table.scan(scanPlugins(parentArtifactId, type));
-          Row row;
-          while ((row = scanner.next()) != null) {
-            addPluginsToMap(namespace, parentArtifactId, result, row);
-          }
-          scanner.close();
-
-          return Collections.unmodifiableSortedMap(result);
+          addPlugins(table, namespace, parentArtifactId, type, result);
+          return unmodifiablePlugins(result);
         }
       });
 
@@ -499,7 +530,8 @@ public class ArtifactStore {
                                                                      final String type, final String name)
     throws IOException, ArtifactNotFoundException, PluginNotExistsException {
 
-    SortedMap<ArtifactDescriptor, PluginClass> plugins = metaTable.executeUnchecked(
+    SortedMap<ArtifactDescriptor, PluginClass> plugins = getCachedPlugins(
+      pluginCache, new PluginsCacheKey(namespace, parentArtifactId, type, name),
       new TransactionExecutor.Function<DatasetContext<Table>, SortedMap<ArtifactDescriptor, PluginClass>>() {
         @Override
         public SortedMap<ArtifactDescriptor, PluginClass> apply(DatasetContext<Table> context) throws Exception {
@@ -525,9 +557,8 @@ public class ArtifactStore {
             }
           }
 
-          PluginKey pluginKey = new PluginKey(parentArtifactId.getNamespace(), parentArtifactId.getName(), type, name);
-          Row row = context.get().get(pluginKey.getRowKey());
-          if (!row.isEmpty()) {
+          for (byte[] rowKey : getPluginRowKeys(table, namespace, parentArtifactId, type, name)) {
+            Row row = table.get(rowKey);
             // column is the artifact name and version, value is the serialized PluginClass
             for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
               ImmutablePair<ArtifactDescriptor, PluginClass> pluginEntry =
@@ -538,7 +569,7 @@ public class ArtifactStore {
               }
             }
           }
-          return result;
+          return Collections.unmodifiableSortedMap(result);
         }
       });
 
@@ -549,7 +580,7 @@ public class ArtifactStore {
     if (plugins.isEmpty()) {
       throw new PluginNotExistsException(parentArtifactId.getNamespace(), type, name);
     }
-    return Collections.unmodifiableSortedMap(plugins);
+    return plugins;
   }
 
   /**
@@ -672,6 +703,8 @@ public class ArtifactStore {
       } catch (TransactionFailureException | InterruptedException e) {
         destination.delete();
         throw new IOException(e);
+      } finally {
+        invalidatePluginCaches();
       }
       return new ArtifactDetail(new ArtifactDescriptor(artifactId.toArtifactId(), destination), artifactMeta);
     } catch (Exception e) {
@@ -730,6 +763,7 @@ public class ArtifactStore {
         return null;
       }
     });
+    invalidatePluginCaches();
   }
 
   /**
@@ -792,9 +826,57 @@ public class ArtifactStore {
         }
         scanner.close();
 
+        // delete the plugin index rows of artifacts in the namespace
+        byte[] indexPrefix = Bytes.toBytes(String.format("%s:%s:", PLUGIN_INDEX_PREFIX, namespace.getNamespace()));
+        scanner = table.scan(new Scan(indexPrefix, Bytes.stopKeyForPrefix(indexPrefix)));
+        while ((row = scanner.next()) != null) {
+          table.delete(row.getRow());
+        }
+        scanner.close();
+
+        // delete the plugin index rows of plugins in this namespace that extend system artifacts
+        byte[] systemIndexPrefix = Bytes.toBytes(String.format("%s:%s:", PLUGIN_INDEX_PREFIX,
+                                                               Id.Namespace.SYSTEM.getId()));
+        scanner = table.scan(new Scan(systemIndexPrefix, Bytes.stopKeyForPrefix(systemIndexPrefix)));
+        while ((row = scanner.next()) != null) {
+          for (Map.Entry<byte[], byte[]> columnVal : row.getColumns().entrySet()) {
+            ArtifactColumn column = ArtifactColumn.parse(columnVal.getKey());
+            if (column.artifactId.getNamespace().equals(namespace.toId())) {
+              table.delete(row.getRow(), column.getColumn());
+            }
+          }
+        }
+        scanner.close();
+
+        return null;
+      }
+    });
+    invalidatePluginCaches();
+  }
+
+  /**
+   * Deletes all plugin index rows and the index marker row, leaving the meta table as it was before the plugin
+   * index existed. Used by tests to verify {@link #upgradePluginIndex()}.
+   */
+  @VisibleForTesting
+  void dropPluginIndex() {
+    metaTable.executeUnchecked(new TransactionExecutor.Function<DatasetContext<Table>, Void>() {
+      @Override
+      public Void apply(DatasetContext<Table> context) throws Exception {
+        Table table = context.get();
+        byte[] indexPrefix = Bytes.toBytes(PLUGIN_INDEX_PREFIX + ":");
+        Scanner scanner = table.scan(new Scan(indexPrefix, Bytes.stopKeyForPrefix(indexPrefix)));
+        Row row;
+        while ((row = scanner.next()) != null) {
+          table.delete(row.getRow());
+        }
+        scanner.close();
+        table.delete(PLUGIN_INDEX_MARKER_ROW);
         return null;
       }
     });
+    pluginIndexBuilt = false;
+    invalidatePluginCaches();
   }
 
   // write a new artifact snapshot and clean up the old snapshot data
@@ -819,6 +901,8 @@ public class ArtifactStore {
         byte[] pluginDataBytes = Bytes.toBytes(
           gson.toJson(new PluginData(pluginClass, artifactRange, artifactLocation)));
         table.put(pluginKey.getRowKey(), artifactColumn, pluginDataBytes);
+        table.put(new PluginIndexKey(pluginKey, artifactId.getNamespace()).getRowKey(), artifactColumn,
+                  pluginDataBytes);
       }
     }
 
@@ -847,6 +931,7 @@ public class ArtifactStore {
         PluginKey pluginKey = new PluginKey(
           artifactRange.getNamespace(), artifactRange.getName(), pluginClass.getType(), pluginClass.getName());
         table.delete(pluginKey.getRowKey(), artifactColumn);
+        table.delete(new PluginIndexKey(pluginKey, artifactId.getNamespace()).getRowKey(), artifactColumn);
       }
     }
 
@@ -970,22 +1055,177 @@ public class ArtifactStore {
       Bytes.toBytes(String.format("%s:%s;", ARTIFACT_PREFIX, namespace.getNamespace())));
   }
 
-  private Scan scanPlugins(Id.Artifact parentArtifactId) {
-    return new Scan(
-      Bytes.toBytes(String.format("%s:%s:%s:",
-                                  PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(), parentArtifactId.getName())),
-      Bytes.toBytes(String.format("%s:%s:%s;",
-                                  PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(), parentArtifactId.getName())));
+  private Scan scanPlugins(Id.Artifact parentArtifactId, @Nullable String type) {
+    String prefix = Joiner.on(':').join(PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(),
+                                        parentArtifactId.getName()) + ":";
+    if (type != null) {
+      prefix += type + ":";
+    }
+    byte[] startRow = Bytes.toBytes(prefix);
+    return new Scan(startRow, Bytes.stopKeyForPrefix(startRow));
   }
 
-  private Scan scanPlugins(Id.Artifact parentArtifactId, String type) {
-    return new Scan(
-      Bytes.toBytes(String.format("%s:%s:%s:%s:",
-                                  PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(),
-                                  parentArtifactId.getName(), type)),
-      Bytes.toBytes(String.format("%s:%s:%s:%s;",
-                                  PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(),
-                                  parentArtifactId.getName(), type)));
+  private Scan scanPluginIndex(Id.Artifact parentArtifactId, Id.Namespace pluginNamespace, @Nullable String type) {
+    String prefix = Joiner.on(':').join(PLUGIN_INDEX_PREFIX, parentArtifactId.getNamespace().getId(),
+                                        parentArtifactId.getName(), pluginNamespace.getId()) + ":";
+    if (type != null) {
+      prefix += type + ":";
+    }
+    byte[] startRow = Bytes.toBytes(prefix);
+    return new Scan(startRow, Bytes.stopKeyForPrefix(startRow));
+  }
+
+  /**
+   * Returns the namespaces of the artifacts whose plugins are visible in the given namespace.
+   */
+  private List<Id.Namespace> getPluginNamespaces(NamespaceId namespace) {
+    Id.Namespace namespaceId = namespace.toId();
+    return Id.Namespace.SYSTEM.equals(namespaceId)
+      ? Collections.singletonList(namespaceId)
+      : Arrays.asList(namespaceId, Id.Namespace.SYSTEM);
+  }
+
+  /**
+   * Returns the result of a plugin lookup from the given cache, or performs the lookup and caches its result.
+   *
+   * @return the result of the lookup, or {@code null} if the parent artifact does not exist
+   */
+  @Nullable
+  private <T> T getCachedPlugins(Cache<PluginsCacheKey, T> cache, PluginsCacheKey key,
+                                 TransactionExecutor.Function<DatasetContext<Table>, T> lookup) {
+    T plugins = cache.getIfPresent(key);
+    if (plugins != null) {
+      return plugins;
+    }
+
+    long generation = cacheGeneration.get();
+    plugins = metaTable.executeUnchecked(lookup);
+    if (plugins != null) {
+      cache.put(key, plugins);
+      // Artifacts were modified while looking up, hence the result may be outdated
+      if (cacheGeneration.get() != generation) {
+        cache.invalidate(key);
+      }
+    }
+    return plugins;
+  }
+
+  private void invalidatePluginCaches() {
+    cacheGeneration.incrementAndGet();
+    pluginsCache.invalidateAll();
+    pluginCache.invalidateAll();
+  }
+
+  /**
+   * Adds the plugins of the given type, or of all types if it is {@code null}, that extend the given parent artifact
+   * and are visible in the given namespace to the given map.
+   */
+  private void addPlugins(Table table, NamespaceId namespace, Id.Artifact parentArtifactId, @Nullable String type,
+                          SortedMap<ArtifactDescriptor, Set<PluginClass>> result) throws IOException {
+    List<Scan> scans = new ArrayList<>();
+    if (isPluginIndexBuilt(table)) {
+      for (Id.Namespace pluginNamespace : getPluginNamespaces(namespace)) {
+        scans.add(scanPluginIndex(parentArtifactId, pluginNamespace, type));
+      }
+    } else {
+      // Until the index is built, the plugins of all namespaces are scanned and filtered afterwards
+      scans.add(scanPlugins(parentArtifactId, type));
+    }
+
+    for (Scan scan : scans) {
+      Scanner scanner = table.scan(scan);
+      try {
+        Row row;
+        while ((row = scanner.next()) != null) {
+          addPluginsToMap(namespace, parentArtifactId, result, row);
+        }
+      } finally {
+        scanner.close();
+      }
+    }
+  }
+
+  /**
+   * Returns the keys of the rows that contain the plugins of the given type and name that extend the given parent
+   * artifact and may be visible in the given namespace.
+   */
+  private List<byte[]> getPluginRowKeys(Table table, NamespaceId namespace, Id.Artifact parentArtifactId,
+                                        String type, String name) {
+    if (!isPluginIndexBuilt(table)) {
+      return Collections.singletonList(
+        new PluginKey(parentArtifactId.getNamespace(), parentArtifactId.getName(), type, name).getRowKey());
+    }
+    List<byte[]> rowKeys = new ArrayList<>();
+    for (Id.Namespace pluginNamespace : getPluginNamespaces(namespace)) {
+      rowKeys.add(new PluginIndexKey(parentArtifactId.getNamespace(), parentArtifactId.getName(),
+                                     pluginNamespace, type, name).getRowKey());
+    }
+    return rowKeys;
+  }
+
+  private boolean isPluginIndexBuilt(Table table) {
+    if (!pluginIndexBuilt && table.get(PLUGIN_INDEX_MARKER_ROW, PLUGIN_INDEX_MARKER_COLUMN) != null) {
+      pluginIndexBuilt = true;
+    }
+    return pluginIndexBuilt;
+  }
+
+  /**
+   * Writes the plugin index rows for plugin rows that were written before the index was introduced. The plugin rows
+   * are indexed in batches, each in its own transaction, and a marker row is written once all of them are indexed.
+   * Until then, plugin lookups scan the plugin rows of all namespaces. This is called by the upgrade tool and when
+   * app-fabric starts, and returns right away once the index is built.
+   */
+  public void upgradePluginIndex() {
+    if (pluginIndexBuilt) {
+      return;
+    }
+    final byte[] stopRow = Bytes.toBytes(PLUGIN_PREFIX + ";");
+    byte[] startRow = Bytes.toBytes(PLUGIN_PREFIX + ":");
+    while (startRow != null) {
+      final byte[] batchStartRow = startRow;
+      startRow = metaTable.executeUnchecked(new TransactionExecutor.Function<DatasetContext<Table>, byte[]>() {
+        @Override
+        public byte[] apply(DatasetContext<Table> context) throws Exception {
+          Table table = context.get();
+          if (table.get(PLUGIN_INDEX_MARKER_ROW, PLUGIN_INDEX_MARKER_COLUMN) != null) {
+            return null;
+          }
+
+          Scanner scanner = table.scan(new Scan(batchStartRow, stopRow));
+          try {
+            Row row;
+            int rows = 0;
+            while ((row = scanner.next()) != null) {
+              if (rows++ == PLUGIN_INDEX_UPGRADE_BATCH_SIZE) {
+                // Continue from this row in the next transaction
+                return row.getRow();
+              }
+              PluginKey pluginKey = PluginKey.parse(row.getRow());
+              for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
+                Id.Namespace artifactNamespace = ArtifactColumn.parse(column.getKey()).artifactId.getNamespace();
+                table.put(new PluginIndexKey(pluginKey, artifactNamespace).getRowKey(),
+                          column.getKey(), column.getValue());
+              }
+            }
+          } finally {
+            scanner.close();
+          }
+          table.put(PLUGIN_INDEX_MARKER_ROW, PLUGIN_INDEX_MARKER_COLUMN, Bytes.toBytes(true));
+          return null;
+        }
+      });
+    }
+    pluginIndexBuilt = true;
+  }
+
+  private SortedMap<ArtifactDescriptor, Set<PluginClass>> unmodifiablePlugins(
+    SortedMap<ArtifactDescriptor, Set<PluginClass>> plugins) {
+    SortedMap<ArtifactDescriptor, Set<PluginClass>> result = new TreeMap<>();
+    for (Map.Entry<ArtifactDescriptor, Set<PluginClass>> entry : plugins.entrySet()) {
+      result.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+    }
+    return Collections.unmodifiableSortedMap(result);
   }
 
   private Scan scanAppClasses(NamespaceId namespace) {
@@ -1026,6 +1266,75 @@ public class ArtifactStore {
       return Bytes.toBytes(
         Joiner.on(':').join(PLUGIN_PREFIX, parentArtifactNamespace.getId(), parentArtifactName, type, name));
     }
+
+    private static PluginKey parse(byte[] rowkey) {
+      Iterator<String> parts = Splitter.on(':').limit(5).split(Bytes.toString(rowkey)).iterator();
+      // first part is the plugin prefix
+      parts.next();
+      return new PluginKey(Id.Namespace.from(parts.next()), parts.next(), parts.next(), parts.next());
+    }
+  }
+
+  private static class PluginIndexKey {
+    private final Id.Namespace parentArtifactNamespace;
+    private final String parentArtifactName;
+    private final Id.Namespace artifactNamespace;
+    private final String type;
+    private final String name;
+
+    private PluginIndexKey(Id.Namespace parentArtifactNamespace, String parentArtifactName,
+                           Id.Namespace artifactNamespace, String type, String name) {
+      this.parentArtifactNamespace = parentArtifactNamespace;
+      this.parentArtifactName = parentArtifactName;
+      this.artifactNamespace = artifactNamespace;
+      this.type = type;
+      this.name = name;
+    }
+
+    private PluginIndexKey(PluginKey pluginKey, Id.Namespace artifactNamespace) {
+      this(pluginKey.parentArtifactNamespace, pluginKey.parentArtifactName, artifactNamespace,
+           pluginKey.type, pluginKey.name);
+    }
+
+    // pn:system:etlbatch:default:source:db
+    private byte[] getRowKey() {
+      return Bytes.toBytes(Joiner.on(':').join(PLUGIN_INDEX_PREFIX, parentArtifactNamespace.getId(),
+                                               parentArtifactName, artifactNamespace.getId(), type, name));
+    }
+  }
+
+  // key of cached plugin lookups. The type and name are null if the lookup is not restricted to them.
+  private static final class PluginsCacheKey {
+    private final NamespaceId namespace;
+    private final Id.Artifact parentArtifactId;
+    private final String type;
+    private final String name;
+
+    private PluginsCacheKey(NamespaceId namespace, Id.Artifact parentArtifactId,
+                            @Nullable String type, @Nullable String name) {
+      this.namespace = namespace;
+      this.parentArtifactId = parentArtifactId;
+      this.type = type;
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      PluginsCacheKey other = (PluginsCacheKey) o;
+      return namespace.equals(other.namespace) && parentArtifactId.equals(other.parentArtifactId)
+        && Objects.equal(type, other.type) && Objects.equal(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(namespace, parentArtifactId, type, name);
+    }
   }
 
   private static class ArtifactColumn {
@@ -0,0 +1,452 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.artifact;
+
+import co.cask.cdap.api.annotation.Description;
+import co.cask.cdap.api.annotation.Macro;
+import co.cask.cdap.api.annotation.Name;
+import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.data.schema.UnsupportedTypeException;
+import co.cask.cdap.api.plugin.EndpointPluginContext;
+import co.cask.cdap.api.plugin.PluginClass;
+import co.cask.cdap.api.plugin.PluginConfig;
+import co.cask.cdap.api.plugin.PluginPropertyField;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Primitives;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Extracts {@link PluginClass} information from class files with ASM, without loading the classes. It produces
+ * the same result as inspecting the loaded class through reflection. Classes that cannot be described from their
+ * bytecode alone, for example because they have fields of generic types, are rejected with a
+ * {@link CannotScanException}, in which case the class has to be loaded for inspection.
+ * <p>
+ * This class is thread safe. Class files of the super types are parsed only once per instance.
+ * </p>
+ */
+final class PluginClassScanner {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PluginClassScanner.class);
+
+  private static final String PLUGIN_DESC = Type.getDescriptor(Plugin.class);
+  private static final String NAME_DESC = Type.getDescriptor(Name.class);
+  private static final String DESCRIPTION_DESC = Type.getDescriptor(Description.class);
+  private static final String MACRO_DESC = Type.getDescriptor(Macro.class);
+  private static final String PATH_DESC = Type.getDescriptor(javax.ws.rs.Path.class);
+  private static final String ENDPOINT_CONTEXT_DESC = Type.getDescriptor(EndpointPluginContext.class);
+  private static final String PLUGIN_CONFIG_NAME = Type.getInternalName(PluginConfig.class);
+  private static final int PARSING_OPTIONS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+  // Maps boxed types to the property type names of their primitive types
+  private static final Map<String, String> BOXED_TYPES;
+
+  static {
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    for (Class<?> wrapperType : Primitives.allWrapperTypes()) {
+      builder.put(wrapperType.getName(), Primitives.unwrap(wrapperType).getSimpleName().toLowerCase());
+    }
+    builder.put(String.class.getName(), "string");
+    BOXED_TYPES = builder.build();
+  }
+
+  private final ClassLoader classLoader;
+  private final ConcurrentMap<String, Optional<ClassInfo>> classInfos;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param classLoader the {@link ClassLoader} to read the class files of plugin classes and their super types from
+   */
+  PluginClassScanner(ClassLoader classLoader) {
+    this.classLoader = classLoader;
+    this.classInfos = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Scans the class file of the given class.
+   *
+   * @param className the fully qualified name of the class
+   * @return the {@link PluginClass} if the class is annotated with {@link Plugin}, otherwise {@code null}
+   * @throws CannotScanException if the class has to be loaded to be inspected
+   * @throws UnsupportedTypeException if the type of a config property is not supported
+   * @throws IllegalArgumentException if the plugin config or endpoints are invalid
+   */
+  @Nullable
+  PluginClass scan(String className) throws CannotScanException, UnsupportedTypeException {
+    // A class without a readable class file is not considered to be a plugin
+    ClassInfo classInfo = findClassInfo(className.replace('.', '/'));
+    Map<String, Object> pluginAnnotation = classInfo == null ? null : classInfo.annotations.get(PLUGIN_DESC);
+    if (pluginAnnotation == null) {
+      return null;
+    }
+
+    String type = getValue(pluginAnnotation, "type", Plugin.DEFAULT_TYPE);
+    String name = getValue(classInfo.annotations.get(NAME_DESC), "value", "");
+    if (name.isEmpty()) {
+      name = className;
+    }
+    String description = getValue(classInfo.annotations.get(DESCRIPTION_DESC), "value", "");
+
+    Map<String, PluginPropertyField> properties = new HashMap<>();
+    String configField = getProperties(classInfo, properties);
+    Set<String> endpoints = getEndpoints(classInfo, name);
+    return new PluginClass(type, name, description, className, configField, properties, endpoints);
+  }
+
+  /**
+   * Finds the config field of the plugin and collects the config properties, the same way as
+   * {@code ArtifactInspector} does through reflection.
+   *
+   * @return the name of the config field or {@code null} if the plugin doesn't have a config field
+   */
+  @Nullable
+  private String getProperties(ClassInfo classInfo,
+                               Map<String, PluginPropertyField> result) throws CannotScanException,
+                                                                                UnsupportedTypeException {
+    for (ClassInfo info = classInfo; info != null; info = getSuperClassInfo(info)) {
+      for (FieldInfo field : info.fields) {
+        checkNotTypeVariable(info, field);
+        Type fieldType = Type.getType(field.desc);
+        if (fieldType.getSort() == Type.OBJECT && isPluginConfig(fieldType.getInternalName())) {
+          inspectConfig(fieldType.getInternalName(), result);
+          return field.name;
+        }
+      }
+    }
+    return null;
+  }
+
+  private void inspectConfig(String configName,
+                             Map<String, PluginPropertyField> result) throws CannotScanException,
+                                                                             UnsupportedTypeException {
+    for (String name = configName; !PLUGIN_CONFIG_NAME.equals(name); name = getClassInfo(name).superName) {
+      ClassInfo info = getClassInfo(name);
+      for (FieldInfo field : info.fields) {
+        if ((field.access & (Opcodes.ACC_TRANSIENT | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC)) != 0) {
+          continue;
+        }
+        checkNotTypeVariable(info, field);
+
+        PluginPropertyField property = createPluginProperty(field);
+        if (result.containsKey(property.getName())) {
+          throw new IllegalArgumentException("Plugin config with name " + property.getName()
+                                               + " already defined in class " + configName.replace('/', '.'));
+        }
+        result.put(property.getName(), property);
+      }
+    }
+  }
+
+  private PluginPropertyField createPluginProperty(FieldInfo field) throws UnsupportedTypeException {
+    String name = getValue(field.annotations.get(NAME_DESC), "value", field.name);
+    String description = getValue(field.annotations.get(DESCRIPTION_DESC), "value", "");
+    boolean macroSupported = field.annotations.containsKey(MACRO_DESC);
+
+    Type fieldType = Type.getType(field.desc);
+    if (fieldType.getSort() != Type.OBJECT && fieldType.getSort() != Type.ARRAY) {
+      return new PluginPropertyField(name, description, fieldType.getClassName(), true, macroSupported);
+    }
+
+    String typeName = fieldType.getSort() == Type.OBJECT ? BOXED_TYPES.get(fieldType.getClassName()) : null;
+    if (typeName == null) {
+      throw new UnsupportedTypeException("Only primitive and String types are supported");
+    }
+
+    boolean required = true;
+    for (String annotationDesc : field.annotations.keySet()) {
+      if (annotationDesc.endsWith("/Nullable;")) {
+        required = false;
+        break;
+      }
+    }
+    return new PluginPropertyField(name, description, typeName, required, macroSupported);
+  }
+
+  /**
+   * Collects the endpoints from the public methods of the plugin class and all its super types, the same way as
+   * {@code ArtifactInspector} does through reflection.
+   */
+  private Set<String> getEndpoints(ClassInfo classInfo, String pluginName) throws CannotScanException {
+    // Classes are visited before interfaces, so that overriding methods hide the methods they override
+    List<ClassInfo> types = new ArrayList<>();
+    Deque<String> interfaces = new ArrayDeque<>();
+    for (ClassInfo info = classInfo; info != null; info = getSuperClassInfo(info)) {
+      types.add(info);
+      interfaces.addAll(Arrays.asList(info.interfaces));
+    }
+    Set<String> visitedInterfaces = new HashSet<>();
+    while (!interfaces.isEmpty()) {
+      String name = interfaces.poll();
+      if (isJavaClass(name) || !visitedInterfaces.add(name)) {
+        continue;
+      }
+      ClassInfo info = getClassInfo(name);
+      types.add(info);
+      interfaces.addAll(Arrays.asList(info.interfaces));
+    }
+
+    Set<String> endpoints = new HashSet<>();
+    Set<String> methods = new HashSet<>();
+    for (ClassInfo info : types) {
+      boolean isInterface = (info.access & Opcodes.ACC_INTERFACE) != 0;
+      for (MethodInfo method : info.methods) {
+        if ((method.access & Opcodes.ACC_PUBLIC) == 0 || method.name.startsWith("<")
+          || (isInterface && (method.access & Opcodes.ACC_STATIC) != 0)
+          || !methods.add(method.name + method.desc)) {
+          continue;
+        }
+        Map<String, Object> pathAnnotation = method.annotations.get(PATH_DESC);
+        if (pathAnnotation == null) {
+          continue;
+        }
+        String path = getValue(pathAnnotation, "value", null);
+        if (!endpoints.add(path)) {
+          throw new IllegalArgumentException(String.format("Two Endpoints with same name : %s found in Plugin : %s",
+                                                           path, pluginName));
+        }
+        Type[] parameterTypes = Type.getArgumentTypes(method.desc);
+        if (!(parameterTypes.length == 1 || parameterTypes.length == 2)) {
+          throw new IllegalArgumentException(
+            String.format("Endpoint parameters can only be of length 1 or 2, " +
+                            "found endpoint %s with %s parameters", path, parameterTypes.length));
+        }
+        if (parameterTypes.length == 2 && !ENDPOINT_CONTEXT_DESC.equals(parameterTypes[1].getDescriptor())) {
+          // Checking whether the parameter type is a subtype of EndpointPluginContext requires loading the class
+          throw new CannotScanException("Endpoint " + path + " has a second parameter of type "
+                                          + parameterTypes[1].getClassName());
+        }
+      }
+    }
+    return endpoints;
+  }
+
+  /**
+   * Returns whether the given class is {@link PluginConfig} or a subclass of it.
+   */
+  private boolean isPluginConfig(String className) throws CannotScanException {
+    for (String name = className; name != null; name = getClassInfo(name).superName) {
+      if (PLUGIN_CONFIG_NAME.equals(name)) {
+        return true;
+      }
+      if (isJavaClass(name)) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the information of the super class, or {@code null} if the super class is a Java class, which never
+   * contains plugin configs or endpoints.
+   */
+  @Nullable
+  private ClassInfo getSuperClassInfo(ClassInfo classInfo) throws CannotScanException {
+    String superName = classInfo.superName;
+    return superName == null || isJavaClass(superName) ? null : getClassInfo(superName);
+  }
+
+  private void checkNotTypeVariable(ClassInfo classInfo, FieldInfo field) throws CannotScanException {
+    // Resolving type variables requires the generic type information of the subclasses
+    if (field.signature != null && field.signature.startsWith("T")) {
+      throw new CannotScanException("Field " + field.name + " in class " + classInfo.name + " has a generic type");
+    }
+  }
+
+  private ClassInfo getClassInfo(String internalName) throws CannotScanException {
+    ClassInfo classInfo = findClassInfo(internalName);
+    if (classInfo == null) {
+      throw new CannotScanException("Failed to read class file of " + internalName);
+    }
+    return classInfo;
+  }
+
+  @Nullable
+  private ClassInfo findClassInfo(String internalName) {
+    Optional<ClassInfo> classInfo = classInfos.get(internalName);
+    if (classInfo == null) {
+      classInfo = Optional.fromNullable(readClassInfo(internalName));
+      classInfos.putIfAbsent(internalName, classInfo);
+    }
+    return classInfo.orNull();
+  }
+
+  @Nullable
+  private ClassInfo readClassInfo(String internalName) {
+    try (InputStream is = classLoader.getResourceAsStream(internalName + ".class")) {
+      if (is == null) {
+        return null;
+      }
+      ClassInfo classInfo = new ClassInfo();
+      new ClassReader(is).accept(classInfo, PARSING_OPTIONS);
+      return classInfo;
+    } catch (IOException e) {
+      LOG.debug("Failed to read class file of {}", internalName, e);
+      return null;
+    }
+  }
+
+  private static boolean isJavaClass(String internalName) {
+    return internalName.startsWith("java/");
+  }
+
+  private static String getValue(@Nullable Map<String, Object> annotation, String name, String defaultValue) {
+    Object value = annotation == null ? null : annotation.get(name);
+    return value == null ? defaultValue : value.toString();
+  }
+
+  /**
+   * Thrown when a class cannot be inspected without loading it.
+   */
+  static final class CannotScanException extends Exception {
+    CannotScanException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Runtime visible annotations, keyed by the annotation descriptor, with the values set explicitly.
+   */
+  private static final class Annotations extends HashMap<String, Map<String, Object>> {
+
+    AnnotationVisitor visit(String desc, boolean visible) {
+      if (!visible) {
+        return null;
+      }
+      final Map<String, Object> values = new HashMap<>();
+      put(desc, values);
+      return new AnnotationVisitor(Opcodes.ASM5) {
+        @Override
+        public void visit(String name, Object value) {
+          values.put(name, value);
+        }
+      };
+    }
+  }
+
+  /**
+   * The parts of a class file that are relevant for plugin inspection.
+   */
+  private static final class ClassInfo extends ClassVisitor {
+    private final Annotations annotations = new Annotations();
+    private final List<FieldInfo> fields = new ArrayList<>();
+    private final List<MethodInfo> methods = new ArrayList<>();
+    private String name;
+    private String superName;
+    private String[] interfaces;
+    private int access;
+
+    ClassInfo() {
+      super(Opcodes.ASM5);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature,
+                      String superName, String[] interfaces) {
+      this.access = access;
+      this.name = name;
+      this.superName = superName;
+      this.interfaces = interfaces == null ? new String[0] : interfaces;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+      return annotations.visit(desc, visible);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+      final FieldInfo field = new FieldInfo(access, name, desc, signature);
+      fields.add(field);
+      return new FieldVisitor(Opcodes.ASM5) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+          return field.annotations.visit(desc, visible);
+        }
+      };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+      final MethodInfo method = new MethodInfo(access, name, desc);
+      methods.add(method);
+      return new MethodVisitor(Opcodes.ASM5) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+          return method.annotations.visit(desc, visible);
+        }
+      };
+    }
+  }
+
+  /**
+   * A field declared in a class file.
+   */
+  private static final class FieldInfo {
+    private final int access;
+    private final String name;
+    private final String desc;
+    private final String signature;
+    private final Annotations annotations = new Annotations();
+
+    FieldInfo(int access, String name, String desc, @Nullable String signature) {
+      this.access = access;
+      this.name = name;
+      this.desc = desc;
+      this.signature = signature;
+    }
+  }
+
+  /**
+   * A method declared in a class file.
+   */
+  private static final class MethodInfo {
+    private final int access;
+    private final String name;
+    private final String desc;
+    private final Annotations annotations = new Annotations();
+
+    MethodInfo(int access, String name, String desc) {
+      this.access = access;
+      this.name = name;
+      this.desc = desc;
+    }
+  }
+}
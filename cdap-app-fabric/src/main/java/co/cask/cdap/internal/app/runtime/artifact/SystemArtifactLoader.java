@@ -45,6 +45,7 @@ public final class SystemArtifactLoader extends AbstractService {
             String oldUserId = SecurityRequestContext.getUserId();
             try {
               SecurityRequestContext.setUserId(Principal.SYSTEM.getName());
+              artifactRepository.upgradePluginIndex();
               artifactRepository.addSystemArtifacts();
               // if there is no exception, all good, continue on
               notifyStarted();
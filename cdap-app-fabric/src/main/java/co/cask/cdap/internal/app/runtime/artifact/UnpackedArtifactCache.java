@@ -0,0 +1,286 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.artifact;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.lang.jar.BundleJarUtil;
+import co.cask.cdap.common.utils.DirUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A cache of unpacked artifact jars, shared by everything in the process that is injected with it. Artifacts are
+ * keyed by the checksum of their content, hence an artifact is unpacked only once, no matter from which location it
+ * is read.
+ * <p>
+ * Callers acquire an {@link UnpackedArtifact} and must close it once they no longer use the unpacked directory.
+ * Directories that are no longer in use are kept for reuse until the total size of all unpacked directories exceeds
+ * the configured maximum, in which case the least recently used ones are deleted. Directories in use are never
+ * deleted. Only the directories are shared; callers create their own {@link ClassLoader} from them.
+ * </p>
+ * <p>
+ * The cache starts on first use if its owner has not started it yet. Stopping the cache deletes all the unpacked
+ * directories.
+ * </p>
+ */
+@Singleton
+public final class UnpackedArtifactCache extends AbstractIdleService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UnpackedArtifactCache.class);
+
+  private final File tmpDir;
+  private final long maxBytes;
+  // Checksums of the artifacts, keyed by location, size and modification time, to avoid reading them again
+  private final Cache<String, String> checksums;
+  // Guarded by this instance. Iterates from the least to the most recently used entry
+  private final LinkedHashMap<String, Entry> entries;
+  private long totalBytes;
+  private volatile File cacheDir;
+
+  @Inject
+  public UnpackedArtifactCache(CConfiguration cConf) {
+    this(new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR), cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile(),
+         cConf.getLong(Constants.AppFabric.ARTIFACT_CACHE_MAX_BYTES));
+  }
+
+  @VisibleForTesting
+  UnpackedArtifactCache(File tmpDir, long maxBytes) {
+    this.tmpDir = tmpDir;
+    this.maxBytes = maxBytes;
+    this.checksums = CacheBuilder.newBuilder().maximumSize(1000).build();
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    cacheDir = DirUtils.createTempDir(new File(tmpDir, "artifact-cache"));
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    synchronized (this) {
+      entries.clear();
+      totalBytes = 0;
+    }
+    checksums.invalidateAll();
+    try {
+      DirUtils.deleteDirectoryContents(cacheDir);
+    } catch (IOException e) {
+      // It's the cleanup step. Nothing much can be done if cleanup failed.
+      LOG.warn("Failed to delete directory {}", cacheDir, e);
+    }
+  }
+
+  /**
+   * Returns the unpacked directory of the given artifact, unpacking the artifact if it is not in the cache yet.
+   * This must be called as the user that reads the artifact, since the access of that user to the artifact is
+   * checked even if the artifact is in the cache already.
+   *
+   * @param artifactLocation the location of the artifact jar
+   * @return an {@link UnpackedArtifact}, which must be closed once the unpacked directory is no longer used
+   * @throws IOException if failed to read or unpack the artifact
+   */
+  public UnpackedArtifact unpack(Location artifactLocation) throws IOException {
+    if (state() == State.NEW) {
+      startAndWait();
+    }
+    Preconditions.checkState(isRunning(), "Unpacked artifact cache is not running");
+
+    String checksum = getChecksum(artifactLocation);
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(checksum);
+      if (entry == null) {
+        entry = new Entry(checksum);
+        entries.put(checksum, entry);
+      }
+      entry.references++;
+    }
+
+    boolean unpacked = false;
+    try {
+      entry.unpack(artifactLocation);
+      unpacked = true;
+    } finally {
+      if (!unpacked) {
+        release(entry);
+      }
+    }
+    return new UnpackedArtifact(entry);
+  }
+
+  /**
+   * Returns the total size in bytes of all the unpacked directories.
+   */
+  @VisibleForTesting
+  synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  private String getChecksum(Location artifactLocation) throws IOException {
+    String key = artifactLocation.toURI() + ":" + artifactLocation.length() + ":" + artifactLocation.lastModified();
+    String checksum = checksums.getIfPresent(key);
+    if (checksum != null) {
+      // The checksum may have been computed by a different user, hence make sure this one can read the artifact
+      Locations.newInputSupplier(artifactLocation).getInput().close();
+    } else {
+      checksum = ByteStreams.hash(Locations.newInputSupplier(artifactLocation), Hashing.sha256()).toString();
+      checksums.put(key, checksum);
+    }
+    return checksum;
+  }
+
+  private synchronized void unpacked(Entry entry, long size) {
+    entry.size = size;
+    totalBytes += size;
+  }
+
+  private void release(Entry entry) {
+    List<Entry> evicted = new ArrayList<>();
+    synchronized (this) {
+      entry.references--;
+      // Evict the least recently used entries that are not in use until the cache fits into the maximum size.
+      // Entries that failed to unpack are always removed.
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (iterator.hasNext()) {
+        Entry candidate = iterator.next();
+        if (candidate.references == 0 && (candidate.directory == null || totalBytes > maxBytes)) {
+          iterator.remove();
+          totalBytes -= candidate.size;
+          evicted.add(candidate);
+        }
+      }
+    }
+
+    // Delete outside of the lock, since deleting large directories takes a while
+    for (Entry candidate : evicted) {
+      if (candidate.directory == null) {
+        continue;
+      }
+      try {
+        DirUtils.deleteDirectoryContents(candidate.directory);
+      } catch (IOException e) {
+        LOG.warn("Failed to delete directory {}", candidate.directory, e);
+      }
+    }
+  }
+
+  private static long sizeOf(File file) {
+    if (!file.isDirectory()) {
+      return file.length();
+    }
+    long size = 0;
+    for (File child : DirUtils.listFiles(file)) {
+      size += sizeOf(child);
+    }
+    return size;
+  }
+
+  /**
+   * An artifact that is unpacked in the cache. The unpacked directory is not deleted until this is closed.
+   */
+  public final class UnpackedArtifact implements Closeable {
+
+    private final Entry entry;
+    private final AtomicBoolean closed;
+
+    private UnpackedArtifact(Entry entry) {
+      this.entry = entry;
+      this.closed = new AtomicBoolean();
+    }
+
+    /**
+     * Returns the directory that the artifact is unpacked in. It must not be modified.
+     */
+    public File getDirectory() {
+      return entry.directory;
+    }
+
+    /**
+     * Returns the checksum of the artifact content.
+     */
+    public String getChecksum() {
+      return entry.checksum;
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        release(entry);
+      }
+    }
+  }
+
+  /**
+   * An unpacked artifact and the number of users of its directory.
+   */
+  private final class Entry {
+    private final String checksum;
+    // Guarded by the cache
+    private int references;
+    private long size;
+    // Only set once, before any UnpackedArtifact of this entry is handed out
+    private volatile File directory;
+
+    private Entry(String checksum) {
+      this.checksum = checksum;
+    }
+
+    /**
+     * Unpacks the artifact if it is not unpacked yet. Concurrent callers wait for the first one to finish.
+     */
+    synchronized void unpack(Location artifactLocation) throws IOException {
+      if (directory != null) {
+        return;
+      }
+      File unpackDir = DirUtils.createTempDir(cacheDir);
+      try {
+        BundleJarUtil.unJar(artifactLocation, unpackDir);
+      } catch (IOException | RuntimeException e) {
+        try {
+          DirUtils.deleteDirectoryContents(unpackDir);
+        } catch (IOException ex) {
+          LOG.warn("Failed to delete directory {}", unpackDir, ex);
+        }
+        throw e;
+      }
+      unpacked(this, sizeOf(unpackDir));
+      directory = unpackDir;
+    }
+  }
+}
@@ -38,6 +38,7 @@ import co.cask.cdap.internal.app.program.ProgramTypeMetricTag;
 import co.cask.cdap.internal.app.queue.SimpleQueueSpecificationGenerator;
 import co.cask.cdap.internal.app.runtime.AbstractResourceReporter;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactRepository;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.internal.app.runtime.service.SimpleRuntimeInfo;
 import co.cask.cdap.internal.app.store.RunRecordMeta;
 import co.cask.cdap.proto.Containers;
@@ -111,8 +112,9 @@ public final class DistributedProgramRuntimeService extends AbstractProgramRunti
                                    MetricsCollectionService metricsCollectionService,
                                    Configuration hConf, CConfiguration cConf,
                                    TransactionExecutorFactory txExecutorFactory,
-                                   ArtifactRepository artifactRepository, Impersonator impersonator) {
-    super(cConf, programRunnerFactory, artifactRepository, impersonator);
+                                   ArtifactRepository artifactRepository, Impersonator impersonator,
+                                   UnpackedArtifactCache unpackedArtifactCache) {
+    super(cConf, programRunnerFactory, artifactRepository, impersonator, unpackedArtifactCache);
     this.twillRunner = twillRunner;
     this.store = store;
     this.queueAdmin = queueAdmin;
@@ -33,6 +33,7 @@ import co.cask.cdap.common.lang.InstantiatorFactory;
 import co.cask.cdap.common.lang.jar.BundleJarUtil;
 import co.cask.cdap.common.utils.DirUtils;
 import co.cask.cdap.internal.app.runtime.artifact.Artifacts;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.internal.lang.FieldVisitor;
 import co.cask.cdap.internal.lang.Fields;
 import co.cask.cdap.internal.lang.Reflections;
@@ -65,6 +66,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 
@@ -72,7 +75,8 @@ import javax.annotation.Nullable;
  * This class helps creating new instances of plugins. It also contains a ClassLoader cache to
  * save ClassLoader creation.
  *
- * This class implements {@link Closeable} as well for cleanup of temporary directories created for the ClassLoaders.
+ * This class implements {@link Closeable} as well for releasing the expanded artifacts used by the ClassLoaders, and
+ * for cleanup of temporary directories created for them.
  */
 public class PluginInstantiator implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(PluginInstantiator.class);
@@ -90,18 +94,36 @@ public class PluginInstantiator implements Closeable {
     .build();
 
   private final LoadingCache<ArtifactId, ClassLoader> classLoaders;
+  // Unpacked directories of the artifacts that the plugin ClassLoaders are created from
+  private final ConcurrentMap<ArtifactId, UnpackedArtifactCache.UnpackedArtifact> unpackedArtifacts;
+  // Null if the artifacts are unpacked into tmpDir instead
+  private final UnpackedArtifactCache unpackedArtifactCache;
   private final InstantiatorFactory instantiatorFactory;
   private final File tmpDir;
   private final File pluginDir;
   private final ClassLoader parentClassLoader;
 
   public PluginInstantiator(CConfiguration cConf, ClassLoader parentClassLoader, File pluginDir) {
-    this.instantiatorFactory = new InstantiatorFactory(false);
-    File tmpDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
-                           cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
+    this(cConf, parentClassLoader, pluginDir, null);
+  }
 
+  /**
+   * Creates an instance that shares the expanded plugin jars through the given {@link UnpackedArtifactCache}.
+   * Without a cache, the plugin jars are expanded into a temporary directory of this instance.
+   */
+  public PluginInstantiator(CConfiguration cConf, ClassLoader parentClassLoader, File pluginDir,
+                            @Nullable UnpackedArtifactCache unpackedArtifactCache) {
+    this.instantiatorFactory = new InstantiatorFactory(false);
     this.pluginDir = pluginDir;
-    this.tmpDir = DirUtils.createTempDir(tmpDir);
+    this.unpackedArtifacts = new ConcurrentHashMap<>();
+    this.unpackedArtifactCache = unpackedArtifactCache;
+    if (unpackedArtifactCache == null) {
+      File tmpDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
+                             cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
+      this.tmpDir = DirUtils.createTempDir(tmpDir);
+    } else {
+      this.tmpDir = null;
+    }
     this.classLoaders = CacheBuilder.newBuilder()
       .removalListener(new ClassLoaderRemovalListener())
       .build(new ClassLoaderCacheLoader());
@@ -327,11 +349,14 @@ public class PluginInstantiator implements Closeable {
 
   @Override
   public void close() throws IOException {
-    // Cleanup the ClassLoader cache and the temporary directory for the expanded plugin jar.
+    // Cleanup the ClassLoader cache, which releases the expanded plugin jars, and the temporary directory.
     classLoaders.invalidateAll();
     if (parentClassLoader instanceof Closeable) {
       Closeables.closeQuietly((Closeable) parentClassLoader);
     }
+    if (tmpDir == null) {
+      return;
+    }
     try {
       DirUtils.deleteDirectoryContents(tmpDir);
     } catch (IOException e) {
@@ -347,17 +372,24 @@ public class PluginInstantiator implements Closeable {
 
     @Override
     public ClassLoader load(ArtifactId artifactId) throws Exception {
-      File unpackedDir = DirUtils.createTempDir(tmpDir);
       File artifact = new File(pluginDir, Artifacts.getFileName(artifactId));
-      BundleJarUtil.unJar(Locations.toLocation(artifact), unpackedDir);
-      return new PluginClassLoader(unpackedDir, parentClassLoader);
+      if (unpackedArtifactCache == null) {
+        File unpackedDir = DirUtils.createTempDir(tmpDir);
+        BundleJarUtil.unJar(Locations.toLocation(artifact), unpackedDir);
+        return new PluginClassLoader(unpackedDir, parentClassLoader);
+      }
+      // The expanded jar is shared with all other users of the same artifact
+      UnpackedArtifactCache.UnpackedArtifact unpackedArtifact = unpackedArtifactCache.unpack(
+        Locations.toLocation(artifact));
+      unpackedArtifacts.put(artifactId, unpackedArtifact);
+      return new PluginClassLoader(unpackedArtifact.getDirectory(), parentClassLoader);
     }
   }
 
   /**
-   * A RemovalListener for closing plugin ClassLoader.
+   * A RemovalListener for closing plugin ClassLoader and releasing the expanded plugin jar.
    */
-  private static final class ClassLoaderRemovalListener implements RemovalListener<ArtifactId, ClassLoader> {
+  private final class ClassLoaderRemovalListener implements RemovalListener<ArtifactId, ClassLoader> {
 
     @Override
     public void onRemoval(RemovalNotification<ArtifactId, ClassLoader> notification) {
@@ -365,6 +397,10 @@ public class PluginInstantiator implements Closeable {
       if (cl instanceof Closeable) {
         Closeables.closeQuietly((Closeable) cl);
       }
+      UnpackedArtifactCache.UnpackedArtifact unpackedArtifact = unpackedArtifacts.remove(notification.getKey());
+      if (unpackedArtifact != null) {
+        unpackedArtifact.close();
+      }
     }
   }
 
@@ -31,6 +31,7 @@ import co.cask.cdap.internal.app.runtime.artifact.ArtifactDescriptor;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactDetail;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactRepository;
 import co.cask.cdap.internal.app.runtime.artifact.CloseableClassLoader;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.artifact.ArtifactRange;
 import co.cask.cdap.proto.id.NamespaceId;
@@ -72,11 +73,13 @@ public class PluginService extends AbstractIdleService {
   private final CConfiguration cConf;
   private final LoadingCache<ArtifactDescriptor, Instantiators> instantiators;
   private final Impersonator impersonator;
+  private final UnpackedArtifactCache unpackedArtifactCache;
 
   private File stageDir;
 
   @Inject
-  public PluginService(ArtifactRepository artifactRepository, CConfiguration cConf, Impersonator impersonator) {
+  public PluginService(ArtifactRepository artifactRepository, CConfiguration cConf, Impersonator impersonator,
+                       UnpackedArtifactCache unpackedArtifactCache) {
     this.artifactRepository = artifactRepository;
     this.tmpDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
                            cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
@@ -93,6 +96,7 @@ public class PluginService extends AbstractIdleService {
       .expireAfterAccess(1, TimeUnit.HOURS)
       .build(new InstantiatorsCacheLoader());
     this.impersonator = impersonator;
+    this.unpackedArtifactCache = unpackedArtifactCache;
   }
 
   /**
@@ -197,7 +201,8 @@ public class PluginService extends AbstractIdleService {
 
     private void addInstantiatorAndAddArtifact(ArtifactDetail artifactDetail,
                                                ArtifactId artifactId) throws IOException {
-      PluginInstantiator instantiator = new PluginInstantiator(cConf, parentClassLoader, pluginDir);
+      PluginInstantiator instantiator = new PluginInstantiator(cConf, parentClassLoader, pluginDir,
+                                                               unpackedArtifactCache);
       instantiatorInfoMap.put(artifactDetail.getDescriptor(),
                               new InstantiatorInfo(artifactDetail.getDescriptor().getLocation(), instantiator));
       instantiator.addArtifact(artifactDetail.getDescriptor().getLocation(), artifactId);
@@ -22,6 +22,8 @@ import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.api.metrics.MetricDataQuery;
 import co.cask.cdap.api.metrics.MetricStore;
 import co.cask.cdap.api.metrics.MetricTimeSeries;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.schedule.SchedulableProgramType;
 import co.cask.cdap.api.schedule.Schedule;
 import co.cask.cdap.api.schedule.ScheduleSpecification;
@@ -45,8 +47,9 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
@@ -80,7 +83,6 @@ import javax.annotation.Nullable;
 @Singleton
 public class StreamSizeScheduler implements Scheduler {
   private static final Logger LOG = LoggerFactory.getLogger(StreamSizeScheduler.class);
-  private static final int STREAM_POLLING_THREAD_POOL_SIZE = 10;
   private static final int POLLING_AFTER_NOTIFICATION_RETRY = 3;
 
   private final long pollingDelay;
@@ -95,6 +97,8 @@ public class StreamSizeScheduler implements Scheduler {
   // Key is scheduleId
   private final ConcurrentSkipListMap<String, StreamSubscriber> scheduleSubscribers;
 
+  private volatile MetricsContext metricsContext;
+
   private Store store;
 
   private Executor sendPollingInfoExecutor;
@@ -102,7 +106,7 @@ public class StreamSizeScheduler implements Scheduler {
   // Used to schedule polling of a stream only after a certain time - the time after which the metrics are updated
   private ScheduledExecutorService pollBookingExecutor;
 
-  // Scheduled executor used to poll stream at regular intervals, by querying the metric system
+  // Scheduled executor used to poll all streams at regular intervals, by querying the metric system
   private ScheduledExecutorService streamPollingExecutor;
 
   private ListeningExecutorService taskExecutorService;
@@ -128,8 +132,8 @@ public class StreamSizeScheduler implements Scheduler {
   public void init() throws SchedulerException {
     sendPollingInfoExecutor = Executors.newCachedThreadPool(
       Threads.createDaemonThreadFactory("stream-size-scheduler-%d"));
-    streamPollingExecutor = Executors.newScheduledThreadPool(STREAM_POLLING_THREAD_POOL_SIZE,
-                                                             Threads.createDaemonThreadFactory("stream-polling-%d"));
+    streamPollingExecutor = Executors.newSingleThreadScheduledExecutor(
+      Threads.createDaemonThreadFactory("stream-polling"));
     pollBookingExecutor = Executors.newSingleThreadScheduledExecutor(
       Threads.createDaemonThreadFactory("polling-booking-executor"));
     taskExecutorService = MoreExecutors.listeningDecorator(
@@ -138,6 +142,29 @@ public class StreamSizeScheduler implements Scheduler {
     store = storeProvider.get();
 
     initializeScheduleStore();
+
+    streamPollingExecutor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          pollActiveStreams();
+        } catch (IOException e) {
+          LOG.error("Could not poll streams", e);
+        } catch (Throwable t) {
+          LOG.error("Error in scheduled polling of streams", t);
+        }
+      }
+    }, pollingDelay, pollingDelay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sets the {@link MetricsCollectionService} for emitting stream polling metrics.
+   */
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsContext = metricsCollectionService.getContext(
+      ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, Id.Namespace.SYSTEM.getId(),
+                      Constants.Metrics.Tag.COMPONENT, Constants.Service.APP_FABRIC_HTTP));
   }
 
   void start() throws SchedulerException {
@@ -183,18 +210,93 @@ public class StreamSizeScheduler implements Scheduler {
     }
 
     // Poll all the Streams for active tasks
+    try {
+      pollActiveStreams();
+    } catch (IOException e) {
+      // Failing to poll should not make this init fail
+      LOG.warn("Could not poll size of streams", e);
+    }
+  }
+
+  /**
+   * Polls the sizes of all the streams that have active schedule tasks with a single metrics query, grouped by
+   * stream, and sends the sizes to the {@link StreamSubscriber}s of all these streams. Streams whose size did not
+   * change still get the result, so that their last polling time stays current.
+   */
+  private void pollActiveStreams() throws IOException {
+    List<StreamSubscriber> activeSubscribers = Lists.newArrayList();
     for (StreamSubscriber streamSubscriber : streamSubscribers.values()) {
-      if (streamSubscriber.getActiveTasksCount() <= 0) {
-        continue;
+      if (streamSubscriber.getActiveTasksCount() > 0) {
+        activeSubscribers.add(streamSubscriber);
       }
+    }
+    if (activeSubscribers.isEmpty()) {
+      return;
+    }
 
-      try {
-        StreamSize streamSize = streamSubscriber.pollOnce();
-        streamSubscriber.sendPollingInfoToActiveTasks(streamSize);
-      } catch (IOException e) {
-        // Failing to poll should not make this init fail
-        LOG.warn("Could not poll size for stream '{}'", streamSubscriber.getStreamId(), e);
+    long startTime = System.currentTimeMillis();
+    Map<Id.Stream, Long> sizes = queryAllStreamEventsSize();
+    long pollTime = System.currentTimeMillis();
+    emitMetric("stream.size.poll.queries", 1);
+    emitMetric("stream.size.poll.latency.ms", pollTime - startTime);
+
+    int unchanged = 0;
+    for (StreamSubscriber streamSubscriber : activeSubscribers) {
+      Long size = sizes.get(streamSubscriber.getStreamId());
+      // No metrics means no data has been ingested by the stream yet
+      StreamSize streamSize = new StreamSize(size == null ? 0L : size, pollTime);
+      if (!streamSubscriber.updatePollingInfo(streamSize)) {
+        unchanged++;
       }
+      streamSubscriber.sendPollingInfoToActiveTasks(streamSize);
+    }
+    emitMetric("stream.size.poll.unchanged", unchanged);
+  }
+
+  /**
+   * Query the metrics system to get the size of events ingested by all streams, in all namespaces.
+   *
+   * @return map from stream to the size of events ingested by the stream so far. Streams which did not ingest any
+   *         data are not present in the map.
+   */
+  private Map<Id.Stream, Long> queryAllStreamEventsSize() throws IOException {
+    MetricDataQuery metricDataQuery = new MetricDataQuery(
+      0L, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+      Integer.MAX_VALUE, "system.collect.bytes",
+      AggregationFunction.SUM,
+      ImmutableMap.<String, String>of(),
+      ImmutableList.of(Constants.Metrics.Tag.NAMESPACE, Constants.Metrics.Tag.STREAM)
+    );
+
+    try {
+      Map<Id.Stream, Long> sizes = Maps.newHashMap();
+      Collection<MetricTimeSeries> metrics = metricStore.query(metricDataQuery);
+      if (metrics == null) {
+        return sizes;
+      }
+      for (MetricTimeSeries metric : metrics) {
+        String namespace = metric.getTagValues().get(Constants.Metrics.Tag.NAMESPACE);
+        String stream = metric.getTagValues().get(Constants.Metrics.Tag.STREAM);
+        List<TimeValue> timeValues = metric.getTimeValues();
+        if (namespace == null || stream == null || timeValues == null || timeValues.isEmpty()) {
+          continue;
+        }
+        if (timeValues.size() != 1) {
+          throw new IOException("Should collect exactly one time value for stream " + stream);
+        }
+        sizes.put(Id.Stream.from(namespace, stream), timeValues.get(0).getValue());
+      }
+      return sizes;
+    } catch (Exception e) {
+      Throwables.propagateIfInstanceOf(e, IOException.class);
+      throw new IOException(e);
+    }
+  }
+
+  private void emitMetric(String metricName, long value) {
+    MetricsContext context = metricsContext;
+    if (context != null) {
+      context.increment(metricName, value);
     }
   }
 
@@ -454,11 +556,12 @@ public class StreamSizeScheduler implements Scheduler {
   /**
    * One instance of this class contains a list of {@link StreamSizeSchedule}s, which are all interested
    * in the same stream. This instance subscribes to the size notification of the stream, and polls the
-   * stream for its size whenever the schedules it references need the information.
+   * stream for its size whenever the schedules it references need the information. Periodic polling of
+   * all streams is done in batch by the {@link StreamSizeScheduler}.
    * The {@link StreamSizeScheduler} communicates with this class, which in turn communicates to the schedules
    * it contains to perform operations on the schedules - suspend, resume, etc.
    */
-  private final class StreamSubscriber extends AbstractScheduledService
+  private final class StreamSubscriber extends AbstractIdleService
     implements NotificationHandler<StreamSizeNotification> {
     // Key is the schedule ID
     private final ConcurrentMap<String, StreamSizeScheduleTask> scheduleTasks;
@@ -493,32 +596,6 @@ public class StreamSizeScheduler implements Scheduler {
       }
     }
 
-    @Override
-    protected void runOneIteration() throws Exception {
-      if (activeTasks.get() == 0) {
-        return;
-      }
-
-      try {
-        StreamSize streamSize = pollOnce();
-        sendPollingInfoToActiveTasks(streamSize);
-      } catch (IOException e) {
-        LOG.error("Could not poll stream {}", streamId.getId(), e);
-      } catch (Throwable t) {
-        LOG.error("Error in scheduled polling for stream {}", streamId.getId(), t);
-      }
-    }
-
-    @Override
-    protected Scheduler scheduler() {
-      return Scheduler.newFixedRateSchedule(pollingDelay, pollingDelay, TimeUnit.MILLISECONDS);
-    }
-
-    @Override
-    protected ScheduledExecutorService executor() {
-      return streamPollingExecutor;
-    }
-
     @Override
     public Type getNotificationType() {
       return StreamSizeNotification.class;
@@ -811,14 +888,25 @@ public class StreamSizeScheduler implements Scheduler {
      */
     private synchronized StreamSize pollOnce() throws IOException {
       StreamSize streamSize = queryStreamEventsSize();
+      updatePollingInfo(streamSize);
+      return streamSize;
+    }
+
+    /**
+     * Update the last known size of the stream with the result of a poll.
+     *
+     * @return {@code true} if the stream size changed since the previous poll, {@code false} otherwise
+     */
+    private synchronized boolean updatePollingInfo(StreamSize streamSize) {
       if (lastPollingInfo != null && streamSize.getSize() < lastPollingInfo.getSize()) {
         delta = null;
         for (StreamSizeScheduleTask streamSizeScheduleTask : scheduleTasks.values()) {
           streamSizeScheduleTask.reset(streamSize.getTimestamp());
         }
       }
+      boolean changed = lastPollingInfo == null || streamSize.getSize() != lastPollingInfo.getSize();
       lastPollingInfo = streamSize;
-      return streamSize;
+      return changed;
     }
 
     /**
@@ -25,6 +25,7 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.security.Impersonator;
 import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactRepository;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.InMemoryProgramLiveInfo;
 import co.cask.cdap.proto.NotRunningProgramLiveInfo;
@@ -60,8 +61,8 @@ public final class InMemoryProgramRuntimeService extends AbstractProgramRuntimeS
   public InMemoryProgramRuntimeService(ProgramRunnerFactory programRunnerFactory, CConfiguration cConf,
                                        ArtifactRepository artifactRepository,
                                        @Named(Constants.AppFabric.SERVER_ADDRESS) InetAddress hostname,
-                                       Impersonator impersonator) {
-    super(cConf, programRunnerFactory, artifactRepository, impersonator);
+                                       Impersonator impersonator, UnpackedArtifactCache unpackedArtifactCache) {
+    super(cConf, programRunnerFactory, artifactRepository, impersonator, unpackedArtifactCache);
     this.hostname = hostname.getCanonicalHostName();
   }
 
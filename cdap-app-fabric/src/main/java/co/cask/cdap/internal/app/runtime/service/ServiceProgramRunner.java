@@ -26,6 +26,7 @@ import co.cask.cdap.app.runtime.ProgramController;
 import co.cask.cdap.app.runtime.ProgramOptions;
 import co.cask.cdap.app.runtime.ProgramRunner;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.data2.metadata.writer.ProgramContextAware;
 import co.cask.cdap.internal.app.runtime.AbstractProgramRunnerWithPlugin;
@@ -48,6 +49,8 @@ import org.apache.twill.common.Threads;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.apache.twill.internal.ServiceListenerAdapter;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * A {@link ProgramRunner} that runs a component inside a Service (either a HTTP Server or a Worker).
  */
@@ -61,6 +64,11 @@ public class ServiceProgramRunner extends AbstractProgramRunnerWithPlugin {
   private final DataFabricFacadeFactory dataFabricFacadeFactory;
   private final SecureStore secureStore;
   private final SecureStoreManager secureStoreManager;
+  private final long readOnlyTxMaxStalenessMillis;
+  private final int handlerPoolMinSize;
+  private final int handlerPoolMaxSize;
+  private final long handlerIdleTimeoutMillis;
+  private final long handlerCheckoutTimeoutMillis;
 
   @Inject
   public ServiceProgramRunner(CConfiguration cConf, MetricsCollectionService metricsCollectionService,
@@ -77,6 +85,14 @@ public class ServiceProgramRunner extends AbstractProgramRunnerWithPlugin {
     this.dataFabricFacadeFactory = dataFabricFacadeFactory;
     this.secureStore = secureStore;
     this.secureStoreManager = secureStoreManager;
+    this.readOnlyTxMaxStalenessMillis = cConf.getLong(Constants.AppFabric.SERVICE_READ_ONLY_TX_MAX_STALENESS_MS,
+                                                    Constants.AppFabric.DEFAULT_SERVICE_READ_ONLY_TX_MAX_STALENESS_MS);
+    this.handlerPoolMinSize = cConf.getInt(Constants.AppFabric.SERVICE_HANDLER_POOL_MIN_SIZE, 0);
+    this.handlerPoolMaxSize = cConf.getInt(Constants.AppFabric.SERVICE_HANDLER_POOL_MAX_SIZE, 0);
+    this.handlerIdleTimeoutMillis = TimeUnit.SECONDS.toMillis(
+      cConf.getLong(Constants.AppFabric.SERVICE_HANDLER_POOL_IDLE_TIMEOUT_SECONDS, 60L));
+    this.handlerCheckoutTimeoutMillis = TimeUnit.SECONDS.toMillis(
+      cConf.getLong(Constants.AppFabric.SERVICE_HANDLER_POOL_CHECKOUT_TIMEOUT_SECONDS, 30L));
   }
 
   @Override
@@ -113,7 +129,10 @@ public class ServiceProgramRunner extends AbstractProgramRunnerWithPlugin {
                                                           instanceId, instanceCount, serviceAnnouncer,
                                                           metricsCollectionService, datasetFramework,
                                                           dataFabricFacadeFactory, txClient, discoveryServiceClient,
-                                                          pluginInstantiator, secureStore, secureStoreManager);
+                                                          pluginInstantiator, secureStore, secureStoreManager,
+                                                          readOnlyTxMaxStalenessMillis, handlerPoolMinSize,
+                                                          handlerPoolMaxSize, handlerIdleTimeoutMillis,
+                                                          handlerCheckoutTimeoutMillis);
 
       // Add a service listener to make sure the plugin instantiator is closed when the worker driver finished.
       component.addListener(new ServiceListenerAdapter() {
@@ -73,6 +73,15 @@ public abstract class AbstractHttpHandlerDelegator<T extends HttpServiceHandler>
     return context.getHandler();
   }
 
+  /**
+   * Releases the {@link HttpServiceHandler} and context associated with the current thread after a request is handled.
+   * This method is called from handler class generated by {@link HttpHandlerGenerator}.
+   */
+  @SuppressWarnings("unused")
+  protected final void releaseContext() {
+    context.release();
+  }
+
   /**
    * Returns a {@link TransactionContext} instance to be used for creating transaction.
    * This method is called from handler class generated by {@link HttpHandlerGenerator}.
@@ -85,6 +94,18 @@ public abstract class AbstractHttpHandlerDelegator<T extends HttpServiceHandler>
     return ((TransactionalHttpServiceContext) serviceContext).newTransactionContext();
   }
 
+  /**
+   * Returns a {@link TransactionContext} instance to be used for creating transaction for a read-only handler method.
+   * This method is called from handler class generated by {@link HttpHandlerGenerator}.
+   */
+  @SuppressWarnings("unused")
+  protected final TransactionContext getReadOnlyTransactionContext() {
+    HttpServiceContext serviceContext = context.getServiceContext();
+    Preconditions.checkState(serviceContext instanceof TransactionalHttpServiceContext,
+                             "This instance of HttpServiceContext does not support transactions.");
+    return ((TransactionalHttpServiceContext) serviceContext).newReadOnlyTransactionContext();
+  }
+
   /**
    * Returns a combined class loader of user program class loader and system class loader
    */
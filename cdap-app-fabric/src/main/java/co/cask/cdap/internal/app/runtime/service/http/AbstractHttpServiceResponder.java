@@ -17,6 +17,7 @@
 package co.cask.cdap.internal.app.runtime.service.http;
 
 import co.cask.cdap.api.service.http.HttpContentProducer;
+import co.cask.cdap.api.service.http.HttpContentWriter;
 import co.cask.cdap.api.service.http.HttpServiceResponder;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
@@ -132,6 +133,22 @@ public abstract class AbstractHttpServiceResponder implements HttpServiceRespond
     doSend(status, contentType, null, producer, createMultimap(headers));
   }
 
+  @Override
+  public final HttpContentWriter sendChunkStart(int status, String contentType) {
+    return sendChunkStart(status, contentType, ImmutableMap.<String, String>of());
+  }
+
+  @Override
+  public final HttpContentWriter sendChunkStart(int status, String contentType, Map<String, String> headers) {
+    return sendChunkStart(status, contentType, headers.entrySet());
+  }
+
+  @Override
+  public final HttpContentWriter sendChunkStart(int status, String contentType,
+                                                Iterable<? extends Map.Entry<String, String>> headers) {
+    return doSendChunkStart(status, contentType, createMultimap(headers));
+  }
+
   /**
    * Sub-class to implement on how to send a response.
    *
@@ -147,6 +164,17 @@ public abstract class AbstractHttpServiceResponder implements HttpServiceRespond
                                  @Nullable HttpContentProducer contentProducer,
                                  @Nullable Multimap<String, String> headers);
 
+  /**
+   * Sub-class to implement on how to start sending a response with the body written in chunks.
+   *
+   * @param status response status code
+   * @param contentType response content type
+   * @param headers response headers
+   * @return a {@link HttpContentWriter} for writing the response body
+   */
+  protected abstract HttpContentWriter doSendChunkStart(int status, String contentType,
+                                                        @Nullable Multimap<String, String> headers);
+
   /**
    * Creates a {@link Multimap} from an {@link Iterable} of {@link Map.Entry}.
    */
@@ -45,6 +45,7 @@ public class BasicHttpServiceContext extends AbstractContext implements Transact
   private final HttpServiceHandlerSpecification spec;
   private final int instanceId;
   private final AtomicInteger instanceCount;
+  private final TransactionSystemClient readOnlyTxClient;
 
   /**
    * Creates a BasicHttpServiceContext for the given HttpServiceHandlerSpecification.
@@ -58,6 +59,8 @@ public class BasicHttpServiceContext extends AbstractContext implements Transact
    * @param dsFramework dsFramework to use for getting datasets.
    * @param discoveryServiceClient discoveryServiceClient used to do service discovery.
    * @param txClient txClient to do transaction operations.
+   * @param readOnlyTxClient txClient for the transactions of read-only handler methods. If {@code null} is provided,
+   *                         read-only handler methods use the regular txClient.
    * @param pluginInstantiator {@link PluginInstantiator}
    * @param secureStore
    */
@@ -66,7 +69,8 @@ public class BasicHttpServiceContext extends AbstractContext implements Transact
                                  int instanceId, AtomicInteger instanceCount,
                                  MetricsCollectionService metricsCollectionService,
                                  DatasetFramework dsFramework, DiscoveryServiceClient discoveryServiceClient,
-                                 TransactionSystemClient txClient, @Nullable PluginInstantiator pluginInstantiator,
+                                 TransactionSystemClient txClient, @Nullable TransactionSystemClient readOnlyTxClient,
+                                 @Nullable PluginInstantiator pluginInstantiator,
                                  SecureStore secureStore, SecureStoreManager secureStoreManager) {
     super(program, programOptions, spec == null ? Collections.<String>emptySet() : spec.getDatasets(),
           dsFramework, txClient, discoveryServiceClient, false,
@@ -75,6 +79,7 @@ public class BasicHttpServiceContext extends AbstractContext implements Transact
     this.spec = spec;
     this.instanceId = instanceId;
     this.instanceCount = instanceCount;
+    this.readOnlyTxClient = readOnlyTxClient;
   }
 
   private static Map<String, String> createMetricsTags(@Nullable HttpServiceHandlerSpecification spec,
@@ -112,6 +117,14 @@ public class BasicHttpServiceContext extends AbstractContext implements Transact
     return getDatasetCache().newTransactionContext();
   }
 
+  @Override
+  public TransactionContext newReadOnlyTransactionContext() {
+    if (readOnlyTxClient == null) {
+      return newTransactionContext();
+    }
+    return getDatasetCache().newTransactionContext(readOnlyTxClient);
+  }
+
   @Override
   public void dismissTransactionContext() {
     getDatasetCache().dismissTransactionContext();
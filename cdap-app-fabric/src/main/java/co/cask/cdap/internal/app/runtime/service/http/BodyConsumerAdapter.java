@@ -21,6 +21,7 @@ import co.cask.cdap.api.TxRunnable;
 import co.cask.cdap.api.data.DatasetContext;
 import co.cask.cdap.api.service.http.HttpContentConsumer;
 import co.cask.cdap.api.service.http.HttpContentProducer;
+import co.cask.cdap.api.service.http.HttpContentWriter;
 import co.cask.cdap.api.service.http.HttpServiceResponder;
 import co.cask.cdap.common.lang.ClassLoaders;
 import co.cask.http.BodyConsumer;
@@ -31,6 +32,7 @@ import org.apache.twill.common.Cancellable;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 
+import java.nio.ByteBuffer;
 import javax.annotation.Nullable;
 
 /**
@@ -121,6 +123,18 @@ final class BodyConsumerAdapter extends BodyConsumer {
         // no-op
       }
 
+      @Override
+      protected HttpContentWriter doSendChunkStart(int status, String contentType,
+                                                   @Nullable Multimap<String, String> headers) {
+        // no-op
+        return new HttpContentWriter() {
+          @Override
+          public void write(ByteBuffer chunk) {
+            // no-op
+          }
+        };
+      }
+
       @Override
       public void setTransactionFailureResponse(Throwable t) {
         // no-op
@@ -149,6 +163,10 @@ final class BodyConsumerAdapter extends BodyConsumer {
 
     // To the HttpContentConsumer, once onError is called, no other methods will be triggered
     completed = true;
+    if (responder.isStreaming()) {
+      // The response started in onFinish() cannot be completed anymore
+      responder.setTransactionFailureResponse(cause);
+    }
     try {
       transactional.execute(new TxRunnable() {
         @Override
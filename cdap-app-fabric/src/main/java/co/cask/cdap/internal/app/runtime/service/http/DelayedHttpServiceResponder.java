@@ -18,7 +18,9 @@ package co.cask.cdap.internal.app.runtime.service.http;
 
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.service.http.HttpContentProducer;
+import co.cask.cdap.api.service.http.HttpContentWriter;
 import co.cask.cdap.api.service.http.HttpServiceResponder;
+import co.cask.http.ChunkResponder;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
@@ -28,12 +30,20 @@ import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunkTrailer;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import javax.annotation.Nullable;
 
 /**
@@ -41,6 +51,8 @@ import javax.annotation.Nullable;
  * the HttpServiceResponder's methods to the matching methods for a {@link HttpResponder}.
  * A response is buffered until execute() is called. This allows you to send the correct response upon
  * a transaction failure, and to not always delegating to the user response.
+ * A response started with one of the {@code sendChunkStart} methods is not buffered. Instead, it is only completed
+ * when execute() is called, and aborted if there was a transaction failure.
  */
 public class DelayedHttpServiceResponder extends AbstractHttpServiceResponder implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(DelayedHttpServiceResponder.class);
@@ -50,6 +62,7 @@ public class DelayedHttpServiceResponder extends AbstractHttpServiceResponder im
   private final TransactionalHttpServiceContext serviceContext;
   private final MetricsContext metricsContext;
   private BufferedResponse bufferedResponse;
+  private StreamingResponse streamingResponse;
   private boolean closed;
 
   /**
@@ -75,6 +88,7 @@ public class DelayedHttpServiceResponder extends AbstractHttpServiceResponder im
     this.serviceContext = other.serviceContext;
     this.metricsContext = other.metricsContext;
     this.bufferedResponse = other.bufferedResponse;
+    this.streamingResponse = other.streamingResponse;
   }
 
   @Override
@@ -82,10 +96,9 @@ public class DelayedHttpServiceResponder extends AbstractHttpServiceResponder im
                         @Nullable ChannelBuffer content,
                         @Nullable HttpContentProducer contentProducer,
                         @Nullable Multimap<String, String> headers) {
-    Preconditions.checkState(!closed,
-     "Responder is already closed. " +
-       "This may due to either using a HttpServiceResponder inside HttpContentProducer or " +
-       "not using HttpServiceResponder provided to the HttpContentConsumer onFinish/onError method.");
+    checkNotClosed();
+    Preconditions.checkState(streamingResponse == null,
+                             "Response is already being sent with a HttpContentWriter.");
 
     if (bufferedResponse != null) {
       LOG.warn("Multiple calls to one of the 'send*' methods has been made. Only the last response will be sent.");
@@ -93,11 +106,44 @@ public class DelayedHttpServiceResponder extends AbstractHttpServiceResponder im
     bufferedResponse = new BufferedResponse(status, contentType, content, contentProducer, headers);
   }
 
+  @Override
+  protected HttpContentWriter doSendChunkStart(int status, String contentType,
+                                               @Nullable Multimap<String, String> headers) {
+    checkNotClosed();
+    Preconditions.checkState(streamingResponse == null,
+                             "Response is already being sent with a HttpContentWriter.");
+
+    if (bufferedResponse != null) {
+      LOG.warn("Multiple calls to one of the 'send*' methods has been made. Only the last response will be sent.");
+      bufferedResponse = null;
+    }
+
+    Multimap<String, String> responseHeaders = LinkedListMultimap.create();
+    if (headers != null) {
+      responseHeaders.putAll(headers);
+    }
+    // The Connection header is left to the HttpResponder, which keeps the connection alive only if the request
+    // asked for it and the headers don't close it
+    if (!responseHeaders.containsKey(HttpHeaders.Names.CONTENT_TYPE)) {
+      responseHeaders.put(HttpHeaders.Names.CONTENT_TYPE, contentType);
+    }
+    ChunkResponder chunkResponder = responder.sendChunkStart(HttpResponseStatus.valueOf(status), responseHeaders);
+    streamingResponse = new StreamingResponse(status, chunkResponder, RequestChannelHandler.getChannel());
+    return streamingResponse;
+  }
+
   /**
    * Returns {@code true} if there is a buffered response. This means any of the send methods was called.
    */
   public boolean hasBufferedResponse() {
-    return bufferedResponse != null;
+    return bufferedResponse != null || streamingResponse != null;
+  }
+
+  /**
+   * Returns {@code true} if the response is being sent through a {@link HttpContentWriter}.
+   */
+  public boolean isStreaming() {
+    return streamingResponse != null;
   }
 
   /**
@@ -112,6 +158,13 @@ public class DelayedHttpServiceResponder extends AbstractHttpServiceResponder im
    * method is called to allow setting the failure response without an additional warning.
    */
   public void setTransactionFailureResponse(Throwable t) {
+    if (streamingResponse != null) {
+      // The status is already sent, hence the response can only be aborted
+      LOG.error("Exception occurred while handling request. The response being sent will be aborted:", t);
+      streamingResponse.failed = true;
+      return;
+    }
+
     LOG.error("Exception occurred while handling request:", t);
     @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
     ChannelBuffer content = ChannelBuffers.copiedBuffer("Exception occurred while handling request: "
@@ -136,10 +189,19 @@ public class DelayedHttpServiceResponder extends AbstractHttpServiceResponder im
    * @param keepAlive {@code true} to keep the connection open; {@code false} otherwise
    */
   public void execute(boolean keepAlive) {
-    Preconditions.checkState(bufferedResponse != null,
+    Preconditions.checkState(bufferedResponse != null || streamingResponse != null,
                              "Can not call execute before one of the other responder methods are called.");
 
     try {
+      if (streamingResponse != null) {
+        // All chunks are written, hence the transaction context can be dismissed
+        serviceContext.dismissTransactionContext();
+        streamingResponse.finish(keepAlive);
+        emitMetrics(streamingResponse.failed ? HttpResponseStatus.INTERNAL_SERVER_ERROR.getCode()
+                                             : streamingResponse.status);
+        return;
+      }
+
       HttpContentProducer contentProducer = bufferedResponse.getContentProducer();
 
       if (contentProducer == null) {
@@ -201,6 +263,104 @@ public class DelayedHttpServiceResponder extends AbstractHttpServiceResponder im
     closed = true;
   }
 
+  private void checkNotClosed() {
+    Preconditions.checkState(!closed,
+     "Responder is already closed. " +
+       "This may due to either using a HttpServiceResponder inside HttpContentProducer or " +
+       "not using HttpServiceResponder provided to the HttpContentConsumer onFinish/onError method.");
+  }
+
+  /**
+   * A {@link HttpContentWriter} that writes chunks to the client as they are written. If the {@link Channel} of the
+   * request is known, writing blocks once the channel is no longer writable until all pending writes are done, so
+   * that at most the channel's high water mark worth of chunks is kept in memory.
+   */
+  private static final class StreamingResponse implements HttpContentWriter {
+
+    private final int status;
+    private final ChunkResponder chunkResponder;
+    private final Channel channel;
+    private ChannelFuture lastWrite;
+    private boolean failed;
+    private boolean finished;
+
+    private StreamingResponse(int status, ChunkResponder chunkResponder, @Nullable Channel channel) {
+      this.status = status;
+      this.chunkResponder = chunkResponder;
+      this.channel = channel;
+    }
+
+    @Override
+    public void write(ByteBuffer chunk) throws IOException {
+      Preconditions.checkState(!finished, "Response is already completed.");
+      if (!chunk.hasRemaining()) {
+        // An empty chunk would mark the end of the response
+        return;
+      }
+      // Copy, since the write happens asynchronously and the caller may reuse the buffer
+      ChannelBuffer buffer = ChannelBuffers.copiedBuffer(chunk);
+      if (channel == null) {
+        chunkResponder.sendChunk(buffer);
+        return;
+      }
+
+      awaitWritable();
+      if (!channel.isConnected()) {
+        throw new IOException("Connection closed while sending response.");
+      }
+      lastWrite = channel.write(new DefaultHttpChunk(buffer));
+    }
+
+    private void awaitWritable() throws IOException {
+      if (channel.isWritable() || lastWrite == null) {
+        return;
+      }
+      try {
+        lastWrite.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for response to be sent.");
+      }
+      if (!lastWrite.isSuccess()) {
+        throw new IOException("Failed to send response.", lastWrite.getCause());
+      }
+    }
+
+    /**
+     * Completes the response, or aborts it by closing the connection if there was a failure.
+     */
+    private void finish(boolean keepAlive) {
+      if (finished) {
+        return;
+      }
+      finished = true;
+
+      if (channel != null) {
+        if (failed) {
+          channel.close();
+        } else if (!keepAlive) {
+          channel.write(new DefaultHttpChunkTrailer()).addListener(ChannelFutureListener.CLOSE);
+        } else {
+          closeChunkResponder();
+        }
+        return;
+      }
+
+      if (failed) {
+        LOG.warn("Cannot abort the response being sent. The client may receive an incomplete response.");
+      }
+      closeChunkResponder();
+    }
+
+    private void closeChunkResponder() {
+      try {
+        chunkResponder.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to complete response.", e);
+      }
+    }
+  }
+
   private static final class BufferedResponse {
 
     private final int status;
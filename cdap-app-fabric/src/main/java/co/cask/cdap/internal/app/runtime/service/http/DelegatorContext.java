@@ -51,4 +51,11 @@ public interface DelegatorContext<T extends HttpServiceHandler> {
    *         to be reused.
    */
   Cancellable capture();
+
+  /**
+   * Releases the current context once the caller thread is done with handling a request. After this method is
+   * called, the {@link #getHandler()} and {@link #getServiceContext()} methods may return different instances
+   * to the caller thread. This method has no effect if the current context was captured.
+   */
+  void release();
 }
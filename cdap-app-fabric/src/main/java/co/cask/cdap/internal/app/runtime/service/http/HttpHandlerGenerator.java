@@ -16,6 +16,7 @@
 
 package co.cask.cdap.internal.app.runtime.service.http;
 
+import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.service.http.HttpContentConsumer;
 import co.cask.cdap.api.service.http.HttpServiceHandler;
@@ -77,6 +78,8 @@ import javax.ws.rs.Path;
  * {@link co.cask.http.HttpHandler} for the netty http service to inspect.
  *
  * Also, the generated class can impose transaction boundary for calls to those {@link Path @Path} methods.
+ * Methods annotated with {@link ReadOnly @ReadOnly}, or all methods if the handler class is annotated with it,
+ * use a read-only transaction context, which may share a snapshot transaction with other read-only calls.
  *
  * The generated class has a skeleton looks like this:
  *
@@ -440,11 +443,26 @@ final class HttpHandlerGenerator {
       }
 
       // Each request method is wrapped by a transaction lifecycle.
-      generateTransactionalDelegateBody(mg, new Method(name, desc));
+      generateTransactionalDelegateBody(mg, new Method(name, desc), isReadOnly());
 
       super.visitEnd();
     }
 
+    /**
+     * Returns {@code true} if either the method or the user handler class is annotated with {@link ReadOnly}.
+     */
+    private boolean isReadOnly() {
+      if (delegateType.getRawType().isAnnotationPresent(ReadOnly.class)) {
+        return true;
+      }
+      for (AnnotationNode annotation : annotations) {
+        if (Type.getType(ReadOnly.class).equals(Type.getType(annotation.desc))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     /**
      * Preserves method parameter classes for class loading. The first two parameters are always
      * {@link HttpServiceRequest} and {@link HttpServiceResponder}, which don't need to be preserved since
@@ -515,42 +533,48 @@ final class HttpHandlerGenerator {
      * <pre>{@code
      *   public void|BodyConsumer handle(HttpRequest request, HttpResponder responder, ...) {
      *     T handler = getHandler();
-     *     TransactionContext txContext = getTransactionContext();
-     *     DelayedHttpServiceResponder wrappedResponder = wrapResponder(responder, txContext);
-     *     HttpContentConsumer contentConsumer = null;
      *     try {
-     *       txContext.start();
+     *       // getReadOnlyTransactionContext() if the method is read-only
+     *       TransactionContext txContext = getTransactionContext();
+     *       DelayedHttpServiceResponder wrappedResponder = wrapResponder(responder, txContext);
+     *       HttpContentConsumer contentConsumer = null;
      *       try {
-     *         ClassLoader classLoader = ClassLoaders.setContextClassLoader(createHandlerContextClassLoader());
+     *         txContext.start();
      *         try {
-     *           // Only do assignment if handler method returns HttpContentConsumer
-     *           [contentConsumer = ]handler.handle(wrapRequest(request), wrappedResponder, ...);
-     *         } finally {
-     *           ClassLoaders.setContextClassLoader(classLoader);
+     *           ClassLoader classLoader = ClassLoaders.setContextClassLoader(createHandlerContextClassLoader());
+     *           try {
+     *             // Only do assignment if handler method returns HttpContentConsumer
+     *             [contentConsumer = ]handler.handle(wrapRequest(request), wrappedResponder, ...);
+     *           } finally {
+     *             ClassLoaders.setContextClassLoader(classLoader);
+     *           }
+     *         } catch (Throwable t) {
+     *           LOG.error("User handler exception", t);
+     *           txContext.abort(new TransactionFailureException("User handler exception", t));
      *         }
-     *       } catch (Throwable t) {
-     *         LOG.error("User handler exception", t);
-     *         txContext.abort(new TransactionFailureException("User handler exception", t));
+     *         txContext.finish();
+     *       } catch (TransactionFailureException e) {
+     *          LOG.error("Transaction failure: ", e);
+     *          wrappedResponder.setTransactionFailureResponse(e);
+     *          contentConsumer = null;
+     *       }
+     *       if (contentConsumer == null) {
+     *         wrappedResponder.execute();
+     *         // Only return null if handler method returns HttpContentConsumer
+     *         [return null;]
      *       }
-     *       txContext.finish();
-     *     } catch (TransactionFailureException e) {
-     *        LOG.error("Transaction failure: ", e);
-     *        wrappedResponder.setTransactionFailureResponse(e);
-     *        contentConsumer = null;
-     *     }
-     *     if (contentConsumer == null) {
-     *       wrappedResponder.execute();
-     *       // Only return null if handler method returns HttpContentConsumer
-     *       [return null;]
-     *     }
      *
-     *     // Only generated if handler method returns HttpContentConsumer
-     *     [return wrapContentConsumer(httpContentConsumer, wrappedResponder, txContext);]
+     *       // Only generated if handler method returns HttpContentConsumer
+     *       // The context is captured by the content consumer, hence releaseContext() does nothing afterwards
+     *       [return wrapContentConsumer(httpContentConsumer, wrappedResponder, txContext);]
+     *     } finally {
+     *       releaseContext();
+     *     }
      *   }
      * }
      * </pre>
      */
-    private void generateTransactionalDelegateBody(GeneratorAdapter mg, Method method) {
+    private void generateTransactionalDelegateBody(GeneratorAdapter mg, Method method, boolean readOnly) {
       Type handlerType = Type.getType(delegateType.getRawType());
       Type txContextType = Type.getType(TransactionContext.class);
       Type txFailureExceptionType = Type.getType(TransactionFailureException.class);
@@ -580,11 +604,18 @@ final class HttpHandlerGenerator {
       mg.checkCast(handlerType);
       mg.storeLocal(handler, handlerType);
 
-      // TransactionContext txContext = getTransactionContext();
+      // try { // Try for releasing the handler context, which is registered after all the inner try blocks
+      Label releaseTryBegin = mg.newLabel();
+      Label releaseTryEnd = mg.newLabel();
+      Label releaseCatch = mg.newLabel();
+      mg.mark(releaseTryBegin);
+
+      // TransactionContext txContext = getTransactionContext(); or getReadOnlyTransactionContext();
       int txContext = mg.newLocal(txContextType);
       mg.loadThis();
       mg.invokeVirtual(classType,
-                       Methods.getMethod(TransactionContext.class, "getTransactionContext"));
+                       Methods.getMethod(TransactionContext.class,
+                                         readOnly ? "getReadOnlyTransactionContext" : "getTransactionContext"));
       mg.storeLocal(txContext, txContextType);
 
       // DelayedHttpServiceResponder wrappedResponder = wrapResponder(responder, txContext);
@@ -602,6 +633,11 @@ final class HttpHandlerGenerator {
       mg.visitInsn(Opcodes.ACONST_NULL);
       mg.storeLocal(contentConsumer, httpContentConsumerType);
 
+      // BodyConsumer bodyConsumer = null;  // The value to return if handler method returns HttpContentConsumer
+      int bodyConsumer = mg.newLocal(Type.getType(BodyConsumer.class));
+      mg.visitInsn(Opcodes.ACONST_NULL);
+      mg.storeLocal(bodyConsumer);
+
       // try {  // Outer try for transaction failure
       mg.mark(txTryBegin);
 
@@ -695,6 +731,9 @@ final class HttpHandlerGenerator {
       //
       // Otherwise, generates
       // wrappedResponder.execute();
+      //
+      // with releaseContext() called before returning, like in finally {}
+      Label releaseAndReturn = mg.newLabel();
       if (method.getReturnType().getSort() == Type.OBJECT) {
         Label hasContentConsumer = mg.newLabel();
         mg.loadLocal(contentConsumer);
@@ -706,14 +745,13 @@ final class HttpHandlerGenerator {
         //   return null;
         mg.loadLocal(wrappedResponder);
         mg.invokeVirtual(delayedHttpServiceResponderType, Methods.getMethod(void.class, "execute"));
-        mg.visitInsn(Opcodes.ACONST_NULL);
-        mg.returnValue();
+        mg.goTo(releaseAndReturn);
 
         mg.mark(hasContentConsumer);
 
         // IMPORTANT: If body consumer is used, calling wrapContentConsumer must be
         // the last thing to do in this generated method since the current context will be captured
-        // return wrapContentConsumer(httpContentConsumer, wrappedResponder, txContext);
+        // contentConsumer = wrapContentConsumer(httpContentConsumer, wrappedResponder, txContext);
         mg.loadThis();
         mg.loadLocal(contentConsumer);
         mg.loadLocal(wrappedResponder);
@@ -722,14 +760,39 @@ final class HttpHandlerGenerator {
                                                       HttpContentConsumer.class,
                                                       DelayedHttpServiceResponder.class,
                                                       TransactionContext.class));
-        mg.returnValue();
+        mg.storeLocal(bodyConsumer);
+        mg.goTo(releaseAndReturn);
       } else {
         // wrappedResponder.execute()
         mg.loadLocal(wrappedResponder);
         mg.invokeVirtual(delayedHttpServiceResponderType, Methods.getMethod(void.class, "execute"));
+        mg.goTo(releaseAndReturn);
+      }
+
+      // } // end of release try
+      mg.mark(releaseTryEnd);
 
-        mg.returnValue();
+      // } catch and rethrow, like in finally {}
+      mg.mark(releaseCatch);
+      int releaseThrowable = mg.newLocal(throwableType);
+      mg.storeLocal(releaseThrowable);
+      mg.loadThis();
+      mg.invokeVirtual(classType, Methods.getMethod(void.class, "releaseContext"));
+      mg.loadLocal(releaseThrowable);
+      mg.throwException();
+
+      // releaseContext();
+      // [return bodyConsumer;]
+      mg.mark(releaseAndReturn);
+      mg.loadThis();
+      mg.invokeVirtual(classType, Methods.getMethod(void.class, "releaseContext"));
+      if (method.getReturnType().getSort() == Type.OBJECT) {
+        mg.loadLocal(bodyConsumer);
       }
+      mg.returnValue();
+
+      // Registered last so that the inner try-catch blocks take precedence in the exception table
+      mg.visitTryCatchBlock(releaseTryBegin, releaseTryEnd, releaseCatch, null);
 
       mg.endMethod();
     }
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.service.http;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+
+import javax.annotation.Nullable;
+
+/**
+ * A Netty upstream handler that makes the {@link Channel} of a request available to the handler method that handles
+ * the request, which allows {@link DelayedHttpServiceResponder} to apply flow control when streaming a response.
+ * It must be added to the pipeline right before the {@code "dispatcher"} handler.
+ */
+@ChannelHandler.Sharable
+public final class RequestChannelHandler extends SimpleChannelUpstreamHandler {
+
+  public static final String NAME = "request-channel";
+
+  private static final ThreadLocal<Channel> CHANNEL = new ThreadLocal<>();
+
+  /**
+   * Returns the {@link Channel} of the request being handled by the current thread, or {@code null} if there is no
+   * such request or if the current thread is a Netty I/O thread, which must never wait for the channel.
+   */
+  @Nullable
+  static Channel getChannel() {
+    return CHANNEL.get();
+  }
+
+  @Override
+  public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+    // Without an executor in the pipeline, the request is handled by the I/O thread
+    if (ctx.getPipeline().get(ExecutionHandler.class) == null) {
+      super.messageReceived(ctx, e);
+      return;
+    }
+
+    CHANNEL.set(ctx.getChannel());
+    try {
+      super.messageReceived(ctx, e);
+    } finally {
+      CHANNEL.remove();
+    }
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.service.http;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.tephra.InvalidTruncateTimeException;
+import co.cask.tephra.Transaction;
+import co.cask.tephra.TransactionCouldNotTakeSnapshotException;
+import co.cask.tephra.TransactionNotInProgressException;
+import co.cask.tephra.TransactionSystemClient;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TransactionSystemClient} for read-only service handler methods. Instead of starting and committing a
+ * transaction for every call, all callers share one snapshot transaction, which is replaced by a new one once it
+ * is older than the configured staleness. Hence a read-only handler may not see writes committed less than the
+ * staleness ago.
+ * <p>
+ * A snapshot is aborted once it has been replaced and is no longer used by any caller. Since it never has any
+ * changes, aborting leaves no trace in the transaction manager. Idle snapshots are retired by a background thread,
+ * so that no transaction is held open longer than necessary. Attempting to commit changes through this client fails.
+ * </p>
+ */
+public final class SharedSnapshotTransactionClient implements TransactionSystemClient, Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SharedSnapshotTransactionClient.class);
+
+  public static final String METRIC_SNAPSHOTS = "tx.readonly.snapshots";
+  public static final String METRIC_RPC_SAVED = "tx.readonly.rpc.saved";
+
+  private final TransactionSystemClient delegate;
+  private final long maxStalenessMillis;
+  private final Map<Long, Snapshot> snapshots;
+  private final ScheduledExecutorService retireExecutor;
+  private volatile MetricsContext metricsContext;
+  private Snapshot current;
+  private boolean closed;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param delegate the {@link TransactionSystemClient} to start and abort the shared snapshots with
+   * @param maxStalenessMillis maximum age of a snapshot before it is replaced; it should be well below the
+   *                           transaction timeout
+   */
+  public SharedSnapshotTransactionClient(TransactionSystemClient delegate, long maxStalenessMillis) {
+    this.delegate = delegate;
+    this.maxStalenessMillis = maxStalenessMillis;
+    this.snapshots = new HashMap<>();
+    this.retireExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("readonly-tx-retire").build());
+    this.retireExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        retireStaleSnapshot();
+      }
+    }, maxStalenessMillis, maxStalenessMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sets the {@link MetricsContext} for emitting metrics about the shared snapshots.
+   */
+  public void setMetricsContext(@Nullable MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
+  }
+
+  @Override
+  public Transaction startShort() {
+    Snapshot snapshot = acquireCurrent();
+    if (snapshot != null) {
+      emit(METRIC_RPC_SAVED, 1);
+      return copyOf(snapshot.tx);
+    }
+
+    // Start the new snapshot without holding the lock, so that a slow transaction server does not block the
+    // callers that can use the current snapshot
+    Snapshot started = new Snapshot(delegate.startShort(), System.currentTimeMillis());
+    Snapshot toAbort;
+    synchronized (this) {
+      if (closed) {
+        toAbort = started;
+        snapshot = null;
+      } else if (current != null && !isStale(current)) {
+        // Another caller published a fresh snapshot meanwhile; use it and drop the one just started
+        toAbort = started;
+        snapshot = current;
+        snapshot.references++;
+      } else {
+        toAbort = replaceCurrent(started);
+        snapshot = started;
+        snapshot.references++;
+      }
+    }
+    abortSnapshot(toAbort);
+    if (snapshot == null) {
+      throw new IllegalStateException("Shared snapshot transaction client is closed");
+    }
+    emit(snapshot == started ? METRIC_SNAPSHOTS : METRIC_RPC_SAVED, 1);
+    return copyOf(snapshot.tx);
+  }
+
+  @Override
+  public Transaction startShort(int timeout) {
+    return startShort();
+  }
+
+  @Override
+  public Transaction startLong() {
+    throw new UnsupportedOperationException("Long transactions are not supported for read-only operations");
+  }
+
+  @Override
+  public boolean canCommit(Transaction tx, Collection<byte[]> changeIds) throws TransactionNotInProgressException {
+    if (!changeIds.isEmpty()) {
+      throw new IllegalStateException("Attempt to write " + changeIds.size() + " change(s) in a read-only transaction");
+    }
+    emit(METRIC_RPC_SAVED, 1);
+    return true;
+  }
+
+  @Override
+  public boolean commit(Transaction tx) throws TransactionNotInProgressException {
+    release(tx);
+    emit(METRIC_RPC_SAVED, 1);
+    return true;
+  }
+
+  @Override
+  public void abort(Transaction tx) {
+    release(tx);
+  }
+
+  @Override
+  public boolean invalidate(long tx) {
+    // A read-only snapshot has no changes to roll back, hence it never needs to be invalidated
+    release(tx);
+    return true;
+  }
+
+  @Override
+  public Transaction checkpoint(Transaction tx) throws TransactionNotInProgressException {
+    throw new UnsupportedOperationException("Checkpoints are not supported for read-only operations");
+  }
+
+  @Override
+  public InputStream getSnapshotInputStream() throws TransactionCouldNotTakeSnapshotException {
+    return delegate.getSnapshotInputStream();
+  }
+
+  @Override
+  public String status() {
+    return delegate.status();
+  }
+
+  @Override
+  public void resetState() {
+    delegate.resetState();
+  }
+
+  @Override
+  public boolean truncateInvalidTx(Set<Long> invalidTxIds) {
+    return delegate.truncateInvalidTx(invalidTxIds);
+  }
+
+  @Override
+  public boolean truncateInvalidTxBefore(long time) throws InvalidTruncateTimeException {
+    return delegate.truncateInvalidTxBefore(time);
+  }
+
+  @Override
+  public int getInvalidSize() {
+    return delegate.getInvalidSize();
+  }
+
+  /**
+   * Stops retiring snapshots and aborts the current snapshot, if it is not in use.
+   */
+  @Override
+  public void close() {
+    retireExecutor.shutdownNow();
+    Snapshot toAbort;
+    synchronized (this) {
+      closed = true;
+      toAbort = replaceCurrent(null);
+    }
+    abortSnapshot(toAbort);
+  }
+
+  /**
+   * Returns the number of snapshot transactions that have been started but not yet aborted.
+   */
+  @VisibleForTesting
+  synchronized int getOpenSnapshots() {
+    return snapshots.size();
+  }
+
+  /**
+   * Returns the current snapshot with one more reference, or {@code null} if there is none or it is stale.
+   */
+  @Nullable
+  private synchronized Snapshot acquireCurrent() {
+    if (closed) {
+      throw new IllegalStateException("Shared snapshot transaction client is closed");
+    }
+    if (current == null || isStale(current)) {
+      return null;
+    }
+    current.references++;
+    return current;
+  }
+
+  /**
+   * Returns a copy of the given transaction, since the visibility level of a {@link Transaction} is mutable.
+   */
+  private Transaction copyOf(Transaction tx) {
+    return new Transaction(tx.getReadPointer(), tx.getTransactionId(), tx.getWritePointer(), tx.getInvalids(),
+                           tx.getInProgress(), tx.getFirstShortInProgress(), tx.getType(),
+                           tx.getCheckpointWritePointers(), Transaction.VisibilityLevel.SNAPSHOT);
+  }
+
+  private void retireStaleSnapshot() {
+    Snapshot toAbort = null;
+    synchronized (this) {
+      if (current != null && isStale(current)) {
+        toAbort = replaceCurrent(null);
+      }
+    }
+    abortSnapshot(toAbort);
+  }
+
+  /**
+   * Replaces the current snapshot with the given one. Must be called while holding the lock of this instance.
+   *
+   * @return the replaced snapshot if it is not in use and must be aborted, otherwise {@code null}
+   */
+  @Nullable
+  private Snapshot replaceCurrent(@Nullable Snapshot snapshot) {
+    Snapshot replaced = current;
+    current = snapshot;
+    if (snapshot != null) {
+      snapshots.put(snapshot.tx.getTransactionId(), snapshot);
+    }
+    if (replaced != null && replaced.references == 0) {
+      snapshots.remove(replaced.tx.getTransactionId());
+      return replaced;
+    }
+    return null;
+  }
+
+  private void release(Transaction tx) {
+    release(tx.getTransactionId());
+  }
+
+  private void release(long txId) {
+    Snapshot toAbort = null;
+    synchronized (this) {
+      Snapshot snapshot = snapshots.get(txId);
+      if (snapshot == null) {
+        LOG.warn("Ignoring release of unknown read-only transaction {}", txId);
+        return;
+      }
+      snapshot.references--;
+      if (snapshot.references == 0 && snapshot != current) {
+        snapshots.remove(txId);
+        toAbort = snapshot;
+      }
+    }
+    abortSnapshot(toAbort);
+  }
+
+  private void abortSnapshot(@Nullable Snapshot snapshot) {
+    if (snapshot == null) {
+      return;
+    }
+    try {
+      delegate.abort(snapshot.tx);
+    } catch (Throwable t) {
+      LOG.warn("Failed to abort read-only transaction {}", snapshot.tx.getTransactionId(), t);
+    }
+  }
+
+  private boolean isStale(Snapshot snapshot) {
+    return System.currentTimeMillis() - snapshot.startTime >= maxStalenessMillis;
+  }
+
+  private void emit(String metricName, long value) {
+    MetricsContext context = metricsContext;
+    if (context != null) {
+      context.increment(metricName, value);
+    }
+  }
+
+  /**
+   * A shared snapshot transaction and the number of callers currently using it.
+   */
+  private static final class Snapshot {
+    private final Transaction tx;
+    private final long startTime;
+    private int references;
+
+    Snapshot(Transaction tx, long startTime) {
+      this.tx = tx;
+      this.startTime = startTime;
+    }
+  }
+}
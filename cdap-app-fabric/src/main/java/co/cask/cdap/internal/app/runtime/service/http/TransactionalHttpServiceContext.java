@@ -30,6 +30,13 @@ public interface TransactionalHttpServiceContext extends HttpServiceContext {
    */
   TransactionContext newTransactionContext();
 
+  /**
+   * Get a {@link TransactionContext} for a read-only method of a HttpServiceHandler. Transactions of the returned
+   * context may share a snapshot with other read-only calls, and must not write.
+   * @return a new transaction context
+   */
+  TransactionContext newReadOnlyTransactionContext();
+
   /**
    * Dismiss the {@link TransactionContext} for the HttpServiceHandler.
    */
@@ -75,7 +75,6 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,6 +82,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -90,15 +90,10 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -133,6 +128,7 @@ final class WorkflowDriver extends AbstractExecutionThreadService {
   private final PluginInstantiator pluginInstantiator;
   private final SecureStore secureStore;
   private final SecureStoreManager secureStoreManager;
+  private final WorkflowNodeScheduler nodeScheduler;
 
   private NettyHttpService httpService;
   private volatile Thread runningThread;
@@ -175,6 +171,9 @@ final class WorkflowDriver extends AbstractExecutionThreadService {
     this.pluginInstantiator = pluginInstantiator;
     this.secureStore = secureStore;
     this.secureStoreManager = secureStoreManager;
+    this.nodeScheduler = new WorkflowNodeScheduler(workflowSpec.getNodes(),
+                                                   cConf.getInt(Constants.AppFabric.WORKFLOW_MAX_PARALLEL_ACTIONS, 0),
+                                                   basicWorkflowContext.getProgramMetrics());
   }
 
   @Override
@@ -272,6 +271,7 @@ final class WorkflowDriver extends AbstractExecutionThreadService {
 
   @Override
   protected void shutDown() throws Exception {
+    nodeScheduler.shutdownNow();
     httpService.stopAndWait();
     deleteLocalDatasets();
     destroyWorkflow();
@@ -315,25 +315,25 @@ final class WorkflowDriver extends AbstractExecutionThreadService {
                                                             node.getProgram().getProgramType());
     action.initialize(workflowContext);
 
-    CountDownLatch executorTerminateLatch = new CountDownLatch(1);
-    ExecutorService executorService = createExecutor(1, executorTerminateLatch, "action-" + node.getNodeId() + "-%d");
+    WorkflowNodeScheduler.TaskGroup taskGroup = nodeScheduler.newTaskGroup("action-" + node.getNodeId());
+    FutureTask<Void> future = new FutureTask<>(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        action.run();
+        return null;
+      }
+    });
 
     try {
       // Run the action in new thread
-      Future<?> future = executorService.submit(new Callable<Void>() {
-        @Override
-        public Void call() throws Exception {
-          action.run();
-          return null;
-        }
-      });
+      taskGroup.execute(future);
       future.get();
     } catch (Throwable t) {
       Throwables.propagateIfPossible(t, Exception.class);
       throw Throwables.propagate(t);
     } finally {
-      executorService.shutdownNow();
-      executorTerminateLatch.await();
+      future.cancel(true);
+      taskGroup.awaitCompletion();
       status.remove(node.getNodeId());
     }
     runtimeStore.updateWorkflowToken(workflowRunId, token);
@@ -363,22 +363,21 @@ final class WorkflowDriver extends AbstractExecutionThreadService {
                            final InstantiatorFactory instantiator, final ClassLoader classLoader,
                            final WorkflowToken token) throws Exception {
 
-    CountDownLatch executorTerminateLatch = new CountDownLatch(1);
-    ExecutorService executorService = createExecutor(fork.getBranches().size(), executorTerminateLatch,
-                                                     "fork-" + fork.getNodeId() + "-%d");
+    WorkflowNodeScheduler.TaskGroup taskGroup = nodeScheduler.newTaskGroup("fork-" + fork.getNodeId());
     CompletionService<Map.Entry<String, WorkflowToken>> completionService =
-      new ExecutorCompletionService<>(executorService);
+      new ExecutorCompletionService<>(taskGroup);
+    List<Future<Map.Entry<String, WorkflowToken>>> branchFutures = new ArrayList<>();
 
     try {
       for (final List<WorkflowNode> branch : fork.getBranches()) {
-        completionService.submit(new Callable<Map.Entry<String, WorkflowToken>>() {
+        branchFutures.add(completionService.submit(new Callable<Map.Entry<String, WorkflowToken>>() {
           @Override
           public Map.Entry<String, WorkflowToken> call() throws Exception {
             WorkflowToken copiedToken = ((BasicWorkflowToken) token).deepCopy();
             executeAll(branch.iterator(), appSpec, instantiator, classLoader, copiedToken);
             return Maps.immutableEntry(branch.toString(), copiedToken);
           }
-        });
+        }));
       }
 
       for (int i = 0; i < fork.getBranches().size(); i++) {
@@ -406,9 +405,11 @@ final class WorkflowDriver extends AbstractExecutionThreadService {
     } finally {
       // Update the WorkflowToken after the execution of the FORK node completes.
       runtimeStore.updateWorkflowToken(workflowRunId, token);
-      executorService.shutdownNow();
-      // Wait for the executor termination
-      executorTerminateLatch.await();
+      for (Future<?> branchFuture : branchFutures) {
+        branchFuture.cancel(true);
+      }
+      // Wait for all branches to terminate
+      taskGroup.awaitCompletion();
     }
   }
 
@@ -462,12 +463,7 @@ final class WorkflowDriver extends AbstractExecutionThreadService {
     ((BasicWorkflowToken) token).setCurrentNode(node.getNodeId());
     switch (nodeType) {
       case ACTION:
-        WorkflowActionNode actionNode = (WorkflowActionNode) node;
-        if (SchedulableProgramType.CUSTOM_ACTION == actionNode.getProgram().getProgramType()) {
-          executeCustomAction(actionNode, instantiator, classLoader, token);
-        } else {
-          executeAction(actionNode, token);
-        }
+        executeActionNode((WorkflowActionNode) node, instantiator, classLoader, token);
         break;
       case FORK:
         executeFork(appSpec, (WorkflowForkNode) node, instantiator, classLoader, token);
@@ -480,6 +476,21 @@ final class WorkflowDriver extends AbstractExecutionThreadService {
     }
   }
 
+  private void executeActionNode(final WorkflowActionNode node, final InstantiatorFactory instantiator,
+                                 final ClassLoader classLoader, final WorkflowToken token) throws Exception {
+    nodeScheduler.runAction(node.getNodeId(), new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        if (SchedulableProgramType.CUSTOM_ACTION == node.getProgram().getProgramType()) {
+          executeCustomAction(node, instantiator, classLoader, token);
+        } else {
+          executeAction(node, token);
+        }
+        return null;
+      }
+    });
+  }
+
   @SuppressWarnings("unchecked")
   private void executeCondition(ApplicationSpecification appSpec, WorkflowConditionNode node,
                                 InstantiatorFactory instantiator, ClassLoader classLoader,
@@ -614,25 +625,6 @@ final class WorkflowDriver extends AbstractExecutionThreadService {
     };
   }
 
-  /**
-   * Creates an {@link ExecutorService} that has the given number of threads.
-   *
-   * @param threads number of core threads in the executor
-   * @param terminationLatch a {@link CountDownLatch} that will be counted down when the executor terminated
-   * @param threadNameFormat name format for the {@link ThreadFactory} provided to the executor
-   * @return a new {@link ExecutorService}.
-   */
-  private ExecutorService createExecutor(int threads, final CountDownLatch terminationLatch, String threadNameFormat) {
-    return new ThreadPoolExecutor(
-      threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
-      new ThreadFactoryBuilder().setNameFormat(threadNameFormat).build()) {
-      @Override
-      protected void terminated() {
-        terminationLatch.countDown();
-      }
-    };
-  }
-
   private ClassLoader setContextCombinedClassLoader(Workflow workflow) {
     return ClassLoaders.setContextClassLoader(
       new CombineClassLoader(null, Arrays.asList(workflow.getClass().getClassLoader(), getClass().getClassLoader())));
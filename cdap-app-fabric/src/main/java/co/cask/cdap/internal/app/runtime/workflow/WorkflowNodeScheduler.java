@@ -0,0 +1,306 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.workflow;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.workflow.WorkflowConditionNode;
+import co.cask.cdap.api.workflow.WorkflowForkNode;
+import co.cask.cdap.api.workflow.WorkflowNode;
+import co.cask.cdap.common.conf.Constants;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules the execution of the nodes of a single Workflow run.
+ * <p>
+ * All fork branches and program actions of the run are executed on one shared thread pool. The number of action
+ * nodes running at the same time is bounded by {@link Constants.AppFabric#WORKFLOW_MAX_PARALLEL_ACTIONS}. Action
+ * nodes waiting for a slot are started in order of the length of the longest path from them to the end of the
+ * Workflow, so that the nodes on the critical path are not held up by short side branches. Fork branches themselves
+ * are not bounded, since a branch that waits for a nested fork must not occupy a slot needed by its own children.
+ * </p>
+ */
+final class WorkflowNodeScheduler {
+
+  static final String METRIC_QUEUE_MILLIS = "workflow.node.queue.ms";
+  static final String METRIC_RUN_MILLIS = "workflow.node.run.ms";
+
+  private final int maxParallelActions;
+  private final Map<String, Integer> priorities;
+  private final MetricsContext metricsContext;
+  private final ExecutorService executor;
+  private final Lock lock;
+  private final Condition slotAvailable;
+  private final PriorityQueue<Waiter> waiters;
+  private int runningActions;
+  private long waiterSequence;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param nodes the top level nodes of the Workflow
+   * @param maxParallelActions maximum number of action nodes to run in parallel; no limit if not positive
+   * @param metricsContext the {@link MetricsContext} of the Workflow run, used for emitting per node metrics
+   */
+  WorkflowNodeScheduler(List<WorkflowNode> nodes, int maxParallelActions, MetricsContext metricsContext) {
+    this.maxParallelActions = maxParallelActions;
+    this.priorities = computePriorities(nodes);
+    this.metricsContext = metricsContext;
+    this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("workflow-node-%d").build());
+    this.lock = new ReentrantLock();
+    this.slotAvailable = lock.newCondition();
+    this.waiters = new PriorityQueue<>();
+  }
+
+  /**
+   * Runs the given action node in the current thread, after waiting for an execution slot to become available.
+   *
+   * @param nodeId id of the action node
+   * @param action the action to run
+   * @return the result of the action
+   * @throws InterruptedException if interrupted while waiting for an execution slot
+   * @throws Exception if the action failed
+   */
+  <V> V runAction(String nodeId, Callable<V> action) throws Exception {
+    long queueStartTime = System.nanoTime();
+    acquireSlot(getPriority(nodeId));
+    long runStartTime = System.nanoTime();
+    try {
+      return action.call();
+    } finally {
+      releaseSlot();
+      long runEndTime = System.nanoTime();
+      MetricsContext nodeMetrics = metricsContext.childContext(Constants.Metrics.Tag.NODE, nodeId);
+      nodeMetrics.gauge(METRIC_QUEUE_MILLIS, TimeUnit.NANOSECONDS.toMillis(runStartTime - queueStartTime));
+      nodeMetrics.gauge(METRIC_RUN_MILLIS, TimeUnit.NANOSECONDS.toMillis(runEndTime - runStartTime));
+    }
+  }
+
+  /**
+   * Creates a new {@link TaskGroup} that executes tasks on the shared thread pool.
+   *
+   * @param threadName name given to the threads while they execute tasks of the group
+   */
+  TaskGroup newTaskGroup(String threadName) {
+    return new TaskGroup(threadName);
+  }
+
+  /**
+   * Interrupts all running tasks and stops the shared thread pool.
+   */
+  void shutdownNow() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Returns the scheduling priority of the given node, which is the number of action nodes on the longest path from
+   * the node to the end of the Workflow, including the node itself.
+   */
+  @VisibleForTesting
+  int getPriority(String nodeId) {
+    Integer priority = priorities.get(nodeId);
+    return priority == null ? 0 : priority;
+  }
+
+  /**
+   * Returns the number of action nodes waiting for an execution slot.
+   */
+  @VisibleForTesting
+  int getWaitingActions() {
+    lock.lock();
+    try {
+      return waiters.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void acquireSlot(int priority) throws InterruptedException {
+    if (maxParallelActions <= 0) {
+      return;
+    }
+    lock.lock();
+    try {
+      Waiter waiter = new Waiter(priority, waiterSequence++);
+      waiters.add(waiter);
+      try {
+        while (runningActions >= maxParallelActions || waiters.peek() != waiter) {
+          slotAvailable.await();
+        }
+      } catch (InterruptedException e) {
+        waiters.remove(waiter);
+        slotAvailable.signalAll();
+        throw e;
+      }
+      waiters.poll();
+      runningActions++;
+      // Let the next waiter re-check, in case there is more than one free slot
+      slotAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void releaseSlot() {
+    if (maxParallelActions <= 0) {
+      return;
+    }
+    lock.lock();
+    try {
+      runningActions--;
+      slotAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Computes the critical path priority of every action node, by walking each list of nodes backwards while
+   * tracking the length of the longest path that follows it.
+   */
+  private static Map<String, Integer> computePriorities(List<WorkflowNode> nodes) {
+    Map<String, Integer> priorities = new HashMap<>();
+    assignPriorities(nodes, 0, priorities);
+    return ImmutableMap.copyOf(priorities);
+  }
+
+  /**
+   * Assigns priorities to the nodes in the given list.
+   *
+   * @param nodes list of nodes executed in sequence
+   * @param tailLength length of the longest path executed after the last node of the list
+   * @param priorities map to add the priorities to
+   * @return length of the longest path from the first node of the list to the end of the Workflow
+   */
+  private static int assignPriorities(List<WorkflowNode> nodes, int tailLength, Map<String, Integer> priorities) {
+    int length = tailLength;
+    for (int i = nodes.size() - 1; i >= 0; i--) {
+      WorkflowNode node = nodes.get(i);
+      switch (node.getType()) {
+        case ACTION:
+          length++;
+          priorities.put(node.getNodeId(), length);
+          break;
+        case FORK:
+          int forkLength = length;
+          for (List<WorkflowNode> branch : ((WorkflowForkNode) node).getBranches()) {
+            forkLength = Math.max(forkLength, assignPriorities(branch, length, priorities));
+          }
+          length = forkLength;
+          break;
+        case CONDITION:
+          WorkflowConditionNode condition = (WorkflowConditionNode) node;
+          length = Math.max(assignPriorities(condition.getIfBranch(), length, priorities),
+                            assignPriorities(condition.getElseBranch(), length, priorities));
+          break;
+        default:
+          break;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * A group of tasks executed on the shared thread pool, which can be waited on for completion.
+   */
+  final class TaskGroup implements Executor {
+
+    private final String threadName;
+    private int pendingTasks;
+
+    private TaskGroup(String threadName) {
+      this.threadName = threadName;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+      synchronized (this) {
+        pendingTasks++;
+      }
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            Thread currentThread = Thread.currentThread();
+            String oldName = currentThread.getName();
+            currentThread.setName(threadName);
+            try {
+              command.run();
+            } finally {
+              currentThread.setName(oldName);
+              taskCompleted();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        taskCompleted();
+        throw e;
+      }
+    }
+
+    /**
+     * Blocks until all tasks submitted to this group have completed.
+     */
+    synchronized void awaitCompletion() throws InterruptedException {
+      while (pendingTasks > 0) {
+        wait();
+      }
+    }
+
+    private synchronized void taskCompleted() {
+      pendingTasks--;
+      notifyAll();
+    }
+  }
+
+  /**
+   * An action node waiting for an execution slot. Waiters with a higher priority come first, and waiters with the
+   * same priority are served in arrival order.
+   */
+  private static final class Waiter implements Comparable<Waiter> {
+    private final int priority;
+    private final long sequence;
+
+    Waiter(int priority, long sequence) {
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Waiter other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return Long.compare(sequence, other.sequence);
+    }
+  }
+}
@@ -28,6 +28,7 @@ import co.cask.cdap.common.metrics.MetricsReporterHook;
 import co.cask.cdap.data.stream.StreamCoordinatorClient;
 import co.cask.cdap.internal.app.namespace.DefaultNamespaceEnsurer;
 import co.cask.cdap.internal.app.runtime.artifact.SystemArtifactLoader;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.internal.app.runtime.plugin.PluginService;
 import co.cask.cdap.internal.app.runtime.schedule.SchedulerService;
 import co.cask.cdap.notifications.service.NotificationService;
@@ -75,6 +76,7 @@ public class AppFabricServer extends AbstractIdleService {
   private final DefaultNamespaceEnsurer defaultNamespaceEnsurer;
   private final SystemArtifactLoader systemArtifactLoader;
   private final PluginService pluginService;
+  private final UnpackedArtifactCache unpackedArtifactCache;
 
   private NettyHttpService httpService;
   private Set<HttpHandler> handlers;
@@ -98,7 +100,8 @@ public class AppFabricServer extends AbstractIdleService {
                          @Named("appfabric.handler.hooks") Set<String> handlerHookNames,
                          DefaultNamespaceEnsurer defaultNamespaceEnsurer,
                          SystemArtifactLoader systemArtifactLoader,
-                         PluginService pluginService) {
+                         PluginService pluginService,
+                         UnpackedArtifactCache unpackedArtifactCache) {
     this.hostname = hostname;
     this.discoveryService = discoveryService;
     this.schedulerService = schedulerService;
@@ -115,6 +118,7 @@ public class AppFabricServer extends AbstractIdleService {
     this.defaultNamespaceEnsurer = defaultNamespaceEnsurer;
     this.systemArtifactLoader = systemArtifactLoader;
     this.pluginService = pluginService;
+    this.unpackedArtifactCache = unpackedArtifactCache;
   }
 
   /**
@@ -127,6 +131,7 @@ public class AppFabricServer extends AbstractIdleService {
                                                                        Constants.Service.APP_FABRIC_HTTP));
     Futures.allAsList(
       ImmutableList.of(
+        unpackedArtifactCache.start(),
         notificationService.start(),
         schedulerService.start(),
         applicationLifecycleService.start(),
@@ -223,5 +228,6 @@ public class AppFabricServer extends AbstractIdleService {
     notificationService.stopAndWait();
     programLifecycleService.stopAndWait();
     pluginService.stopAndWait();
+    unpackedArtifactCache.stopAndWait();
   }
 }
@@ -190,5 +190,10 @@ public class DefaultServiceConfigurer extends DefaultPluginConfigurer implements
         }
       };
     }
+
+    @Override
+    public void release() {
+      // no-op
+    }
   }
 }
@@ -26,6 +26,8 @@ import co.cask.cdap.api.service.http.HttpServiceHandler;
 import co.cask.cdap.api.service.http.HttpServiceHandlerSpecification;
 import co.cask.cdap.app.program.Program;
 import co.cask.cdap.app.runtime.ProgramOptions;
+import co.cask.cdap.common.HttpExceptionHandler;
+import co.cask.cdap.common.ServiceUnavailableException;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.lang.ClassLoaders;
 import co.cask.cdap.common.lang.CombineClassLoader;
@@ -42,6 +44,8 @@ import co.cask.cdap.internal.app.runtime.plugin.PluginInstantiator;
 import co.cask.cdap.internal.app.runtime.service.http.BasicHttpServiceContext;
 import co.cask.cdap.internal.app.runtime.service.http.DelegatorContext;
 import co.cask.cdap.internal.app.runtime.service.http.HttpHandlerFactory;
+import co.cask.cdap.internal.app.runtime.service.http.RequestChannelHandler;
+import co.cask.cdap.internal.app.runtime.service.http.SharedSnapshotTransactionClient;
 import co.cask.cdap.internal.lang.Reflections;
 import co.cask.cdap.logging.context.UserServiceLoggingContext;
 import co.cask.cdap.proto.id.ProgramId;
@@ -50,6 +54,8 @@ import co.cask.http.NettyHttpService;
 import co.cask.tephra.TransactionExecutor;
 import co.cask.tephra.TransactionSystemClient;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -63,18 +69,20 @@ import com.google.common.util.concurrent.AbstractIdleService;
 import org.apache.twill.api.ServiceAnnouncer;
 import org.apache.twill.common.Cancellable;
 import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.jboss.netty.channel.ChannelPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -85,16 +93,25 @@ import javax.annotation.Nullable;
  */
 public class ServiceHttpServer extends AbstractIdleService {
 
-  // The following three are system property keys for unit-test to alter behavior of the server to have faster test
+  // The following are system property keys for unit-test to alter behavior of the server to have faster test
   @VisibleForTesting
   public static final String THREAD_POOL_SIZE = "cdap.service.http.thread.pool.size";
   @VisibleForTesting
   public static final String THREAD_KEEP_ALIVE_SECONDS = "cdap.service.http.thread.keepalive.seconds";
   @VisibleForTesting
   public static final String HANDLER_CLEANUP_PERIOD_MILLIS = "cdap.service.http.handler.cleanup.millis";
+  @VisibleForTesting
+  public static final String HANDLER_IDLE_TIMEOUT_MILLIS = "cdap.service.http.handler.idle.timeout.millis";
+  @VisibleForTesting
+  public static final String HANDLER_POOL_MIN_SIZE = "cdap.service.http.handler.pool.min.size";
+  @VisibleForTesting
+  public static final String HANDLER_POOL_MAX_SIZE = "cdap.service.http.handler.pool.max.size";
+  @VisibleForTesting
+  public static final String HANDLER_CHECKOUT_TIMEOUT_MILLIS = "cdap.service.http.handler.checkout.timeout.millis";
 
   private static final Logger LOG = LoggerFactory.getLogger(ServiceHttpServer.class);
   private static final long DEFAULT_HANDLER_CLEANUP_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(60);
+  private static final long CHECKOUT_POLL_MILLIS = 100;
 
   private final Program program;
   private final BasicHttpServiceContext context;
@@ -103,6 +120,11 @@ public class ServiceHttpServer extends AbstractIdleService {
   private final DataFabricFacadeFactory dataFabricFacadeFactory;
   private final List<HandlerDelegatorContext> handlerContexts;
   private final NettyHttpService service;
+  private final SharedSnapshotTransactionClient readOnlyTxClient;
+  private final int handlerPoolMinSize;
+  private final int handlerPoolMaxSize;
+  private final long handlerIdleTimeoutMillis;
+  private final long handlerCheckoutTimeoutMillis;
 
   private Cancellable cancelDiscovery;
   private Timer timer;
@@ -113,22 +135,45 @@ public class ServiceHttpServer extends AbstractIdleService {
                            DataFabricFacadeFactory dataFabricFacadeFactory, TransactionSystemClient txClient,
                            DiscoveryServiceClient discoveryServiceClient,
                            @Nullable PluginInstantiator pluginInstantiator,
-                           SecureStore secureStore, SecureStoreManager secureStoreManager) {
+                           SecureStore secureStore, SecureStoreManager secureStoreManager,
+                           long readOnlyTxMaxStalenessMillis, int handlerPoolMinSize, int handlerPoolMaxSize,
+                           long handlerIdleTimeoutMillis, long handlerCheckoutTimeoutMillis) {
+    // These properties are for unit-test only, to override the configuration of the pool
+    handlerPoolMinSize = (int) getLongProperty(HANDLER_POOL_MIN_SIZE, handlerPoolMinSize);
+    handlerPoolMaxSize = (int) getLongProperty(HANDLER_POOL_MAX_SIZE, handlerPoolMaxSize);
+    Preconditions.checkArgument(handlerPoolMaxSize <= 0 || handlerPoolMinSize <= handlerPoolMaxSize,
+                                "Minimum handler pool size %s must not exceed the maximum size %s",
+                                handlerPoolMinSize, handlerPoolMaxSize);
     this.program = program;
+    this.handlerPoolMinSize = Math.max(0, handlerPoolMinSize);
+    this.handlerPoolMaxSize = handlerPoolMaxSize <= 0 ? Integer.MAX_VALUE : handlerPoolMaxSize;
+    this.handlerIdleTimeoutMillis = getLongProperty(HANDLER_IDLE_TIMEOUT_MILLIS, handlerIdleTimeoutMillis);
+    this.handlerCheckoutTimeoutMillis = getLongProperty(HANDLER_CHECKOUT_TIMEOUT_MILLIS, handlerCheckoutTimeoutMillis);
     this.instanceCount = new AtomicInteger(instanceCount);
     this.serviceAnnouncer = serviceAnnouncer;
     this.dataFabricFacadeFactory = dataFabricFacadeFactory;
+    this.readOnlyTxClient = readOnlyTxMaxStalenessMillis > 0
+      ? new SharedSnapshotTransactionClient(txClient, readOnlyTxMaxStalenessMillis) : null;
     BasicHttpServiceContextFactory contextFactory = createContextFactory(program, programOptions,
                                                                          instanceId, this.instanceCount,
                                                                          metricsCollectionService,
                                                                          datasetFramework, discoveryServiceClient,
-                                                                         txClient, pluginInstantiator, secureStore,
+                                                                         txClient, readOnlyTxClient,
+                                                                         pluginInstantiator, secureStore,
                                                                          secureStoreManager);
     this.handlerContexts = createHandlerDelegatorContexts(program, spec, contextFactory);
     this.context = contextFactory.create(null);
+    if (readOnlyTxClient != null) {
+      readOnlyTxClient.setMetricsContext(context.getProgramMetrics());
+    }
     this.service = createNettyHttpService(program, host, handlerContexts, context.getProgramMetrics());
   }
 
+  private static long getLongProperty(String key, long defaultValue) {
+    String value = System.getProperty(key);
+    return value == null ? defaultValue : Long.parseLong(value);
+  }
+
   private List<HandlerDelegatorContext> createHandlerDelegatorContexts(Program program, ServiceSpecification spec,
                                                                        BasicHttpServiceContextFactory contextFactory) {
     // Constructs all handler delegator. It is for bridging ServiceHttpHandler and HttpHandler (in netty-http).
@@ -180,7 +225,16 @@ public class ServiceHttpServer extends AbstractIdleService {
     NettyHttpService.Builder builder = NettyHttpService.builder()
       .setHost(host)
       .setPort(0)
-      .addHttpHandlers(nettyHttpHandlers);
+      .addHttpHandlers(nettyHttpHandlers)
+      .setExceptionHandler(new HttpExceptionHandler())
+      .modifyChannelPipeline(new Function<ChannelPipeline, ChannelPipeline>() {
+        @Override
+        public ChannelPipeline apply(ChannelPipeline input) {
+          // Allows flow control for responses sent through HttpContentWriter
+          input.addBefore("dispatcher", RequestChannelHandler.NAME, new RequestChannelHandler());
+          return input;
+        }
+      });
 
     // These properties are for unit-test only. Currently they are not controllable by the user program
     String threadPoolSize = System.getProperty(THREAD_POOL_SIZE);
@@ -202,6 +256,7 @@ public class ServiceHttpServer extends AbstractIdleService {
                                                               final DatasetFramework datasetFramework,
                                                               final DiscoveryServiceClient discoveryServiceClient,
                                                               final TransactionSystemClient txClient,
+                                                              @Nullable final TransactionSystemClient readOnlyTxClient,
                                                               @Nullable final PluginInstantiator pluginInstantiator,
                                                               final SecureStore secureStore,
                                                               final SecureStoreManager secureStoreManager) {
@@ -210,7 +265,8 @@ public class ServiceHttpServer extends AbstractIdleService {
       public BasicHttpServiceContext create(@Nullable HttpServiceHandlerSpecification spec) {
         return new BasicHttpServiceContext(program, programOptions, spec, instanceId, instanceCount,
                                            metricsCollectionService, datasetFramework, discoveryServiceClient,
-                                           txClient, pluginInstantiator, secureStore, secureStoreManager);
+                                           txClient, readOnlyTxClient, pluginInstantiator, secureStore,
+                                           secureStoreManager);
       }
     };
   }
@@ -220,8 +276,8 @@ public class ServiceHttpServer extends AbstractIdleService {
    */
   @Override
   public void startUp() {
-    // All handlers of a Service run in the same Twill runnable and each Netty thread gets its own
-    // instance of a handler (and handlerContext). Creating the logging context here ensures that the logs
+    // All handlers of a Service run in the same Twill runnable and each request checks out an
+    // instance of a handler (and handlerContext) from a pool. Creating the logging context here ensures that the logs
     // during startup/shutdown and in each thread created are published.
     LoggingContextAccessor.setLoggingContext(new UserServiceLoggingContext(program.getNamespaceId(),
                                                                            program.getApplicationId(),
@@ -231,6 +287,11 @@ public class ServiceHttpServer extends AbstractIdleService {
                                                                            String.valueOf(context.getInstanceId())));
     LOG.debug("Starting HTTP server for Service {}", program.getId());
     ProgramId programId = program.getId().toEntityId();
+
+    // Create the minimum number of handler instances before accepting requests
+    for (HandlerDelegatorContext context : handlerContexts) {
+      context.warmUp();
+    }
     service.startAndWait();
 
     // announce the twill runnable
@@ -239,7 +300,7 @@ public class ServiceHttpServer extends AbstractIdleService {
     cancelDiscovery = serviceAnnouncer.announce(ServiceDiscoverable.getName(programId), port);
     LOG.info("Announced HTTP Service for Service {} at {}", programId, bindAddress);
 
-    // Create a Timer thread to periodically collect handler that are no longer in used and call destroy on it
+    // Create a Timer thread to periodically destroy handlers that are idle or bound to terminated threads
     timer = new Timer("http-handler-gc", true);
 
     long cleanupPeriod = DEFAULT_HANDLER_CLEANUP_PERIOD_MILLIS;
@@ -263,6 +324,9 @@ public class ServiceHttpServer extends AbstractIdleService {
       for (HandlerDelegatorContext context : handlerContexts) {
         context.shutdown();
       }
+      if (readOnlyTxClient != null) {
+        readOnlyTxClient.close();
+      }
     }
   }
 
@@ -325,12 +389,14 @@ public class ServiceHttpServer extends AbstractIdleService {
   }
 
   /**
-   * Contains a reference to a handler and it's context. Upon garbage collection of these objects, a weak reference
-   * to them allows destroying the handler and closing the context (thus closing the datasets used).
+   * Contains a reference to a handler and it's context. Closing it destroys the handler and closes the context
+   * (thus closing the datasets used).
    */
   private final class HandlerContextPair implements Closeable {
     private final HttpServiceHandler handler;
     private final BasicHttpServiceContext context;
+    // Time when this pair was last returned to the pool
+    private volatile long releaseTime;
 
     private HandlerContextPair(HttpServiceHandler handler, BasicHttpServiceContext context) {
       this.handler = handler;
@@ -353,7 +419,11 @@ public class ServiceHttpServer extends AbstractIdleService {
   }
 
   /**
-   * Helper class for carrying information about each user handler instance.
+   * Helper class for carrying information about each user handler instance. Handler instances are kept in a pool.
+   * A request checks out an instance on first use, which stays bound to the request thread until the request is
+   * handled, or until the instance is captured for streaming the request or response body. The number of instances
+   * is bounded by the maximum pool size, with requests waiting for an instance to be returned once the limit is
+   * reached. Idle instances beyond the minimum pool size are destroyed after the idle timeout.
    */
   private final class HandlerDelegatorContext implements DelegatorContext<HttpServiceHandler> {
 
@@ -361,11 +431,14 @@ public class ServiceHttpServer extends AbstractIdleService {
     private final TypeToken<HttpServiceHandler> handlerType;
     private final HttpServiceHandlerSpecification spec;
     private final BasicHttpServiceContextFactory contextFactory;
+    // Instances bound to threads that are handling requests. Instances bound to threads that terminated
+    // without releasing them get closed once the thread is garbage collected or found in cleanUp().
     private final LoadingCache<Thread, HandlerContextPair> contextPairCache;
-    private final Queue<HandlerContextPair> contextPairPool;
-    // This tracks the size of the concurrent queue based on the app logic for metric purpose.
-    // This is used instead of queue.size() because calling ConcurrentLinkedQueue.size() is not a constant
-    // time operation, but rather linear (see the javadoc).
+    // Idle instances, with the most recently returned one first
+    private final BlockingDeque<HandlerContextPair> contextPairPool;
+    // Number of instances that exist, either idle or in use.
+    // The deque size is tracked separately since LinkedBlockingDeque.size() acquires the deque lock.
+    private final AtomicInteger contextPairCount;
     private final AtomicInteger contextPairPoolSize;
     private volatile boolean shutdown;
 
@@ -378,7 +451,8 @@ public class ServiceHttpServer extends AbstractIdleService {
       this.spec = spec;
       this.contextFactory = contextFactory;
       this.contextPairCache = createContextPairCache();
-      this.contextPairPool = new ConcurrentLinkedQueue<>();
+      this.contextPairPool = new LinkedBlockingDeque<>();
+      this.contextPairCount = new AtomicInteger();
       this.contextPairPoolSize = new AtomicInteger();
     }
 
@@ -408,9 +482,7 @@ public class ServiceHttpServer extends AbstractIdleService {
         @Override
         public void cancel() {
           if (cancelled.compareAndSet(false, true)) {
-            contextPairPool.offer(contextPair);
-            // offer never return false for ConcurrentLinkedQueue
-            context.getProgramMetrics().gauge("context.pool.size", contextPairPoolSize.incrementAndGet());
+            checkIn(contextPair);
           } else {
             // This shouldn't happen, unless there is bug in the platform.
             // Since the context capture and release is a complicated logic, it's better throwing exception
@@ -421,12 +493,33 @@ public class ServiceHttpServer extends AbstractIdleService {
       };
     }
 
+    @Override
+    public void release() {
+      HandlerContextPair contextPair = contextPairCache.asMap().remove(Thread.currentThread());
+      if (contextPair != null) {
+        checkIn(contextPair);
+      }
+    }
+
     TypeToken<HttpServiceHandler> getHandlerType() {
       return handlerType;
     }
 
     /**
-     * Performs clean up task for the context pair cache.
+     * Creates the minimum number of handler instances in the pool.
+     */
+    void warmUp() {
+      while (contextPairCount.get() < handlerPoolMinSize) {
+        HandlerContextPair contextPair = tryCreateContextPair();
+        if (contextPair == null) {
+          break;
+        }
+        checkIn(contextPair);
+      }
+    }
+
+    /**
+     * Performs clean up task for the context pair cache and pool.
      */
     void cleanUp() {
       // Invalid all cached entries if the corresponding thread is no longer running
@@ -438,6 +531,22 @@ public class ServiceHttpServer extends AbstractIdleService {
       }
       contextPairCache.invalidateAll(invalidKeys);
       contextPairCache.cleanUp();
+
+      // Destroy idle instances beyond the minimum pool size, starting from the least recently used one
+      long idleSince = System.currentTimeMillis() - handlerIdleTimeoutMillis;
+      Iterator<HandlerContextPair> iterator = contextPairPool.descendingIterator();
+      while (iterator.hasNext() && contextPairCount.get() > handlerPoolMinSize) {
+        HandlerContextPair contextPair = iterator.next();
+        if (contextPair.releaseTime > idleSince) {
+          break;
+        }
+        // The instance may have been checked out concurrently
+        if (contextPairPool.removeLastOccurrence(contextPair)) {
+          contextPairPoolSize.decrementAndGet();
+          close(contextPair);
+        }
+      }
+      emitPoolMetrics();
     }
 
     /**
@@ -447,10 +556,90 @@ public class ServiceHttpServer extends AbstractIdleService {
       shutdown = true;
       contextPairCache.invalidateAll();
       contextPairCache.cleanUp();
-      for (HandlerContextPair contextPair : contextPairPool) {
-        contextPair.close();
+      HandlerContextPair contextPair;
+      while ((contextPair = contextPairPool.poll()) != null) {
+        close(contextPair);
       }
-      contextPairPool.clear();
+    }
+
+    /**
+     * Takes an idle instance from the pool, or creates a new one if the pool is not at its maximum size. Otherwise
+     * waits for an instance to be returned to the pool, and fails the request with a 503 if none is returned
+     * within the checkout timeout.
+     */
+    private HandlerContextPair checkOut() throws InterruptedException {
+      HandlerContextPair contextPair = contextPairPool.pollFirst();
+      if (contextPair == null) {
+        contextPair = tryCreateContextPair();
+      }
+      if (contextPair == null) {
+        long startTime = System.currentTimeMillis();
+        long waitMillis = 0;
+        while (contextPair == null && waitMillis < handlerCheckoutTimeoutMillis) {
+          // Poll with timeout, since instances may also become available by closing instances that leaked
+          long pollMillis = Math.min(CHECKOUT_POLL_MILLIS, handlerCheckoutTimeoutMillis - waitMillis);
+          contextPair = contextPairPool.pollFirst(pollMillis, TimeUnit.MILLISECONDS);
+          if (contextPair == null) {
+            contextPair = tryCreateContextPair();
+          }
+          waitMillis = System.currentTimeMillis() - startTime;
+        }
+        MetricsContext metricsContext = context.getProgramMetrics();
+        metricsContext.increment("context.pool.waits", 1);
+        metricsContext.increment("context.pool.wait.ms", waitMillis);
+        if (contextPair == null) {
+          metricsContext.increment("context.pool.timeouts", 1);
+          throw new ServiceUnavailableException(program.getName());
+        }
+      }
+      if (contextPair.releaseTime > 0) {
+        contextPairPoolSize.decrementAndGet();
+      }
+      emitPoolMetrics();
+      return contextPair;
+    }
+
+    /**
+     * Returns an instance to the pool.
+     */
+    private void checkIn(HandlerContextPair contextPair) {
+      if (shutdown) {
+        close(contextPair);
+        return;
+      }
+      contextPair.releaseTime = System.currentTimeMillis();
+      contextPairPool.offerFirst(contextPair);
+      contextPairPoolSize.incrementAndGet();
+      emitPoolMetrics();
+    }
+
+    @Nullable
+    private HandlerContextPair tryCreateContextPair() {
+      int count = contextPairCount.get();
+      while (count < handlerPoolMaxSize) {
+        if (contextPairCount.compareAndSet(count, count + 1)) {
+          try {
+            return createContextPair();
+          } catch (Throwable t) {
+            contextPairCount.decrementAndGet();
+            throw t;
+          }
+        }
+        count = contextPairCount.get();
+      }
+      return null;
+    }
+
+    private void close(HandlerContextPair contextPair) {
+      contextPairCount.decrementAndGet();
+      contextPair.close();
+    }
+
+    private void emitPoolMetrics() {
+      MetricsContext metricsContext = context.getProgramMetrics();
+      int poolSize = contextPairPoolSize.get();
+      metricsContext.gauge("context.pool.size", poolSize);
+      metricsContext.gauge("context.pool.active", Math.max(0, contextPairCount.get() - poolSize));
     }
 
     private LoadingCache<Thread, HandlerContextPair> createContextPairCache() {
@@ -467,19 +656,14 @@ public class ServiceHttpServer extends AbstractIdleService {
             // If the removal is due to eviction (expired or GC'ed) or
             // if the thread is no longer active, close the associated context.
             if (shutdown || notification.wasEvicted() || thread == null || !thread.isAlive()) {
-              contextPair.close();
+              close(contextPair);
             }
           }
         })
         .build(new CacheLoader<Thread, HandlerContextPair>() {
           @Override
           public HandlerContextPair load(Thread key) throws Exception {
-            HandlerContextPair contextPair = contextPairPool.poll();
-            if (contextPair == null) {
-              return createContextPair();
-            }
-            context.getProgramMetrics().gauge("context.pool.size", contextPairPoolSize.decrementAndGet());
-            return contextPair;
+            return checkOut();
           }
         });
     }
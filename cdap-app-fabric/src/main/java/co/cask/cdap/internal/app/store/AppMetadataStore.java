@@ -24,6 +24,8 @@ import co.cask.cdap.api.workflow.WorkflowToken;
 import co.cask.cdap.app.runtime.ProgramController;
 import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.io.Codec;
+import co.cask.cdap.data2.dataset2.lib.table.DecodedValueCache;
 import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
 import co.cask.cdap.data2.dataset2.lib.table.MetadataStoreDataset;
 import co.cask.cdap.internal.app.ApplicationSpecificationAdapter;
@@ -47,6 +49,7 @@ import com.google.common.base.Predicates;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.reflect.TypeToken;
@@ -59,6 +62,7 @@ import org.slf4j.LoggerFactory;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -83,6 +87,9 @@ public class AppMetadataStore extends MetadataStoreDataset {
   private static final String TYPE_WORKFLOW_NODE_STATE = "wns";
   private static final String TYPE_WORKFLOW_TOKEN = "wft";
   private static final String TYPE_NAMESPACE = "namespace";
+  // Run records are written and read on every program start and stop, hence stored in binary
+  private static final Map<Type, Codec<?>> CODECS = ImmutableMap.<Type, Codec<?>>of(RunRecordMeta.class,
+                                                                                   new RunRecordMetaCodec());
 
   private final CConfiguration cConf;
 
@@ -95,10 +102,27 @@ public class AppMetadataStore extends MetadataStoreDataset {
     };
 
   public AppMetadataStore(Table table, CConfiguration cConf) {
-    super(table);
+    this(table, cConf, null);
+  }
+
+  /**
+   * Creates an {@link AppMetadataStore} that uses the given {@link DecodedValueCache} to avoid decoding the same
+   * {@link ApplicationMeta} repeatedly. The cache must be created with {@link #createValueCache(long)}.
+   */
+  public AppMetadataStore(Table table, CConfiguration cConf, @Nullable DecodedValueCache valueCache) {
+    super(table, valueCache, CODECS);
     this.cConf = cConf;
   }
 
+  /**
+   * Creates a {@link DecodedValueCache} for the immutable value types stored by this class.
+   *
+   * @param maxBytes maximum total size of the serialized values held in the cache
+   */
+  public static DecodedValueCache createValueCache(long maxBytes) {
+    return new DecodedValueCache(maxBytes, ImmutableSet.of(ApplicationMeta.class));
+  }
+
   @Override
   protected <T> byte[] serialize(T value) {
     return Bytes.toBytes(GSON.toJson(value));
@@ -197,7 +221,7 @@ public class AppMetadataStore extends MetadataStoreDataset {
     RunRecordMeta record = get(key, RunRecordMeta.class);
     if (record != null) {
       // Update the parent Workflow run record by adding node id and program run id in the properties
-      Map<String, String> properties = record.getProperties();
+      Map<String, String> properties = new HashMap<>(record.getProperties());
       properties.put(workflowNodeId, pid);
       write(key, new RunRecordMeta(record, properties));
     }
@@ -28,6 +28,7 @@ import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.api.flow.FlowSpecification;
 import co.cask.cdap.api.flow.FlowletConnection;
 import co.cask.cdap.api.flow.FlowletDefinition;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.api.schedule.ScheduleSpecification;
 import co.cask.cdap.api.service.ServiceSpecification;
 import co.cask.cdap.api.worker.WorkerSpecification;
@@ -46,6 +47,7 @@ import co.cask.cdap.data.dataset.SystemDatasetInstantiator;
 import co.cask.cdap.data2.datafabric.dataset.DatasetsUtil;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.data2.dataset2.MultiThreadDatasetCache;
+import co.cask.cdap.data2.dataset2.lib.table.DecodedValueCache;
 import co.cask.cdap.internal.app.ForwardingApplicationSpecification;
 import co.cask.cdap.internal.app.ForwardingFlowSpecification;
 import co.cask.cdap.proto.BasicThrowable;
@@ -117,6 +119,7 @@ public class DefaultStore implements Store {
   private final Supplier<TransactionExecutor> appsTx;
   private final Supplier<TransactionExecutor> workflowsTx;
   private final MultiThreadDatasetCache dsCache;
+  private final DecodedValueCache appMetaCache;
 
   @Inject
   public DefaultStore(CConfiguration conf,
@@ -132,12 +135,14 @@ public class DefaultStore implements Store {
     this.dsCache = new MultiThreadDatasetCache(
       new SystemDatasetInstantiator(framework, null, null), txClient,
       NamespaceId.SYSTEM, ImmutableMap.<String, String>of(), null, null);
+    long appMetaCacheMaxBytes = conf.getLong(Constants.AppMetaStore.CACHE_MAX_BYTES);
+    this.appMetaCache = appMetaCacheMaxBytes > 0 ? AppMetadataStore.createValueCache(appMetaCacheMaxBytes) : null;
     this.apps =
       new Supplier<AppMetadataStore>() {
         @Override
         public AppMetadataStore get() {
           Table table = getCachedOrCreateTable(APP_META_INSTANCE_ID.getId());
-          return new AppMetadataStore(table, configuration);
+          return new AppMetadataStore(table, configuration, appMetaCache);
         }
       };
     this.appsTx = new Supplier<TransactionExecutor>() {
@@ -162,6 +167,19 @@ public class DefaultStore implements Store {
     };
   }
 
+  /**
+   * Sets the {@link MetricsCollectionService} for emitting metrics of the application metadata cache.
+   */
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    if (appMetaCache != null) {
+      appMetaCache.setMetricsContext(metricsCollectionService.getContext(
+        ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, Id.Namespace.SYSTEM.getId(),
+                        Constants.Metrics.Tag.COMPONENT, Constants.Service.APP_FABRIC_HTTP,
+                        Constants.Metrics.Tag.DATASET, Constants.AppMetaStore.TABLE)));
+    }
+  }
+
   /**
    * Adds datasets and types to the given {@link DatasetFramework} used by app mds.
    *
@@ -33,6 +33,7 @@ import co.cask.cdap.internal.app.runtime.artifact.ArtifactDescriptor;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactDetail;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactMeta;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactRepository;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.ProgramLiveInfo;
 import co.cask.cdap.proto.ProgramType;
@@ -74,7 +75,8 @@ public class AbstractProgramRuntimeServiceTest {
 
     final ProgramRuntimeService runtimeService =
       new AbstractProgramRuntimeService(CConfiguration.create(), runnerFactory, null,
-                                        new Impersonator(CConfiguration.create(), null, null)) {
+                                        new Impersonator(CConfiguration.create(), null, null),
+                                        new UnpackedArtifactCache(CConfiguration.create())) {
       @Override
       public ProgramLiveInfo getLiveInfo(Id.Program programId) {
         return new ProgramLiveInfo(programId, "runtime") { };
@@ -282,7 +284,8 @@ public class AbstractProgramRuntimeServiceTest {
 
     protected TestProgramRuntimeService(CConfiguration cConf, ProgramRunnerFactory programRunnerFactory,
                                         @Nullable ArtifactRepository artifactRepository, RuntimeInfo extraInfo) {
-      super(cConf, programRunnerFactory, artifactRepository, new Impersonator(CConfiguration.create(), null, null));
+      super(cConf, programRunnerFactory, artifactRepository, new Impersonator(CConfiguration.create(), null, null),
+            new UnpackedArtifactCache(cConf));
       this.extraInfo = extraInfo;
     }
 
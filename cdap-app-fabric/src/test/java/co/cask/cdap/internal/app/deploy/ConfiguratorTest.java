@@ -30,6 +30,7 @@ import co.cask.cdap.internal.app.ApplicationSpecificationAdapter;
 import co.cask.cdap.internal.app.deploy.pipeline.NamespacedImpersonator;
 import co.cask.cdap.internal.app.runtime.artifact.ArtifactRepository;
 import co.cask.cdap.internal.app.runtime.artifact.CloseableClassLoader;
+import co.cask.cdap.internal.app.runtime.artifact.UnpackedArtifactCache;
 import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
 import co.cask.cdap.internal.test.AppJarHelper;
 import co.cask.cdap.proto.Id;
@@ -92,7 +93,8 @@ public class ConfiguratorTest {
     ArtifactRepository artifactRepo = new ArtifactRepository(conf, null, null, authorizerInstantiator,
                                                              new DummyProgramRunnerFactory(),
                                                              new Impersonator(CConfiguration.create(), null, null),
-                                                             authEnforcer, authenticationContext);
+                                                             authEnforcer, authenticationContext,
+                                                             new UnpackedArtifactCache(conf));
 
     // Create a configurator that is testable. Provide it a application.
     try (CloseableClassLoader artifactClassLoader =
@@ -125,7 +127,8 @@ public class ConfiguratorTest {
     ArtifactRepository artifactRepo = new ArtifactRepository(conf, null, null, authorizerInstantiator,
                                                              new DummyProgramRunnerFactory(),
                                                              new Impersonator(CConfiguration.create(), null, null),
-                                                             authEnforcer, authenticationContext);
+                                                             authEnforcer, authenticationContext,
+                                                             new UnpackedArtifactCache(conf));
 
     ConfigTestApp.ConfigClass config = new ConfigTestApp.ConfigClass("myStream", "myTable");
     // Create a configurator that is testable. Provide it a application.
@@ -45,6 +45,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import org.apache.twill.filesystem.Location;
@@ -714,6 +715,82 @@ public class ArtifactStoreTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testPluginLookupsAfterModification() throws Exception {
+    Id.Artifact parentArtifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "parent", "1.0.0");
+    writeArtifact(parentArtifactId, new ArtifactMeta(ArtifactClasses.builder().build()), "content");
+
+    // look up plugins before there are any, so that the lookup results are cached
+    Assert.assertTrue(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+    Assert.assertTrue(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype").isEmpty());
+
+    // plugins added afterwards must be visible to all lookups
+    ArtifactRange parentArtifacts = new ArtifactRange(
+      Id.Namespace.DEFAULT, "parent", new ArtifactVersion("1.0.0"), new ArtifactVersion("2.0.0"));
+    Id.Artifact pluginArtifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "plugins", "1.0.0");
+    PluginClass plugin =
+      new PluginClass("atype", "plugin1", "", "c.c.c.plugin1", "cfg", ImmutableMap.<String, PluginPropertyField>of());
+    writeArtifact(pluginArtifactId, new ArtifactMeta(ArtifactClasses.builder().addPlugin(plugin).build(),
+                                                     ImmutableSet.of(parentArtifacts)), "something");
+    ArtifactDescriptor pluginArtifactInfo = artifactStore.getArtifact(pluginArtifactId).getDescriptor();
+
+    Map<ArtifactDescriptor, Set<PluginClass>> expected =
+      ImmutableMap.<ArtifactDescriptor, Set<PluginClass>>of(pluginArtifactInfo, ImmutableSet.of(plugin));
+    Assert.assertEquals(expected, artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId));
+    Assert.assertEquals(expected, artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype"));
+    Assert.assertEquals(ImmutableMap.of(pluginArtifactInfo, plugin),
+                        artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype", "plugin1"));
+
+    // plugins must not be visible in other namespaces
+    Assert.assertTrue(artifactStore.getPluginClasses(Ids.namespace("other"), parentArtifactId).isEmpty());
+
+    // deleted plugins must no longer be visible
+    artifactStore.delete(pluginArtifactId);
+    Assert.assertTrue(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+    Assert.assertTrue(artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype").isEmpty());
+    try {
+      artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "atype", "plugin1");
+      Assert.fail();
+    } catch (PluginNotExistsException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testUpgradePluginIndex() throws Exception {
+    Id.Artifact parentArtifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "parent", "1.0.0");
+    writeArtifact(parentArtifactId, new ArtifactMeta(ArtifactClasses.builder().build()), "content");
+
+    // write more plugins than are indexed in one batch
+    ArtifactRange parentArtifacts = new ArtifactRange(
+      Id.Namespace.DEFAULT, "parent", new ArtifactVersion("1.0.0"), new ArtifactVersion("2.0.0"));
+    Id.Artifact pluginArtifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "plugins", "1.0.0");
+    Set<PluginClass> plugins = Sets.newHashSet();
+    for (int i = 0; i < 250; i++) {
+      plugins.add(new PluginClass("type" + (i % 3), "plugin" + i, "", "c.c.c.plugin" + i, "cfg",
+                                  ImmutableMap.<String, PluginPropertyField>of()));
+    }
+    writeArtifact(pluginArtifactId, new ArtifactMeta(ArtifactClasses.builder().addPlugins(plugins).build(),
+                                                     ImmutableSet.of(parentArtifacts)), "something");
+    ArtifactDescriptor pluginArtifactInfo = artifactStore.getArtifact(pluginArtifactId).getDescriptor();
+    PluginClass plugin = new PluginClass("type1", "plugin1", "", "c.c.c.plugin1", "cfg",
+                                         ImmutableMap.<String, PluginPropertyField>of());
+    Map<ArtifactDescriptor, Set<PluginClass>> expected =
+      ImmutableMap.<ArtifactDescriptor, Set<PluginClass>>of(pluginArtifactInfo, plugins);
+
+    // plugins written before the index existed must be found before and after the index is built
+    artifactStore.dropPluginIndex();
+    for (int i = 0; i < 2; i++) {
+      Assert.assertEquals(expected, artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId));
+      Assert.assertEquals(83, artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "type1")
+        .get(pluginArtifactInfo).size());
+      Assert.assertEquals(ImmutableMap.of(pluginArtifactInfo, plugin),
+                          artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "type1", "plugin1"));
+      Assert.assertTrue(artifactStore.getPluginClasses(Ids.namespace("other"), parentArtifactId).isEmpty());
+      artifactStore.upgradePluginIndex();
+    }
+  }
+
   @Test
   public void testPluginParentInclusiveExclusiveVersions() throws Exception {
     // write artifacts that extend:
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.artifact;
+
+import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.plugin.PluginConfig;
+import co.cask.cdap.app.runtime.DummyProgramRunnerFactory;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.internal.app.runtime.artifact.app.inspection.InspectionApp;
+import co.cask.cdap.internal.app.runtime.artifact.plugin.EmptyClass;
+import co.cask.cdap.internal.app.runtime.artifact.plugin.Plugin1;
+import co.cask.cdap.internal.app.runtime.artifact.plugin.Plugin2;
+import co.cask.cdap.internal.app.runtime.artifact.plugin.endpointtest.PluginEndpointContextTestPlugin;
+import co.cask.cdap.internal.app.runtime.artifact.plugin.invalid.InvalidPlugin;
+import co.cask.cdap.internal.app.runtime.artifact.plugin.p3.CallablePlugin;
+import co.cask.cdap.internal.app.runtime.artifact.plugin.p5.PluginWithPojo;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link PluginClassScanner}.
+ */
+public class PluginClassScannerTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static ArtifactInspector artifactInspector;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, TMP_FOLDER.newFolder().getAbsolutePath());
+    artifactInspector = new ArtifactInspector(cConf, new ArtifactClassLoaderFactory(cConf,
+                                                                                   new DummyProgramRunnerFactory(),
+                                                                                   new UnpackedArtifactCache(cConf)));
+  }
+
+  @Test
+  public void testSameAsReflection() throws Exception {
+    PluginClassScanner scanner = new PluginClassScanner(getClass().getClassLoader());
+    for (Class<?> cls : new Class<?>[] { Plugin1.class, Plugin2.class, CallablePlugin.class,
+                                         PluginWithPojo.class, InspectionApp.AppPlugin.class }) {
+      Assert.assertEquals(artifactInspector.inspectPluginClass(cls, cls.getAnnotation(Plugin.class)),
+                          scanner.scan(cls.getName()));
+    }
+  }
+
+  @Test
+  public void testNotPlugin() throws Exception {
+    PluginClassScanner scanner = new PluginClassScanner(getClass().getClassLoader());
+    Assert.assertNull(scanner.scan(EmptyClass.class.getName()));
+    Assert.assertNull(scanner.scan("co.cask.cdap.DoesNotExist"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPlugin() throws Exception {
+    new PluginClassScanner(getClass().getClassLoader()).scan(InvalidPlugin.class.getName());
+  }
+
+  @Test(expected = PluginClassScanner.CannotScanException.class)
+  public void testEndpointContextSubtype() throws Exception {
+    // Checking the subtype of the endpoint context requires loading the class
+    new PluginClassScanner(getClass().getClassLoader()).scan(PluginEndpointContextTestPlugin.class.getName());
+  }
+
+  @Test(expected = PluginClassScanner.CannotScanException.class)
+  public void testGenericConfig() throws Exception {
+    // Resolving the config type requires loading the class
+    new PluginClassScanner(getClass().getClassLoader()).scan(GenericPlugin.class.getName());
+  }
+
+  /**
+   * A plugin with a config field of a generic type.
+   */
+  @Plugin
+  public static final class GenericPlugin<T extends PluginConfig> {
+    private T config;
+  }
+}
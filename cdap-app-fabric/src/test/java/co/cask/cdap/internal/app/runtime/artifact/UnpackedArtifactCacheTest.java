@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.artifact;
+
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.lang.jar.BundleJarUtil;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests for {@link UnpackedArtifactCache}.
+ */
+public class UnpackedArtifactCacheTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testShared() throws IOException {
+    UnpackedArtifactCache cache = new UnpackedArtifactCache(TMP_FOLDER.newFolder(), Long.MAX_VALUE);
+
+    // Artifacts with the same content at different locations share the same directory
+    Location artifact1 = createArtifact("content");
+    Location artifact2 = Locations.toLocation(new File(TMP_FOLDER.newFolder(), "copy.jar"));
+    Files.copy(Locations.newInputSupplier(artifact1), new File(artifact2.toURI()));
+
+    UnpackedArtifactCache.UnpackedArtifact unpacked1 = cache.unpack(artifact1);
+    UnpackedArtifactCache.UnpackedArtifact unpacked2 = cache.unpack(artifact2);
+    Assert.assertEquals(unpacked1.getDirectory(), unpacked2.getDirectory());
+    Assert.assertEquals("content", Files.toString(new File(unpacked1.getDirectory(), "file.txt"), Charsets.UTF_8));
+    long size = cache.getTotalBytes();
+    Assert.assertTrue(size > 0);
+
+    // The directory is kept after all users are done with it, while the cache has room
+    unpacked1.close();
+    unpacked2.close();
+    UnpackedArtifactCache.UnpackedArtifact unpacked3 = cache.unpack(artifact1);
+    Assert.assertEquals(unpacked1.getDirectory(), unpacked3.getDirectory());
+    Assert.assertEquals(size, cache.getTotalBytes());
+    unpacked3.close();
+
+    // An artifact with different content is unpacked into a different directory
+    UnpackedArtifactCache.UnpackedArtifact unpacked4 = cache.unpack(createArtifact("other"));
+    Assert.assertNotEquals(unpacked1.getDirectory(), unpacked4.getDirectory());
+    Assert.assertNotEquals(unpacked1.getChecksum(), unpacked4.getChecksum());
+    unpacked4.close();
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    Location artifact1 = createArtifact("content1");
+    Location artifact2 = createArtifact("content2");
+
+    // Size the cache so that it only fits one unpacked artifact
+    UnpackedArtifactCache cache = new UnpackedArtifactCache(TMP_FOLDER.newFolder(), Long.MAX_VALUE);
+    UnpackedArtifactCache.UnpackedArtifact unpacked = cache.unpack(artifact1);
+    long size = cache.getTotalBytes();
+    unpacked.close();
+    cache = new UnpackedArtifactCache(TMP_FOLDER.newFolder(), size);
+
+    UnpackedArtifactCache.UnpackedArtifact unpacked1 = cache.unpack(artifact1);
+    UnpackedArtifactCache.UnpackedArtifact unpacked2 = cache.unpack(artifact2);
+
+    // Directories in use are never deleted, even if the cache is full
+    unpacked2.close();
+    Assert.assertTrue(unpacked1.getDirectory().isDirectory());
+    Assert.assertFalse(unpacked2.getDirectory().exists());
+    Assert.assertEquals(size, cache.getTotalBytes());
+
+    // Once released, the least recently used directory is deleted to make room for a new one
+    unpacked1.close();
+    Assert.assertTrue(unpacked1.getDirectory().isDirectory());
+    unpacked2 = cache.unpack(artifact2);
+    unpacked2.close();
+    Assert.assertFalse(unpacked1.getDirectory().exists());
+    Assert.assertTrue(unpacked2.getDirectory().isDirectory());
+    Assert.assertEquals(size, cache.getTotalBytes());
+  }
+
+  @Test
+  public void testStop() throws IOException {
+    UnpackedArtifactCache cache = new UnpackedArtifactCache(TMP_FOLDER.newFolder(), Long.MAX_VALUE);
+    Location artifact = createArtifact("content");
+    UnpackedArtifactCache.UnpackedArtifact unpacked = cache.unpack(artifact);
+    Assert.assertTrue(unpacked.getDirectory().isDirectory());
+
+    // Stopping the cache deletes all the unpacked directories and rejects further use
+    cache.stopAndWait();
+    Assert.assertFalse(unpacked.getDirectory().exists());
+    unpacked.close();
+    try {
+      cache.unpack(artifact);
+      Assert.fail("Expected the stopped cache to reject unpacking");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  private Location createArtifact(String content) throws IOException {
+    File dir = TMP_FOLDER.newFolder();
+    Files.write(content, new File(dir, "file.txt"), Charsets.UTF_8);
+    File jarFile = new File(TMP_FOLDER.newFolder(), "artifact.jar");
+    BundleJarUtil.createJar(dir, jarFile);
+    return Locations.toLocation(jarFile);
+  }
+}
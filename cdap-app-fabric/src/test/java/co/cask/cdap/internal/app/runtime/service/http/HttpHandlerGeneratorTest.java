@@ -18,6 +18,7 @@ package co.cask.cdap.internal.app.runtime.service.http;
 
 import co.cask.cdap.api.Admin;
 import co.cask.cdap.api.Transactional;
+import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.app.ApplicationSpecification;
 import co.cask.cdap.api.data.DatasetInstantiationException;
 import co.cask.cdap.api.dataset.Dataset;
@@ -31,6 +32,7 @@ import co.cask.cdap.api.security.store.SecureStoreMetadata;
 import co.cask.cdap.api.service.http.AbstractHttpServiceHandler;
 import co.cask.cdap.api.service.http.HttpContentConsumer;
 import co.cask.cdap.api.service.http.HttpContentProducer;
+import co.cask.cdap.api.service.http.HttpContentWriter;
 import co.cask.cdap.api.service.http.HttpServiceContext;
 import co.cask.cdap.api.service.http.HttpServiceHandler;
 import co.cask.cdap.api.service.http.HttpServiceHandlerSpecification;
@@ -38,6 +40,7 @@ import co.cask.cdap.api.service.http.HttpServiceRequest;
 import co.cask.cdap.api.service.http.HttpServiceResponder;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
+import co.cask.cdap.common.utils.Tasks;
 import co.cask.http.HttpHandler;
 import co.cask.http.NettyHttpService;
 import co.cask.tephra.TransactionAware;
@@ -47,6 +50,7 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
@@ -56,7 +60,10 @@ import com.google.common.reflect.TypeToken;
 import org.apache.twill.api.RunId;
 import org.apache.twill.common.Cancellable;
 import org.apache.twill.filesystem.Location;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -66,7 +73,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.URL;
@@ -77,6 +87,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -89,9 +104,14 @@ import javax.ws.rs.PathParam;
  */
 public class HttpHandlerGeneratorTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(HttpHandlerGeneratorTest.class);
+
   @ClassRule
   public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
 
+  private static final AtomicInteger READ_ONLY_TX_CONTEXTS = new AtomicInteger();
+  private static final AtomicInteger RELEASED_CONTEXTS = new AtomicInteger();
+
   @Path("/p1")
   public abstract static class BaseHttpHandler extends AbstractHttpServiceHandler {
 
@@ -152,6 +172,23 @@ public class HttpHandlerGeneratorTest {
     }
   }
 
+  @Path("/tx")
+  public static final class ReadOnlyHandler extends AbstractHttpServiceHandler {
+
+    @Path("/read")
+    @GET
+    @ReadOnly
+    public void read(HttpServiceRequest request, HttpServiceResponder responder) {
+      responder.sendString("read");
+    }
+
+    @Path("/write")
+    @PUT
+    public void write(HttpServiceRequest request, HttpServiceResponder responder) {
+      responder.sendString("write");
+    }
+  }
+
   /**
    * A testing handler for testing file upload and download through usage of {@link HttpContentConsumer}
    * and {@link HttpContentProducer}.
@@ -201,6 +238,55 @@ public class HttpHandlerGeneratorTest {
     }
   }
 
+  /**
+   * A testing handler for sending responses through {@link HttpContentWriter}, and with buffering for comparison.
+   */
+  @Path("/stream")
+  public static final class StreamingHandler extends AbstractHttpServiceHandler {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final AtomicLong BYTES_WRITTEN = new AtomicLong();
+
+    @Path("/chunked/{size}")
+    @GET
+    public void chunked(HttpServiceRequest request, HttpServiceResponder responder,
+                        @PathParam("size") int size) throws IOException {
+      HttpContentWriter writer = responder.sendChunkStart(200, "application/octet-stream");
+      ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+      for (int offset = 0; offset < size; offset += CHUNK_SIZE) {
+        chunk.clear();
+        chunk.limit(Math.min(CHUNK_SIZE, size - offset));
+        for (int i = 0; i < chunk.limit(); i++) {
+          chunk.put(i, contentAt(offset + i));
+        }
+        writer.write(chunk);
+        BYTES_WRITTEN.addAndGet(chunk.limit());
+      }
+    }
+
+    @Path("/buffered/{size}")
+    @GET
+    public void buffered(HttpServiceRequest request, HttpServiceResponder responder, @PathParam("size") int size) {
+      byte[] content = new byte[size];
+      for (int i = 0; i < size; i++) {
+        content[i] = contentAt(i);
+      }
+      responder.send(200, ByteBuffer.wrap(content), "application/octet-stream", ImmutableMap.<String, String>of());
+    }
+
+    @Path("/failure")
+    @GET
+    public void failure(HttpServiceRequest request, HttpServiceResponder responder) throws IOException {
+      HttpContentWriter writer = responder.sendChunkStart(200, "text/plain");
+      writer.write(Charsets.UTF_8.encode("partial"));
+      throw new IllegalStateException("Failure after sending part of the response");
+    }
+
+    static byte contentAt(int offset) {
+      return (byte) (offset % 251);
+    }
+  }
+
   /**
    * A {@link HttpContentConsumer} that writes uploaded bytes to a file.
    */
@@ -498,6 +584,252 @@ public class HttpHandlerGeneratorTest {
     }
   }
 
+  @Test
+  public void testReadOnlyMethod() throws Exception {
+    MetricsContext noOpsMetricsContext =
+      new NoOpMetricsCollectionService().getContext(new HashMap<String, String>());
+    HttpHandlerFactory factory = new HttpHandlerFactory("/prefix", noOpsMetricsContext);
+
+    HttpHandler httpHandler = factory.createHttpHandler(
+      TypeToken.of(ReadOnlyHandler.class), new AbstractDelegatorContext<ReadOnlyHandler>() {
+        @Override
+        protected ReadOnlyHandler createHandler() {
+          return new ReadOnlyHandler();
+        }
+      });
+
+    NettyHttpService service = NettyHttpService.builder()
+      .addHttpHandlers(ImmutableList.of(httpHandler))
+      .build();
+
+    service.startAndWait();
+    try {
+      InetSocketAddress bindAddress = service.getBindAddress();
+      int readOnlyContexts = READ_ONLY_TX_CONTEXTS.get();
+      int releasedContexts = RELEASED_CONTEXTS.get();
+
+      // The @ReadOnly method should use the read-only transaction context
+      URLConnection urlConn = new URL(String.format("http://%s:%d/prefix/tx/read",
+                                                    bindAddress.getHostName(), bindAddress.getPort())).openConnection();
+      Assert.assertEquals("read", new String(ByteStreams.toByteArray(urlConn.getInputStream()), Charsets.UTF_8));
+      Assert.assertEquals(readOnlyContexts + 1, READ_ONLY_TX_CONTEXTS.get());
+
+      // Other methods should use the regular transaction context
+      HttpURLConnection writeConn = (HttpURLConnection) new URL(String.format("http://%s:%d/prefix/tx/write",
+                                                                              bindAddress.getHostName(),
+                                                                              bindAddress.getPort())).openConnection();
+      writeConn.setRequestMethod("PUT");
+      Assert.assertEquals("write", new String(ByteStreams.toByteArray(writeConn.getInputStream()), Charsets.UTF_8));
+      Assert.assertEquals(readOnlyContexts + 1, READ_ONLY_TX_CONTEXTS.get());
+
+      // The handler context is released after each request, which happens after the response is sent
+      final int expectedReleased = releasedContexts + 2;
+      Tasks.waitFor(expectedReleased, new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return RELEASED_CONTEXTS.get();
+        }
+      }, 10, TimeUnit.SECONDS);
+    } finally {
+      service.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testStreamingResponse() throws Exception {
+    NettyHttpService service = createStreamingService();
+    service.startAndWait();
+    try {
+      InetSocketAddress bindAddress = service.getBindAddress();
+
+      // The response body is sent in chunks and is complete
+      int size = 1024 * 1024 + 17;
+      HttpURLConnection urlConn = openStreamingConnection(bindAddress, "chunked/" + size);
+      try {
+        Assert.assertEquals(200, urlConn.getResponseCode());
+        Assert.assertEquals("chunked", urlConn.getHeaderField("Transfer-Encoding"));
+        byte[] content = ByteStreams.toByteArray(urlConn.getInputStream());
+        Assert.assertEquals(size, content.length);
+        for (int i = 0; i < size; i++) {
+          Assert.assertEquals(StreamingHandler.contentAt(i), content[i]);
+        }
+      } finally {
+        urlConn.disconnect();
+      }
+
+      // The handler cannot write much further than what the client reads. With small socket buffers, what is
+      // kept in memory is bounded by the write buffer high water mark plus one chunk.
+      size = 8 * 1024 * 1024;
+      StreamingHandler.BYTES_WRITTEN.set(0);
+      urlConn = openStreamingConnection(bindAddress, "chunked/" + size);
+      try {
+        InputStream is = urlConn.getInputStream();
+        Assert.assertEquals(StreamingHandler.contentAt(0), (byte) is.read());
+        long written = StreamingHandler.BYTES_WRITTEN.get();
+        long lastWritten = -1;
+        while (written != lastWritten) {
+          lastWritten = written;
+          TimeUnit.MILLISECONDS.sleep(100);
+          written = StreamingHandler.BYTES_WRITTEN.get();
+        }
+        Assert.assertTrue("Unexpected bytes written " + written, written <= 1024 * 1024);
+        Assert.assertEquals(size - 1, drain(is));
+      } finally {
+        urlConn.disconnect();
+      }
+
+      // The streaming response follows the keep-alive of the request
+      urlConn = openStreamingConnection(bindAddress, "chunked/1024");
+      urlConn.setRequestProperty(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+      try {
+        Assert.assertEquals(200, urlConn.getResponseCode());
+        Assert.assertEquals(HttpHeaders.Values.CLOSE, urlConn.getHeaderField(HttpHeaders.Names.CONNECTION));
+        Assert.assertEquals(1024, drain(urlConn.getInputStream()));
+      } finally {
+        urlConn.disconnect();
+      }
+
+      // A failure after the response is started aborts the response
+      urlConn = openStreamingConnection(bindAddress, "failure");
+      try {
+        Assert.assertEquals(200, urlConn.getResponseCode());
+        try {
+          ByteStreams.toByteArray(urlConn.getInputStream());
+          Assert.fail("Expected the response to be incomplete");
+        } catch (IOException e) {
+          // expected
+        }
+      } finally {
+        urlConn.disconnect();
+      }
+    } finally {
+      service.stopAndWait();
+    }
+  }
+
+  /**
+   * Measures the time to first byte and the heap usage for sending a 100MB response through {@link HttpContentWriter},
+   * compared to a buffered response. It is not run by default. To run it:
+   *
+   * <pre>
+   *   mvn test -Dtest=HttpHandlerGeneratorTest#testStreamingResponseBenchmark -Dcdap.test.benchmark=true
+   * </pre>
+   */
+  @Test
+  public void testStreamingResponseBenchmark() throws Exception {
+    Assume.assumeTrue(Boolean.getBoolean("cdap.test.benchmark"));
+    NettyHttpService service = createStreamingService();
+    service.startAndWait();
+    try {
+      InetSocketAddress bindAddress = service.getBindAddress();
+      int size = 100 * 1024 * 1024;
+      long streamingHeap = 0;
+      long bufferedHeap = 0;
+      for (String mode : ImmutableList.of("chunked", "buffered")) {
+        System.gc();
+        final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        final long baseHeap = memoryBean.getHeapMemoryUsage().getUsed();
+        final AtomicLong peakHeap = new AtomicLong(baseHeap);
+        final AtomicBoolean sampling = new AtomicBoolean(true);
+        Thread sampler = new Thread() {
+          @Override
+          public void run() {
+            while (sampling.get()) {
+              long used = memoryBean.getHeapMemoryUsage().getUsed();
+              if (used > peakHeap.get()) {
+                peakHeap.set(used);
+              }
+              try {
+                TimeUnit.MILLISECONDS.sleep(5);
+              } catch (InterruptedException e) {
+                return;
+              }
+            }
+          }
+        };
+        sampler.start();
+
+        long startTime = System.nanoTime();
+        long firstByteTime;
+        long totalBytes;
+        HttpURLConnection urlConn = openStreamingConnection(bindAddress, mode + "/" + size);
+        try {
+          InputStream is = urlConn.getInputStream();
+          Assert.assertEquals(StreamingHandler.contentAt(0), (byte) is.read());
+          firstByteTime = System.nanoTime();
+          totalBytes = 1 + drain(is);
+        } finally {
+          urlConn.disconnect();
+          sampling.set(false);
+          sampler.join();
+        }
+        long endTime = System.nanoTime();
+        Assert.assertEquals(size, totalBytes);
+
+        long heapIncrease = peakHeap.get() - baseHeap;
+        if ("chunked".equals(mode)) {
+          streamingHeap = heapIncrease;
+        } else {
+          bufferedHeap = heapIncrease;
+        }
+        LOG.info("Sent {} response of {} bytes. Time to first byte: {} ms. Total time: {} ms. " +
+                   "Peak heap increase: {} MB",
+                 mode, size, TimeUnit.NANOSECONDS.toMillis(firstByteTime - startTime),
+                 TimeUnit.NANOSECONDS.toMillis(endTime - startTime), heapIncrease / (1024 * 1024));
+      }
+      LOG.info("Peak heap increase of the streaming response is {}% of the buffered response",
+               bufferedHeap > 0 ? streamingHeap * 100 / bufferedHeap : -1);
+    } finally {
+      service.stopAndWait();
+    }
+  }
+
+  private NettyHttpService createStreamingService() {
+    MetricsContext noOpsMetricsContext =
+      new NoOpMetricsCollectionService().getContext(new HashMap<String, String>());
+    HttpHandlerFactory factory = new HttpHandlerFactory("/content", noOpsMetricsContext);
+    HttpHandler httpHandler = factory.createHttpHandler(
+      TypeToken.of(StreamingHandler.class), new AbstractDelegatorContext<StreamingHandler>() {
+        @Override
+        public HttpServiceContext getServiceContext() {
+          return new AbortingHttpServiceContext();
+        }
+
+        @Override
+        protected StreamingHandler createHandler() {
+          return new StreamingHandler();
+        }
+      });
+
+    return NettyHttpService.builder()
+      .addHttpHandlers(ImmutableList.of(httpHandler))
+      .setChannelConfig("child.sendBufferSize", 16 * 1024)
+      .modifyChannelPipeline(new Function<ChannelPipeline, ChannelPipeline>() {
+        @Override
+        public ChannelPipeline apply(ChannelPipeline input) {
+          input.addBefore("dispatcher", RequestChannelHandler.NAME, new RequestChannelHandler());
+          return input;
+        }
+      })
+      .build();
+  }
+
+  private long drain(InputStream is) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    long total = 0;
+    int len = is.read(buffer);
+    while (len >= 0) {
+      total += len;
+      len = is.read(buffer);
+    }
+    return total;
+  }
+
+  private HttpURLConnection openStreamingConnection(InetSocketAddress bindAddress, String path) throws IOException {
+    return (HttpURLConnection) new URL(String.format("http://%s:%d/content/stream/%s", bindAddress.getHostName(),
+                                                     bindAddress.getPort(), path)).openConnection();
+  }
+
   private abstract static class AbstractDelegatorContext<T extends HttpServiceHandler> implements DelegatorContext<T> {
 
     private final ThreadLocal<T> threadLocal = new ThreadLocal<T>() {
@@ -513,7 +845,7 @@ public class HttpHandlerGeneratorTest {
     }
 
     @Override
-    public final HttpServiceContext getServiceContext() {
+    public HttpServiceContext getServiceContext() {
       return new NoOpHttpServiceContext();
     }
 
@@ -528,6 +860,11 @@ public class HttpHandlerGeneratorTest {
       };
     }
 
+    @Override
+    public void release() {
+      RELEASED_CONTEXTS.incrementAndGet();
+    }
+
     protected abstract T createHandler();
   }
 
@@ -631,6 +968,12 @@ public class HttpHandlerGeneratorTest {
       };
     }
 
+    @Override
+    public TransactionContext newReadOnlyTransactionContext() {
+      READ_ONLY_TX_CONTEXTS.incrementAndGet();
+      return newTransactionContext();
+    }
+
     @Override
     public void dismissTransactionContext() {
       // no-op
@@ -729,4 +1072,30 @@ public class HttpHandlerGeneratorTest {
       return null;
     }
   }
+
+  /**
+   * A {@link NoOpHttpServiceContext} with transactions that fail when they are aborted with a cause, the same as
+   * a {@link TransactionContext}, so that handler failures are reflected in the response.
+   */
+  private static final class AbortingHttpServiceContext extends NoOpHttpServiceContext {
+
+    @Override
+    public TransactionContext newTransactionContext() {
+      return new TransactionContext(null, ImmutableList.<TransactionAware>of()) {
+
+        @Override
+        public void start() throws TransactionFailureException {
+        }
+
+        @Override
+        public void finish() throws TransactionFailureException {
+        }
+
+        @Override
+        public void abort(TransactionFailureException cause) throws TransactionFailureException {
+          throw cause;
+        }
+      };
+    }
+  }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.service.http;
+
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.tephra.Transaction;
+import co.cask.tephra.TransactionManager;
+import co.cask.tephra.inmemory.InMemoryTxSystemClient;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link SharedSnapshotTransactionClient}.
+ */
+public class SharedSnapshotTransactionClientTest {
+
+  private TransactionManager txManager;
+
+  @Before
+  public void before() {
+    txManager = new TransactionManager(new Configuration());
+    txManager.startAndWait();
+  }
+
+  @After
+  public void after() {
+    txManager.stopAndWait();
+  }
+
+  @Test
+  public void testSharedSnapshot() throws Exception {
+    SharedSnapshotTransactionClient txClient =
+      new SharedSnapshotTransactionClient(new InMemoryTxSystemClient(txManager), TimeUnit.HOURS.toMillis(1));
+    try {
+      Transaction tx1 = txClient.startShort();
+      Transaction tx2 = txClient.startShort();
+      Assert.assertEquals(tx1.getTransactionId(), tx2.getTransactionId());
+      Assert.assertEquals(1, txManager.getCurrentState().getInProgress().size());
+
+      // Committing without changes does not end the shared snapshot
+      Assert.assertTrue(txClient.canCommit(tx1, Collections.<byte[]>emptyList()));
+      Assert.assertTrue(txClient.commit(tx1));
+      txClient.abort(tx2);
+      Assert.assertEquals(1, txClient.getOpenSnapshots());
+      Assert.assertEquals(1, txManager.getCurrentState().getInProgress().size());
+
+      // Changes are not allowed
+      Transaction tx3 = txClient.startShort();
+      Assert.assertEquals(tx1.getTransactionId(), tx3.getTransactionId());
+      try {
+        txClient.canCommit(tx3, ImmutableList.of(new byte[] { 1 }));
+        Assert.fail("Expected changes to be rejected in a read-only transaction");
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      txClient.abort(tx3);
+    } finally {
+      txClient.close();
+    }
+
+    // Closing aborts the snapshot, without invalidating it
+    Assert.assertTrue(txManager.getCurrentState().getInProgress().isEmpty());
+    Assert.assertEquals(0, txManager.getInvalidSize());
+  }
+
+  @Test(timeout = 20000)
+  public void testStaleSnapshot() throws Exception {
+    final SharedSnapshotTransactionClient txClient =
+      new SharedSnapshotTransactionClient(new InMemoryTxSystemClient(txManager), 100);
+    try {
+      Transaction tx1 = txClient.startShort();
+      TimeUnit.MILLISECONDS.sleep(200);
+
+      // A stale snapshot is replaced, but stays open while it is still in use
+      Transaction tx2 = txClient.startShort();
+      Assert.assertNotEquals(tx1.getTransactionId(), tx2.getTransactionId());
+      Assert.assertEquals(2, txClient.getOpenSnapshots());
+
+      txClient.commit(tx1);
+      Assert.assertEquals(1, txClient.getOpenSnapshots());
+      txClient.commit(tx2);
+
+      // Idle snapshots are retired in the background
+      Tasks.waitFor(0, new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return txClient.getOpenSnapshots();
+        }
+      }, 10, TimeUnit.SECONDS);
+      Assert.assertTrue(txManager.getCurrentState().getInProgress().isEmpty());
+      Assert.assertEquals(0, txManager.getInvalidSize());
+    } finally {
+      txClient.close();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testSlowStartDoesNotBlock() throws Exception {
+    final CountDownLatch firstStarting = new CountDownLatch(1);
+    final CountDownLatch releaseFirst = new CountDownLatch(1);
+    final AtomicInteger starts = new AtomicInteger();
+    InMemoryTxSystemClient delegate = new InMemoryTxSystemClient(txManager) {
+      @Override
+      public Transaction startShort() {
+        if (starts.incrementAndGet() == 1) {
+          // The first start is stuck in the transaction server until released
+          firstStarting.countDown();
+          Uninterruptibles.awaitUninterruptibly(releaseFirst);
+        }
+        return super.startShort();
+      }
+    };
+    final SharedSnapshotTransactionClient txClient = new SharedSnapshotTransactionClient(delegate,
+                                                                                         TimeUnit.HOURS.toMillis(1));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Transaction> slow = executor.submit(new Callable<Transaction>() {
+        @Override
+        public Transaction call() throws Exception {
+          return txClient.startShort();
+        }
+      });
+      firstStarting.await();
+
+      // Another caller gets a snapshot while the first one is still waiting for the transaction server
+      Transaction tx1 = txClient.startShort();
+      releaseFirst.countDown();
+
+      // The slow caller shares the snapshot published meanwhile, and its own transaction is aborted
+      Transaction tx2 = slow.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(tx1.getTransactionId(), tx2.getTransactionId());
+      Assert.assertEquals(1, txClient.getOpenSnapshots());
+      Assert.assertEquals(1, txManager.getCurrentState().getInProgress().size());
+      txClient.commit(tx1);
+      txClient.commit(tx2);
+    } finally {
+      executor.shutdownNow();
+      txClient.close();
+    }
+    Assert.assertTrue(txManager.getCurrentState().getInProgress().isEmpty());
+    Assert.assertEquals(0, txManager.getInvalidSize());
+  }
+}
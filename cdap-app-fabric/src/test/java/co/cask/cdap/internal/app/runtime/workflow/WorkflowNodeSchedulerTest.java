@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.workflow;
+
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.api.schedule.SchedulableProgramType;
+import co.cask.cdap.api.workflow.ScheduleProgramInfo;
+import co.cask.cdap.api.workflow.WorkflowActionNode;
+import co.cask.cdap.api.workflow.WorkflowConditionNode;
+import co.cask.cdap.api.workflow.WorkflowForkNode;
+import co.cask.cdap.api.workflow.WorkflowNode;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link WorkflowNodeScheduler}.
+ */
+public class WorkflowNodeSchedulerTest {
+
+  private static final List<WorkflowNode> NODES = ImmutableList.of(
+    action("a1"),
+    new WorkflowForkNode("fork", ImmutableList.<List<WorkflowNode>>of(
+      ImmutableList.of(action("b1"), action("b2"), action("b3")),
+      ImmutableList.of(action("c1"))
+    )),
+    new WorkflowConditionNode("condition", "predicate", ImmutableList.of(action("d1")),
+                              ImmutableList.<WorkflowNode>of()),
+    action("e1")
+  );
+
+  @Test
+  public void testPriorities() {
+    WorkflowNodeScheduler scheduler = new WorkflowNodeScheduler(NODES, 0, new NoopMetricsContext());
+    try {
+      Assert.assertEquals(6, scheduler.getPriority("a1"));
+      Assert.assertEquals(5, scheduler.getPriority("b1"));
+      Assert.assertEquals(4, scheduler.getPriority("b2"));
+      Assert.assertEquals(3, scheduler.getPriority("b3"));
+      Assert.assertEquals(3, scheduler.getPriority("c1"));
+      Assert.assertEquals(2, scheduler.getPriority("d1"));
+      Assert.assertEquals(1, scheduler.getPriority("e1"));
+      Assert.assertEquals(0, scheduler.getPriority("fork"));
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testCriticalPathFirst() throws Exception {
+    final WorkflowNodeScheduler scheduler = new WorkflowNodeScheduler(NODES, 1, new NoopMetricsContext());
+    final List<String> executed = new CopyOnWriteArrayList<>();
+    final CountDownLatch blockingStarted = new CountDownLatch(1);
+    final CountDownLatch blockingRelease = new CountDownLatch(1);
+
+    try {
+      WorkflowNodeScheduler.TaskGroup taskGroup = scheduler.newTaskGroup("test");
+      // Occupy the only execution slot
+      FutureTask<Void> blocking = runAction(scheduler, "e1", new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          blockingStarted.countDown();
+          blockingRelease.await();
+          return null;
+        }
+      });
+      taskGroup.execute(blocking);
+      blockingStarted.await();
+
+      // Queue actions in order of increasing priority, they should execute in reverse order
+      int queued = 0;
+      for (final String nodeId : ImmutableList.of("d1", "c1", "b1")) {
+        taskGroup.execute(runAction(scheduler, nodeId, new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            executed.add(nodeId);
+            return null;
+          }
+        }));
+        queued++;
+        while (scheduler.getWaitingActions() != queued) {
+          TimeUnit.MILLISECONDS.sleep(10);
+        }
+      }
+
+      blockingRelease.countDown();
+      taskGroup.awaitCompletion();
+      blocking.get();
+      Assert.assertEquals(ImmutableList.of("b1", "c1", "d1"), executed);
+      Assert.assertEquals(0, scheduler.getWaitingActions());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  private static FutureTask<Void> runAction(final WorkflowNodeScheduler scheduler, final String nodeId,
+                                            final Callable<Void> action) {
+    return new FutureTask<>(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        return scheduler.runAction(nodeId, action);
+      }
+    });
+  }
+
+  private static WorkflowNode action(String name) {
+    return new WorkflowActionNode(name, new ScheduleProgramInfo(SchedulableProgramType.MAPREDUCE, name));
+  }
+}
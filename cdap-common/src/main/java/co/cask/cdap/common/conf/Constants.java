@@ -83,6 +83,7 @@ public final class Constants {
     /** Scheduler queue name to submit the master service app. */
     public static final String SCHEDULER_QUEUE = "master.services.scheduler.queue";
     public static final String METADATA_SERVICE = "metadata.service";
+    public static final String ROUTER = "router";
   }
 
   /**
@@ -131,9 +132,19 @@ public final class Constants {
     public static final String MAPREDUCE_INCLUDE_CUSTOM_CLASSES = "mapreduce.include.custom.format.classes";
     public static final String PROGRAM_RUNID_CORRECTOR_INTERVAL_SECONDS = "app.program.runid.corrector.interval";
     public static final String SYSTEM_ARTIFACTS_DIR = "app.artifact.dir";
+    public static final String ARTIFACT_CACHE_MAX_BYTES = "app.artifact.cache.max.bytes";
+    public static final String ARTIFACT_PLUGIN_CACHE_EXPIRE_SECONDS = "app.artifact.plugin.cache.expire.secs";
     public static final String PROGRAM_EXTRA_CLASSPATH = "app.program.extra.classpath";
     public static final String SPARK_YARN_CLIENT_REWRITE = "app.program.spark.yarn.client.rewrite.enabled";
     public static final String RUNTIME_EXT_DIR = "app.program.runtime.extensions.dir";
+    public static final String SERVICE_READ_ONLY_TX_MAX_STALENESS_MS =
+      "app.program.service.readonly.tx.max.staleness.ms";
+    public static final String SERVICE_HANDLER_POOL_MIN_SIZE = "app.program.service.handler.pool.min.size";
+    public static final String SERVICE_HANDLER_POOL_MAX_SIZE = "app.program.service.handler.pool.max.size";
+    public static final String SERVICE_HANDLER_POOL_IDLE_TIMEOUT_SECONDS =
+      "app.program.service.handler.pool.idle.timeout.secs";
+    public static final String SERVICE_HANDLER_POOL_CHECKOUT_TIMEOUT_SECONDS =
+      "app.program.service.handler.pool.checkout.timeout.secs";
 
     /**
      * Guice named bindings.
@@ -147,6 +158,7 @@ public final class Constants {
     public static final int DEFAULT_EXEC_THREADS = 20;
     public static final int DEFAULT_BOSS_THREADS = 1;
     public static final int DEFAULT_WORKER_THREADS = 10;
+    public static final long DEFAULT_SERVICE_READ_ONLY_TX_MAX_STALENESS_MS = 1000L;
 
     /**
      * Query parameter to indicate start time.
@@ -175,6 +187,11 @@ public final class Constants {
      */
     public static final String WORKFLOW_TOKEN_MAX_SIZE_MB = "workflow.token.max.size.mb";
 
+    /**
+     * Configuration setting for the maximum number of action nodes a workflow run executes in parallel
+     */
+    public static final String WORKFLOW_MAX_PARALLEL_ACTIONS = "workflow.max.parallel.actions";
+
     /**
      * Name of the property used to identify whether the dataset is local or not.
      */
@@ -193,6 +210,7 @@ public final class Constants {
    */
   public static final class AppMetaStore {
     public static final String TABLE = "app.meta";
+    public static final String CACHE_MAX_BYTES = "app.meta.cache.max.bytes";
   }
 
   /**
@@ -242,6 +260,28 @@ public final class Constants {
     // tables. Constant could be moved to Table after that is changed. See CDAP-1193 for more info
     public static final String TABLE_TX_DISABLED = "dataset.table.tx.disabled";
 
+    // Table dataset property that defines the estimated size in bytes of the changes buffered in memory by a
+    // transaction, beyond which they are spilled to local disk. Spilling is disabled if it is not set.
+    public static final String TABLE_BUFFER_SPILL_THRESHOLD = "dataset.table.buffer.spill.threshold.bytes";
+    // Local directory that table datasets spill their buffered changes into
+    public static final String TABLE_BUFFER_SPILL_DIR = "dataset.table.buffer.spill.dir";
+
+    // Table dataset property that defines the number of bits, either 64 or 128, of the hashes of the change keys that
+    // are sent to the transaction manager for conflict detection, instead of the keys themselves. Two different keys
+    // can have the same hash, which causes a false conflict: with n changes in a transaction and m changes in the
+    // transactions it is checked against, this happens with a probability of about n * m / 2^bits.
+    public static final String TABLE_CONFLICT_HASH_BITS = "dataset.table.conflict.hash.bits";
+
+    // Table dataset properties that define the defaults of the hints of a Scan, for scans that do not set them
+    public static final String TABLE_SCAN_CACHING = "dataset.table.scan.caching";
+    public static final String TABLE_SCAN_MAX_RESULT_SIZE = "dataset.table.scan.max.result.size.bytes";
+    public static final String TABLE_SCAN_CACHE_BLOCKS = "dataset.table.scan.cache.blocks";
+    public static final String TABLE_SCAN_BATCH = "dataset.table.scan.batch";
+
+    // Table dataset property that defines whether the latencies of the operations on the persistent store are
+    // recorded, to emit histograms of them as dataset metrics. They are not recorded if it is not set to true.
+    public static final String TABLE_LATENCY_METRICS = "dataset.table.latency.metrics";
+
     public static final String DATA_DIR = "dataset.data.dir";
     public static final String DEFAULT_DATA_DIR = "data";
 
@@ -327,6 +367,7 @@ public final class Constants {
     public static final String FILE_PREFIX = "stream.file.prefix";
     public static final String INSTANCE_FILE_PREFIX = "stream.instance.file.prefix";
     public static final String CONSUMER_TABLE_PRESPLITS = "stream.consumer.table.presplits";
+    public static final String CONSUMER_FIFO_CLAIM_RANGE_SIZE = "stream.consumer.fifo.claim.range.size";
     public static final String FILE_CLEANUP_PERIOD = "stream.file.cleanup.period";
     public static final String BATCH_BUFFER_THRESHOLD = "stream.batch.buffer.threshold";
     public static final String NOTIFICATION_THRESHOLD = "stream.notification.threshold";
@@ -416,6 +457,8 @@ public final class Constants {
     public static final String CLIENT_BOSS_THREADS = "router.client.boss.threads";
     public static final String CLIENT_WORKER_THREADS = "router.client.worker.threads";
     public static final String CONNECTION_TIMEOUT_SECS = "router.connection.idle.timeout.secs";
+    public static final String BACKEND_CONNECTION_POOL_SIZE = "router.backend.connection.pool.size";
+    public static final String BACKEND_MAX_CONNECTIONS = "router.backend.max.connections";
 
     /**
      * Defaults.
@@ -459,6 +502,10 @@ public final class Constants {
 
     public static final String SERVER_ADDRESS = "metrics.query.bind.address";
     public static final String SERVER_PORT = "metrics.query.bind.port";
+    public static final String QUERY_BATCH_THREADS = "metrics.query.batch.threads";
+    public static final String QUERY_CACHE_SIZE = "metrics.query.cache.size";
+    public static final String QUERY_CACHE_SETTLE_SECONDS = "metrics.query.cache.settle.seconds";
+    public static final String QUERY_SCAN_THREADS = "metrics.query.scan.threads";
 
     public static final String KAFKA_TOPIC_PREFIX = "metrics.kafka.topic.prefix";
     public static final String KAFKA_PARTITION_SIZE = "metrics.kafka.partition.size";
@@ -565,6 +612,14 @@ public final class Constants {
         public static final String OP_COUNT = "dataset.store.ops";
         public static final String WRITE_COUNT = "dataset.store.writes";
         public static final String WRITE_BYTES = "dataset.store.bytes";
+        public static final String BUFFER_SPILL_COUNT = "dataset.buffer.spills";
+        public static final String BUFFER_SPILL_BYTES = "dataset.buffer.spill.bytes";
+        public static final String SCAN_ROWS_FETCHED = "dataset.store.scan.rows.fetched";
+        public static final String SCAN_ROWS_CONSUMED = "dataset.store.scan.rows.consumed";
+        public static final String READ_BUFFERED_COUNT = "dataset.store.reads.buffered";
+        public static final String READ_PERSISTED_COUNT = "dataset.store.reads.persisted";
+        // Followed by the operation, then by .count, .total.us or the name of a histogram bucket, e.g. .le.500us
+        public static final String STORE_LATENCY_PREFIX = "dataset.store.latency.";
       }
 
       /**
@@ -573,6 +628,9 @@ public final class Constants {
       public static final class Log {
         public static final String PROCESS_DELAY = "log.process.delay";
         public static final String PROCESS_MESSAGES_COUNT = "log.process.message.count";
+        public static final String PUBLISH_QUEUE_SIZE = "log.publish.queue.size";
+        public static final String PUBLISH_BATCH_SIZE = "log.publish.batch.size";
+        public static final String PUBLISH_DROPPED = "log.publish.dropped";
       }
     }
 
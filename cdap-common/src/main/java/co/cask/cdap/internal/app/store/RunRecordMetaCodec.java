@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.internal.app.store;
+
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.Codec;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.io.Encoder;
+import co.cask.cdap.proto.ProgramRunStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Binary {@link Codec} for {@link RunRecordMeta}, which is written and read on every program start and stop.
+ * The encoded form starts with a version number, so that fields can be added without breaking existing rows.
+ */
+public final class RunRecordMetaCodec implements Codec<RunRecordMeta> {
+
+  private static final int VERSION = 1;
+
+  @Override
+  public byte[] encode(RunRecordMeta record) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+    Encoder encoder = new BinaryEncoder(bos);
+    encoder.writeInt(VERSION);
+    encoder.writeString(record.getPid());
+    encoder.writeLong(record.getStartTs());
+    encoder.writeBool(record.getStopTs() != null);
+    if (record.getStopTs() != null) {
+      encoder.writeLong(record.getStopTs());
+    }
+    encoder.writeString(record.getStatus().name());
+    writeMap(encoder, record.getProperties());
+    writeMap(encoder, record.getSystemArgs());
+    encoder.writeBool(record.getTwillRunId() != null);
+    if (record.getTwillRunId() != null) {
+      encoder.writeString(record.getTwillRunId());
+    }
+    return bos.toByteArray();
+  }
+
+  @Override
+  public RunRecordMeta decode(byte[] data) throws IOException {
+    Decoder decoder = new BinaryDecoder(new ByteArrayInputStream(data));
+    int version = decoder.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unknown encoding version for RunRecordMeta: " + version);
+    }
+    String pid = decoder.readString();
+    long startTs = decoder.readLong();
+    Long stopTs = decoder.readBool() ? decoder.readLong() : null;
+    ProgramRunStatus status = ProgramRunStatus.valueOf(decoder.readString());
+    Map<String, String> properties = readMap(decoder);
+    Map<String, String> systemArgs = readMap(decoder);
+    String twillRunId = decoder.readBool() ? decoder.readString() : null;
+    return new RunRecordMeta(pid, startTs, stopTs, status, properties, systemArgs, twillRunId);
+  }
+
+  private void writeMap(Encoder encoder, @Nullable Map<String, String> map) throws IOException {
+    // -1 distinguishes a null map from an empty one
+    if (map == null) {
+      encoder.writeInt(-1);
+      return;
+    }
+    encoder.writeInt(map.size());
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      encoder.writeString(entry.getKey());
+      encoder.writeString(entry.getValue());
+    }
+  }
+
+  @Nullable
+  private Map<String, String> readMap(Decoder decoder) throws IOException {
+    int size = decoder.readInt();
+    if (size < 0) {
+      return null;
+    }
+    Map<String, String> map = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      map.put(decoder.readString(), decoder.readString());
+    }
+    return map;
+  }
+}
@@ -17,6 +17,7 @@
 package co.cask.cdap.data2.dataset2.lib.table.hbase;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.batch.Split;
 import co.cask.cdap.api.dataset.DatasetAdmin;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetProperties;
@@ -24,9 +25,13 @@ import co.cask.cdap.api.dataset.DatasetSpecification;
 import co.cask.cdap.api.dataset.table.ConflictDetection;
 import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Put;
+import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.api.dataset.table.TableSplit;
 import co.cask.cdap.api.dataset.table.Tables;
+import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.namespace.SimpleNamespaceQueryAdmin;
 import co.cask.cdap.data.hbase.HBaseTestBase;
 import co.cask.cdap.data.hbase.HBaseTestFactory;
@@ -67,7 +72,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -122,6 +129,16 @@ public class HBaseTableTest extends BufferingTableTest<BufferingTable> {
     return new HBaseTable(datasetContext, spec, cConf, TEST_HBASE.getConfiguration(), hBaseTableUtil);
   }
 
+  @Override
+  protected BufferingTable getTable(DatasetContext datasetContext, String name,
+                                    DatasetProperties props) throws Exception {
+    DatasetSpecification spec = DatasetSpecification.builder(name, "foo")
+      .property(Table.PROPERTY_READLESS_INCREMENT, "true")
+      .properties(props.getProperties())
+      .build();
+    return new HBaseTable(datasetContext, spec, cConf, TEST_HBASE.getConfiguration(), hBaseTableUtil);
+  }
+
   @Override
   protected HBaseTableAdmin getTableAdmin(DatasetContext datasetContext, String name,
                                           DatasetProperties props) throws IOException {
@@ -223,6 +240,158 @@ public class HBaseTableTest extends BufferingTableTest<BufferingTable> {
     }
   }
 
+  @Test
+  public void testRegionSplits() throws Exception {
+    byte[][] splits = new byte[][] {Bytes.toBytes("a"), Bytes.toBytes("b"), Bytes.toBytes("c")};
+    DatasetProperties props = DatasetProperties.builder().add("hbase.splits", new Gson().toJson(splits)).build();
+    String splitsTable = "regionsplits";
+    HBaseTableAdmin admin = getTableAdmin(CONTEXT1, splitsTable, props);
+    admin.create();
+    try {
+      BufferingTable table = getTable(CONTEXT1, splitsTable, ConflictDetection.COLUMN);
+
+      // by default, each region is divided into two splits, with the region server as location
+      List<Split> tableSplits = table.getSplits(-1, null, null);
+      Assert.assertEquals(8, tableSplits.size());
+      assertContiguousSplits(tableSplits, null, null);
+      Assert.assertNull(((TableSplit) tableSplits.get(0)).getStart());
+      Assert.assertArrayEquals(Bytes.toBytes("a"), ((TableSplit) tableSplits.get(2)).getStart());
+      Assert.assertArrayEquals(Bytes.toBytes("b"), ((TableSplit) tableSplits.get(4)).getStart());
+      Assert.assertArrayEquals(Bytes.toBytes("c"), ((TableSplit) tableSplits.get(6)).getStart());
+      for (Split split : tableSplits) {
+        Assert.assertEquals(1, split.getLocations().length);
+      }
+
+      // one split per region if as many splits are requested as there are regions
+      tableSplits = table.getSplits(4, null, null);
+      Assert.assertEquals(4, tableSplits.size());
+      assertSplit(tableSplits.get(0), null, Bytes.toBytes("a"));
+      assertSplit(tableSplits.get(1), Bytes.toBytes("a"), Bytes.toBytes("b"));
+      assertSplit(tableSplits.get(2), Bytes.toBytes("b"), Bytes.toBytes("c"));
+      assertSplit(tableSplits.get(3), Bytes.toBytes("c"), null);
+
+      // splits are bounded by the requested key range
+      tableSplits = table.getSplits(-1, Bytes.toBytes("a1"), Bytes.toBytes("b"));
+      Assert.assertEquals(8, tableSplits.size());
+      assertContiguousSplits(tableSplits, Bytes.toBytes("a1"), Bytes.toBytes("b"));
+
+      // adjacent regions are combined if fewer splits are requested
+      tableSplits = table.getSplits(2, null, null);
+      Assert.assertEquals(2, tableSplits.size());
+      assertSplit(tableSplits.get(0), null, Bytes.toBytes("b"));
+      assertSplit(tableSplits.get(1), Bytes.toBytes("b"), null);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  @Test
+  public void testSingleRegionSplits() throws Exception {
+    String singleRegionTable = "singleregion";
+    HBaseTableAdmin admin = getTableAdmin(CONTEXT1, singleRegionTable, DatasetProperties.EMPTY);
+    admin.create();
+    try {
+      BufferingTable table = getTable(CONTEXT1, singleRegionTable, ConflictDetection.COLUMN);
+
+      // the only region is divided into the default number of splits, all located at its region server
+      List<Split> tableSplits = table.getSplits(-1, null, null);
+      Assert.assertEquals(8, tableSplits.size());
+      assertContiguousSplits(tableSplits, null, null);
+      String[] locations = tableSplits.get(0).getLocations();
+      Assert.assertEquals(1, locations.length);
+      for (Split split : tableSplits) {
+        Assert.assertArrayEquals(locations, split.getLocations());
+      }
+
+      // or into the requested number of splits, within the requested key range
+      tableSplits = table.getSplits(3, Bytes.toBytes("a"), Bytes.toBytes("z"));
+      Assert.assertEquals(3, tableSplits.size());
+      assertContiguousSplits(tableSplits, Bytes.toBytes("a"), Bytes.toBytes("z"));
+    } finally {
+      admin.drop();
+    }
+  }
+
+  @Test
+  public void testScanRowMetrics() throws Exception {
+    String scanMetricsTable = "scanmetrics";
+    HBaseTableAdmin admin = getTableAdmin(CONTEXT1, scanMetricsTable, DatasetProperties.EMPTY);
+    admin.create();
+    try {
+      BufferingTable table = getTable(CONTEXT1, scanMetricsTable, ConflictDetection.COLUMN);
+      final Map<String, Long> metrics = new HashMap<>();
+      table.setMetricsCollector(new MetricsCollector() {
+        @Override
+        public void increment(String metricName, long value) {
+          Long old = metrics.get(metricName);
+          metrics.put(metricName, old == null ? value : old + value);
+        }
+
+        @Override
+        public void gauge(String metricName, long value) {
+          metrics.put(metricName, value);
+        }
+      });
+
+      Transaction tx = txClient.startShort();
+      table.startTx(tx);
+      for (int i = 0; i < 10; i++) {
+        table.put(new Put(Bytes.toBytes("r" + i)).add("c1", 1L).add("c2", 2L).add("c3", 3L));
+      }
+      Assert.assertTrue(table.commitTx());
+      Assert.assertTrue(txClient.commit(tx));
+      table.postTxCommit();
+
+      tx = txClient.startShort();
+      table.startTx(tx);
+      // HBase returns each column in its own result, four results at a time
+      co.cask.cdap.api.dataset.table.Scan scan = new co.cask.cdap.api.dataset.table.Scan(null, null)
+        .setBatch(1).setCaching(4);
+      Scanner scanner = table.scan(scan);
+      Assert.assertEquals(3, scanner.next().getColumns().size());
+      Assert.assertEquals(3, scanner.next().getColumns().size());
+      scanner.close();
+      // closing again must not report again
+      scanner.close();
+      // the table scanner reads one row ahead, so three merged rows were consumed. The results of four rows were read,
+      // including the first result of the fourth row, and two more results of the last batch were fetched.
+      Assert.assertEquals(Long.valueOf(3), metrics.get(Constants.Metrics.Name.Dataset.SCAN_ROWS_CONSUMED));
+      Assert.assertEquals(Long.valueOf(6), metrics.get(Constants.Metrics.Name.Dataset.SCAN_ROWS_FETCHED));
+
+      // a scan that reads all rows fetches exactly the rows it consumes
+      metrics.clear();
+      scanner = table.scan(scan);
+      int rows = 0;
+      while (scanner.next() != null) {
+        rows++;
+      }
+      scanner.close();
+      Assert.assertEquals(10, rows);
+      Assert.assertEquals(Long.valueOf(10), metrics.get(Constants.Metrics.Name.Dataset.SCAN_ROWS_CONSUMED));
+      Assert.assertEquals(Long.valueOf(10), metrics.get(Constants.Metrics.Name.Dataset.SCAN_ROWS_FETCHED));
+      txClient.abort(tx);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  // asserts that the splits cover exactly the given key range, in order and without gaps
+  private void assertContiguousSplits(List<Split> splits, byte[] expectedStart, byte[] expectedStop) {
+    Assert.assertArrayEquals(expectedStart, ((TableSplit) splits.get(0)).getStart());
+    for (int i = 1; i < splits.size(); i++) {
+      TableSplit previous = (TableSplit) splits.get(i - 1);
+      byte[] start = ((TableSplit) splits.get(i)).getStart();
+      Assert.assertArrayEquals(previous.getStop(), start);
+      Assert.assertTrue(previous.getStart() == null || Bytes.compareTo(previous.getStart(), start) < 0);
+    }
+    Assert.assertArrayEquals(expectedStop, ((TableSplit) splits.get(splits.size() - 1)).getStop());
+  }
+
+  private void assertSplit(Split split, byte[] expectedStart, byte[] expectedStop) {
+    Assert.assertArrayEquals(expectedStart, ((TableSplit) split).getStart());
+    Assert.assertArrayEquals(expectedStop, ((TableSplit) split).getStop());
+  }
+
   @Test
   public void testEnableIncrements() throws Exception {
     // setup a table with increments disabled and with it enabled
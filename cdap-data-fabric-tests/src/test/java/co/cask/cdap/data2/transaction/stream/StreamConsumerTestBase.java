@@ -311,6 +311,98 @@ public abstract class StreamConsumerTestBase {
     }
   }
 
+  @Test
+  public void testFIFORangeClaim() throws Exception {
+    String stream = "testFIFORangeClaim";
+    Id.Stream streamId = Id.Stream.from(TEST_NAMESPACE, stream);
+    StreamAdmin streamAdmin = getStreamAdmin();
+    streamAdmin.create(streamId);
+    StreamConfig streamConfig = streamAdmin.getConfig(streamId);
+
+    // Writes 10 events, which all fall into the same claim range
+    writeEvents(streamConfig, "Testing ", 10);
+
+    cConf.setLong(Constants.Stream.CONSUMER_FIFO_CLAIM_RANGE_SIZE, 1024 * 1024);
+    try {
+      streamAdmin.configureInstances(streamId, 0L, 3);
+
+      StreamConsumerFactory consumerFactory = getConsumerFactory();
+      List<StreamConsumer> consumers = Lists.newArrayList();
+      List<TransactionContext> txContexts = Lists.newArrayList();
+      for (int i = 0; i < 3; i++) {
+        consumers.add(consumerFactory.create(streamId, "fifo.range",
+                                             new ConsumerConfig(0L, i, 3, DequeueStrategy.FIFO, null)));
+        txContexts.add(createTxContext(consumers.get(i)));
+      }
+
+      // The last consumer claims the range and processes the first three events
+      txContexts.get(2).start();
+      DequeueResult<StreamEvent> result = consumers.get(2).poll(3, 1, TimeUnit.SECONDS);
+      Assert.assertEquals(3, result.size());
+      txContexts.get(2).finish();
+
+      // Other consumers skip the whole range
+      for (int i = 0; i < 2; i++) {
+        txContexts.get(i).start();
+        Assert.assertTrue(consumers.get(i).poll(1, 1, TimeUnit.SECONDS).isEmpty());
+        txContexts.get(i).finish();
+      }
+
+      // On rollback, the claimed events are retried by the same consumer
+      txContexts.get(2).start();
+      result = consumers.get(2).poll(2, 1, TimeUnit.SECONDS);
+      Assert.assertEquals("Testing 3", Charsets.UTF_8.decode(result.iterator().next().getBody()).toString());
+      txContexts.get(2).abort();
+
+      txContexts.get(2).start();
+      result = consumers.get(2).poll(2, 1, TimeUnit.SECONDS);
+      Assert.assertEquals("Testing 3", Charsets.UTF_8.decode(result.iterator().next().getBody()).toString());
+      txContexts.get(2).abort();
+
+      for (StreamConsumer consumer : consumers) {
+        consumer.close();
+      }
+
+      // Reconfigure to have two consumers. The range claimed by the third consumer is taken over by one of them.
+      streamAdmin.configureInstances(streamId, 0L, 2);
+      consumers.clear();
+      txContexts.clear();
+      for (int i = 0; i < 2; i++) {
+        consumers.add(consumerFactory.create(streamId, "fifo.range",
+                                             new ConsumerConfig(0L, i, 2, DequeueStrategy.FIFO, null)));
+        txContexts.add(createTxContext(consumers.get(i)));
+      }
+
+      List<String> messages = Lists.newArrayList();
+      boolean done;
+      do {
+        done = true;
+        for (int i = 0; i < consumers.size(); i++) {
+          txContexts.get(i).start();
+          result = consumers.get(i).poll(2, 1, TimeUnit.SECONDS);
+          for (StreamEvent event : result) {
+            messages.add(Charsets.UTF_8.decode(event.getBody()).toString());
+          }
+          done = done && result.isEmpty();
+          txContexts.get(i).finish();
+        }
+      } while (!done);
+
+      // Each of the remaining events is processed exactly once
+      List<String> expected = Lists.newArrayList();
+      for (int i = 3; i < 10; i++) {
+        expected.add("Testing " + i);
+      }
+      Assert.assertEquals(expected, messages);
+
+      for (StreamConsumer consumer : consumers) {
+        consumer.close();
+      }
+    } finally {
+      cConf.unset(Constants.Stream.CONSUMER_FIFO_CLAIM_RANGE_SIZE);
+    }
+  }
+
   @Test
   public void testTTL() throws Exception {
     String stream = "testTTL";
@@ -44,10 +44,12 @@ import co.cask.cdap.proto.Id;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -217,6 +219,8 @@ public class DistributedStreamService extends AbstractStreamService {
    */
   private void aggregate(Set<Id.Stream> streamIds) {
     Set<Id.Stream> existingAggregators = Sets.newHashSet(aggregators.keySet());
+    // The initialization notifications of all new aggregators are published in one batch
+    Multimap<Id.NotificationFeed, StreamSizeNotification> notifications = ArrayListMultimap.create();
     for (Id.Stream streamId : streamIds) {
       if (existingAggregators.remove(streamId)) {
         continue;
@@ -229,7 +233,8 @@ public class DistributedStreamService extends AbstractStreamService {
           }
           int threshold = streamAdmin.getConfig(streamId).getNotificationThresholdMB();
           long eventsSize = getStreamEventsSize(streamId);
-          createSizeAggregator(streamId, eventsSize, threshold);
+          StreamSizeAggregator aggregator = createSizeAggregator(streamId, eventsSize, threshold);
+          notifications.put(aggregator.getStreamFeed(), aggregator.getInitNotification());
           LOG.debug("Size of the events ingested in stream {}: {}", streamId, eventsSize);
           break;
         } catch (Exception e) {
@@ -255,6 +260,7 @@ public class DistributedStreamService extends AbstractStreamService {
       }
       aggregators.remove(outdatedStream);
     }
+    publishNotifications(notifications);
   }
 
   /**
@@ -286,11 +292,23 @@ public class DistributedStreamService extends AbstractStreamService {
 
     StreamSizeAggregator newAggregator = new StreamSizeAggregator(streamId, baseCount, threshold,
                                                                   thresholdSubscription);
-    newAggregator.init();
     aggregators.put(streamId, newAggregator);
     return newAggregator;
   }
 
+  private void publishNotifications(Multimap<Id.NotificationFeed, StreamSizeNotification> notifications) {
+    if (notifications.isEmpty()) {
+      return;
+    }
+    try {
+      notificationService.publish(notifications, StreamSizeNotification.class).get();
+    } catch (NotificationFeedException e) {
+      LOG.warn("Error with notification feeds {}", notifications.keySet(), e);
+    } catch (Throwable t) {
+      LOG.warn("Could not publish notifications on feeds {}", notifications.keySet(), t);
+    }
+  }
+
   private ZKClient getCoordinatorZKClient() {
     return ZKClients.namespace(zkClient, Constants.Stream.STREAM_ZK_COORDINATION_NAMESPACE);
   }
@@ -323,14 +341,21 @@ public class DistributedStreamService extends AbstractStreamService {
           @Override
           public void received(StreamWriterHeartbeat heartbeat, NotificationContext notificationContext) {
             LOG.trace("Received heartbeat {}", heartbeat);
+            // The notifications of all streams in the heartbeat are published in one batch
+            Multimap<Id.NotificationFeed, StreamSizeNotification> notifications = ArrayListMultimap.create();
             for (Map.Entry<Id.Stream, Long> entry : heartbeat.getStreamsSizes().entrySet()) {
               StreamSizeAggregator streamSizeAggregator = aggregators.get(entry.getKey());
               if (streamSizeAggregator == null) {
                 LOG.trace("Aggregator for stream {} is null", entry.getKey());
                 continue;
               }
-              streamSizeAggregator.bytesReceived(heartbeat.getInstanceId(), entry.getValue());
+              StreamSizeNotification notification =
+                streamSizeAggregator.bytesReceived(heartbeat.getInstanceId(), entry.getValue());
+              if (notification != null) {
+                notifications.put(streamSizeAggregator.getStreamFeed(), notification);
+              }
             }
+            publishNotifications(notifications);
           }
         }, heartbeatsSubscriptionExecutor);
       } catch (NotificationFeedException e) {
@@ -588,12 +613,15 @@ public class DistributedStreamService extends AbstractStreamService {
         .build();
     }
 
+    Id.NotificationFeed getStreamFeed() {
+      return streamFeed;
+    }
+
     /**
-     * Initialize this {@link StreamSizeAggregator}.
+     * Returns the notification to publish when this {@link StreamSizeAggregator} is created.
      */
-    public void init() {
-      // Publish an initialization notification
-      publishNotification(streamInitSize);
+    public StreamSizeNotification getInitNotification() {
+      return new StreamSizeNotification(System.currentTimeMillis(), streamInitSize);
     }
 
     @Override
@@ -617,17 +645,23 @@ public class DistributedStreamService extends AbstractStreamService {
      *
      * @param instanceId id of the stream writer from which we received some bytes
      * @param nbBytes number of bytes of data received
+     * @return the notification to publish if the current size of data is enough to trigger one, otherwise
+     *         {@code null}
      */
-    public void bytesReceived(int instanceId, long nbBytes) {
+    @Nullable
+    public StreamSizeNotification bytesReceived(int instanceId, long nbBytes) {
       LOG.trace("Bytes received from instanceId {}: {}B", instanceId, nbBytes);
       streamWriterSizes.put(instanceId, nbBytes);
-      checkSendNotification();
+      return checkSendNotification();
     }
 
     /**
      * Check if the current size of data is enough to trigger a notification.
+     *
+     * @return the notification to publish if it is, otherwise {@code null}
      */
-    private void checkSendNotification() {
+    @Nullable
+    private StreamSizeNotification checkSendNotification() {
       long sum = streamInitSize;
       for (Long size : streamWriterSizes.values()) {
         sum += size;
@@ -635,27 +669,14 @@ public class DistributedStreamService extends AbstractStreamService {
 
       LOG.trace("Check notification publishing: sum is {}, baseCount is {}", sum, streamBaseCount);
       if (sum - streamBaseCount.get() > toBytes(streamThresholdMB.get())) {
-        try {
-          publishNotification(sum);
-        } finally {
-          streamBaseCount.set(sum);
-        }
+        streamBaseCount.set(sum);
+        return new StreamSizeNotification(System.currentTimeMillis(), sum);
       }
+      return null;
     }
 
     private long toBytes(int mb) {
       return ((long) mb) * 1024 * 1024;
     }
-
-    private void publishNotification(long absoluteSize) {
-      try {
-        notificationService.publish(streamFeed, new StreamSizeNotification(System.currentTimeMillis(), absoluteSize))
-          .get();
-      } catch (NotificationFeedException e) {
-        LOG.warn("Error with notification feed {}", streamFeed, e);
-      } catch (Throwable t) {
-        LOG.warn("Could not publish notification on feed {}", streamFeed.getFeedId(), t);
-      }
-    }
   }
 }
@@ -27,7 +27,9 @@ import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import co.cask.cdap.notifications.feeds.NotificationFeedException;
 import co.cask.cdap.notifications.service.NotificationService;
 import co.cask.cdap.proto.Id;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 import com.google.inject.Inject;
 import org.apache.twill.common.Cancellable;
 import org.slf4j.Logger;
@@ -38,6 +40,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
 /**
  * Stream service running in local mode.
@@ -98,7 +101,9 @@ public class LocalStreamService extends AbstractStreamService {
 
   @Override
   protected void runOneIteration() throws Exception {
-    // Get stream size - which will be the entire size - and send a notification if the size is big enough
+    // Get stream size - which will be the entire size - and send a notification if the size is big enough.
+    // The notifications of all streams are published in one batch.
+    Multimap<Id.NotificationFeed, StreamSizeNotification> notifications = ArrayListMultimap.create();
     for (Map.Entry<Id.Namespace, StreamSpecification> streamSpecEntry : streamMetaStore.listStreams().entries()) {
       Id.Stream streamId = Id.Stream.from(streamSpecEntry.getKey(), streamSpecEntry.getValue().getName());
       StreamSizeAggregator streamSizeAggregator = aggregators.get(streamId);
@@ -114,13 +119,30 @@ public class LocalStreamService extends AbstractStreamService {
           }
           streamSizeAggregator = createSizeAggregator(streamId, 0, config.getNotificationThresholdMB());
         }
-        streamSizeAggregator.checkAggregatedSize();
+        StreamSizeNotification notification = streamSizeAggregator.checkAggregatedSize();
+        if (notification != null) {
+          notifications.put(streamSizeAggregator.getStreamFeed(), notification);
+        }
       } catch (Exception e) {
         // Need to catch and not to propagate the exception, otherwise this scheduled service will be terminated
         // Just log the exception here as the next run iteration should have the problem fixed
         LOG.warn("Exception in aggregating stream size for {}", streamId, e);
       }
     }
+    publishNotifications(notifications);
+  }
+
+  private void publishNotifications(Multimap<Id.NotificationFeed, StreamSizeNotification> notifications) {
+    if (notifications.isEmpty()) {
+      return;
+    }
+    try {
+      notificationService.publish(notifications, StreamSizeNotification.class).get();
+    } catch (NotificationFeedException e) {
+      LOG.warn("Error with notification feeds {}", notifications.keySet(), e);
+    } catch (Throwable t) {
+      LOG.debug("Could not publish notifications on feeds {}", notifications.keySet(), t);
+    }
   }
 
   /**
@@ -195,35 +217,29 @@ public class LocalStreamService extends AbstractStreamService {
       streamThresholdMB.set(newThreshold);
     }
 
+    Id.NotificationFeed getStreamFeed() {
+      return streamFeed;
+    }
+
     /**
      * Check that the aggregated size of the heartbeats received by all Stream writers is higher than some threshold.
-     * If it is, we publish a notification.
+     *
+     * @return the notification to publish if it is, otherwise {@code null}
      */
-    public void checkAggregatedSize() {
+    @Nullable
+    public StreamSizeNotification checkAggregatedSize() {
       long sum = streamInitSize + streamWriterSizeCollector.getTotalCollected(streamId);
+      StreamSizeNotification notification = null;
       if (!published || sum - streamBaseCount.get() > toBytes(streamThresholdMB.get())) {
-        try {
-          publishNotification(sum);
-        } finally {
-          streamBaseCount.set(sum);
-        }
+        notification = new StreamSizeNotification(System.currentTimeMillis(), sum);
+        streamBaseCount.set(sum);
       }
       published = true;
+      return notification;
     }
 
     private long toBytes(int mb) {
       return ((long) mb) * 1024 * 1024;
     }
-
-    private void publishNotification(long absoluteSize) {
-      try {
-        notificationService.publish(streamFeed, new StreamSizeNotification(System.currentTimeMillis(), absoluteSize))
-          .get();
-      } catch (NotificationFeedException e) {
-        LOG.warn("Error with notification feed {}", streamFeed, e);
-      } catch (Throwable t) {
-        LOG.debug("Could not publish notification on feed {}", streamFeed.getFeedId(), t);
-      }
-    }
   }
 }
@@ -236,6 +236,15 @@ public abstract class DynamicDatasetCache implements DatasetContext, Supplier<Tr
    */
   public abstract TransactionContext newTransactionContext();
 
+  /**
+   * Same as {@link #newTransactionContext()}, except that transactions of the returned context are started and
+   * committed through the given transaction system client, instead of the one given to this cache.
+   *
+   * @param txClient the transaction system client to use for the transactions of the new context
+   * @return a new transaction context
+   */
+  public abstract TransactionContext newTransactionContext(TransactionSystemClient txClient);
+
   /**
    * Dismiss the current transaction context. This releases the references to the context's
    * transaction-aware datasets so that they can be collected by the garbage collector (if no one
@@ -113,6 +113,11 @@ public class MultiThreadDatasetCache extends DynamicDatasetCache {
     return entryForCurrentThread().newTransactionContext();
   }
 
+  @Override
+  public TransactionContext newTransactionContext(TransactionSystemClient txClient) {
+    return entryForCurrentThread().newTransactionContext(txClient);
+  }
+
   @Override
   public void dismissTransactionContext() {
     entryForCurrentThread().dismissTransactionContext();
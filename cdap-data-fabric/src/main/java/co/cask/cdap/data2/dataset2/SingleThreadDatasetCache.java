@@ -258,8 +258,13 @@ public class SingleThreadDatasetCache extends DynamicDatasetCache {
 
   @Override
   public TransactionContext newTransactionContext() {
+    return newTransactionContext(txClient);
+  }
+
+  @Override
+  public TransactionContext newTransactionContext(TransactionSystemClient txClient) {
     dismissTransactionContext();
-    txContext = new DelayedDiscardingTransactionContext(activeTxAwares.values(), extraTxAwares);
+    txContext = new DelayedDiscardingTransactionContext(txClient, activeTxAwares.values(), extraTxAwares);
     return txContext;
   }
 
@@ -337,6 +342,7 @@ public class SingleThreadDatasetCache extends DynamicDatasetCache {
    */
   private class DelayedDiscardingTransactionContext extends TransactionContext {
 
+    private final TransactionSystemClient txClient;
     private final Collection<TransactionAware> txAwares;
     private final Collection<TransactionAware> toDiscard;
     private TransactionContext txContext;
@@ -344,9 +350,11 @@ public class SingleThreadDatasetCache extends DynamicDatasetCache {
     /**
      * Constructs the context from the transaction system client (needed by TransactionContext).
      */
-    private DelayedDiscardingTransactionContext(Collection<TransactionAware> txAwares,
+    private DelayedDiscardingTransactionContext(TransactionSystemClient txClient,
+                                                Collection<TransactionAware> txAwares,
                                                 Collection<TransactionAware> extraTxAwares) {
       super(txClient);
+      this.txClient = txClient;
       this.toDiscard = Sets.newIdentityHashSet();
       this.txAwares = Sets.newIdentityHashSet();
       this.txAwares.addAll(txAwares);
@@ -400,7 +408,7 @@ public class SingleThreadDatasetCache extends DynamicDatasetCache {
                  txContext.getCurrentTransaction().getTransactionId());
         cleanup();
       }
-      txContext = new TransactionContext(SingleThreadDatasetCache.this.txClient, txAwares);
+      txContext = new TransactionContext(txClient, txAwares);
       txContext.start();
     }
 
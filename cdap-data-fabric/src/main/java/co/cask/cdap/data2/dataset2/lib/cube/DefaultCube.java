@@ -16,6 +16,7 @@
 
 package co.cask.cdap.data2.dataset2.lib.cube;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeDeleteQuery;
@@ -23,6 +24,7 @@ import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
 import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
 import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
 import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
 import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.api.dataset.metrics.MeteredDataset;
@@ -33,8 +35,13 @@ import co.cask.cdap.data2.dataset2.lib.timeseries.FactScan;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanResult;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanner;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import co.cask.cdap.data2.dataset2.lib.timeseries.HyperLogLog;
+import co.cask.cdap.data2.dataset2.lib.timeseries.QuantileSketch;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -52,6 +59,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -64,6 +76,13 @@ public class DefaultCube implements Cube, MeteredDataset {
   // hard-limit on max records to scan
   private static final int MAX_RECORDS_TO_SCAN = 100 * 1000;
 
+  // Quantile computed by each of the aggregation functions over DISTRIBUTION measures
+  private static final Map<AggregationFunction, Double> QUANTILES = ImmutableMap.of(
+    AggregationFunction.P50, 0.5d,
+    AggregationFunction.P90, 0.9d,
+    AggregationFunction.P95, 0.95d,
+    AggregationFunction.P99, 0.99d);
+
   private final Map<Integer, FactTable> resolutionToFactTable;
   private final Map<String, ? extends Aggregation> aggregations;
   private final Map<String, AggregationAlias> aggregationAliasMap;
@@ -71,6 +90,13 @@ public class DefaultCube implements Cube, MeteredDataset {
   @Nullable
   private MetricsCollector metrics;
 
+  @Nullable
+  private ExecutorService scanExecutor;
+  private int maxScanSplits = 1;
+  private int maxRecordsToScan = MAX_RECORDS_TO_SCAN;
+  // resolution -> number of seconds its data is retained for
+  private Map<Integer, Long> retentionSeconds = ImmutableMap.of();
+
   public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
                      Map<String, ? extends Aggregation> aggregations,
                      Map<String, AggregationAlias> aggregationAliasMap) {
@@ -171,27 +197,222 @@ public class DefaultCube implements Cube, MeteredDataset {
     }
 
     // 1) find aggregation to query
-    Aggregation agg;
-    String aggName;
+    ImmutablePair<String, Aggregation> aggregation = getAggregation(query);
+
+    // 2) and 3) build a scan for a query and execute it
+    Table<Map<String, String>, String, Map<Long, Long>> resultMap = scan(query, aggregation);
+
+    incrementMetric("cube.query.request.success.count", 1);
+    incrementMetric("cube.query.result.size", resultMap.size());
+
+    Collection<TimeSeries> timeSeries = convertToQueryResult(query, resultMap);
+    incrementMetric("cube.query.result.timeseries.count", timeSeries.size());
+
+    return timeSeries;
+  }
+
+  /**
+   * Plans a query that stitches the results of multiple resolutions, as returned by
+   * {@link #planStitchedQuery(Collection, int, long, long)}, with the resolutions of this cube.
+   *
+   * Resolutions are only used for the parts of the time range they still retain data for, as set with
+   * {@link #setRetention(Map)}.
+   *
+   * @param query the query; its resolution is the finest resolution to use
+   * @return the intervals to query, in time order
+   */
+  public List<ResolutionInterval> planStitchedQuery(CubeQuery query) {
+    if (!resolutionToFactTable.containsKey(query.getResolution())) {
+      throw new IllegalArgumentException("There's no data aggregated for specified resolution to satisfy the query: " +
+                                           query.toString());
+    }
+    long nowTs = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    Map<Integer, Long> retainedSinceTs = Maps.newHashMap();
+    for (Map.Entry<Integer, Long> entry : retentionSeconds.entrySet()) {
+      retainedSinceTs.put(entry.getKey(), nowTs - entry.getValue());
+    }
+    return planStitchedQuery(resolutionToFactTable.keySet(), retainedSinceTs, query.getResolution(),
+                             query.getStartTs(), query.getEndTs());
+  }
+
+  /**
+   * Executes a query by stitching the results of the given intervals, each queried in its own resolution, as
+   * planned by {@link #planStitchedQuery(CubeQuery)}. Time values are at the start of the resolution bucket they were
+   * aggregated in, so the returned time series have coarser buckets for older and finer buckets for more recent
+   * intervals. Interpolation is done within each interval, and the limit of the query applies to the stitched
+   * time series.
+   *
+   * @param query the query to execute; its resolution and time range are ignored
+   * @param plan the intervals to query, in time order
+   */
+  public Collection<TimeSeries> query(CubeQuery query, List<ResolutionInterval> plan) {
+    incrementMetric("cube.query.request.count", 1);
+    incrementMetric("cube.query.stitched.count", 1);
+
+    for (ResolutionInterval interval : plan) {
+      if (!resolutionToFactTable.containsKey(interval.getResolution())) {
+        incrementMetric("cube.query.request.failure.count", 1);
+        throw new IllegalArgumentException("There's no data aggregated for resolution " + interval.getResolution() +
+                                             " to satisfy the query: " + query.toString());
+      }
+    }
+
+    ImmutablePair<String, Aggregation> aggregation = getAggregation(query);
+
+    // {measure, dimension values} -> time values of all intervals
+    Map<Map.Entry<String, Map<String, String>>, List<TimeValue>> stitched = Maps.newLinkedHashMap();
+    for (ResolutionInterval interval : plan) {
+      CubeQuery intervalQuery = new CubeQuery(aggregation.getFirst(), interval.getStartTs(), interval.getEndTs(),
+                                              interval.getResolution(), Integer.MAX_VALUE,
+                                              query.getMeasurements(), query.getDimensionValues(),
+                                              query.getGroupByDimensions(), query.getInterpolator());
+      Table<Map<String, String>, String, Map<Long, Long>> resultMap = scan(intervalQuery, aggregation);
+      for (TimeSeries timeSeries : convertToQueryResult(intervalQuery, resultMap)) {
+        Map.Entry<String, Map<String, String>> key = Maps.immutableEntry(timeSeries.getMeasureName(),
+                                                                         timeSeries.getDimensionValues());
+        List<TimeValue> timeValues = stitched.get(key);
+        if (timeValues == null) {
+          timeValues = Lists.newArrayList();
+          stitched.put(key, timeValues);
+        }
+        timeValues.addAll(timeSeries.getTimeValues());
+      }
+    }
+
+    // Same as for single resolution queries, at least one value is returned
+    int limit = Math.max(1, query.getLimit());
+    List<TimeSeries> timeSeries = Lists.newArrayListWithCapacity(stitched.size());
+    for (Map.Entry<Map.Entry<String, Map<String, String>>, List<TimeValue>> entry : stitched.entrySet()) {
+      List<TimeValue> timeValues = entry.getValue();
+      timeSeries.add(new TimeSeries(entry.getKey().getKey(), entry.getKey().getValue(),
+                                    timeValues.subList(0, Math.min(limit, timeValues.size()))));
+    }
+
+    incrementMetric("cube.query.request.success.count", 1);
+    incrementMetric("cube.query.result.timeseries.count", timeSeries.size());
+    return timeSeries;
+  }
+
+  /**
+   * Plans a query that stitches the results of multiple resolutions, so that fewer rows are scanned than when
+   * querying the whole time range in the finest resolution. The coarsest resolution is used for the buckets that
+   * are fully covered by the time range, and the rest of the time range, at the beginning and at the end, is
+   * planned the same way with the next finer resolution, down to the finest resolution, which is used for whatever
+   * is left. For example, a query of the last 30 days with resolutions of 1 hour, 1 minute and 1 second is answered
+   * with hours up to the start of the current hour, minutes up to the start of the current minute, and seconds
+   * after that. Resolutions are expected to be multiples of each other; the ones that are finer than or not
+   * a multiple of the finest resolution are not used, and neither is the totals resolution, {@link Integer#MAX_VALUE},
+   * unless it is the finest resolution.
+   *
+   * @param resolutions the resolutions that can be queried
+   * @param finestResolution the finest resolution to use
+   * @param startTs start of the time range, inclusive
+   * @param endTs end of the time range, inclusive
+   * @return the intervals to query, in time order
+   */
+  static List<ResolutionInterval> planStitchedQuery(Collection<Integer> resolutions, int finestResolution,
+                                                    long startTs, long endTs) {
+    return planStitchedQuery(resolutions, ImmutableMap.<Integer, Long>of(), finestResolution, startTs, endTs);
+  }
+
+  /**
+   * Same as {@link #planStitchedQuery(Collection, int, long, long)}, except that a finer resolution is not used for
+   * a part of the time range that starts before the oldest data it retains. The buckets of the coarser resolution
+   * that enclose that part are used instead, so the time range is rounded out to them.
+   *
+   * @param retainedSinceTs resolution -> timestamp of the oldest data it retains; resolutions that are not in the
+   *                        map retain all data
+   */
+  static List<ResolutionInterval> planStitchedQuery(Collection<Integer> resolutions,
+                                                    Map<Integer, Long> retainedSinceTs, int finestResolution,
+                                                    long startTs, long endTs) {
+    SortedSet<Integer> coarseToFine = Sets.newTreeSet(Collections.reverseOrder());
+    for (int resolution : resolutions) {
+      // The totals resolution has a single bucket for all time, which can't be stitched with other resolutions
+      if (resolution != Integer.MAX_VALUE && resolution >= finestResolution && resolution % finestResolution == 0) {
+        coarseToFine.add(resolution);
+      }
+    }
+    coarseToFine.add(finestResolution);
+
+    List<ResolutionInterval> plan = Lists.newArrayList();
+    planStitchedQuery(ImmutableList.copyOf(coarseToFine), retainedSinceTs, 0, startTs, endTs, plan);
+    return plan;
+  }
+
+  private static void planStitchedQuery(List<Integer> coarseToFine, Map<Integer, Long> retainedSinceTs, int index,
+                                        long startTs, long endTs, List<ResolutionInterval> plan) {
+    int resolution = coarseToFine.get(index);
+    if (index == coarseToFine.size() - 1) {
+      plan.add(new ResolutionInterval(resolution, startTs, endTs));
+      return;
+    }
+
+    // Buckets in [alignedStartTs, alignedEndTs) are fully covered by the time range
+    long alignedStartTs = (startTs + resolution - 1) / resolution * resolution;
+    long alignedEndTs = (endTs + 1) / resolution * resolution;
+    if (alignedStartTs >= alignedEndTs) {
+      planFinerStitchedQuery(coarseToFine, retainedSinceTs, index, startTs, endTs, plan);
+      return;
+    }
+
+    if (startTs < alignedStartTs) {
+      planFinerStitchedQuery(coarseToFine, retainedSinceTs, index, startTs, alignedStartTs - 1, plan);
+    }
+    plan.add(new ResolutionInterval(resolution, alignedStartTs, alignedEndTs - 1));
+    if (alignedEndTs <= endTs) {
+      planFinerStitchedQuery(coarseToFine, retainedSinceTs, index, alignedEndTs, endTs, plan);
+    }
+  }
+
+  /**
+   * Plans a part of the time range that is not fully covered by buckets of the resolution at the given index with
+   * the finer resolutions, unless the next finer resolution no longer retains data for its start.
+   */
+  private static void planFinerStitchedQuery(List<Integer> coarseToFine, Map<Integer, Long> retainedSinceTs,
+                                             int index, long startTs, long endTs, List<ResolutionInterval> plan) {
+    Long finerRetainedSinceTs = retainedSinceTs.get(coarseToFine.get(index + 1));
+    if (finerRetainedSinceTs == null || startTs >= finerRetainedSinceTs) {
+      planStitchedQuery(coarseToFine, retainedSinceTs, index + 1, startTs, endTs, plan);
+      return;
+    }
+    int resolution = coarseToFine.get(index);
+    plan.add(new ResolutionInterval(resolution, startTs / resolution * resolution,
+                                    (endTs / resolution + 1) * resolution - 1));
+  }
+
+  /**
+   * Finds the aggregation to execute the given query in, either the one specified in the query or the best one that
+   * has all the dimensions of the query.
+   */
+  private ImmutablePair<String, Aggregation> getAggregation(CubeQuery query) {
     if (query.getAggregation() != null) {
-      aggName = query.getAggregation();
-      agg = aggregations.get(query.getAggregation());
+      Aggregation agg = aggregations.get(query.getAggregation());
       if (agg == null) {
         incrementMetric("cube.query.request.failure.count", 1);
         throw new IllegalArgumentException(
           String.format("Specified aggregation %s is not found in cube aggregations: %s",
                         query.getAggregation(), aggregations.keySet().toString()));
       }
-    } else {
-      ImmutablePair<String, Aggregation> aggregation = findAggregation(query);
-      if (aggregation == null) {
-        incrementMetric("cube.query.request.failure.count", 1);
-        throw new IllegalArgumentException("There's no data aggregated for specified dimensions " +
-                                             "to satisfy the query: " + query.toString());
-      }
-      agg = aggregation.getSecond();
-      aggName = aggregation.getFirst();
+      return new ImmutablePair<>(query.getAggregation(), agg);
+    }
+
+    ImmutablePair<String, Aggregation> aggregation = findAggregation(query);
+    if (aggregation == null) {
+      incrementMetric("cube.query.request.failure.count", 1);
+      throw new IllegalArgumentException("There's no data aggregated for specified dimensions " +
+                                           "to satisfy the query: " + query.toString());
     }
+    return aggregation;
+  }
+
+  /**
+   * Scans the fact table of the resolution of the given query in the given aggregation.
+   */
+  private Table<Map<String, String>, String, Map<Long, Long>> scan(CubeQuery query,
+                                                                   ImmutablePair<String, Aggregation> aggregation) {
+    String aggName = aggregation.getFirst();
+    Aggregation agg = aggregation.getSecond();
 
     // tell how many queries end up querying specific pre-aggregated views and resolutions
     incrementMetric("cube.query.agg." + aggName + ".count", 1);
@@ -209,16 +430,68 @@ public class DefaultCube implements Cube, MeteredDataset {
 
     // 3) execute scan query
     FactTable table = resolutionToFactTable.get(query.getResolution());
-    FactScanner scanner = table.scan(scan);
-    Table<Map<String, String>, String, Map<Long, Long>> resultMap = getTimeSeries(query, scanner);
-
-    incrementMetric("cube.query.request.success.count", 1);
-    incrementMetric("cube.query.result.size", resultMap.size());
+    List<FactScan> splits = scanExecutor == null ? ImmutableList.of(scan) : table.split(scan, maxScanSplits);
+    if (splits.size() == 1) {
+      return getTimeSeries(query, table.scan(scan), maxRecordsToScan).timeSeries;
+    }
+    return scanInParallel(query, table, splits);
+  }
 
-    Collection<TimeSeries> timeSeries = convertToQueryResult(query, resultMap);
-    incrementMetric("cube.query.result.timeseries.count", timeSeries.size());
+  /**
+   * Scans the given splits of a scan in parallel and merges the time series read from each of them.
+   * <p>
+   * Rows are keyed by time base first, so a scan in a single thread reads the splits one after the other. Each split
+   * is scanned up to the limit on the number of records to scan, and the splits are merged in order until the
+   * limit is reached. If it is reached in the middle of a split, that split is scanned again up to the remaining
+   * number of records. The results are thus always the same as those of a scan in a single thread.
+   * </p>
+   */
+  private Table<Map<String, String>, String, Map<Long, Long>> scanInParallel(final CubeQuery query,
+                                                                             final FactTable table,
+                                                                             List<FactScan> splits) {
+    incrementMetric("cube.query.scan.splits.count", splits.size());
+    List<Future<ScannedTimeSeries>> futures = Lists.newArrayList();
+    try {
+      for (final FactScan split : splits) {
+        futures.add(scanExecutor.submit(new Callable<ScannedTimeSeries>() {
+          @Override
+          public ScannedTimeSeries call() throws Exception {
+            return getTimeSeries(query, table.scan(split), maxRecordsToScan);
+          }
+        }));
+      }
 
-    return timeSeries;
+      // The splits have no timestamp in common, so the time values of each series are simply combined
+      Table<Map<String, String>, String, Map<Long, Long>> result = HashBasedTable.create();
+      int recordsScanned = 0;
+      for (int i = 0; i < splits.size() && recordsScanned < maxRecordsToScan; i++) {
+        ScannedTimeSeries scanned = futures.get(i).get();
+        if (recordsScanned + scanned.records > maxRecordsToScan) {
+          incrementMetric("cube.query.scan.splits.rescanned.count", 1);
+          scanned = getTimeSeries(query, table.scan(splits.get(i)), maxRecordsToScan - recordsScanned);
+        }
+        recordsScanned += scanned.records;
+        for (Table.Cell<Map<String, String>, String, Map<Long, Long>> cell : scanned.timeSeries.cellSet()) {
+          Map<Long, Long> timeValues = result.get(cell.getRowKey(), cell.getColumnKey());
+          if (timeValues == null) {
+            result.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+          } else {
+            timeValues.putAll(cell.getValue());
+          }
+        }
+      }
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      // Stop the remaining scans if any of them failed
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+    }
   }
 
   @Override
@@ -291,6 +564,35 @@ public class DefaultCube implements Cube, MeteredDataset {
     return result;
   }
 
+  /**
+   * Sets the executor to scan the fact tables with in parallel. Queries with a time range that spans more than one
+   * row time base are split into time ranges that are scanned concurrently, so the fact tables must support
+   * concurrent scans.
+   *
+   * @param executor the executor to scan with, or {@code null} to scan in the calling thread
+   * @param maxScanSplits maximum number of time ranges to split the scan of a query into
+   */
+  public void setScanExecutor(@Nullable ExecutorService executor, int maxScanSplits) {
+    this.scanExecutor = executor;
+    this.maxScanSplits = maxScanSplits;
+  }
+
+  /**
+   * Sets how long the data of each resolution is retained, so that stitched queries do not use a resolution for a
+   * time range it no longer has data for.
+   *
+   * @param retentionSeconds resolution -> number of seconds its data is retained for; resolutions that are not in
+   *                         the map retain all data
+   */
+  public void setRetention(Map<Integer, Long> retentionSeconds) {
+    this.retentionSeconds = ImmutableMap.copyOf(retentionSeconds);
+  }
+
+  @VisibleForTesting
+  void setMaxRecordsToScan(int maxRecordsToScan) {
+    this.maxRecordsToScan = maxRecordsToScan;
+  }
+
   /**
    * Sets {@link MetricsCollector} for metrics reporting.
    * @param metrics {@link MetricsCollector} to set.
@@ -329,11 +631,19 @@ public class DefaultCube implements Cube, MeteredDataset {
     return currentBest;
   }
 
-  private Table<Map<String, String>, String, Map<Long, Long>> getTimeSeries(CubeQuery query, FactScanner scanner) {
+  /**
+   * Reads the time series of the given query from the given scanner.
+   *
+   * @param maxRecords maximum number of records to read from the scanner
+   */
+  private ScannedTimeSeries getTimeSeries(CubeQuery query, FactScanner scanner, int maxRecords) {
     // {dimension values, measure} -> {time -> value}s
     Table<Map<String, String>, String, Map<Long, Long>> result = HashBasedTable.create();
+    // {dimension values, measure} -> {time -> merged sketch}s, for measures queried with sketch functions
+    Table<Map<String, String>, String, Map<Long, HyperLogLog>> distinctSketches = HashBasedTable.create();
+    Table<Map<String, String>, String, Map<Long, QuantileSketch>> distributionSketches = HashBasedTable.create();
 
-    int count = 0;
+    int recordsScanned = 0;
     while (scanner.hasNext()) {
       FactScanResult next = scanner.next();
       incrementMetric("cube.query.scan.records.count", 1);
@@ -366,38 +676,136 @@ public class DefaultCube implements Cube, MeteredDataset {
         continue;
       }
 
-      for (TimeValue timeValue : next) {
-        Map<Long, Long> timeValues = result.get(seriesDimensions, next.getMeasureName());
-        if (timeValues == null) {
-          result.put(seriesDimensions, next.getMeasureName(), Maps.<Long, Long>newHashMap());
+      AggregationFunction function = query.getMeasurements().get(next.getMeasureName());
+      if (AggregationFunction.DISTINCT_COUNT == function) {
+        Map<Long, HyperLogLog> sketches = distinctSketches.get(seriesDimensions, next.getMeasureName());
+        if (sketches == null) {
+          sketches = Maps.newHashMap();
+          distinctSketches.put(seriesDimensions, next.getMeasureName(), sketches);
         }
+        for (Map.Entry<Long, byte[]> cell : next.getCells()) {
+          HyperLogLog sketch = toDistinctSketch(next.getMeasureName(), cell.getValue());
+          HyperLogLog merged = sketches.get(cell.getKey());
+          sketches.put(cell.getKey(), merged == null ? sketch : merged.merge(sketch));
+        }
+      } else if (QUANTILES.containsKey(function)) {
+        Map<Long, QuantileSketch> sketches = distributionSketches.get(seriesDimensions, next.getMeasureName());
+        if (sketches == null) {
+          sketches = Maps.newHashMap();
+          distributionSketches.put(seriesDimensions, next.getMeasureName(), sketches);
+        }
+        for (Map.Entry<Long, byte[]> cell : next.getCells()) {
+          QuantileSketch sketch = toDistributionSketch(next.getMeasureName(), function, cell.getValue());
+          QuantileSketch merged = sketches.get(cell.getKey());
+          sketches.put(cell.getKey(), merged == null ? sketch : merged.merge(sketch));
+        }
+      } else {
+        checkNotSketches(next, function);
+        for (TimeValue timeValue : next) {
+          Map<Long, Long> timeValues = result.get(seriesDimensions, next.getMeasureName());
+          if (timeValues == null) {
+            result.put(seriesDimensions, next.getMeasureName(), Maps.<Long, Long>newHashMap());
+          }
 
-        AggregationFunction function = query.getMeasurements().get(next.getMeasureName());
-        if (AggregationFunction.SUM == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value == null ? 0 : value;
-          value += timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MAX == function) {
-          Long value = result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value > timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MIN == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value < timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.LATEST == function) {
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), timeValue.getValue());
-        } else {
-          // should never happen: developer error
-          throw new RuntimeException("Unknown MeasureType: " + function);
+          if (AggregationFunction.SUM == function) {
+            Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
+            value = value == null ? 0 : value;
+            value += timeValue.getValue();
+            result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
+          } else if (AggregationFunction.MAX == function) {
+            Long value = result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
+            value = value != null && value > timeValue.getValue() ? value : timeValue.getValue();
+            result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
+          } else if (AggregationFunction.MIN == function) {
+            Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
+            value = value != null && value < timeValue.getValue() ? value : timeValue.getValue();
+            result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
+          } else if (AggregationFunction.LATEST == function) {
+            result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), timeValue.getValue());
+          } else {
+            // should never happen: developer error
+            throw new RuntimeException("Unknown MeasureType: " + function);
+          }
         }
       }
-      if (++count >= MAX_RECORDS_TO_SCAN) {
+      if (++recordsScanned >= maxRecords) {
+        // the scanner is only closed by itself when exhausted
+        scanner.close();
         break;
       }
     }
-    return result;
+
+    for (Table.Cell<Map<String, String>, String, Map<Long, HyperLogLog>> cell : distinctSketches.cellSet()) {
+      Map<Long, Long> timeValues = Maps.newHashMap();
+      for (Map.Entry<Long, HyperLogLog> sketch : cell.getValue().entrySet()) {
+        timeValues.put(sketch.getKey(), sketch.getValue().estimate());
+      }
+      result.put(cell.getRowKey(), cell.getColumnKey(), timeValues);
+    }
+    for (Table.Cell<Map<String, String>, String, Map<Long, QuantileSketch>> cell : distributionSketches.cellSet()) {
+      double quantile = QUANTILES.get(query.getMeasurements().get(cell.getColumnKey()));
+      Map<Long, Long> timeValues = Maps.newHashMap();
+      for (Map.Entry<Long, QuantileSketch> sketch : cell.getValue().entrySet()) {
+        timeValues.put(sketch.getKey(), sketch.getValue().getQuantile(quantile));
+      }
+      result.put(cell.getRowKey(), cell.getColumnKey(), timeValues);
+    }
+    return new ScannedTimeSeries(result, recordsScanned);
+  }
+
+  /**
+   * Decodes the value of a cell of the given measure queried with {@link AggregationFunction#DISTINCT_COUNT}.
+   *
+   * @throws IllegalArgumentException if the measure is not of type {@link MeasureType#DISTINCT}
+   */
+  private HyperLogLog toDistinctSketch(String measureName, byte[] value) {
+    try {
+      // counter and gauge values are longs, which are never valid sketches
+      if (value.length != Bytes.SIZEOF_LONG) {
+        return HyperLogLog.fromBytes(value);
+      }
+    } catch (IllegalArgumentException e) {
+      // not a distinct count sketch, fall through
+    }
+    throw new IllegalArgumentException(String.format("Measure '%s' is not of type %s and can't be aggregated with %s",
+                                                     measureName, MeasureType.DISTINCT,
+                                                     AggregationFunction.DISTINCT_COUNT));
+  }
+
+  /**
+   * Decodes the value of a cell of the given measure queried with a percentile function.
+   *
+   * @throws IllegalArgumentException if the measure is not of type {@link MeasureType#DISTRIBUTION}
+   */
+  private QuantileSketch toDistributionSketch(String measureName, AggregationFunction function, byte[] value) {
+    try {
+      // counter and gauge values are longs, which are never valid sketches
+      if (value.length != Bytes.SIZEOF_LONG) {
+        return QuantileSketch.fromBytes(value);
+      }
+    } catch (IllegalArgumentException e) {
+      // not a quantile sketch, fall through
+    }
+    throw new IllegalArgumentException(String.format("Measure '%s' is not of type %s and can't be aggregated with %s",
+                                                     measureName, MeasureType.DISTRIBUTION, function));
+  }
+
+  /**
+   * Checks that the cells of the given scan result are counter or gauge values, which are the only ones that can be
+   * aggregated with the given function.
+   *
+   * @throws IllegalArgumentException if the measure is of type {@link MeasureType#DISTINCT} or
+   *                                  {@link MeasureType#DISTRIBUTION}
+   */
+  private void checkNotSketches(FactScanResult result, AggregationFunction function) {
+    for (Map.Entry<Long, byte[]> cell : result.getCells()) {
+      if (cell.getValue().length != Bytes.SIZEOF_LONG) {
+        throw new IllegalArgumentException(String.format(
+          "Measure '%s' is of type %s or %s and can't be aggregated with %s, but only with %s or a percentile",
+          result.getMeasureName(), MeasureType.DISTINCT, MeasureType.DISTRIBUTION, function,
+          AggregationFunction.DISTINCT_COUNT));
+      }
+    }
   }
 
   private Collection<TimeSeries> convertToQueryResult(CubeQuery query,
@@ -465,4 +873,17 @@ public class DefaultCube implements Cube, MeteredDataset {
     }
 
   }
+
+  /**
+   * Time series read by a scan, with the number of records they were read from.
+   */
+  private static final class ScannedTimeSeries {
+    private final Table<Map<String, String>, String, Map<Long, Long>> timeSeries;
+    private final int records;
+
+    private ScannedTimeSeries(Table<Map<String, String>, String, Map<Long, Long>> timeSeries, int records) {
+      this.timeSeries = timeSeries;
+      this.records = records;
+    }
+  }
 }
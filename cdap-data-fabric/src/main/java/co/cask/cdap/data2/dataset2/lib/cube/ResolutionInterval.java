@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.cube;
+
+import com.google.common.base.Objects;
+
+/**
+ * A time range, with both ends inclusive, that is queried in the given resolution as part of a stitched
+ * {@link DefaultCube} query.
+ */
+public final class ResolutionInterval {
+  private final int resolution;
+  private final long startTs;
+  private final long endTs;
+
+  public ResolutionInterval(int resolution, long startTs, long endTs) {
+    this.resolution = resolution;
+    this.startTs = startTs;
+    this.endTs = endTs;
+  }
+
+  public int getResolution() {
+    return resolution;
+  }
+
+  public long getStartTs() {
+    return startTs;
+  }
+
+  public long getEndTs() {
+    return endTs;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ResolutionInterval that = (ResolutionInterval) o;
+    return resolution == that.resolution && startTs == that.startTs && endTs == that.endTs;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(resolution, startTs, endTs);
+  }
+
+  @Override
+  public String toString() {
+    return resolution + "s[" + startTs + ", " + endTs + "]";
+  }
+}
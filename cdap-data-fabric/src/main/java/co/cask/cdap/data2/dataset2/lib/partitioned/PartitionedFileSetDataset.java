@@ -45,6 +45,7 @@ import co.cask.cdap.api.dataset.lib.Partitioning;
 import co.cask.cdap.api.dataset.lib.Partitioning.FieldType;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
@@ -83,6 +84,15 @@ public class PartitionedFileSetDataset extends AbstractDataset implements Partit
   private static final Logger LOG = LoggerFactory.getLogger(PartitionedFileSetDataset.class);
   private static final String QUARANTINE_DIR = ".quarantine";
 
+  // number of consecutive rows that can be skipped while scanning partitions, before re-opening the scanner at
+  // the next row key that can match the partition filter
+  private static final int MAX_ROWS_TO_SKIP = 16;
+  // number of rows fetched at once by the first scanner of a filtered listing, and by a re-opened scanner. The
+  // scanner may be re-opened after a few rows, and the rows fetched beyond that point are wasted, so these are
+  // bounded, and smaller once the scanner has been re-opened.
+  private static final int FILTERED_SCAN_CACHING = 1000;
+  private static final int SEEK_SCAN_CACHING = 64;
+
   // column keys
   protected static final byte[] RELATIVE_PATH = { 'p' };
   protected static final byte[] FIELD_PREFIX = { 'f', '.' };
@@ -575,15 +585,37 @@ public class PartitionedFileSetDataset extends AbstractDataset implements Partit
 
   // if decodeMetadata is false, null is passed as the PartitionMetadata to the PartitionConsumer,
   // for efficiency reasons, since the metadata is not always needed
+  // Only the leading fields of the partitioning with a lower or upper bound in the filter can be used to narrow the
+  // scan range. To avoid reading all partitions within that range when later fields have conditions, the scan skips
+  // over the row keys that cannot match: once a partition does not match the filter, the next row key that can match
+  // is computed, and the scanner is re-opened at that key if too many rows would have to be skipped to reach it.
   protected void getPartitions(@Nullable PartitionFilter filter, PartitionConsumer consumer, boolean decodeMetadata) {
     byte[] startKey = generateStartKey(filter);
     byte[] endKey = generateStopKey(filter);
-    try (Scanner scanner = partitionsTable.scan(startKey, endKey)) {
+    Scanner scanner = filter == null
+      ? partitionsTable.scan(startKey, endKey)
+      : partitionsTable.scan(new Scan(startKey, endKey).setCaching(FILTERED_SCAN_CACHING));
+    try {
+      byte[] seekKey = null;
+      int skippedRows = 0;
       while (true) {
         Row row = scanner.next();
         if (row == null) {
           break;
         }
+        if (seekKey != null) {
+          if (Bytes.compareTo(row.getRow(), seekKey) < 0) {
+            if (++skippedRows >= MAX_ROWS_TO_SKIP) {
+              scanner.close();
+              scanner = partitionsTable.scan(new Scan(seekKey, endKey).setCaching(SEEK_SCAN_CACHING));
+              seekKey = null;
+              skippedRows = 0;
+            }
+            continue;
+          }
+          seekKey = null;
+          skippedRows = 0;
+        }
         PartitionKey key;
         try {
           key = parseRowKey(row.getRow(), partitioning);
@@ -595,6 +627,11 @@ public class PartitionedFileSetDataset extends AbstractDataset implements Partit
           continue;
         }
         if (filter != null && !filter.match(key)) {
+          seekKey = generateSeekKey(filter, key);
+          if (seekKey == null || (endKey != null && Bytes.compareTo(seekKey, endKey) >= 0)) {
+            // no more partitions can match the filter
+            break;
+          }
           continue;
         }
         byte[] pathBytes = row.get(RELATIVE_PATH);
@@ -602,7 +639,42 @@ public class PartitionedFileSetDataset extends AbstractDataset implements Partit
           consumer.consume(key, Bytes.toString(pathBytes), decodeMetadata ? metadataFromRow(row) : null);
         }
       }
+    } finally {
+      scanner.close();
+    }
+  }
+
+  /**
+   * Computes the smallest row key greater than the row key of the given partition key, that can possibly match the
+   * given partition filter. The partition key must not match the filter.
+   *
+   * @return the row key to continue scanning at, or null if no greater row key can match the filter
+   */
+  @Nullable
+  private byte[] generateSeekKey(PartitionFilter filter, PartitionKey key) {
+    // the row key prefix of all fields before the first field that does not match, each followed by a \0 separator
+    byte[] prefix = new byte[0];
+    for (Map.Entry<String, FieldType> entry : partitioning.getFields().entrySet()) {
+      String fieldName = entry.getKey();
+      FieldType fieldType = entry.getValue();
+      Comparable fieldValue = key.getField(fieldName);
+      PartitionFilter.Condition<? extends Comparable> condition = filter.getCondition(fieldName);
+      if (condition == null || condition.match(fieldValue)) {
+        prefix = Bytes.add(prefix, FieldTypes.toBytes(fieldValue, fieldType), new byte[] { 0 });
+        continue;
+      }
+      Comparable lowerValue = condition.getLower();
+      @SuppressWarnings("unchecked")
+      boolean belowLower = lowerValue != null && lowerValue.compareTo(fieldValue) > 0;
+      if (belowLower) {
+        // continue at the lower bound of this field, with the same values for all previous fields
+        return Bytes.add(prefix, FieldTypes.toBytes(lowerValue, fieldType));
+      }
+      // the value is above the upper bound: continue after all row keys that have the same values for previous fields
+      return prefix.length == 0 ? null : Bytes.stopKeyForPrefix(prefix);
     }
+    // never happens, as the partition key does not match the filter
+    return null;
   }
 
   private PartitionMetadata metadataFromRow(Row row) {
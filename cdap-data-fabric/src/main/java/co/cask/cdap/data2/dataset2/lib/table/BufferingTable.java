@@ -22,6 +22,8 @@ import co.cask.cdap.api.annotation.WriteOnly;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.batch.Split;
 import co.cask.cdap.api.dataset.DataSetException;
+import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.dataset.metrics.MeteredDataset;
 import co.cask.cdap.api.dataset.table.ConflictDetection;
 import co.cask.cdap.api.dataset.table.Filter;
@@ -33,27 +35,35 @@ import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.api.dataset.table.TableSplit;
 import co.cask.cdap.api.metrics.MetricsCollector;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.tephra.Transaction;
 import co.cask.tephra.TransactionAware;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -73,19 +83,55 @@ import javax.annotation.Nullable;
  *       not in in-memory buffer twice, two times it will try to fetch it from persistent store.
  *       Given the snapshot isolation tx model, this can be improved in future implementations.
  * <p>
- * NOTE: current implementation persists changes only at the end of transaction. Beware of OOME. There should be better
- *       implementation for MapReduce case (YMMV though, for counters/aggregations this implementation looks sweet)
+ * NOTE: current implementation persists changes only at the end of transaction. To bound the memory used by
+ *       transactions that write a lot of data, the in-memory buffer is spilled to sorted files in a local directory
+ *       once its estimated size exceeds {@link Constants.Dataset#TABLE_BUFFER_SPILL_THRESHOLD}, if that property is
+ *       set.
+ *       Reads merge the spilled files with the in-memory buffer, and the changes are persisted in batches on commit.
+ * <p>
+ * NOTE: transaction checkpoints are supported: the changes buffered so far are persisted by {@link #commitTx()} with
+ *       the write pointer before the checkpoint, and only their keys are kept afterwards, to include them in the tx
+ *       change set and to undo them with the right write pointer if the transaction is rolled back. If spilling is
+ *       enabled, the keys are spilled to local disk right away, since they are kept until the transaction ends.
  * <p>
  * NOTE: Using {@link #get(byte[], byte[], byte[], int)} is generally always not efficient since it always hits the
  *       persisted store even if all needed data is in-memory buffer. See more info at method javadoc
+ * <p>
+ * NOTE: if {@link Constants.Dataset#TABLE_LATENCY_METRICS} is set, the latencies of the operations on the persistent
+ *       store are recorded in histograms, whose bucket counts are emitted as counters at most every
+ *       {@link #LATENCY_REPORT_INTERVAL_MS} milliseconds, at the end of a transaction. Unlike percentiles, the counts
+ *       can be summed across tables, processes and time intervals.
  */
 // todo: copying passed params to write methods may be done more efficiently: no need to copy when no changes are made
 public abstract class BufferingTable extends AbstractTable implements MeteredDataset {
 
   private static final Logger LOG = LoggerFactory.getLogger(BufferingTable.class);
 
+  static final long LATENCY_REPORT_INTERVAL_MS = 10000L;
+
   protected static final byte[] DELETE_MARKER = new byte[0];
 
+  // Rough estimate of the memory used by the buffer for each row and column, on top of the keys and values
+  private static final int ENTRY_OVERHEAD = 64;
+  // Spilled runs are merged into one when there are this many of them, to keep reads from opening too many files
+  private static final int MAX_SPILLED_RUNS = 16;
+  // Value of the columns persisted at earlier checkpoints: only the keys are needed to undo them
+  private static final Update CHECKPOINTED = new PutValue(null);
+
+  private static final Function<Map.Entry<byte[], NavigableMap<byte[], Update>>,
+                                Map.Entry<byte[], NavigableMap<byte[], Update>>> TO_CHECKPOINTED =
+    new Function<Map.Entry<byte[], NavigableMap<byte[], Update>>, Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+      @Override
+      public Map.Entry<byte[], NavigableMap<byte[], Update>> apply(
+        Map.Entry<byte[], NavigableMap<byte[], Update>> row) {
+        NavigableMap<byte[], Update> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        for (byte[] column : row.getValue().keySet()) {
+          columns.put(column, CHECKPOINTED);
+        }
+        return Maps.immutableEntry(row.getKey(), columns);
+      }
+    };
+
   // name of the table
   private final String name;
   // conflict detection level
@@ -94,17 +140,44 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private final byte[] nameAsTxChangePrefix;
   // Whether read-less increments should be used when increment() is called
   private final boolean enableReadlessIncrements;
+  // Estimated size of the in-memory buffer in bytes above which it is spilled to local disk; 0 to never spill
+  private final long spillThreshold;
+  // Directory to spill the in-memory buffer into
+  private final File spillDir;
+  // Number of bits of the hashes sent as tx changes instead of the change keys; 0 to send the keys
+  private final int conflictHashBits;
+  // Hints for the scans that do not set them
+  private final Scan scanDefaults;
 
   // In-memory buffer that keeps not yet persisted data. It is row->(column->value) map. Value can be null which means
   // that the corresponded column was removed.
   private NavigableMap<byte[], NavigableMap<byte[], Update>> buff;
 
-  // Keeps track of what was persisted so far
+  // Estimated size of the in-memory buffer in bytes
+  private long buffSize;
+
+  // Runs of changes spilled from the in-memory buffer, oldest first. Changes in buff are newer than all of them.
+  private final List<SpilledRun> spilledRuns = new ArrayList<>();
+
+  // Keeps track of what was persisted so far. If there are spilled runs, they were persisted too.
   private NavigableMap<byte[], NavigableMap<byte[], Update>> toUndo;
 
+  // Write pointer of the current transaction, which changes with every checkpoint
+  private long writePointer;
+
+  // Keys of the changes persisted at earlier checkpoints of the current transaction, by their write pointer.
+  // Only used if spilling is disabled, otherwise the keys are in spilledCheckpoints.
+  private final NavigableMap<Long, NavigableMap<byte[], NavigableMap<byte[], Update>>> checkpoints = new TreeMap<>();
+  // Runs of the keys of the changes persisted at earlier checkpoints of the current transaction, by their write pointer
+  private final NavigableMap<Long, List<SpilledRun>> spilledCheckpoints = new TreeMap<>();
+
   // Report data ops metrics to
   private MetricsCollector metricsCollector;
 
+  // Latencies of the operations on the persistent store, or null if they are not recorded
+  private final Map<StoreOperation, LatencyHistogram> latencies;
+  private long lastLatencyReportTime;
+
   /**
    * Creates an instance of {@link BufferingTable} with row level conflict detection, without readless increments,
    * and no schema.
@@ -134,6 +207,31 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
    */
   public BufferingTable(String name, boolean enableReadlessIncrements,
                         Map<String, String> properties) {
+    this(name, enableReadlessIncrements, properties, null);
+  }
+
+  /**
+   * Returns the directory for spilling buffered changes that is configured in the given configuration, or
+   * {@code null} if none is configured.
+   */
+  @Nullable
+  protected static File getSpillDir(CConfiguration cConf) {
+    String dir = cConf.get(Constants.Dataset.TABLE_BUFFER_SPILL_DIR);
+    return dir == null ? null : new File(dir);
+  }
+
+  /**
+   * Creates an instance of {@link BufferingTable}.
+   *
+   * @param name the name of the table
+   * @param enableReadlessIncrements whether or not readless increments are enabled
+   * @param properties dataset properties for the table
+   * @param spillDir the directory to spill buffered changes into, usually
+   *                 {@link Constants.Dataset#TABLE_BUFFER_SPILL_DIR}; {@code null} to use a directory under
+   *                 {@code java.io.tmpdir}
+   */
+  protected BufferingTable(String name, boolean enableReadlessIncrements,
+                           Map<String, String> properties, @Nullable File spillDir) {
     super(properties);
 
     // for optimization purposes we don't allow table name of length greater than Byte.MAX_VALUE
@@ -142,6 +240,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     this.name = name;
     this.conflictLevel = TableProperties.getConflictDetectionLevel(properties, ConflictDetection.ROW);
     this.enableReadlessIncrements = enableReadlessIncrements;
+    this.spillThreshold = TableProperties.getBufferSpillThreshold(properties);
+    this.spillDir = spillDir == null ? new File(System.getProperty("java.io.tmpdir"), "cdap-buffer-spill") : spillDir;
+    this.conflictHashBits = TableProperties.getConflictHashBits(properties);
+    this.scanDefaults = TableProperties.getScanDefaults(properties);
+    this.latencies = TableProperties.isLatencyMetricsEnabled(properties) ? createLatencyHistograms() : null;
     // TODO: having central dataset management service will allow us to use table ids instead of names, which will
     //       reduce changeset size transferred to/from server
     // we want it to be of format length+value to avoid conflicts like table="ab", row="cd" vs table="abc", row="d"
@@ -192,6 +295,17 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   protected abstract void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted)
     throws Exception;
 
+  /**
+   * Undos changes that were persisted at an earlier checkpoint of the current transaction, that is, with a write
+   * pointer different from the current one.
+   * @param persisted previously persisted changes. Map is described as row->(column->value). Only the row and column
+   *                  keys are meaningful, the values should be ignored
+   * @param writePointer the write pointer the changes were persisted with
+   * @throws Exception
+   */
+  protected abstract void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted, long writePointer)
+    throws Exception;
+
   /**
    * Fetches column->value pairs for set of columns from persistent store.
    * NOTE: persisted store can also be in-memory, it is called "persisted" to distinguish from in-memory buffer.
@@ -256,9 +370,12 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   @Override
   public void close() throws IOException {
+    reportLatencies(true);
     // releasing resources
     buff = null;
     toUndo = null;
+    clearSpilledRuns();
+    clearCheckpoints();
   }
 
   @Override
@@ -270,22 +387,43 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
     // starting with fresh buffer when tx starts
     buff.clear();
+    buffSize = 0;
     toUndo = null;
+    clearSpilledRuns();
+    clearCheckpoints();
+    writePointer = tx.getWritePointer();
   }
 
   @Override
-  public void updateTx(Transaction transaction) {
-    // TODO: transaction checkpoints are not yet supported
-    // This is safe, since this should only be called by TransactionContext.checkpoint(),
-    // which is not exposed through the application APIs.
-    //
-    // Supporting transaction checkpoints will require:
-    //   1. providing some application API that interacts with TransactionContext.checkpoint()
-    //   2. keying the buffered edits by timestamp, so that buffered writes at different
-    //      checkpoint timestamps can be correctly ordered during merge.
-    //   3. keying toUndo by timestamp, so that persisted changes can be rolled back using the
-    //      correct timestamp
-    throw new UnsupportedOperationException("Transaction checkpoints are not supported");
+  public void updateTx(Transaction tx) {
+    // TransactionContext.checkpoint() persists the changes with commitTx() before it updates the transaction.
+    // From now on they are read from the persistent store, and only their keys are kept.
+    if (toUndo != null && spillThreshold > 0) {
+      spillCheckpoint();
+    } else if (toUndo != null) {
+      NavigableMap<byte[], NavigableMap<byte[], Update>> persisted = checkpoints.get(writePointer);
+      if (persisted == null) {
+        persisted = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        checkpoints.put(writePointer, persisted);
+      }
+      try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = getAllBufferedRows(toUndo)) {
+        while (rows.hasNext()) {
+          Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+          NavigableMap<byte[], Update> columns = persisted.get(row.getKey());
+          if (columns == null) {
+            columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+            persisted.put(row.getKey(), columns);
+          }
+          for (byte[] column : row.getValue().keySet()) {
+            columns.put(column, CHECKPOINTED);
+          }
+        }
+      }
+      toUndo = null;
+      clearSpilledRuns();
+    }
+    // Changes that are still buffered will be persisted with the new write pointer
+    writePointer = tx.getWritePointer();
   }
 
   @Override
@@ -305,8 +443,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Collection<byte[]> getRowChanges() {
     // we resolve conflicts on row level of individual table
     List<byte[]> changes = new ArrayList<>(buff.size());
-    for (byte[] changedRow : buff.keySet()) {
-      changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = getChangedRows()) {
+      while (rows.hasNext()) {
+        changes.add(toTxChange(Bytes.add(getNameAsTxChangePrefix(), rows.next().getKey())));
+      }
     }
     return changes;
   }
@@ -314,27 +454,52 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Collection<byte[]> getColumnChanges() {
     // we resolve conflicts on row level of individual table
     List<byte[]> changes = new ArrayList<>(buff.size());
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : buff.entrySet()) {
-      if (rowChange.getValue() == null) {
-        // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
-        //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but this
-        //       will change in future, so we will have to address the issue.
-        continue;
-      }
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = getChangedRows()) {
+      while (rows.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange = rows.next();
+        if (rowChange.getValue() == null) {
+          // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
+          //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but
+          //       this will change in future, so we will have to address the issue.
+          continue;
+        }
 
-      // using length + value format to prevent conflicts like row="ab", column="cd" vs row="abc", column="d"
-      byte[] rowTxChange = Bytes.add(Bytes.toBytes(rowChange.getKey().length), rowChange.getKey());
+        // using length + value format to prevent conflicts like row="ab", column="cd" vs row="abc", column="d"
+        byte[] rowTxChange = Bytes.add(Bytes.toBytes(rowChange.getKey().length), rowChange.getKey());
 
-      for (byte[] column : rowChange.getValue().keySet()) {
-        changes.add(Bytes.add(getNameAsTxChangePrefix(), rowTxChange, column));
+        for (byte[] column : rowChange.getValue().keySet()) {
+          changes.add(toTxChange(Bytes.add(getNameAsTxChangePrefix(), rowTxChange, column)));
+        }
       }
     }
     return changes;
   }
 
+  /**
+   * Returns the tx change to send to the transaction manager for the given change key: either the key itself, or a
+   * fixed-width hash of it if {@link Constants.Dataset#TABLE_CONFLICT_HASH_BITS} is set, to reduce the size of the
+   * change set at the cost of rare false conflicts.
+   */
+  private byte[] toTxChange(byte[] changeKey) {
+    switch (conflictHashBits) {
+      case 64:
+        return Bytes.toBytes(Hashing.murmur3_128().hashBytes(changeKey).asLong());
+      case 128:
+        return Hashing.murmur3_128().hashBytes(changeKey).asBytes();
+      default:
+        return changeKey;
+    }
+  }
+
   @Override
   public boolean commitTx() throws Exception {
-    if (!buff.isEmpty()) {
+    if (!spilledRuns.isEmpty()) {
+      // The spilled runs are kept until the tx is done, so that they can be undone together with the buffer
+      toUndo = buff;
+      buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      buffSize = 0;
+      persistInBatches(toUndo, false);
+    } else if (!buff.isEmpty()) {
       // We first assume that all data will be persisted. So that if exception happen during persist we try to
       // rollback everything we had in in-memory buffer.
       toUndo = buff;
@@ -342,9 +507,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       // NOTE: we want to init map here so that if no changes are made we re-use same instance of the map in next tx
       // NOTE: we could cache two maps and swap them to avoid creation of map instances, but code would be ugly
       buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      buffSize = 0;
       // TODO: tracking of persisted items can be optimized by returning a pair {succeededOrNot, persisted} which
       //       tells if persisting succeeded and what was persisted (i.e. what we will have to undo in case of rollback)
-      persist(toUndo);
+      timedPersist(toUndo);
     }
     return true;
   }
@@ -353,19 +519,99 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public void postTxCommit() {
     // don't need buffer anymore: tx has been committed
     buff.clear();
+    buffSize = 0;
     toUndo = null;
+    clearSpilledRuns();
+    clearCheckpoints();
+    reportLatencies(false);
   }
 
   @Override
   public boolean rollbackTx() throws Exception {
     buff.clear();
+    buffSize = 0;
     if (toUndo != null) {
-      undo(toUndo);
+      if (spilledRuns.isEmpty()) {
+        timedUndo(toUndo);
+      } else {
+        persistInBatches(toUndo, true);
+      }
       toUndo = null;
     }
+    clearSpilledRuns();
+    // undoing the changes persisted at earlier checkpoints, latest first
+    for (Map.Entry<Long, NavigableMap<byte[], NavigableMap<byte[], Update>>> checkpoint
+      : checkpoints.descendingMap().entrySet()) {
+      long startNanos = startTimer();
+      undo(checkpoint.getValue(), checkpoint.getKey());
+      recordLatency(StoreOperation.UNDO, startNanos);
+    }
+    for (Map.Entry<Long, List<SpilledRun>> checkpoint : spilledCheckpoints.descendingMap().entrySet()) {
+      for (SpilledRun run : Lists.reverse(checkpoint.getValue())) {
+        try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = run.iterator(null, null)) {
+          undoInBatches(rows, checkpoint.getKey());
+        }
+      }
+    }
+    clearCheckpoints();
+    reportLatencies(false);
     return true;
   }
 
+  /**
+   * Persists or undoes the spilled runs merged with the given in-memory buffer, in batches of about the size of the
+   * spill threshold, so that the merged changes never have to be held in memory at once.
+   */
+  private void persistInBatches(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer,
+                                boolean undo) throws Exception {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> batch = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    long batchSize = 0;
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = getAllBufferedRows(buffer)) {
+      while (rows.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+        batch.put(row.getKey(), row.getValue());
+        batchSize += getSize(row.getKey(), row.getValue());
+        if (batchSize >= spillThreshold) {
+          persistOrUndo(batch, undo);
+          batch = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+          batchSize = 0;
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      persistOrUndo(batch, undo);
+    }
+  }
+
+  /**
+   * Undoes the given changes persisted at an earlier checkpoint, in batches of about the size of the spill threshold.
+   */
+  private void undoInBatches(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows,
+                             long writePointer) throws Exception {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> batch = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    long batchSize = 0;
+    while (rows.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+      batch.put(row.getKey(), row.getValue());
+      batchSize += getSize(row.getKey(), row.getValue());
+      if (batchSize >= spillThreshold || !rows.hasNext()) {
+        long startNanos = startTimer();
+        undo(batch, writePointer);
+        recordLatency(StoreOperation.UNDO, startNanos);
+        batch = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        batchSize = 0;
+      }
+    }
+  }
+
+  private void persistOrUndo(NavigableMap<byte[], NavigableMap<byte[], Update>> batch, boolean undo) throws Exception {
+    if (undo) {
+      timedUndo(batch);
+    } else {
+      timedPersist(batch);
+    }
+  }
+
   /**
    * NOTE: Depending on the use-case, calling this method may be much less
    *       efficient than calling same method with columns as parameters because it may always require round trip to
@@ -399,13 +645,15 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public Row get(byte[] row, byte[] startColumn, byte[] stopColumn, int limit) {
     reportRead(1);
-    // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
-
     // NOTE: since we cannot tell the exact column set, we always have to go to persisted store.
     //       potential improvement: do not fetch columns available in in-mem buffer (we know them at this point)
     try {
+      // checking if the row was deleted inside this tx
+      NavigableMap<byte[], Update> buffCols = getBuffered(row);
+      long startNanos = startTimer();
       Map<byte[], byte[]> persistedCols = getPersisted(row, startColumn, stopColumn, limit);
+      recordLatency(StoreOperation.GET, startNanos);
+      reportPersistedRead(1);
 
       // adding server cols, and then overriding with buffered values
       NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
@@ -432,7 +680,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public List<Row> get(List<Get> gets) {
     try {
       // get persisted, then overwrite with whats buffered
+      long startNanos = startTimer();
       List<Map<byte[], byte[]>> persistedRows = getPersisted(gets);
+      recordLatency(StoreOperation.GET, startNanos);
+      reportPersistedRead(gets.size());
       // gets and rows lists are always of the same size
       Preconditions.checkArgument(gets.size() == persistedRows.size(),
         "Invalid number of rows fetched when performing multi-get. There must be one row for each get.");
@@ -451,7 +702,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         rowColumns.putAll(persistedRow);
 
         byte[] row = get.getRow();
-        NavigableMap<byte[], Update> buffCols = buff.get(row);
+        NavigableMap<byte[], Update> buffCols = getBuffered(row);
 
         // merge what was in the buffer and what was persisted
         if (buffCols != null) {
@@ -500,7 +751,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     if (newRow) {
       // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
       buff.put(copy(row), colVals);
+      buffSize += getSize(row) + ENTRY_OVERHEAD;
     }
+    buffSize += getSize(columns) + getSize(values) + ENTRY_OVERHEAD * columns.length;
+    spillIfNeeded();
   }
 
   /**
@@ -603,10 +857,13 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       if (colVals == null) {
         colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
         buff.put(row, colVals);
+        buffSize += getSize(row) + ENTRY_OVERHEAD;
       }
       for (int i = 0; i < columns.length; i++) {
         colVals.put(columns[i], Updates.mergeUpdates(colVals.get(columns[i]), new IncrementValue(amounts[i])));
       }
+      buffSize += getSize(columns) + (Bytes.SIZEOF_LONG + ENTRY_OVERHEAD) * columns.length;
+      spillIfNeeded();
       reportWrite(1, getSize(row) + getSize(columns) + getSize(amounts));
     } else {
       internalIncrementAndGet(row, columns, amounts);
@@ -671,17 +928,63 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @ReadOnly
   @Override
   public Scanner scan(Scan scan) {
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan);
+    CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferRows = scanBuffer(scan);
     try {
-      return new BufferingScanner(bufferMap, scanPersisted(scan));
+      long startNanos = startTimer();
+      Scanner persistedScanner = scanPersisted(withScanDefaults(scan));
+      recordLatency(StoreOperation.SCAN, startNanos);
+      return new BufferingScanner(bufferRows, persistedScanner);
     } catch (Exception e) {
+      bufferRows.close();
       LOG.debug("scan failed for table: " + getTransactionAwareName() +
           ", scan: " + scan.toString(), e);
       throw new DataSetException("scan failed", e);
     }
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> scanBuffer(Scan scan) {
+  /**
+   * Returns a {@link Scan} with the hints that are not set in the given one taken from the dataset defaults.
+   */
+  private Scan withScanDefaults(Scan scan) {
+    Integer caching = scan.getCaching() == null ? scanDefaults.getCaching() : scan.getCaching();
+    Long maxResultSize = scan.getMaxResultSize() == null ? scanDefaults.getMaxResultSize() : scan.getMaxResultSize();
+    Boolean cacheBlocks = scan.getCacheBlocks() == null ? scanDefaults.getCacheBlocks() : scan.getCacheBlocks();
+    Integer batch = scan.getBatch() == null ? scanDefaults.getBatch() : scan.getBatch();
+    if (Objects.equal(caching, scan.getCaching()) && Objects.equal(maxResultSize, scan.getMaxResultSize())
+      && Objects.equal(cacheBlocks, scan.getCacheBlocks()) && Objects.equal(batch, scan.getBatch())) {
+      return scan;
+    }
+
+    // Not modifying the given scan, which belongs to the caller
+    Scan result = new Scan(scan.getStartRow(), scan.getStopRow(), scan.getFilter());
+    if (caching != null) {
+      result.setCaching(caching);
+    }
+    if (maxResultSize != null) {
+      result.setMaxResultSize(maxResultSize);
+    }
+    if (cacheBlocks != null) {
+      result.setCacheBlocks(cacheBlocks);
+    }
+    if (batch != null) {
+      result.setBatch(batch);
+    }
+    return result;
+  }
+
+  /**
+   * Reports the number of rows fetched from the persistent store by a scan, and the number of them that were
+   * actually returned by the scanner, to tell whether the scan fetched more rows than it needed. Only reported by
+   * the HBase table, since the local tables read rows one at a time as the scanner is consumed.
+   */
+  protected void reportScan(long fetched, long consumed) {
+    if (metricsCollector != null) {
+      metricsCollector.increment(Constants.Metrics.Name.Dataset.SCAN_ROWS_FETCHED, fetched);
+      metricsCollector.increment(Constants.Metrics.Name.Dataset.SCAN_ROWS_CONSUMED, consumed);
+    }
+  }
+
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> scanBuffer(Scan scan) {
     NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap;
     byte[] startRow = scan.getStartRow();
     byte[] stopRow = scan.getStopRow();
@@ -694,41 +997,210 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     } else {
       bufferMap = buff.subMap(startRow, true, stopRow, false);
     }
-    bufferMap = applyFilter(bufferMap, scan.getFilter());
-    return bufferMap;
+    return applyFilter(getBufferedRows(getBufferIterator(bufferMap), startRow, stopRow), scan.getFilter());
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> applyFilter(
-                                                        NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap,
-                                                        @Nullable Filter filter) {
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> applyFilter(
+                                      final CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows,
+                                      @Nullable Filter filter) {
     if (filter == null) {
-      return bufferMap;
+      return rows;
     }
 
     // todo: currently we support only FuzzyRowFilter as an experimental feature
     if (filter instanceof FuzzyRowFilter) {
-      NavigableMap<byte[], NavigableMap<byte[], Update>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      for (Map.Entry<byte[], NavigableMap<byte[], Update>> entry : bufferMap.entrySet()) {
-        if (FuzzyRowFilter.ReturnCode.INCLUDE == ((FuzzyRowFilter) filter).filterRow(entry.getKey())) {
-          result.put(entry.getKey(), entry.getValue());
+      final FuzzyRowFilter fuzzyRowFilter = (FuzzyRowFilter) filter;
+      return new AbstractCloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+        @Override
+        protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+          while (rows.hasNext()) {
+            Map.Entry<byte[], NavigableMap<byte[], Update>> entry = rows.next();
+            if (FuzzyRowFilter.ReturnCode.INCLUDE == fuzzyRowFilter.filterRow(entry.getKey())) {
+              return entry;
+            }
+          }
+          return endOfData();
         }
-      }
-      return result;
+
+        @Override
+        public void close() {
+          rows.close();
+        }
+      };
     } else {
+      rows.close();
       throw new DataSetException("Unknown filter type: " + filter);
     }
   }
 
+  /**
+   * Returns the buffered changes of the given row, merged from the spilled runs and the in-memory buffer, or
+   * {@code null} if the row has no buffered changes.
+   */
+  @Nullable
+  private NavigableMap<byte[], Update> getBuffered(byte[] row) {
+    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    if (spilledRuns.isEmpty()) {
+      return buffCols;
+    }
+
+    NavigableMap<byte[], Update> result = null;
+    for (SpilledRun run : spilledRuns) {
+      NavigableMap<byte[], Update> runCols = run.get(row);
+      if (runCols != null) {
+        result = SpilledRun.mergeColumns(result, runCols);
+      }
+    }
+    return buffCols == null ? result : SpilledRun.mergeColumns(result, buffCols);
+  }
+
+  /**
+   * Returns all rows changed by the current transaction, including the ones persisted at earlier checkpoints, in row
+   * key order. Only the row and column keys of the returned rows are meaningful.
+   */
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getChangedRows() {
+    if (checkpoints.isEmpty() && spilledCheckpoints.isEmpty()) {
+      return getAllBufferedRows(buff);
+    }
+    List<Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>> sources = new ArrayList<>();
+    for (NavigableMap<byte[], NavigableMap<byte[], Update>> persisted : checkpoints.values()) {
+      sources.add(persisted.entrySet().iterator());
+    }
+    for (List<SpilledRun> runs : spilledCheckpoints.values()) {
+      for (SpilledRun run : runs) {
+        sources.add(run.iterator(null, null));
+      }
+    }
+    sources.add(getAllBufferedRows(buff));
+    return SpilledRun.merge(sources);
+  }
+
+  /**
+   * Returns all buffered rows, merged from the spilled runs and the given in-memory buffer, in row key order.
+   */
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getAllBufferedRows(
+    NavigableMap<byte[], NavigableMap<byte[], Update>> buffer) {
+    return getBufferedRows(buffer.entrySet().iterator(), null, null);
+  }
+
+  /**
+   * Returns the buffered rows in the given range, merged from the spilled runs and the rows of the in-memory buffer,
+   * which must only contain rows in that range, in row key order.
+   */
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getBufferedRows(
+    final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIterator,
+    @Nullable byte[] startRow, @Nullable byte[] stopRow) {
+    if (spilledRuns.isEmpty()) {
+      return new AbstractCloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+        @Override
+        protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+          return bufferIterator.hasNext() ? bufferIterator.next() : endOfData();
+        }
+
+        @Override
+        public void close() {
+          // no-op
+        }
+      };
+    }
+
+    List<Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>> sources = new ArrayList<>();
+    for (SpilledRun run : spilledRuns) {
+      sources.add(run.iterator(startRow, stopRow));
+    }
+    sources.add(bufferIterator);
+    return SpilledRun.merge(sources);
+  }
+
+  /**
+   * Spills the in-memory buffer to a file on local disk if its estimated size exceeds the spill threshold.
+   */
+  private void spillIfNeeded() {
+    if (spillThreshold <= 0 || buffSize < spillThreshold) {
+      return;
+    }
+    try {
+      SpilledRun run = SpilledRun.write(getProcessSpillDir(), buff.entrySet().iterator());
+      spilledRuns.add(run);
+      // Not clearing the map, since it may still be iterated by an open scanner
+      buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      buffSize = 0;
+      if (metricsCollector != null) {
+        metricsCollector.increment(Constants.Metrics.Name.Dataset.BUFFER_SPILL_COUNT, 1);
+        metricsCollector.increment(Constants.Metrics.Name.Dataset.BUFFER_SPILL_BYTES, run.getSize());
+      }
+      LOG.debug("Spilled {} bytes of buffered changes of {} to local disk", run.getSize(), getTransactionAwareName());
+
+      if (spilledRuns.size() >= MAX_SPILLED_RUNS) {
+        List<Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>> sources = new ArrayList<>();
+        for (SpilledRun spilledRun : spilledRuns) {
+          sources.add(spilledRun.iterator(null, null));
+        }
+        SpilledRun merged;
+        try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = SpilledRun.merge(sources)) {
+          merged = SpilledRun.write(getProcessSpillDir(), rows);
+        }
+        clearSpilledRuns();
+        spilledRuns.add(merged);
+      }
+    } catch (IOException e) {
+      throw new DataSetException("Failed to spill buffered changes of " + getTransactionAwareName(), e);
+    }
+  }
+
+  private File getProcessSpillDir() throws IOException {
+    return SpilledRun.getProcessDir(spillDir);
+  }
+
+  /**
+   * Spills the keys of the changes persisted by {@link #commitTx()} at a checkpoint to local disk.
+   */
+  private void spillCheckpoint() {
+    List<SpilledRun> runs = spilledCheckpoints.get(writePointer);
+    if (runs == null) {
+      runs = new ArrayList<>();
+      spilledCheckpoints.put(writePointer, runs);
+    }
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = getAllBufferedRows(toUndo)) {
+      SpilledRun run = SpilledRun.write(getProcessSpillDir(), Iterators.transform(rows, TO_CHECKPOINTED));
+      runs.add(run);
+      if (metricsCollector != null) {
+        metricsCollector.increment(Constants.Metrics.Name.Dataset.BUFFER_SPILL_COUNT, 1);
+        metricsCollector.increment(Constants.Metrics.Name.Dataset.BUFFER_SPILL_BYTES, run.getSize());
+      }
+    } catch (IOException e) {
+      throw new DataSetException("Failed to spill checkpointed changes of " + getTransactionAwareName(), e);
+    }
+  }
+
+  private void clearCheckpoints() {
+    checkpoints.clear();
+    for (List<SpilledRun> runs : spilledCheckpoints.values()) {
+      for (SpilledRun run : runs) {
+        run.close();
+      }
+    }
+    spilledCheckpoints.clear();
+  }
+
+  private void clearSpilledRuns() {
+    for (SpilledRun run : spilledRuns) {
+      run.close();
+    }
+    spilledRuns.clear();
+  }
+
   private Map<byte[], byte[]> getRowMap(byte[] row) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = getBuffered(row);
     boolean rowDeleted = buffCols == null && buff.containsKey(row);
     if (rowDeleted) {
+      reportBufferedRead();
       return Collections.emptyMap();
     }
 
-    Map<byte[], byte[]> persisted = getPersisted(row, null);
+    Map<byte[], byte[]> persisted = timedGetPersisted(row, null);
 
 
     result.putAll(persisted);
@@ -743,11 +1215,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row, byte[][] columns) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = getBuffered(row);
 
     // if nothing locally, return all from server
     if (buffCols == null) {
-      return getPersisted(row, columns);
+      return timedGetPersisted(row, columns);
     }
 
     // otherwise try to fetch data from in-memory buffer. If not all present - fetch leftover from persisted
@@ -769,10 +1241,12 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // fetching from server those that were not found in in-mem buffer
     if (colsToFetchFromPersisted.size() > 0) {
       Map<byte[], byte[]> persistedCols =
-        getPersisted(row, colsToFetchFromPersisted.toArray(new byte[colsToFetchFromPersisted.size()][]));
+        timedGetPersisted(row, colsToFetchFromPersisted.toArray(new byte[colsToFetchFromPersisted.size()][]));
       if (persistedCols != null) {
         result.putAll(persistedCols);
       }
+    } else {
+      reportBufferedRead();
     }
 
     // overlay buffered values on persisted, applying increments where necessary
@@ -913,6 +1387,110 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
+  /**
+   * Reports a read that was served from the in-memory buffer only.
+   */
+  private void reportBufferedRead() {
+    if (metricsCollector != null) {
+      metricsCollector.increment(Constants.Metrics.Name.Dataset.READ_BUFFERED_COUNT, 1);
+    }
+  }
+
+  /**
+   * Reports reads that had to fetch rows from the persistent store.
+   */
+  private void reportPersistedRead(int numRows) {
+    if (metricsCollector != null) {
+      metricsCollector.increment(Constants.Metrics.Name.Dataset.READ_PERSISTED_COUNT, numRows);
+    }
+  }
+
+  private void timedPersist(NavigableMap<byte[], NavigableMap<byte[], Update>> changes) throws Exception {
+    long startNanos = startTimer();
+    persist(changes);
+    recordLatency(StoreOperation.PERSIST, startNanos);
+  }
+
+  private void timedUndo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted) throws Exception {
+    long startNanos = startTimer();
+    undo(persisted);
+    recordLatency(StoreOperation.UNDO, startNanos);
+  }
+
+  private NavigableMap<byte[], byte[]> timedGetPersisted(byte[] row, @Nullable byte[][] columns) throws Exception {
+    long startNanos = startTimer();
+    NavigableMap<byte[], byte[]> result = getPersisted(row, columns);
+    recordLatency(StoreOperation.GET, startNanos);
+    reportPersistedRead(1);
+    return result;
+  }
+
+  /**
+   * Returns the start time of an operation on the persistent store, to pass to
+   * {@link #recordLatency(StoreOperation, long)}, or {@code 0} if latencies are not recorded.
+   */
+  private long startTimer() {
+    return latencies == null ? 0L : System.nanoTime();
+  }
+
+  private void recordLatency(StoreOperation operation, long startNanos) {
+    if (latencies != null) {
+      latencies.get(operation).record(System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * Emits the latencies recorded since the last report, and resets the histograms. For each operation, the number of
+   * latencies is emitted as {@code <prefix>.<operation>.count}, their sum in microseconds as
+   * {@code <prefix>.<operation>.total.us}, and the number in each non-empty bucket as
+   * {@code <prefix>.<operation>.le.<bound>us} or {@code <prefix>.<operation>.gt.<bound>us} for the last bucket.
+   *
+   * @param force whether to report even if the last report is more recent than {@link #LATENCY_REPORT_INTERVAL_MS}
+   */
+  private void reportLatencies(boolean force) {
+    if (latencies == null || metricsCollector == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (!force && now - lastLatencyReportTime < LATENCY_REPORT_INTERVAL_MS) {
+      return;
+    }
+    lastLatencyReportTime = now;
+    for (Map.Entry<StoreOperation, LatencyHistogram> entry : latencies.entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      if (histogram.getCount() == 0) {
+        continue;
+      }
+      String prefix = Constants.Metrics.Name.Dataset.STORE_LATENCY_PREFIX + entry.getKey().getMetricName();
+      metricsCollector.increment(prefix + ".count", histogram.getCount());
+      metricsCollector.increment(prefix + ".total.us", TimeUnit.NANOSECONDS.toMicros(histogram.getTotalNanos()));
+      for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+        long count = histogram.getCount(bucket);
+        if (count > 0) {
+          metricsCollector.increment(prefix + "." + LatencyHistogram.getBucketName(bucket), count);
+        }
+      }
+      histogram.reset();
+    }
+  }
+
+  private static Map<StoreOperation, LatencyHistogram> createLatencyHistograms() {
+    Map<StoreOperation, LatencyHistogram> histograms = new EnumMap<>(StoreOperation.class);
+    for (StoreOperation operation : StoreOperation.values()) {
+      histograms.put(operation, new LatencyHistogram());
+    }
+    return histograms;
+  }
+
+  private static long getSize(byte[] row, Map<byte[], Update> columns) {
+    long size = row.length + ENTRY_OVERHEAD;
+    for (Map.Entry<byte[], Update> column : columns.entrySet()) {
+      byte[] value = column.getValue().getBytes();
+      size += column.getKey().length + getSize(value) + ENTRY_OVERHEAD;
+    }
+    return size;
+  }
+
   private int getSize(long[] values) {
     return Bytes.SIZEOF_LONG * values.length;
   }
@@ -938,11 +1516,12 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // they get annotated
 
   @ReadOnly
-  private Iterator<byte[]> getBufferKeyIterator(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer) {
-    final Iterator<byte[]> iterator = buffer.keySet().iterator();
-    return new AbstractIterator<byte[]>() {
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getBufferIterator(
+    NavigableMap<byte[], NavigableMap<byte[], Update>> buffer) {
+    final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = buffer.entrySet().iterator();
+    return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
       @Override
-      protected byte[] computeNext() {
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
         return BufferingTable.this.hasNext(iterator) ? BufferingTable.this.next(iterator) : endOfData();
       }
     };
@@ -958,28 +1537,20 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return iterator.next();
   }
 
-  @ReadOnly
-  private NavigableMap<byte[], Update> getFromBuffer(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer,
-                                                     byte[] key) {
-    return buffer.get(key);
-  }
-
   /**
    * Scanner implementation that overlays buffered data on top of already persisted data.
    */
   private class BufferingScanner implements Scanner {
-    private final NavigableMap<byte[], NavigableMap<byte[], Update>> buffer;
+    private final CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIter;
     private final Scanner persistedScanner;
-    private final Iterator<byte[]> keyIter;
     private byte[] currentKey;
+    private NavigableMap<byte[], Update> currentBuffered;
     private Row currentRow;
 
-    private BufferingScanner(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer, Scanner persistedScanner) {
-      this.buffer = buffer;
-      this.keyIter = getBufferKeyIterator(buffer);
-      if (this.keyIter.hasNext()) {
-        currentKey = keyIter.next();
-      }
+    private BufferingScanner(CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIter,
+                             Scanner persistedScanner) {
+      this.bufferIter = bufferIter;
+      advanceBuffer();
       this.persistedScanner = persistedScanner;
       this.currentRow = this.persistedScanner.next();
     }
@@ -1011,24 +1582,36 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       } else if (order < 0) {
         // buffer row comes first or persisted scanner is empty
         Map<byte[], byte[]> persistedRow = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        mergeToPersisted(persistedRow, getFromBuffer(buffer, currentKey), null);
+        mergeToPersisted(persistedRow, currentBuffered, null);
         result = new Result(copy(currentKey), persistedRow);
 
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        advanceBuffer();
       } else {
         // if currentKey and currentRow are equal, merge and advance both
         Map<byte[], byte[]> persisted = currentRow.getColumns();
-        mergeToPersisted(persisted, getFromBuffer(buffer, currentKey), null);
+        mergeToPersisted(persisted, currentBuffered, null);
         result = new Result(currentRow.getRow(), persisted);
 
         currentRow = persistedScanner.next();
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        advanceBuffer();
       }
       return result;
     }
 
+    private void advanceBuffer() {
+      if (bufferIter.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = bufferIter.next();
+        currentKey = entry.getKey();
+        currentBuffered = entry.getValue();
+      } else {
+        currentKey = null;
+        currentBuffered = null;
+      }
+    }
+
     @Override
     public void close() {
+      this.bufferIter.close();
       this.persistedScanner.close();
     }
   }
@@ -1054,4 +1637,24 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     LOG.warn("Attempt to write an empty value to column '{}' of table '{}'. " +
                "This will result in deleting the column. {}", Bytes.toString(column), name, additionalMessage);
   }
+
+  /**
+   * Operations on the persistent store that latencies are recorded for.
+   */
+  private enum StoreOperation {
+    PERSIST("persist"),
+    UNDO("undo"),
+    GET("get"),
+    SCAN("scan");
+
+    private final String metricName;
+
+    StoreOperation(String metricName) {
+      this.metricName = metricName;
+    }
+
+    String getMetricName() {
+      return metricName;
+    }
+  }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.metrics.MetricsContext;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableSet;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of decoded {@link MetadataStoreDataset} values, shared by all instances of a metadata store.
+ * <p>
+ * An entry is keyed by row key and value type, and remembers the serialized bytes it was decoded from. It is only
+ * used if the serialized bytes read from the table are identical, hence a cached value can never be stale, no matter
+ * which transaction wrote the row. Because the same object is handed out to all callers, only types whose instances
+ * are immutable must be registered as cacheable.
+ * </p>
+ */
+public final class DecodedValueCache {
+
+  public static final String METRIC_HITS = "mds.cache.hits";
+  public static final String METRIC_MISSES = "mds.cache.misses";
+  public static final String METRIC_SAVED_MICROS = "mds.cache.decode.saved.micros";
+
+  private final Cache<CacheKey, CacheEntry> cache;
+  private final Set<Type> cacheableTypes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong savedNanos = new AtomicLong();
+  private volatile MetricsContext metricsContext;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxBytes maximum total size of the serialized values held in the cache
+   * @param cacheableTypes types that are safe to cache, because their instances are immutable
+   */
+  public DecodedValueCache(long maxBytes, Set<? extends Type> cacheableTypes) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxBytes)
+      .weigher(new Weigher<CacheKey, CacheEntry>() {
+        @Override
+        public int weigh(CacheKey key, CacheEntry entry) {
+          return key.rowKey.length + entry.serialized.length;
+        }
+      })
+      .build();
+    this.cacheableTypes = ImmutableSet.copyOf(cacheableTypes);
+  }
+
+  /**
+   * Sets the {@link MetricsContext} used to emit hit, miss and saved decode time metrics.
+   */
+  public void setMetricsContext(@Nullable MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
+  }
+
+  /**
+   * Returns {@code true} if values of the given type are cached.
+   */
+  public boolean isCacheable(Type type) {
+    return cacheableTypes.contains(type);
+  }
+
+  /**
+   * Returns the decoded value of the given row, either from the cache or by calling the given decoder.
+   *
+   * @param rowKey key of the row the value was read from
+   * @param serialized the serialized value as read from the table
+   * @param type type of the value
+   * @param decoder function to decode the serialized value on a cache miss
+   * @param <T> type of the value
+   * @return the decoded value
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(byte[] rowKey, byte[] serialized, Type type, Function<byte[], T> decoder) {
+    CacheKey key = new CacheKey(rowKey, type);
+    CacheEntry entry = cache.getIfPresent(key);
+    if (entry != null && Arrays.equals(entry.serialized, serialized)) {
+      hits.incrementAndGet();
+      savedNanos.addAndGet(entry.decodeNanos);
+      emit(METRIC_HITS, 1);
+      emit(METRIC_SAVED_MICROS, TimeUnit.NANOSECONDS.toMicros(entry.decodeNanos));
+      return (T) entry.value;
+    }
+
+    long startTime = System.nanoTime();
+    T value = decoder.apply(serialized);
+    long decodeNanos = System.nanoTime() - startTime;
+    misses.incrementAndGet();
+    emit(METRIC_MISSES, 1);
+    if (value != null) {
+      cache.put(key, new CacheEntry(serialized, value, decodeNanos));
+    }
+    return value;
+  }
+
+  /**
+   * Removes all cached values of the given row.
+   */
+  public void invalidate(byte[] rowKey) {
+    for (Type type : cacheableTypes) {
+      cache.invalidate(new CacheKey(rowKey, type));
+    }
+  }
+
+  /**
+   * Returns the number of lookups served from the cache.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of lookups that required decoding.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the fraction of lookups served from the cache, or {@code 0} if there were no lookups.
+   */
+  public double getHitRate() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+    return total == 0 ? 0d : (double) hitCount / total;
+  }
+
+  /**
+   * Returns the total decoding time saved by cache hits, in nanoseconds.
+   */
+  public long getSavedDecodeNanos() {
+    return savedNanos.get();
+  }
+
+  private void emit(String metricName, long value) {
+    MetricsContext context = metricsContext;
+    if (context != null && value > 0) {
+      context.increment(metricName, value);
+    }
+  }
+
+  private static final class CacheKey {
+    private final byte[] rowKey;
+    private final Type type;
+    private final int hashCode;
+
+    CacheKey(byte[] rowKey, Type type) {
+      this.rowKey = rowKey;
+      this.type = type;
+      this.hashCode = 31 * Bytes.hashCode(rowKey) + type.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      CacheKey other = (CacheKey) o;
+      return type.equals(other.type) && Bytes.equals(rowKey, other.rowKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static final class CacheEntry {
+    private final byte[] serialized;
+    private final Object value;
+    private final long decodeNanos;
+
+    CacheEntry(byte[] serialized, Object value, long decodeNanos) {
+      this.serialized = serialized;
+      this.value = value;
+      this.decodeNanos = decodeNanos;
+    }
+  }
+}
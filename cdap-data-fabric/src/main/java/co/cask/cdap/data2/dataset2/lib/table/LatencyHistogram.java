@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogram of latencies, counted in fixed buckets so that the counts of different tables, processes and time
+ * intervals can simply be added up, and their percentiles estimated from the sums.
+ *
+ * <p>
+ * The buckets are bounded by 1, 2 and 5 times the powers of ten from 10 microseconds to 10 seconds, and a last bucket
+ * counts all the latencies above 10 seconds. Recording a latency is a binary search over the bounds and an array
+ * update. This class is not thread-safe.
+ * </p>
+ */
+final class LatencyHistogram {
+
+  // Inclusive upper bounds of all but the last bucket
+  private static final long[] BOUNDS_US = {
+    10, 20, 50, 100, 200, 500,
+    1000, 2000, 5000, 10000, 20000, 50000,
+    100000, 200000, 500000, 1000000, 2000000, 5000000,
+    10000000
+  };
+  private static final long[] BOUNDS_NANOS = new long[BOUNDS_US.length];
+
+  static {
+    for (int i = 0; i < BOUNDS_US.length; i++) {
+      BOUNDS_NANOS[i] = TimeUnit.MICROSECONDS.toNanos(BOUNDS_US[i]);
+    }
+  }
+
+  /**
+   * Number of buckets of every histogram.
+   */
+  static final int BUCKETS = BOUNDS_US.length + 1;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long totalNanos;
+
+  /**
+   * Returns the name of the given bucket: {@code le.<bound>us} with its upper bound in microseconds, or
+   * {@code gt.<bound>us} with the upper bound of the previous bucket for the last one.
+   */
+  static String getBucketName(int bucket) {
+    return bucket < BOUNDS_US.length ? "le." + BOUNDS_US[bucket] + "us" : "gt." + BOUNDS_US[bucket - 1] + "us";
+  }
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos the latency in nanoseconds; negative values, which can only come from a clock adjustment, count as 0
+   */
+  void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts[getBucket(value)]++;
+    count++;
+    totalNanos += value;
+  }
+
+  /**
+   * Returns the number of latencies recorded since this histogram was created or last reset.
+   */
+  long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the sum of the latencies recorded since this histogram was created or last reset, in nanoseconds.
+   */
+  long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+   * Returns the number of latencies recorded in the given bucket since this histogram was created or last reset.
+   */
+  long getCount(int bucket) {
+    return counts[bucket];
+  }
+
+  /**
+   * Clears all the recorded latencies.
+   */
+  void reset() {
+    Arrays.fill(counts, 0L);
+    count = 0;
+    totalNanos = 0;
+  }
+
+  private static int getBucket(long nanos) {
+    int index = Arrays.binarySearch(BOUNDS_NANOS, nanos);
+    // If not a bound, the insertion point is the first bound above, or the last bucket if there is none
+    return index >= 0 ? index : -index - 1;
+  }
+}
@@ -23,21 +23,30 @@ import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.common.io.Codec;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
  * Handy dataset to be used for managing metadata
+ * <p>
+ * Values are serialized as JSON, except for the types that have a binary {@link Codec} registered. Binary values
+ * start with a {@code 0} byte, which can never start a JSON value, so rows written as JSON before a codec was
+ * registered for their type are still read.
+ * </p>
  */
 public class MetadataStoreDataset extends AbstractDataset {
   private static final Gson GSON = new Gson();
@@ -45,12 +54,34 @@ public class MetadataStoreDataset extends AbstractDataset {
    * All rows we store use single column of this name.
    */
   private static final byte[] COLUMN = Bytes.toBytes("c");
+  private static final byte BINARY_MARKER = 0;
 
   private final Table table;
+  private final DecodedValueCache valueCache;
+  private final Map<Type, Codec<?>> codecs;
 
   public MetadataStoreDataset(Table table) {
+    this(table, null);
+  }
+
+  /**
+   * Creates a metadata store that serves immutable values of the types registered with the given
+   * {@link DecodedValueCache} without decoding them again, as long as the stored bytes are unchanged.
+   */
+  public MetadataStoreDataset(Table table, @Nullable DecodedValueCache valueCache) {
+    this(table, valueCache, ImmutableMap.<Type, Codec<?>>of());
+  }
+
+  /**
+   * Creates a metadata store that writes the values of the types in the given map with their binary {@link Codec},
+   * instead of as JSON.
+   */
+  public MetadataStoreDataset(Table table, @Nullable DecodedValueCache valueCache,
+                              Map<? extends Type, ? extends Codec<?>> codecs) {
     super("ignored", table);
     this.table = table;
+    this.valueCache = valueCache;
+    this.codecs = ImmutableMap.copyOf(codecs);
   }
 
   protected <T> byte[] serialize(T value) {
@@ -61,6 +92,47 @@ public class MetadataStoreDataset extends AbstractDataset {
     return GSON.fromJson(Bytes.toString(serialized), typeOfT);
   }
 
+  @SuppressWarnings("unchecked")
+  private <T> byte[] encode(T value) throws IOException {
+    Codec<T> codec = (Codec<T>) codecs.get(value.getClass());
+    if (codec == null) {
+      return serialize(value);
+    }
+    byte[] encoded = codec.encode(value);
+    byte[] result = new byte[encoded.length + 1];
+    result[0] = BINARY_MARKER;
+    System.arraycopy(encoded, 0, result, 1, encoded.length);
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T decodeValue(byte[] serialized, Type typeOfT) {
+    if (serialized.length == 0 || serialized[0] != BINARY_MARKER) {
+      return deserialize(serialized, typeOfT);
+    }
+    Codec<T> codec = (Codec<T>) codecs.get(typeOfT);
+    if (codec == null) {
+      throw new IllegalStateException("No codec registered to decode binary value of type " + typeOfT);
+    }
+    try {
+      return codec.decode(Arrays.copyOfRange(serialized, 1, serialized.length));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private <T> T decode(byte[] rowKey, byte[] serialized, final Type typeOfT) {
+    if (valueCache == null || !valueCache.isCacheable(typeOfT)) {
+      return decodeValue(serialized, typeOfT);
+    }
+    return valueCache.get(rowKey, serialized, typeOfT, new Function<byte[], T>() {
+      @Override
+      public T apply(byte[] input) {
+        return decodeValue(input, typeOfT);
+      }
+    });
+  }
+
   public boolean exists(MDSKey id) {
     Row row = table.get(id.getKey());
     if (row.isEmpty()) {
@@ -87,7 +159,7 @@ public class MetadataStoreDataset extends AbstractDataset {
       return null;
     }
 
-    return deserialize(value, typeOfT);
+    return decode(id.getKey(), value, typeOfT);
   }
 
   // returns first that matches
@@ -106,7 +178,7 @@ public class MetadataStoreDataset extends AbstractDataset {
           return null;
         }
 
-        return deserialize(value, typeOfT);
+        return decode(row.getRow(), value, typeOfT);
       } finally {
         scan.close();
       }
@@ -157,7 +229,7 @@ public class MetadataStoreDataset extends AbstractDataset {
           if (columnValue == null) {
             continue;
           }
-          T value = deserialize(columnValue, typeOfT);
+          T value = decode(next.getRow(), columnValue, typeOfT);
 
           if (filter.apply(value)) {
             MDSKey key = new MDSKey(next.getRow());
@@ -197,7 +269,7 @@ public class MetadataStoreDataset extends AbstractDataset {
         if (columnValue == null) {
           continue;
         }
-        T value = deserialize(columnValue, typeOfT);
+        T value = decode(next.getRow(), columnValue, typeOfT);
 
         MDSKey key = new MDSKey(next.getRow());
         //noinspection ConstantConditions
@@ -247,6 +319,9 @@ public class MetadataStoreDataset extends AbstractDataset {
             continue;
           }
           table.delete(new Delete(next.getRow()).add(COLUMN));
+          if (valueCache != null) {
+            valueCache.invalidate(next.getRow());
+          }
         }
       } finally {
         scan.close();
@@ -258,7 +333,10 @@ public class MetadataStoreDataset extends AbstractDataset {
 
   public <T> void write(MDSKey id, T value) {
     try {
-      table.put(new Put(id.getKey()).add(COLUMN, serialize(value)));
+      table.put(new Put(id.getKey()).add(COLUMN, encode(value)));
+      if (valueCache != null) {
+        valueCache.invalidate(id.getKey());
+      }
     } catch (Exception e) {
       throw Throwables.propagate(e);
     }
@@ -0,0 +1,452 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.DataSetException;
+import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.common.utils.DirUtils;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A sorted run of buffered changes of a {@link BufferingTable} that was spilled to a local file, to bound the memory
+ * used by transactions that write a lot of data. Rows are stored in row key order, each with its columns in column
+ * order. A sparse index from row key to file offset is kept in memory to look up rows and to start scans, and the file
+ * is kept open for reading until the run is closed.
+ * <p>
+ * Each process spills into its own subdirectory of the configured spill directory, which it holds a file lock on.
+ * Subdirectories left behind by processes that are gone, for example after a crash, are deleted the first time a
+ * process spills into the same directory.
+ */
+final class SpilledRun implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SpilledRun.class);
+
+  private static final String PROCESS_DIR_PREFIX = "spill-";
+  private static final String LOCK_FILE = "lock";
+  // Process spill directories by configured spill directory, with the channels holding their locks
+  private static final Map<File, File> PROCESS_DIRS = new HashMap<>();
+  // Process directories of this process, by canonical path. The locks must stay referenced, since the JVM forgets
+  // about locks that are garbage collected, while the file system still has them
+  private static final Map<File, FileLock> PROCESS_LOCKS = new HashMap<>();
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // Reads of single rows only need to go through one index interval
+  private static final int GET_BUFFER_SIZE = 8 * 1024;
+  // A row key is added to the index every this many bytes of the file
+  private static final int INDEX_INTERVAL = 64 * 1024;
+
+  private static final int END_OF_RUN = -1;
+  private static final byte PUT = 0;
+  private static final byte DELETE = 1;
+  private static final byte INCREMENT = 2;
+
+  private final File file;
+  private final FileChannel channel;
+  private final NavigableMap<byte[], Long> index;
+  @Nullable
+  private final byte[] lastRow;
+  private final long size;
+
+  private SpilledRun(File file, FileChannel channel, NavigableMap<byte[], Long> index, @Nullable byte[] lastRow,
+                     long size) {
+    this.file = file;
+    this.channel = channel;
+    this.index = index;
+    this.lastRow = lastRow;
+    this.size = size;
+  }
+
+  /**
+   * Returns the directory of this process for spilling into the given spill directory. The first call for a spill
+   * directory creates the process directory and deletes the ones of processes that are gone.
+   */
+  static synchronized File getProcessDir(File spillDir) throws IOException {
+    File processDir = PROCESS_DIRS.get(spillDir);
+    if (processDir != null) {
+      return processDir;
+    }
+
+    if (!DirUtils.mkdirs(spillDir)) {
+      throw new IOException("Failed to create spill directory " + spillDir);
+    }
+    for (File dir : DirUtils.listFiles(spillDir)) {
+      if (dir.isDirectory() && dir.getName().startsWith(PROCESS_DIR_PREFIX) && !isLocked(dir)) {
+        LOG.info("Deleting spilled buffers left behind in {}", dir);
+        DirUtils.deleteDirectoryContents(dir);
+      }
+    }
+
+    processDir = new File(spillDir, PROCESS_DIR_PREFIX + UUID.randomUUID());
+    if (!DirUtils.mkdirs(processDir)) {
+      throw new IOException("Failed to create spill directory " + processDir);
+    }
+    FileChannel lockChannel = new RandomAccessFile(new File(processDir, LOCK_FILE), "rw").getChannel();
+    FileLock lock = lockChannel.tryLock();
+    if (lock == null) {
+      Closeables.closeQuietly(lockChannel);
+      throw new IOException("Failed to lock spill directory " + processDir);
+    }
+    // The lock is held until the process exits
+    PROCESS_LOCKS.put(processDir.getCanonicalFile(), lock);
+    PROCESS_DIRS.put(spillDir, processDir);
+    return processDir;
+  }
+
+  /**
+   * Returns whether the lock of the given process spill directory is held by a live process.
+   */
+  private static boolean isLocked(File processDir) throws IOException {
+    // Never probe the locks of this process: closing the probing channel would release them
+    if (PROCESS_LOCKS.containsKey(processDir.getCanonicalFile())) {
+      return true;
+    }
+    File lockFile = new File(processDir, LOCK_FILE);
+    if (!lockFile.exists()) {
+      // Either the process is gone before it created the lock file, or it is about to create it
+      return System.currentTimeMillis() - processDir.lastModified() < TimeUnit.MINUTES.toMillis(1);
+    }
+    try (FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel()) {
+      FileLock lock = channel.tryLock();
+      if (lock == null) {
+        return true;
+      }
+      lock.release();
+      return false;
+    } catch (OverlappingFileLockException e) {
+      // Locked through another channel of this process
+      return true;
+    }
+  }
+
+  /**
+   * Writes the given rows, which must be sorted by row key, to a new file in the given directory.
+   */
+  static SpilledRun write(File dir, Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows)
+    throws IOException {
+    File file = File.createTempFile("buffer", ".run", dir);
+    NavigableMap<byte[], Long> index = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    byte[] lastRow = null;
+
+    CountingOutputStream counter = new CountingOutputStream(
+      new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    DataOutputStream output = new DataOutputStream(counter);
+    boolean succeeded = false;
+    try {
+      long lastIndexed = -INDEX_INTERVAL;
+      while (rows.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+        lastRow = row.getKey();
+        if (counter.getCount() - lastIndexed >= INDEX_INTERVAL) {
+          lastIndexed = counter.getCount();
+          index.put(lastRow, lastIndexed);
+        }
+        writeBytes(output, lastRow);
+        output.writeInt(row.getValue().size());
+        for (Map.Entry<byte[], Update> column : row.getValue().entrySet()) {
+          writeBytes(output, column.getKey());
+          writeUpdate(output, column.getValue());
+        }
+      }
+      output.writeInt(END_OF_RUN);
+      output.close();
+      succeeded = true;
+    } finally {
+      if (!succeeded) {
+        Closeables.closeQuietly(output);
+        file.delete();
+      }
+    }
+
+    FileChannel channel;
+    try {
+      channel = new RandomAccessFile(file, "r").getChannel();
+    } catch (IOException e) {
+      file.delete();
+      throw e;
+    }
+    return new SpilledRun(file, channel, index, lastRow, file.length());
+  }
+
+  /**
+   * Returns the size of the file in bytes.
+   */
+  long getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the buffered changes of the given row, or {@code null} if this run has no changes for the row.
+   */
+  @Nullable
+  NavigableMap<byte[], Update> get(byte[] row) {
+    if (lastRow == null || Bytes.compareTo(row, index.firstKey()) < 0 || Bytes.compareTo(row, lastRow) > 0) {
+      return null;
+    }
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows =
+           iterator(row, null, GET_BUFFER_SIZE)) {
+      if (rows.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = rows.next();
+        if (Bytes.equals(row, entry.getKey())) {
+          return entry.getValue();
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Returns an iterator over the rows in the given range, in row key order.
+   *
+   * @param startRow first row of the range, inclusive; {@code null} to start from the first row
+   * @param stopRow last row of the range, exclusive; {@code null} to stop after the last row
+   */
+  CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator(@Nullable byte[] startRow,
+                                                                               @Nullable byte[] stopRow) {
+    return iterator(startRow, stopRow, BUFFER_SIZE);
+  }
+
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator(
+    @Nullable final byte[] startRow, @Nullable final byte[] stopRow, int bufferSize) {
+
+    Map.Entry<byte[], Long> floor = startRow == null ? null : index.floorEntry(startRow);
+    // Reads with positional reads on the shared channel, so that iterators don't open the file
+    final DataInputStream input = new DataInputStream(
+      new BufferedInputStream(new ChannelInputStream(channel, floor == null ? 0L : floor.getValue()), bufferSize));
+
+    return new AbstractCloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+      @Override
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+        try {
+          while (true) {
+            byte[] row = readBytes(input);
+            if (row == null || (stopRow != null && Bytes.compareTo(row, stopRow) >= 0)) {
+              close();
+              return endOfData();
+            }
+            int columns = input.readInt();
+            if (startRow != null && Bytes.compareTo(row, startRow) < 0) {
+              for (int i = 0; i < columns; i++) {
+                readBytes(input);
+                readUpdate(input);
+              }
+              continue;
+            }
+            NavigableMap<byte[], Update> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+            for (int i = 0; i < columns; i++) {
+              result.put(readBytes(input), readUpdate(input));
+            }
+            return Maps.immutableEntry(row, result);
+          }
+        } catch (IOException e) {
+          close();
+          throw new DataSetException("Failed to read spilled buffer from " + file, e);
+        }
+      }
+
+      @Override
+      public void close() {
+        Closeables.closeQuietly(input);
+      }
+    };
+  }
+
+  /**
+   * Closes and deletes the file of this run.
+   */
+  @Override
+  public void close() {
+    Closeables.closeQuietly(channel);
+    file.delete();
+  }
+
+  /**
+   * Merges the given row iterators, each of which must be sorted by row key, into one. The iterators must be ordered
+   * from the oldest to the newest changes, so that newer changes of the same column are applied on top of older ones.
+   * The rows of the iterators are not modified: rows found in more than one iterator are merged into a copy.
+   */
+  static CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> merge(
+    final List<? extends Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>> sources) {
+
+    final List<PeekingIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>> iterators =
+      new ArrayList<>(sources.size());
+    for (Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> source : sources) {
+      iterators.add(Iterators.peekingIterator(source));
+    }
+
+    return new AbstractCloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+      @Override
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+        byte[] row = null;
+        for (PeekingIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator : iterators) {
+          if (iterator.hasNext() && (row == null || Bytes.compareTo(iterator.peek().getKey(), row) < 0)) {
+            row = iterator.peek().getKey();
+          }
+        }
+        if (row == null) {
+          return endOfData();
+        }
+
+        NavigableMap<byte[], Update> columns = null;
+        boolean copied = false;
+        for (PeekingIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator : iterators) {
+          if (iterator.hasNext() && Bytes.equals(iterator.peek().getKey(), row)) {
+            NavigableMap<byte[], Update> newer = iterator.next().getValue();
+            if (columns != null && !copied) {
+              // the sources may be the in-memory buffer, which must not be modified
+              columns = new TreeMap<>(columns);
+              copied = true;
+            }
+            columns = mergeColumns(columns, newer);
+          }
+        }
+        return Maps.immutableEntry(row, columns);
+      }
+
+      @Override
+      public void close() {
+        for (Iterator<?> source : sources) {
+          if (source instanceof CloseableIterator) {
+            ((CloseableIterator<?>) source).close();
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Applies the newer changes of a row on top of older ones. The older map is modified in place if it is not
+   * {@code null}, otherwise the newer map is returned as is.
+   */
+  static NavigableMap<byte[], Update> mergeColumns(@Nullable NavigableMap<byte[], Update> older,
+                                                   NavigableMap<byte[], Update> newer) {
+    if (older == null) {
+      return newer;
+    }
+    for (Map.Entry<byte[], Update> column : newer.entrySet()) {
+      older.put(column.getKey(), Updates.mergeUpdates(older.get(column.getKey()), column.getValue()));
+    }
+    return older;
+  }
+
+  private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  @Nullable
+  private static byte[] readBytes(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length == END_OF_RUN) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return bytes;
+  }
+
+  private static void writeUpdate(DataOutputStream output, Update update) throws IOException {
+    if (update instanceof IncrementValue) {
+      output.writeByte(INCREMENT);
+      output.writeLong(((IncrementValue) update).getValue());
+    } else if (update.getBytes() == null) {
+      output.writeByte(DELETE);
+    } else {
+      output.writeByte(PUT);
+      writeBytes(output, update.getBytes());
+    }
+  }
+
+  private static Update readUpdate(DataInputStream input) throws IOException {
+    byte type = input.readByte();
+    switch (type) {
+      case PUT:
+        return new PutValue(readBytes(input));
+      case DELETE:
+        return new PutValue(null);
+      case INCREMENT:
+        return new IncrementValue(input.readLong());
+      default:
+        throw new IOException("Unknown update type " + type);
+    }
+  }
+
+  /**
+   * An {@link InputStream} that reads a {@link FileChannel} from a given position, without changing the position of
+   * the channel.
+   */
+  private static final class ChannelInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private long position;
+
+    ChannelInputStream(FileChannel channel, long position) {
+      this.channel = channel;
+      this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+  }
+}
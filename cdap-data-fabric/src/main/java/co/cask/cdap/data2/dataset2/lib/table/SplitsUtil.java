@@ -38,13 +38,13 @@ public class SplitsUtil {
    * we cannot read this number from configuration, because the current OVCTable(Handle) does not pass configuration
    * down into the tables anywhere. See ENG-2395 for the fix.
    */
-  static final int DEFAULT_NUMBER_OF_SPLITS = 8;
+  public static final int DEFAULT_NUMBER_OF_SPLITS = 8;
 
   /**
    * Simplest possible implementation of getSplits. Takes the given start and end and divides the key space in
    * between into (almost) even partitions, using a long integer approximation of the keys.
    */
-  static List<KeyRange> primitiveGetSplits(int numSplits, byte[] start, byte[] stop) {
+  public static List<KeyRange> primitiveGetSplits(int numSplits, byte[] start, byte[] stop) {
     // if the range is empty, return no splits
     if (start != null && stop != null && Bytes.compareTo(start, stop) >= 0) {
       return Collections.emptyList();
@@ -19,6 +19,7 @@ package co.cask.cdap.data2.dataset2.lib.table;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.dataset.table.ConflictDetection;
+import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.conf.Constants;
 
@@ -90,6 +91,79 @@ public class TableProperties {
     return !"true".equalsIgnoreCase(props.get(Constants.Dataset.TABLE_TX_DISABLED));
   }
 
+  /**
+   * Returns the estimated size in bytes of buffered changes beyond which they are spilled to local disk.
+   * Defaults to 0, which means the changes are never spilled.
+   *
+   * @throws IllegalArgumentException if the property value is not a valid number.
+   */
+  static long getBufferSpillThreshold(Map<String, String> props) {
+    String value = props.get(Constants.Dataset.TABLE_BUFFER_SPILL_THRESHOLD);
+    if (value == null) {
+      return 0L;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid buffer spill threshold: " + value);
+    }
+  }
+
+  /**
+   * Returns the number of bits of the hashes to send to the transaction manager instead of the change keys.
+   * Defaults to 0, which means the change keys are sent as they are.
+   *
+   * @throws IllegalArgumentException if the property value is not 64 or 128.
+   */
+  static int getConflictHashBits(Map<String, String> props) {
+    String value = props.get(Constants.Dataset.TABLE_CONFLICT_HASH_BITS);
+    if (value == null) {
+      return 0;
+    }
+    if (!"64".equals(value) && !"128".equals(value)) {
+      throw new IllegalArgumentException("Invalid conflict hash bits, must be 64 or 128: " + value);
+    }
+    return Integer.parseInt(value);
+  }
+
+  /**
+   * Returns whether the latencies of the operations on the persistent store are recorded. Defaults to false.
+   */
+  static boolean isLatencyMetricsEnabled(Map<String, String> props) {
+    return "true".equalsIgnoreCase(props.get(Constants.Dataset.TABLE_LATENCY_METRICS));
+  }
+
+  /**
+   * Returns a {@link Scan} of all rows with the default scan hints set in the given properties. Hints that are not
+   * set in the properties are left unset.
+   *
+   * @throws IllegalArgumentException if a property value is not valid for its hint.
+   */
+  static Scan getScanDefaults(Map<String, String> props) {
+    Scan scan = new Scan(null, null);
+    String value = props.get(Constants.Dataset.TABLE_SCAN_CACHING);
+    try {
+      if (value != null) {
+        scan.setCaching(Integer.parseInt(value));
+      }
+      value = props.get(Constants.Dataset.TABLE_SCAN_MAX_RESULT_SIZE);
+      if (value != null) {
+        scan.setMaxResultSize(Long.parseLong(value));
+      }
+      value = props.get(Constants.Dataset.TABLE_SCAN_BATCH);
+      if (value != null) {
+        scan.setBatch(Integer.parseInt(value));
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid scan hint: " + value, e);
+    }
+    value = props.get(Constants.Dataset.TABLE_SCAN_CACHE_BLOCKS);
+    if (value != null) {
+      scan.setCacheBlocks(Boolean.parseBoolean(value));
+    }
+    return scan;
+  }
+
   /**
    * Returns the column family as being set in the given specification.
    * If it is not set, the {@link #DEFAULT_DATA_COLUMN_FAMILY} will be returned.
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2016 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.data2.dataset2.lib.table.hbase;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
 import com.google.common.base.Throwables;
@@ -24,14 +25,26 @@ import org.apache.hadoop.hbase.client.ResultScanner;
 
 import java.io.IOException;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Implements Scanner on top of HBase resultSetScanner.
+ * <p>
+ * If the scan fetches a limited number of columns at once, HBase returns the columns of a row in several results.
+ * They are merged here, so that each row is returned once with all of its columns.
  */
 public class HBaseScanner implements Scanner {
 
   private final ResultScanner scanner;
   private final byte[] columnFamily;
+  // Result read ahead, to merge it with the current row if it belongs to the same row
+  private Result nextResult;
+  // Row of the last result read, to count the distinct rows read
+  private byte[] lastRowRead;
+  private long resultsRead;
+  private long rowsRead;
+  private long rowsReturned;
+  private boolean exhausted;
 
   public HBaseScanner(ResultScanner scanner, byte[] columnFamily) {
     this.scanner = scanner;
@@ -48,13 +61,21 @@ public class HBaseScanner implements Scanner {
 
       //Loop until one row is read completely or until end is reached.
       while (true) {
-        Result result = scanner.next();
-        if (result == null || result.isEmpty()) {
+        Result result = nextResult == null ? readResult() : nextResult;
+        nextResult = null;
+        if (result == null) {
           break;
         }
 
         Map<byte[], byte[]> rowMap = HBaseTable.getRowMap(result, columnFamily);
+        // merging the following results of the same row
+        nextResult = readResult();
+        while (nextResult != null && Bytes.equals(result.getRow(), nextResult.getRow())) {
+          rowMap.putAll(HBaseTable.getRowMap(nextResult, columnFamily));
+          nextResult = readResult();
+        }
         if (rowMap.size() > 0) {
+          rowsReturned++;
           return new co.cask.cdap.api.dataset.table.Result(result.getRow(), rowMap);
         }
       }
@@ -67,8 +88,56 @@ public class HBaseScanner implements Scanner {
     }
   }
 
+  /**
+   * Returns the number of results read from the HBase scanner so far.
+   */
+  long getResultsRead() {
+    return resultsRead;
+  }
+
+  /**
+   * Returns the number of distinct rows of the results read from the HBase scanner so far, including the row of the
+   * result read ahead.
+   */
+  long getRowsRead() {
+    return rowsRead;
+  }
+
+  /**
+   * Returns the number of rows returned by {@link #next()} so far. Each of them may have been merged from several
+   * results.
+   */
+  long getRowsReturned() {
+    return rowsReturned;
+  }
+
+  /**
+   * Returns whether all results of the HBase scanner have been read.
+   */
+  boolean isExhausted() {
+    return exhausted;
+  }
+
   @Override
   public void close() {
     scanner.close();
   }
+
+  @Nullable
+  private Result readResult() throws IOException {
+    if (exhausted) {
+      return null;
+    }
+    Result result = scanner.next();
+    if (result == null || result.isEmpty()) {
+      exhausted = true;
+      return null;
+    }
+    resultsRead++;
+    if (lastRowRead == null || !Bytes.equals(lastRowRead, result.getRow())) {
+      rowsRead++;
+      lastRowRead = result.getRow();
+    }
+    return result;
+  }
 }
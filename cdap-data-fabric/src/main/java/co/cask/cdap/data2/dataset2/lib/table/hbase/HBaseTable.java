@@ -19,17 +19,21 @@ package co.cask.cdap.data2.dataset2.lib.table.hbase;
 import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.annotation.WriteOnly;
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.batch.Split;
 import co.cask.cdap.api.dataset.DataSetException;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetSpecification;
 import co.cask.cdap.api.dataset.table.Filter;
 import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.dataset.table.TableSplit;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTable;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.data2.dataset2.lib.table.IncrementValue;
+import co.cask.cdap.data2.dataset2.lib.table.KeyRange;
 import co.cask.cdap.data2.dataset2.lib.table.PutValue;
+import co.cask.cdap.data2.dataset2.lib.table.SplitsUtil;
 import co.cask.cdap.data2.dataset2.lib.table.TableProperties;
 import co.cask.cdap.data2.dataset2.lib.table.Update;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.PrefixedNamespaces;
@@ -51,6 +55,8 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTable;
@@ -67,9 +73,11 @@ import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
@@ -83,6 +91,9 @@ public class HBaseTable extends BufferingTable {
 
   public static final String DELTA_WRITE = "d";
 
+  // Number of rows fetched at once by scans that do not tell otherwise
+  private static final int DEFAULT_SCAN_CACHING = 1000;
+
   private final HBaseTableUtil tableUtil;
   private final HTable hTable;
   private final String hTableName;
@@ -96,7 +107,7 @@ public class HBaseTable extends BufferingTable {
   public HBaseTable(DatasetContext datasetContext, DatasetSpecification spec,
                     CConfiguration cConf, Configuration hConf, HBaseTableUtil tableUtil) throws IOException {
     super(PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), spec.getName()),
-          TableProperties.supportsReadlessIncrements(spec.getProperties()), spec.getProperties());
+          TableProperties.supportsReadlessIncrements(spec.getProperties()), spec.getProperties(), getSpillDir(cConf));
     TableId hBaseTableId = tableUtil.createHTableId(new NamespaceId(datasetContext.getNamespaceId()), spec.getName());
     HTable hTable = tableUtil.createHTable(hConf, hBaseTableId);
     // todo: make configurable
@@ -127,6 +138,12 @@ public class HBaseTable extends BufferingTable {
     this.tx = tx;
   }
 
+  @Override
+  public void updateTx(Transaction tx) {
+    super.updateTx(tx);
+    this.tx = tx;
+  }
+
   @Override
   protected List<Map<byte[], byte[]>> getPersisted(List<co.cask.cdap.api.dataset.table.Get> gets) {
     if (gets.isEmpty()) {
@@ -254,6 +271,17 @@ public class HBaseTable extends BufferingTable {
 
   @Override
   protected void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted) throws Exception {
+    undoPersisted(persisted, tx == null ? null : tx.getWritePointer());
+  }
+
+  @Override
+  protected void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted,
+                      long writePointer) throws Exception {
+    undoPersisted(persisted, writePointer);
+  }
+
+  private void undoPersisted(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted,
+                             @Nullable Long writePointer) throws Exception {
     if (persisted.isEmpty()) {
       return;
     }
@@ -264,10 +292,10 @@ public class HBaseTable extends BufferingTable {
       DeleteBuilder delete = tableUtil.buildDelete(row.getKey());
       for (Map.Entry<byte[], Update> column : row.getValue().entrySet()) {
         // we want support tx and non-tx modes
-        if (tx != null) {
+        if (writePointer != null) {
           delete.setAttribute(TxConstants.TX_ROLLBACK_ATTRIBUTE_KEY, new byte[0]);
           // TODO: hijacking timestamp... bad
-          delete.deleteColumn(columnFamily, column.getKey(), tx.getWritePointer());
+          delete.deleteColumn(columnFamily, column.getKey(), writePointer);
         } else {
           delete.deleteColumns(columnFamily, column.getKey());
         }
@@ -299,15 +327,119 @@ public class HBaseTable extends BufferingTable {
     return getInternal(row, columns);
   }
 
+  /**
+   * Returns splits aligned with the HBase regions that overlap with the given key range, with the host of the region
+   * server as the location of each split. If more than {@code numSplits} regions overlap, adjacent regions are
+   * combined. If fewer regions overlap, each region is divided into several splits within its key range, so that
+   * a table with few regions still gets {@code numSplits} splits, or the default number of splits if
+   * {@code numSplits} is not positive.
+   */
+  @ReadOnly
+  @Override
+  public List<Split> getSplits(int numSplits, byte[] start, byte[] stop) {
+    if (start != null && stop != null && Bytes.compareTo(start, stop) >= 0) {
+      return Collections.emptyList();
+    }
+
+    NavigableMap<HRegionInfo, ServerName> regions;
+    try {
+      regions = hTable.getRegionLocations();
+    } catch (IOException e) {
+      LOG.warn("Failed to get region locations of table {}, using splits without locations", hTableName, e);
+      return super.getSplits(numSplits, start, stop);
+    }
+
+    // key ranges of the regions that overlap with [start, stop), with the host of each region
+    List<KeyRange> ranges = new ArrayList<>();
+    List<String> hosts = new ArrayList<>();
+    for (Map.Entry<HRegionInfo, ServerName> entry : regions.entrySet()) {
+      byte[] regionStart = entry.getKey().getStartKey();
+      byte[] regionStop = entry.getKey().getEndKey();
+      byte[] splitStart = maxStartKey(start, regionStart.length == 0 ? null : regionStart);
+      byte[] splitStop = minStopKey(stop, regionStop.length == 0 ? null : regionStop);
+      if (splitStart != null && splitStop != null && Bytes.compareTo(splitStart, splitStop) >= 0) {
+        continue;
+      }
+      ranges.add(new KeyRange(splitStart, splitStop));
+      hosts.add(entry.getValue() == null ? null : entry.getValue().getHostname());
+    }
+    if (ranges.isEmpty()) {
+      return super.getSplits(numSplits, start, stop);
+    }
+
+    int targetSplits = numSplits > 0 ? numSplits : SplitsUtil.DEFAULT_NUMBER_OF_SPLITS;
+    if (ranges.size() < targetSplits) {
+      return divideRegions(targetSplits, ranges, hosts);
+    }
+
+    // combine adjacent regions if there are more regions than the desired number of splits
+    int regionsPerSplit = (ranges.size() + targetSplits - 1) / targetSplits;
+    List<Split> splits = new ArrayList<>();
+    for (int i = 0; i < ranges.size(); i += regionsPerSplit) {
+      int last = Math.min(i + regionsPerSplit, ranges.size()) - 1;
+      Set<String> locations = new LinkedHashSet<>();
+      for (String host : hosts.subList(i, last + 1)) {
+        if (host != null) {
+          locations.add(host);
+        }
+      }
+      splits.add(new TableSplit(ranges.get(i).getStart(), ranges.get(last).getStop(),
+                                locations.toArray(new String[locations.size()])));
+    }
+    return splits;
+  }
+
+  // divides the key range of each region into splits located at the region's host, spreading the number of splits
+  // evenly over the regions
+  private static List<Split> divideRegions(int numSplits, List<KeyRange> ranges, List<String> hosts) {
+    List<Split> splits = new ArrayList<>();
+    for (int i = 0; i < ranges.size(); i++) {
+      int regionSplits = numSplits / ranges.size() + (i < numSplits % ranges.size() ? 1 : 0);
+      KeyRange range = ranges.get(i);
+      String[] locations = hosts.get(i) == null ? new String[0] : new String[] { hosts.get(i) };
+      List<KeyRange> subRanges = SplitsUtil.primitiveGetSplits(regionSplits, range.getStart(), range.getStop());
+      for (int j = 0; j < subRanges.size(); j++) {
+        // the first sub-range starts at the least possible key if the region has no start key; keep it open instead
+        byte[] splitStart = j == 0 ? range.getStart() : subRanges.get(j).getStart();
+        splits.add(new TableSplit(splitStart, subRanges.get(j).getStop(), locations));
+      }
+    }
+    return splits;
+  }
+
+  // returns the greater of two start keys, where null means the least possible key
+  @Nullable
+  private static byte[] maxStartKey(@Nullable byte[] key1, @Nullable byte[] key2) {
+    if (key1 == null || key2 == null) {
+      return key1 == null ? key2 : key1;
+    }
+    return Bytes.compareTo(key1, key2) >= 0 ? key1 : key2;
+  }
+
+  // returns the lesser of two stop keys, where null means beyond the greatest possible key
+  @Nullable
+  private static byte[] minStopKey(@Nullable byte[] key1, @Nullable byte[] key2) {
+    if (key1 == null || key2 == null) {
+      return key1 == null ? key2 : key1;
+    }
+    return Bytes.compareTo(key1, key2) <= 0 ? key1 : key2;
+  }
+
   @ReadOnly
   @Override
   protected Scanner scanPersisted(co.cask.cdap.api.dataset.table.Scan scan) throws Exception {
     ScanBuilder hScan = tableUtil.buildScan();
     hScan.addFamily(columnFamily);
-    // todo: should be configurable
-    // NOTE: by default we assume scanner is used in mapreduce job, hence no cache blocks
-    hScan.setCacheBlocks(false);
-    hScan.setCaching(1000);
+    // NOTE: unless the scan tells otherwise, we assume scanner is used in mapreduce job, hence no cache blocks
+    hScan.setCacheBlocks(scan.getCacheBlocks() == null ? false : scan.getCacheBlocks());
+    final int caching = scan.getCaching() == null ? DEFAULT_SCAN_CACHING : scan.getCaching();
+    hScan.setCaching(caching);
+    if (scan.getMaxResultSize() != null) {
+      hScan.setMaxResultSize(scan.getMaxResultSize());
+    }
+    if (scan.getBatch() != null) {
+      hScan.setBatch(scan.getBatch());
+    }
 
     byte[] startRow = scan.getStartRow();
     byte[] stopRow = scan.getStopRow();
@@ -322,7 +454,25 @@ public class HBaseTable extends BufferingTable {
     hScan.setAttribute(TxConstants.TX_OPERATION_ATTRIBUTE_KEY, txCodec.encode(tx));
 
     ResultScanner resultScanner = wrapResultScanner(hTable.getScanner(hScan.build()));
-    return new HBaseScanner(resultScanner, columnFamily);
+    return new HBaseScanner(resultScanner, columnFamily) {
+      private boolean closed;
+
+      @Override
+      public void close() {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        super.close();
+        // The client fetches results in batches of the scan caching, so unless the scanner was exhausted, the rest of
+        // the last batch was fetched too. Each of its results counts as a row, since it is not known how many rows
+        // they belong to if the scan sets a batch. This over-estimates if the batches were limited by the max result
+        // size.
+        long resultsRead = getResultsRead();
+        long unread = isExhausted() ? 0 : (resultsRead + caching - 1) / caching * caching - resultsRead;
+        reportScan(getRowsRead() + unread, getRowsReturned());
+      }
+    };
   }
 
   private void setFilterIfNeeded(ScanBuilder scan, @Nullable Filter filter) {
@@ -57,14 +57,7 @@ public class InMemoryMetricsTable implements MetricsTable {
 
   @Override
   public byte[] get(byte[] row, byte[] column) {
-    NavigableMap<byte[], NavigableMap<Long, byte[]>> rowMap = InMemoryTableService.get(tableName, row, null);
-    if (rowMap != null) {
-      NavigableMap<Long, byte[]> valueMap = rowMap.get(column);
-      if (valueMap != null && !valueMap.isEmpty()) {
-        return valueMap.firstEntry().getValue();
-      }
-    }
-    return null;
+    return InMemoryTableService.getLatest(tableName, row, column);
   }
 
   @Override
@@ -26,6 +26,7 @@ import co.cask.cdap.api.dataset.table.ConflictDetection;
 import co.cask.cdap.api.dataset.table.Filter;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTable;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
@@ -36,6 +37,7 @@ import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Maps;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -75,12 +77,13 @@ public class InMemoryTable extends BufferingTable {
    * To be used in tests that need namespaces
    */
   public InMemoryTable(DatasetContext datasetContext, String name, ConflictDetection level, CConfiguration cConf) {
-    super(PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), name), level);
+    super(PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), name), false,
+          Collections.singletonMap(Table.PROPERTY_CONFLICT_LEVEL, level.name()), getSpillDir(cConf));
   }
 
   public InMemoryTable(DatasetContext datasetContext, DatasetSpecification spec, CConfiguration cConf) {
     super(PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), spec.getName()),
-          false, spec.getProperties());
+          false, spec.getProperties(), getSpillDir(cConf));
   }
 
   @Override
@@ -89,6 +92,12 @@ public class InMemoryTable extends BufferingTable {
     this.tx = tx;
   }
 
+  @Override
+  public void updateTx(Transaction tx) {
+    super.updateTx(tx);
+    this.tx = tx;
+  }
+
   @WriteOnly
   @Override
   public void increment(byte[] row, byte[][] columns, long[] amounts) {
@@ -123,6 +132,19 @@ public class InMemoryTable extends BufferingTable {
     InMemoryTableService.undo(getTableName(), persisted, tx.getWritePointer());
   }
 
+  @Override
+  protected void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted, long writePointer) {
+    if (persisted.isEmpty()) {
+      return;
+    }
+    undoPersisted(persisted, writePointer);
+  }
+
+  @WriteOnly
+  private void undoPersisted(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted, long writePointer) {
+    InMemoryTableService.undo(getTableName(), persisted, writePointer);
+  }
+
   @Override
   protected NavigableMap<byte[], byte[]> getPersisted(byte[] row, byte[] startColumn, byte[] stopColumn, int limit)
     throws Exception {
@@ -142,6 +164,10 @@ public class InMemoryTable extends BufferingTable {
   @ReadOnly
   @Override
   protected Scanner scanPersisted(Scan scan) {
+    if (scan.getCaching() != null) {
+      return scanInBatches(scan.getStartRow(), scan.getStopRow(), scan.getFilter(), scan.getCaching());
+    }
+
     // todo: a lot of inefficient copying from one map to another
     byte[] startRow = scan.getStartRow();
     byte[] stopRow = scan.getStopRow();
@@ -156,6 +182,41 @@ public class InMemoryTable extends BufferingTable {
     return new InMemoryScanner(wrapIterator(rows.entrySet().iterator()));
   }
 
+  /**
+   * Scans the given range by copying the given number of rows at a time, so that a scan that only reads a few rows
+   * does not have to copy the whole range.
+   */
+  private Scanner scanInBatches(@Nullable final byte[] startRow, @Nullable final byte[] stopRow,
+                                @Nullable final Filter filter, final int caching) {
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], byte[]>>> rows =
+      new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], byte[]>>>() {
+        private byte[] batchStartRow = startRow;
+        private boolean lastBatch;
+        private Iterator<Map.Entry<byte[], NavigableMap<byte[], byte[]>>> batch =
+          Collections.<Map.Entry<byte[], NavigableMap<byte[], byte[]>>>emptyList().iterator();
+
+        @Override
+        protected Map.Entry<byte[], NavigableMap<byte[], byte[]>> computeNext() {
+          while (!batch.hasNext()) {
+            if (lastBatch) {
+              return endOfData();
+            }
+            NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> rowRange =
+              InMemoryTableService.getRowRange(getTableName(), batchStartRow, stopRow, caching, tx);
+            lastBatch = rowRange.size() < caching;
+            if (!rowRange.isEmpty()) {
+              // the next batch starts right after the last row of this batch
+              batchStartRow = Bytes.add(rowRange.lastKey(), new byte[] { 0 });
+            }
+            batch = applyFilter(unwrapDeletesForRows(getLatestNotExcludedRows(rowRange, tx)), filter)
+              .entrySet().iterator();
+          }
+          return batch.next();
+        }
+      };
+    return new InMemoryScanner(wrapIterator(rows));
+  }
+
   private NavigableMap<byte[], NavigableMap<byte[], byte[]>> applyFilter(
                                                     NavigableMap<byte[], NavigableMap<byte[], byte[]>> map,
                                                     @Nullable Filter filter) {
@@ -249,11 +249,42 @@ public class InMemoryTableService {
     return deepCopy(Updates.rowToBytes(getVisible(rowMap, tx)));
   }
 
+  /**
+   * Returns the latest value of a single cell, without copying the rest of the row, or {@code null} if it doesn't
+   * exist.
+   */
+  @Nullable
+  public static synchronized byte[] getLatest(String tableName, byte[] row, byte[] column) {
+    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
+    Preconditions.checkArgument(table != null, "table not found: " + tableName);
+    NavigableMap<byte[], NavigableMap<Long, Update>> rowMap = table.get(row);
+    if (rowMap == null) {
+      return null;
+    }
+    NavigableMap<Long, Update> columnMap = rowMap.get(column);
+    if (columnMap == null || columnMap.isEmpty()) {
+      return null;
+    }
+    return copy(columnMap.lastEntry().getValue().getBytes());
+  }
+
   public static synchronized NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>>
                              getRowRange(String tableName,
                                          byte[] startRow,
                                          byte[] stopRow,
                                          @Nullable Transaction tx) {
+    return getRowRange(tableName, startRow, stopRow, Integer.MAX_VALUE, tx);
+  }
+
+  /**
+   * Returns at most {@code limit} rows of the given range, starting from the first one.
+   */
+  public static synchronized NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>>
+                             getRowRange(String tableName,
+                                         byte[] startRow,
+                                         byte[] stopRow,
+                                         int limit,
+                                         @Nullable Transaction tx) {
     // todo: handle nulls
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> tableData = tables.get(tableName);
     NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> rows;
@@ -270,6 +301,9 @@ public class InMemoryTableService {
     NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> result =
       Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     for (Map.Entry<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> rowMap : rows.entrySet()) {
+      if (result.size() >= limit) {
+        break;
+      }
       NavigableMap<byte[], NavigableMap<Long, Update>> columns =
         tx == null ? rowMap.getValue() : getVisible(rowMap.getValue(), tx);
       result.put(copy(rowMap.getKey()), deepCopy(Updates.rowToBytes(columns)));
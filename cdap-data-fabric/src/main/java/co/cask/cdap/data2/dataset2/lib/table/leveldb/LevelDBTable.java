@@ -53,7 +53,7 @@ public class LevelDBTable extends BufferingTable {
                       LevelDBTableService service, CConfiguration cConf,
                       DatasetSpecification spec) throws IOException {
     super(PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), tableName),
-          false, spec.getProperties());
+          false, spec.getProperties(), getSpillDir(cConf));
     this.core = new LevelDBTableCore(getTableName(), service);
   }
 
@@ -64,6 +64,12 @@ public class LevelDBTable extends BufferingTable {
     this.tx = tx;
   }
 
+  @Override
+  public void updateTx(Transaction tx) {
+    super.updateTx(tx);
+    this.tx = tx;
+  }
+
   @WriteOnly
   @Override
   public void increment(byte[] row, byte[][] columns, long[] amounts) {
@@ -124,6 +130,21 @@ public class LevelDBTable extends BufferingTable {
     core.undo(persisted, persistedVersion);
   }
 
+  @Override
+  protected void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted,
+                      long writePointer) throws Exception {
+    if (persisted.isEmpty()) {
+      return;
+    }
+    undoPersisted(persisted, writePointer);
+  }
+
+  @WriteOnly
+  private void undoPersisted(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted,
+                             long writePointer) throws IOException {
+    core.undo(persisted, writePointer);
+  }
+
   @ReadOnly
   @Override
   protected NavigableMap<byte[], byte[]> getPersisted(byte[] row, @Nullable byte[][] columns) throws Exception {
@@ -150,7 +171,9 @@ public class LevelDBTable extends BufferingTable {
         throw new DataSetException("Unknown filter type: " + scan.getFilter());
       }
     }
-    final Scanner scanner = core.scan(scan.getStartRow(), scan.getStopRow(), filter, null, tx);
+    // LevelDB caches the blocks read by scans unless the scan tells otherwise
+    boolean fillCache = scan.getCacheBlocks() == null || scan.getCacheBlocks();
+    final Scanner scanner = core.scan(scan.getStartRow(), scan.getStopRow(), filter, null, tx, fillCache);
     return new Scanner() {
       @Nullable
       @Override
@@ -30,6 +30,7 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Maps;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.ReadOptions;
 import org.iq80.leveldb.WriteBatch;
 import org.iq80.leveldb.WriteOptions;
 import org.slf4j.Logger;
@@ -192,6 +193,17 @@ public class LevelDBTableCore {
   public Scanner scan(byte[] startRow, byte[] stopRow,
                       @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns, @Nullable Transaction tx)
     throws IOException {
+    return scan(startRow, stopRow, filter, columns, tx, true);
+  }
+
+  /**
+   * Scans a range of rows.
+   *
+   * @param fillCache whether the blocks read by the scan should be kept in the block cache of LevelDB
+   */
+  public Scanner scan(byte[] startRow, byte[] stopRow,
+                      @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns, @Nullable Transaction tx,
+                      boolean fillCache) throws IOException {
     if (columns != null) {
       if (columns.length == 0) {
         return EMPTY_SCANNER;
@@ -200,7 +212,7 @@ public class LevelDBTableCore {
       Arrays.sort(columns, Bytes.BYTES_COMPARATOR);
     }
 
-    DBIterator iterator = getDB().iterator();
+    DBIterator iterator = getDB().iterator(new ReadOptions().fillCache(fillCache));
     seekToStart(iterator, startRow);
     byte[] endKey = stopRow == null ? null : createEndKey(stopRow);
     return new LevelDBScanner(iterator, endKey, filter, columns, tx);
@@ -16,24 +16,37 @@
 
 package co.cask.cdap.data2.dataset2.lib.timeseries;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
 import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An single result item returned by {@link FactScanner}.
  */
 public final class FactScanResult implements Iterable<TimeValue> {
+  private static final Function<Map.Entry<Long, byte[]>, TimeValue> CELL_TO_TIME_VALUE =
+    new Function<Map.Entry<Long, byte[]>, TimeValue>() {
+      @Override
+      public TimeValue apply(Map.Entry<Long, byte[]> cell) {
+        return new TimeValue(cell.getKey(), Bytes.toLong(cell.getValue()));
+      }
+    };
+
   private final String measureName;
   private final List<DimensionValue> dimensionValues;
-  private final Iterable<TimeValue> timeValues;
+  private final List<Map.Entry<Long, byte[]>> cells;
 
-  public FactScanResult(String measureName, List<DimensionValue> dimensionValues, Iterable<TimeValue> timeValues) {
+  public FactScanResult(String measureName, List<DimensionValue> dimensionValues,
+                        List<Map.Entry<Long, byte[]>> cells) {
     this.measureName = measureName;
     this.dimensionValues = dimensionValues;
-    this.timeValues = timeValues;
+    this.cells = cells;
   }
 
   public String getMeasureName() {
@@ -44,8 +57,16 @@ public final class FactScanResult implements Iterable<TimeValue> {
     return dimensionValues;
   }
 
+  /**
+   * Returns the timestamps and the stored values of the cells, for the measures whose values are not longs, such as
+   * the sketches of {@link co.cask.cdap.api.dataset.lib.cube.MeasureType#DISTINCT} measures.
+   */
+  public List<Map.Entry<Long, byte[]>> getCells() {
+    return cells;
+  }
+
   @Override
   public Iterator<TimeValue> iterator() {
-    return timeValues.iterator();
+    return Iterators.transform(cells.iterator(), CELL_TO_TIME_VALUE);
   }
 }
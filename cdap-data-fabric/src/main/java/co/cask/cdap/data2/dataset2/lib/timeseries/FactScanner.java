@@ -16,14 +16,13 @@
 
 package co.cask.cdap.data2.dataset2.lib.timeseries;
 
-import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
-import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import java.util.Collection;
 import java.util.Iterator;
@@ -107,7 +106,7 @@ public final class FactScanner implements Iterator<FactScanResult> {
           List<DimensionValue> dimensionValues = codec.getDimensionValues(rowKey);
 
           boolean exhausted = false;
-          List<TimeValue> timeValues = Lists.newLinkedList();
+          List<Map.Entry<Long, byte[]>> cells = Lists.newArrayList();
           // todo: entry set is ordered by ts?
           for (Map.Entry<byte[], byte[]> columnValue : rowResult.getColumns().entrySet()) {
             long ts = codec.getTimestamp(rowKey, columnValue.getKey());
@@ -120,17 +119,16 @@ public final class FactScanner implements Iterator<FactScanResult> {
               break;
             }
 
-            // todo: move Bytes.toLong into codec?
-            TimeValue timeValue = new TimeValue(ts, Bytes.toLong(columnValue.getValue()));
-            timeValues.add(timeValue);
+            // values are decoded by the FactScanResult, as they are not longs for all measure types
+            cells.add(Maps.immutableEntry(ts, columnValue.getValue()));
           }
 
-          if (timeValues.isEmpty() && exhausted) {
+          if (cells.isEmpty() && exhausted) {
             break;
           }
 
           // todo: can return empty list, if all data is < startTs or > endTs
-          return new FactScanResult(measureName, dimensionValues, timeValues);
+          return new FactScanResult(measureName, dimensionValues, cells);
         }
 
         scanner.close();
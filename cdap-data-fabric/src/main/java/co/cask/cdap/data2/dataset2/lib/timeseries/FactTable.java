@@ -16,6 +16,7 @@
 package co.cask.cdap.data2.dataset2.lib.timeseries;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.DataSetException;
 import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
 import co.cask.cdap.api.dataset.lib.cube.MeasureType;
 import co.cask.cdap.api.dataset.lib.cube.Measurement;
@@ -56,6 +57,8 @@ public final class FactTable implements Closeable {
   // hard limits on some ops to stay on safe side
   private static final int MAX_RECORDS_TO_SCAN_DURING_SEARCH = 10 * 1000 * 1000;
   private static final int MAX_SCANS_DURING_SEARCH = 10 * 1000;
+  // sketches are merged with get + compareAndSwap, give up if the cell keeps changing under us
+  private static final int MAX_MERGE_ATTEMPTS = 100;
 
   private static final Function<byte[], Long> BYTES_TO_LONG = new Function<byte[], Long>() {
     @Override
@@ -81,6 +84,8 @@ public final class FactTable implements Closeable {
 
   private final String putCountMetric;
   private final String incrementCountMetric;
+  private final String sketchMergeCountMetric;
+  private final String sketchMergeConflictCountMetric;
 
   @Nullable
   private MetricsCollector metrics;
@@ -108,6 +113,8 @@ public final class FactTable implements Closeable {
     this.rollTime = rollTime;
     this.putCountMetric = "factTable." + resolution + ".put.count";
     this.incrementCountMetric = "factTable." + resolution + ".increment.count";
+    this.sketchMergeCountMetric = "factTable." + resolution + ".sketch.merge.count";
+    this.sketchMergeConflictCountMetric = "factTable." + resolution + ".sketch.merge.conflict.count";
   }
 
   public void setMetricsCollector(MetricsCollector metrics) {
@@ -118,6 +125,9 @@ public final class FactTable implements Closeable {
     // Simply collecting all rows/cols/values that need to be put to the underlying table.
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> gaugesTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], NavigableMap<byte[], HyperLogLog>> distinctTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], NavigableMap<byte[], QuantileSketch>> distributionTable =
+      Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     for (Fact fact : facts) {
       for (Measurement measurement : fact.getMeasurements()) {
         byte[] rowKey = codec.createRowKey(fact.getDimensionValues(), measurement.getName(), fact.getTimestamp());
@@ -125,6 +135,20 @@ public final class FactTable implements Closeable {
 
         if (MeasureType.COUNTER == measurement.getType()) {
           inc(incrementsTable, rowKey, column, measurement.getValue());
+        } else if (MeasureType.DISTINCT == measurement.getType()) {
+          HyperLogLog sketch = get(distinctTable, rowKey, column);
+          if (sketch == null) {
+            sketch = new HyperLogLog();
+            set(distinctTable, rowKey, column, sketch);
+          }
+          sketch.add(measurement.getValue());
+        } else if (MeasureType.DISTRIBUTION == measurement.getType()) {
+          QuantileSketch sketch = get(distributionTable, rowKey, column);
+          if (sketch == null) {
+            sketch = new QuantileSketch();
+            set(distributionTable, rowKey, column, sketch);
+          }
+          sketch.add(measurement.getValue());
         } else {
           set(gaugesTable, rowKey, column, Bytes.toBytes(measurement.getValue()));
         }
@@ -140,16 +164,111 @@ public final class FactTable implements Closeable {
     // todo: replace with single call, to be able to optimize rpcs in underlying table
     timeSeriesTable.put(convertedGaugesTable);
     timeSeriesTable.increment(convertedIncrementsTable);
+    int sketchMerges = mergeDistinctSketches(distinctTable) + mergeDistributionSketches(distributionTable);
     if (metrics != null) {
       metrics.increment(putCountMetric, convertedGaugesTable.size());
       metrics.increment(incrementCountMetric, convertedIncrementsTable.size());
+      if (sketchMerges > 0) {
+        metrics.increment(sketchMergeCountMetric, sketchMerges);
+      }
+    }
+  }
+
+  /**
+   * Merges the given {@link HyperLogLog} sketches into the ones stored in the table.
+   *
+   * @return number of cells merged
+   */
+  private int mergeDistinctSketches(NavigableMap<byte[], NavigableMap<byte[], HyperLogLog>> sketches) {
+    int merged = 0;
+    for (Map.Entry<byte[], NavigableMap<byte[], HyperLogLog>> row : sketches.entrySet()) {
+      for (Map.Entry<byte[], HyperLogLog> cell : row.getValue().entrySet()) {
+        final HyperLogLog sketch = cell.getValue();
+        merge(row.getKey(), cell.getKey(), new Function<byte[], byte[]>() {
+          @Override
+          public byte[] apply(@Nullable byte[] stored) {
+            return stored == null ? sketch.toBytes() : HyperLogLog.fromBytes(stored).merge(sketch).toBytes();
+          }
+        });
+        merged++;
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Merges the given {@link QuantileSketch}es into the ones stored in the table.
+   *
+   * @return number of cells merged
+   */
+  private int mergeDistributionSketches(NavigableMap<byte[], NavigableMap<byte[], QuantileSketch>> sketches) {
+    int merged = 0;
+    for (Map.Entry<byte[], NavigableMap<byte[], QuantileSketch>> row : sketches.entrySet()) {
+      for (Map.Entry<byte[], QuantileSketch> cell : row.getValue().entrySet()) {
+        final QuantileSketch sketch = cell.getValue();
+        merge(row.getKey(), cell.getKey(), new Function<byte[], byte[]>() {
+          @Override
+          public byte[] apply(@Nullable byte[] stored) {
+            return stored == null ? sketch.toBytes() : QuantileSketch.fromBytes(stored).merge(sketch).toBytes();
+          }
+        });
+        merged++;
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Replaces the value of a cell with the result of the given function, retrying with the latest value if the cell
+   * is changed concurrently, up to {@link #MAX_MERGE_ATTEMPTS} times.
+   */
+  private void merge(byte[] row, byte[] column, Function<byte[], byte[]> merger) {
+    for (int attempt = 1; attempt <= MAX_MERGE_ATTEMPTS; attempt++) {
+      byte[] stored = timeSeriesTable.get(row, column);
+      if (timeSeriesTable.swap(row, column, stored, merger.apply(stored))) {
+        return;
+      }
+      if (metrics != null) {
+        metrics.increment(sketchMergeConflictCountMetric, 1);
+      }
     }
+    throw new DataSetException(String.format("Failed to merge sketch in row %s, column %s after %d attempts",
+                                             Bytes.toStringBinary(row), Bytes.toStringBinary(column),
+                                             MAX_MERGE_ATTEMPTS));
   }
 
   public FactScanner scan(FactScan scan) {
     return new FactScanner(getScanner(scan), codec, scan.getStartTs(), scan.getEndTs(), scan.getMeasureNames());
   }
 
+  /**
+   * Splits the given scan into scans of consecutive time ranges, each covering whole row time bases except at the
+   * ends of the time range. As the time base follows the aggregation group in the row key, each of the scans reads a
+   * separate range of rows, so they can be executed in parallel and their results don't share any timestamp.
+   *
+   * @param scan the scan to split
+   * @param maxSplits maximum number of scans to return
+   * @return the scans, in time order; the given scan if its time range is within a single time base
+   */
+  public List<FactScan> split(FactScan scan, int maxSplits) {
+    // Time bases are timestamps rounded to the resolution and then to the roll time
+    long interval = Math.max(rollTime, resolution);
+    long timeBases = scan.getEndTs() / interval - scan.getStartTs() / interval + 1;
+    if (maxSplits <= 1 || timeBases <= 1) {
+      return ImmutableList.of(scan);
+    }
+
+    // Number of time bases per split, rounded up so that there are at most maxSplits splits
+    long splitTimeBases = (timeBases + maxSplits - 1) / maxSplits;
+    List<FactScan> splits = Lists.newArrayList();
+    for (long startTs = scan.getStartTs(); startTs <= scan.getEndTs();) {
+      long endTs = Math.min(scan.getEndTs(), (startTs / interval + splitTimeBases) * interval - 1);
+      splits.add(new FactScan(startTs, endTs, scan.getMeasureNames(), scan.getDimensionValues()));
+      startTs = endTs + 1;
+    }
+    return splits;
+  }
+
   private Scanner getScanner(FactScan scan) {
     // use null if no metrics or more than one metrics are provided in the scan
     String measureName = scan.getMeasureNames().size() == 1 ? scan.getMeasureNames().iterator().next() : null;
@@ -424,14 +543,14 @@ public final class FactTable implements Closeable {
     set(incrementsTable, rowKey, column, Bytes.toBytes(newValue));
   }
 
-  private static byte[] get(NavigableMap<byte[], NavigableMap<byte[], byte[]>> table, byte[] row, byte[] column) {
-    NavigableMap<byte[], byte[]> rowMap = table.get(row);
+  private static <T> T get(NavigableMap<byte[], NavigableMap<byte[], T>> table, byte[] row, byte[] column) {
+    NavigableMap<byte[], T> rowMap = table.get(row);
     return rowMap == null ? null : rowMap.get(column);
   }
 
-  private static void set(NavigableMap<byte[], NavigableMap<byte[], byte[]>> table,
-                          byte[] row, byte[] column, byte[] value) {
-    NavigableMap<byte[], byte[]> rowMap = table.get(row);
+  private static <T> void set(NavigableMap<byte[], NavigableMap<byte[], T>> table,
+                              byte[] row, byte[] column, T value) {
+    NavigableMap<byte[], T> rowMap = table.get(row);
     if (rowMap == null) {
       rowMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
       table.put(row, rowMap);
@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.timeseries;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import com.google.common.base.Throwables;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A HyperLogLog sketch for estimating the number of distinct values, as stored in the cells of a {@link FactTable}
+ * for {@link co.cask.cdap.api.dataset.lib.cube.MeasureType#DISTINCT} measures. Sketches are merged by taking the
+ * maximum of each register, so the sketch of a coarser resolution bucket or of multiple dimension values gives
+ * the estimate of the union.
+ *
+ * <p>
+ * There are 2^12 registers, for a standard error of about 1.6%. The serialized form lists the non-empty registers
+ * while that is smaller than one byte per register, so that sketches of few values stay small.
+ * </p>
+ */
+public final class HyperLogLog {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+  private static final int PRECISION = 12;
+  private static final int REGISTERS = 1 << PRECISION;
+  private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+  private static final byte SPARSE = 1;
+  private static final byte DENSE = 2;
+
+  private final byte[] registers;
+
+  public HyperLogLog() {
+    this.registers = new byte[REGISTERS];
+  }
+
+  /**
+   * Creates a sketch from its serialized form, as returned by {@link #toBytes()}.
+   *
+   * @throws IllegalArgumentException if the bytes are not a serialized {@link HyperLogLog}
+   */
+  public static HyperLogLog fromBytes(byte[] bytes) {
+    if (bytes.length < 2 || (bytes[0] != SPARSE && bytes[0] != DENSE) || bytes[1] != PRECISION) {
+      throw new IllegalArgumentException("Value is not a HyperLogLog sketch");
+    }
+
+    HyperLogLog sketch = new HyperLogLog();
+    if (bytes[0] == DENSE) {
+      if (bytes.length != REGISTERS + 2) {
+        throw new IllegalArgumentException("Invalid HyperLogLog sketch of size " + bytes.length);
+      }
+      System.arraycopy(bytes, 2, sketch.registers, 0, REGISTERS);
+      return sketch;
+    }
+
+    try {
+      BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(bytes, 2, bytes.length - 2));
+      int size = decoder.readInt();
+      int index = 0;
+      for (int i = 0; i < size; i++) {
+        index += decoder.readInt();
+        sketch.registers[index] = (byte) decoder.readInt();
+      }
+      return sketch;
+    } catch (IOException | IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Invalid HyperLogLog sketch", e);
+    }
+  }
+
+  /**
+   * Adds a value to this sketch.
+   */
+  public HyperLogLog add(long value) {
+    long hash = HASH_FUNCTION.hashLong(value).asLong();
+    int index = (int) (hash >>> (Long.SIZE - PRECISION));
+    // Position of the first one bit in the remaining bits, counting from 1
+    int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION), Long.SIZE - PRECISION) + 1;
+    if (rank > registers[index]) {
+      registers[index] = (byte) rank;
+    }
+    return this;
+  }
+
+  /**
+   * Merges another sketch into this one.
+   */
+  public HyperLogLog merge(HyperLogLog other) {
+    for (int i = 0; i < REGISTERS; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Returns the estimated number of distinct values added to this sketch.
+   */
+  public long estimate() {
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+    double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+    if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+      // Linear counting is more accurate for small cardinalities
+      estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * Returns the serialized form of this sketch.
+   */
+  public byte[] toBytes() {
+    int nonEmpty = 0;
+    for (byte register : registers) {
+      if (register != 0) {
+        nonEmpty++;
+      }
+    }
+
+    // Each non-empty register takes about three bytes in the sparse form
+    if (nonEmpty * 3 >= REGISTERS) {
+      byte[] bytes = new byte[REGISTERS + 2];
+      bytes[0] = DENSE;
+      bytes[1] = PRECISION;
+      System.arraycopy(registers, 0, bytes, 2, REGISTERS);
+      return bytes;
+    }
+
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream(nonEmpty * 3 + 4);
+      output.write(SPARSE);
+      output.write(PRECISION);
+      BinaryEncoder encoder = new BinaryEncoder(output);
+      encoder.writeInt(nonEmpty);
+      int lastIndex = 0;
+      for (int i = 0; i < REGISTERS; i++) {
+        if (registers[i] != 0) {
+          encoder.writeInt(i - lastIndex);
+          encoder.writeInt(registers[i]);
+          lastIndex = i;
+        }
+      }
+      // never as long as a long, so that sketches can't be mistaken for counter or gauge values
+      if (output.size() == Bytes.SIZEOF_LONG) {
+        output.write(0);
+      }
+      return output.toByteArray();
+    } catch (IOException e) {
+      // Cannot happen with ByteArrayOutputStream
+      throw Throwables.propagate(e);
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.timeseries;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A sketch for estimating quantiles of a distribution of values, as stored in the cells of a {@link FactTable} for
+ * {@link co.cask.cdap.api.dataset.lib.cube.MeasureType#DISTRIBUTION} measures.
+ *
+ * <p>
+ * Values are counted in buckets of exponentially growing width, so that every quantile is estimated within 1% of
+ * its actual value, however the values are distributed. Sketches are merged by adding up the counts of each bucket,
+ * which gives the same sketch as if all the values were added to one sketch. The number of buckets grows with the
+ * logarithm of the range of values: values from 1 to 10^9 take at most about a thousand buckets.
+ * </p>
+ */
+public final class QuantileSketch {
+
+  private static final double RELATIVE_ACCURACY = 0.01;
+  private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+  private static final double LOG_GAMMA = Math.log(GAMMA);
+
+  private static final byte FORMAT = 3;
+
+  // Bucket index to count; bucket i has the values in (GAMMA^(i-1), GAMMA^i]
+  private final NavigableMap<Integer, Long> positive;
+  // Same as positive, for the absolute values of negative values
+  private final NavigableMap<Integer, Long> negative;
+  private long zeros;
+  private long count;
+
+  public QuantileSketch() {
+    this.positive = new TreeMap<>();
+    this.negative = new TreeMap<>();
+  }
+
+  /**
+   * Creates a sketch from its serialized form, as returned by {@link #toBytes()}.
+   *
+   * @throws IllegalArgumentException if the bytes are not a serialized {@link QuantileSketch}
+   */
+  public static QuantileSketch fromBytes(byte[] bytes) {
+    if (bytes.length < 1 || bytes[0] != FORMAT) {
+      throw new IllegalArgumentException("Value is not a quantile sketch");
+    }
+
+    QuantileSketch sketch = new QuantileSketch();
+    try {
+      BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+      sketch.zeros = decoder.readLong();
+      sketch.count = sketch.zeros;
+      sketch.count += readBuckets(decoder, sketch.positive);
+      sketch.count += readBuckets(decoder, sketch.negative);
+      return sketch;
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid quantile sketch", e);
+    }
+  }
+
+  /**
+   * Adds a value to this sketch.
+   */
+  public QuantileSketch add(long value) {
+    if (value == 0) {
+      zeros++;
+    } else if (value > 0) {
+      increment(positive, getIndex(value), 1);
+    } else {
+      increment(negative, getIndex(-(double) value), 1);
+    }
+    count++;
+    return this;
+  }
+
+  /**
+   * Merges another sketch into this one.
+   */
+  public QuantileSketch merge(QuantileSketch other) {
+    for (Map.Entry<Integer, Long> bucket : other.positive.entrySet()) {
+      increment(positive, bucket.getKey(), bucket.getValue());
+    }
+    for (Map.Entry<Integer, Long> bucket : other.negative.entrySet()) {
+      increment(negative, bucket.getKey(), bucket.getValue());
+    }
+    zeros += other.zeros;
+    count += other.count;
+    return this;
+  }
+
+  /**
+   * Returns the number of values added to this sketch.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the estimated value at the given quantile, or {@code 0} if the sketch is empty.
+   *
+   * @param quantile the quantile, between {@code 0} and {@code 1}
+   */
+  public long getQuantile(double quantile) {
+    Preconditions.checkArgument(quantile >= 0 && quantile <= 1, "Quantile must be between 0 and 1: %s", quantile);
+    if (count == 0) {
+      return 0;
+    }
+
+    // Zero based rank of the value at the quantile, in ascending order of values
+    long rank = (long) (quantile * (count - 1));
+    long seen = 0;
+    for (Map.Entry<Integer, Long> bucket : negative.descendingMap().entrySet()) {
+      seen += bucket.getValue();
+      if (seen > rank) {
+        return -getValue(bucket.getKey());
+      }
+    }
+    seen += zeros;
+    if (seen > rank) {
+      return 0;
+    }
+    for (Map.Entry<Integer, Long> bucket : positive.entrySet()) {
+      seen += bucket.getValue();
+      if (seen > rank) {
+        return getValue(bucket.getKey());
+      }
+    }
+    // Cannot happen as the counts add up to count
+    return getValue(positive.isEmpty() ? 0 : positive.lastKey());
+  }
+
+  /**
+   * Returns the serialized form of this sketch.
+   */
+  public byte[] toBytes() {
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream(16 + (positive.size() + negative.size()) * 3);
+      output.write(FORMAT);
+      BinaryEncoder encoder = new BinaryEncoder(output);
+      encoder.writeLong(zeros);
+      writeBuckets(encoder, positive);
+      writeBuckets(encoder, negative);
+      // never as long as a long, so that sketches can't be mistaken for counter or gauge values
+      if (output.size() == Bytes.SIZEOF_LONG) {
+        output.write(0);
+      }
+      return output.toByteArray();
+    } catch (IOException e) {
+      // Cannot happen with ByteArrayOutputStream
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private static int getIndex(double value) {
+    return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+  }
+
+  /**
+   * Returns the value that represents the given bucket, which is within the relative accuracy from all the values
+   * in the bucket.
+   */
+  private static long getValue(int index) {
+    return Math.round(2 * Math.pow(GAMMA, index) / (GAMMA + 1));
+  }
+
+  private static void increment(Map<Integer, Long> buckets, int index, long count) {
+    Long current = buckets.get(index);
+    buckets.put(index, current == null ? count : current + count);
+  }
+
+  private static void writeBuckets(BinaryEncoder encoder, NavigableMap<Integer, Long> buckets) throws IOException {
+    encoder.writeInt(buckets.size());
+    int lastIndex = 0;
+    for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+      encoder.writeInt(bucket.getKey() - lastIndex);
+      encoder.writeLong(bucket.getValue());
+      lastIndex = bucket.getKey();
+    }
+  }
+
+  private static long readBuckets(BinaryDecoder decoder, Map<Integer, Long> buckets) throws IOException {
+    int size = decoder.readInt();
+    int index = 0;
+    long total = 0;
+    for (int i = 0; i < size; i++) {
+      index += decoder.readInt();
+      long count = decoder.readLong();
+      buckets.put(index, count);
+      total += count;
+    }
+    return total;
+  }
+}
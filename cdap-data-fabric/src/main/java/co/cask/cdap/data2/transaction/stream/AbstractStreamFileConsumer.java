@@ -18,6 +18,7 @@ package co.cask.cdap.data2.transaction.stream;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data.file.ReadFilters;
@@ -94,6 +95,20 @@ import javax.annotation.concurrent.NotThreadSafe;
  *   state = ConsumerEntryState.getState(), either CLAIMED or PROCESSED
  * }</pre>
  *
+ * If {@link Constants.Stream#CONSUMER_FIFO_CLAIM_RANGE_SIZE} is set, FIFO consumers of groups with more than one
+ * instance claim ranges of stream file offsets instead of individual events. A range is processed by the instance
+ * that claimed it and has a single state row, with the <code>offset</code> of the row key being the start of the
+ * range, which is a multiple of the range size. The state value also carries the progress within the range:
+ *
+ * <pre>{@code
+ *   range_state_value = <write_pointer> <instance_id> <state> <processed_offset> <committed_offset>
+ *   processed_offset = 8 bytes offset of the last event in the range processed by the transaction of write_pointer
+ *   committed_offset = 8 bytes offset of the last event in the range processed by earlier committed transactions
+ * }</pre>
+ *
+ * A range claimed by an instance that no longer exists is taken over by the first live instance that reads it,
+ * starting after the last event of the range processed by a committed transaction.
+ *
  */
 @NotThreadSafe
 public abstract class AbstractStreamFileConsumer implements StreamConsumer {
@@ -152,6 +167,12 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
   private final Map<byte[], SortedMap<byte[], byte[]>> entryStates;
   private final Set<byte[]> entryStatesScanCompleted;
 
+  // Size of the offset ranges claimed by FIFO consumer, or 0 if individual events are claimed.
+  private final long claimRangeSize;
+  // Map from row key prefix to a sorted map of range row key to the offset of the last processed event in the range,
+  // for ranges claimed by this consumer.
+  private final Map<byte[], SortedMap<byte[], Long>> claimedRanges;
+
   private final StreamConsumerState consumerState;
   private final List<StreamEventOffset> eventCache;
   private Transaction transaction;
@@ -191,6 +212,13 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     this.entryStates = Maps.newTreeMap(ROW_PREFIX_COMPARATOR);
     this.entryStatesScanCompleted = Sets.newTreeSet(ROW_PREFIX_COMPARATOR);
 
+    if (consumerConfig.getDequeueStrategy() == DequeueStrategy.FIFO && consumerConfig.getGroupSize() > 1) {
+      this.claimRangeSize = Math.max(0L, cConf.getLong(Constants.Stream.CONSUMER_FIFO_CLAIM_RANGE_SIZE, 0L));
+    } else {
+      this.claimRangeSize = 0L;
+    }
+    this.claimedRanges = Maps.newTreeMap(ROW_PREFIX_COMPARATOR);
+
     this.eventCache = Lists.newArrayList();
     this.consumerState = beginConsumerState;
     this.lastPersistedState = new StreamConsumerState(beginConsumerState);
@@ -336,9 +364,18 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
       return true;
     }
 
-    // For each polled events, set the state column to PROCESSED
-    updateState(Iterables.transform(polledEvents, EVENT_ROW_KEY), polledEvents.size(),
-                encodeStateColumn(ConsumerEntryState.PROCESSED));
+    if (claimRangeSize > 0) {
+      // For each claimed range of the polled events, record the last processed event in the range state
+      for (Map.Entry<byte[], Long> entry : getProcessedRanges().entrySet()) {
+        byte[] row = entry.getKey();
+        updateState(ImmutableList.of(row), 1, encodeRangeStateColumn(ConsumerEntryState.PROCESSED, entry.getValue(),
+                                                                     getClaimedRangeOffset(row)));
+      }
+    } else {
+      // For each polled events, set the state column to PROCESSED
+      updateState(Iterables.transform(polledEvents, EVENT_ROW_KEY), polledEvents.size(),
+                  encodeStateColumn(ConsumerEntryState.PROCESSED));
+    }
 
     committed = true;
     return true;
@@ -352,12 +389,22 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
       persistConsumerState();
     }
 
-    // Cleanup the entryStates map to free up memory
+    if (claimRangeSize > 0) {
+      for (Map.Entry<byte[], Long> entry : getProcessedRanges().entrySet()) {
+        claimedRanges.get(entry.getKey()).put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    // Cleanup the entryStates and claimedRanges maps to free up memory
     for (PollStreamEvent event : polledEvents) {
       SortedMap<byte[], byte[]> states = entryStates.get(event.getStateRow());
       if (states != null) {
         states.headMap(event.getStateRow()).clear();
       }
+      SortedMap<byte[], Long> ranges = claimedRanges.get(event.getStateRow());
+      if (ranges != null) {
+        ranges.headMap(event.getStateRow()).clear();
+      }
     }
   }
 
@@ -375,8 +422,10 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     eventCache.addAll(0, Lists.transform(polledEvents, CONVERT_STREAM_EVENT_OFFSET));
 
     // Special case for FIFO. On rollback, put the CLAIMED state into the entry states for claim entry to use.
+    // Claimed ranges stay claimed, with the progress of the last committed transaction.
     byte[] fifoState = null;
-    if (consumerConfig.getDequeueStrategy() == DequeueStrategy.FIFO && consumerConfig.getGroupSize() > 1) {
+    if (claimRangeSize == 0
+      && consumerConfig.getDequeueStrategy() == DequeueStrategy.FIFO && consumerConfig.getGroupSize() > 1) {
       fifoState = encodeStateColumn(ConsumerEntryState.CLAIMED);
       for (PollStreamEvent event : polledEvents) {
         entryStates.get(event.getStateRow()).put(event.getStateRow(), fifoState);
@@ -385,6 +434,16 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
 
     // If committed, also need to rollback backing store.
     if (committed) {
+      if (claimRangeSize > 0) {
+        // Restore the states of the claimed ranges to the progress of the last committed transaction
+        for (byte[] row : getProcessedRanges().keySet()) {
+          long committedOffset = getClaimedRangeOffset(row);
+          updateState(ImmutableList.of(row), 1,
+                      encodeRangeStateColumn(ConsumerEntryState.CLAIMED, committedOffset, committedOffset));
+        }
+        return true;
+      }
+
       // Special case for FIFO.
       // If group size > 1, need to update the rows states to CLAIMED state with this instance Id.
       // The transaction pointer used for the entry doesn't matter.
@@ -491,6 +550,21 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     return stateContent;
   }
 
+  /**
+   * Encodes the value for the state column of a claimed range with the current transaction and consumer information.
+   *
+   * @param state The state to encode
+   * @param processedOffset Offset of the last event in the range processed by the current transaction
+   * @param committedOffset Offset of the last event in the range processed by committed transactions
+   * @return The stateContent byte array
+   */
+  private byte[] encodeRangeStateColumn(ConsumerEntryState state, long processedOffset, long committedOffset) {
+    byte[] stateContent = Arrays.copyOf(encodeStateColumn(state), Longs.BYTES + Ints.BYTES + 1 + Longs.BYTES * 2);
+    Bytes.putLong(stateContent, Longs.BYTES + Ints.BYTES + 1, processedOffset);
+    Bytes.putLong(stateContent, Longs.BYTES * 2 + Ints.BYTES + 1, committedOffset);
+    return stateContent;
+  }
+
   /**
    * Try to claim a stream event offset.
    *
@@ -502,6 +576,10 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     StreamUtils.encodeOffset(out, offset);
     byte[] row = out.toByteArray();
 
+    if (claimRangeSize > 0) {
+      return claimRangeEntry(row, offset.getOffset());
+    }
+
     SortedMap<byte[], byte[]> rowStates = getInitRowStates(row);
 
     // See if the entry should be ignored. If it is in the rowStates with null value, then it should be ignored.
@@ -520,6 +598,90 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     return row;
   }
 
+  /**
+   * Try to claim a stream event offset by claiming the offset range that contains it.
+   *
+   * @param row the entry row key, which gets modified to the row key of the range
+   * @param offset the offset of the entry inside the stream file
+   * @return The row key of the range if the range is claimed by this consumer and the entry is not processed yet
+   *         or {@code null} otherwise.
+   */
+  private byte[] claimRangeEntry(byte[] row, long offset) throws IOException {
+    Bytes.putLong(row, row.length - Longs.BYTES, offset - offset % claimRangeSize);
+
+    SortedMap<byte[], Long> ranges = claimedRanges.get(row);
+    if (ranges == null) {
+      ranges = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      claimedRanges.put(row, ranges);
+    }
+
+    Long processedOffset = ranges.get(row);
+    if (processedOffset == null) {
+      SortedMap<byte[], byte[]> rowStates = getInitRowStates(row);
+
+      // If it is in the rowStates with null value, the range is claimed by another live consumer.
+      byte[] rowState = rowStates.get(row);
+      if (rowStates.containsKey(row) && rowState == null) {
+        return null;
+      }
+
+      // Resume from the committed progress of the range if it was claimed before by this instance or
+      // by an instance that no longer exists.
+      long committedOffset = rowState == null ? -1L : getCommittedRangeOffset(rowState);
+      if (!claimFifoEntry(row, encodeRangeStateColumn(ConsumerEntryState.CLAIMED, committedOffset, committedOffset),
+                          rowState)) {
+        // Claimed by another consumer, skip all entries in the range.
+        rowStates.put(row, null);
+        return null;
+      }
+      processedOffset = committedOffset;
+      ranges.put(row, processedOffset);
+    }
+
+    return offset > processedOffset ? row : null;
+  }
+
+  /**
+   * Returns the offset of the last processed event of the given range claimed by this consumer, as of the last
+   * committed transaction.
+   */
+  private long getClaimedRangeOffset(byte[] row) {
+    return claimedRanges.get(row).get(row);
+  }
+
+  /**
+   * Returns a map from the row key of each claimed range of the polled events to the offset of the last polled event
+   * in the range.
+   */
+  private SortedMap<byte[], Long> getProcessedRanges() {
+    SortedMap<byte[], Long> ranges = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (PollStreamEvent event : polledEvents) {
+      long offset = event.getStreamEventOffset().getOffset().getOffset();
+      Long processedOffset = ranges.get(event.getStateRow());
+      if (processedOffset == null || processedOffset < offset) {
+        ranges.put(event.getStateRow(), offset);
+      }
+    }
+    return ranges;
+  }
+
+  /**
+   * Returns the offset of the last event of a range processed by committed transactions, based on the given
+   * range state value.
+   */
+  private long getCommittedRangeOffset(byte[] stateValue) {
+    int offsetPos = Longs.BYTES + Ints.BYTES + 1;
+    if (stateValue.length < offsetPos + Longs.BYTES * 2) {
+      // Not a range state, nothing is known to be processed
+      return -1L;
+    }
+    if (QueueEntryRow.getState(stateValue) == ConsumerEntryState.PROCESSED
+      && transaction.isVisible(QueueEntryRow.getStateWritePointer(stateValue))) {
+      return Bytes.toLong(stateValue, offsetPos);
+    }
+    return Bytes.toLong(stateValue, offsetPos + Longs.BYTES);
+  }
+
   /**
    * Returns the initial scanned states for the given entry key.
    *
@@ -594,6 +756,18 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
       return false;
     }
 
+    // For claimed ranges, the state value carries the progress within the range, hence memorize it even if it is
+    // processed, unless it is claimed by another consumer that is still live.
+    if (claimRangeSize > 0) {
+      int stateInstanceId = QueueEntryRow.getStateInstanceId(stateValue);
+      if (stateInstanceId < consumerConfig.getGroupSize() && stateInstanceId != consumerConfig.getInstanceId()) {
+        cache.put(row, null);
+      } else {
+        cache.put(row, stateValue);
+      }
+      return true;
+    }
+
     // If state is PROCESSED and committed, need to memorize it so that it can be skipped.
     ConsumerEntryState state = QueueEntryRow.getState(stateValue);
     if (state == ConsumerEntryState.PROCESSED && transaction.isVisible(stateWritePointer)) {
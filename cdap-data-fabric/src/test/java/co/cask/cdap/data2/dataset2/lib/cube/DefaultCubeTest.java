@@ -16,20 +16,43 @@
 
 package co.cask.cdap.data2.dataset2.lib.cube;
 
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
+import co.cask.cdap.api.dataset.lib.cube.CubeFact;
+import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
 import co.cask.cdap.data2.dataset2.lib.timeseries.EntityTable;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
  */
 public class DefaultCubeTest extends AbstractCubeTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(DefaultCubeTest.class);
+
   @Override
   protected Cube getCube(final String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations) {
     FactTableSupplier supplier = new FactTableSupplier() {
@@ -48,4 +71,476 @@ public class DefaultCubeTest extends AbstractCubeTest {
 
     return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of());
   }
+
+  @Test
+  public void testPlanStitchedQuery() {
+    List<Integer> resolutions = ImmutableList.of(1, 60, 3600, Integer.MAX_VALUE);
+
+    // Whole hours are queried in the hour resolution only
+    Assert.assertEquals(ImmutableList.of(new ResolutionInterval(3600, 0, 7199)),
+                        DefaultCube.planStitchedQuery(resolutions, 1, 0, 7199));
+
+    // Partial minutes and hours at both ends are queried in finer resolutions
+    Assert.assertEquals(ImmutableList.of(new ResolutionInterval(1, 30, 59),
+                                         new ResolutionInterval(60, 60, 3599),
+                                         new ResolutionInterval(3600, 3600, 10799),
+                                         new ResolutionInterval(60, 10800, 10859),
+                                         new ResolutionInterval(1, 10860, 10900)),
+                        DefaultCube.planStitchedQuery(resolutions, 1, 30, 10900));
+
+    // Time range within a minute is queried in the finest resolution
+    Assert.assertEquals(ImmutableList.of(new ResolutionInterval(1, 100, 110)),
+                        DefaultCube.planStitchedQuery(resolutions, 1, 100, 110));
+
+    // Resolutions finer than the one of the query are not used
+    Assert.assertEquals(ImmutableList.of(new ResolutionInterval(60, 30, 3599),
+                                         new ResolutionInterval(3600, 3600, 7199),
+                                         new ResolutionInterval(60, 7200, 7230)),
+                        DefaultCube.planStitchedQuery(resolutions, 60, 30, 7230));
+
+    // The totals resolution is never stitched, even for time ranges longer than Integer.MAX_VALUE seconds
+    long endTs = 3L * Integer.MAX_VALUE;
+    long hourEndTs = (endTs + 1) / 3600 * 3600;
+    long minuteEndTs = (endTs + 1) / 60 * 60;
+    Assert.assertEquals(ImmutableList.of(new ResolutionInterval(3600, 0, hourEndTs - 1),
+                                         new ResolutionInterval(60, hourEndTs, minuteEndTs - 1),
+                                         new ResolutionInterval(1, minuteEndTs, endTs)),
+                        DefaultCube.planStitchedQuery(resolutions, 1, 0, endTs));
+    Assert.assertEquals(ImmutableList.of(new ResolutionInterval(Integer.MAX_VALUE, 0, endTs)),
+                        DefaultCube.planStitchedQuery(resolutions, Integer.MAX_VALUE, 0, endTs));
+  }
+
+  @Test
+  public void testPlanStitchedQueryRetention() {
+    List<Integer> resolutions = ImmutableList.of(1, 60, 3600, Integer.MAX_VALUE);
+
+    // Seconds are only retained from 40 on, so the partial minute at the start is queried in minutes
+    Assert.assertEquals(ImmutableList.of(new ResolutionInterval(60, 0, 59),
+                                         new ResolutionInterval(60, 60, 3599),
+                                         new ResolutionInterval(3600, 3600, 10799),
+                                         new ResolutionInterval(60, 10800, 10859),
+                                         new ResolutionInterval(1, 10860, 10900)),
+                        DefaultCube.planStitchedQuery(resolutions, ImmutableMap.of(1, 40L), 1, 30, 10900));
+
+    // Neither seconds nor minutes are retained for the start, which is queried in hours
+    Assert.assertEquals(ImmutableList.of(new ResolutionInterval(3600, 0, 3599),
+                                         new ResolutionInterval(3600, 3600, 10799),
+                                         new ResolutionInterval(60, 10800, 10859),
+                                         new ResolutionInterval(1, 10860, 10900)),
+                        DefaultCube.planStitchedQuery(resolutions, ImmutableMap.of(1, 10000L, 60, 3000L),
+                                                      1, 30, 10900));
+
+    // Time range within a minute whose seconds have expired
+    Assert.assertEquals(ImmutableList.of(new ResolutionInterval(60, 60, 119)),
+                        DefaultCube.planStitchedQuery(resolutions, ImmutableMap.of(1, 200L), 1, 100, 110));
+
+    // Retained data is still queried in the finer resolutions
+    Assert.assertEquals(DefaultCube.planStitchedQuery(resolutions, 1, 30, 10900),
+                        DefaultCube.planStitchedQuery(resolutions, ImmutableMap.of(1, 30L, 60, 0L), 1, 30, 10900));
+  }
+
+  @Test
+  public void testStitchedQueryRetention() throws Exception {
+    DefaultCube cube = (DefaultCube) getCube("myRetainedStitchedCube", new int[] {1, 60, 3600},
+                                             ImmutableMap.of("agg1", new DefaultAggregation(ImmutableList.of("dim1"))));
+    // Seconds are retained for two hours
+    cube.setRetention(ImmutableMap.of(1, 7200L));
+
+    long nowTs = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    long startTs = nowTs - 3 * 3600 - 30;
+    CubeQuery query = CubeQuery.builder()
+      .select()
+        .measurement("metric1", AggregationFunction.SUM)
+      .from("agg1").resolution(1, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.of("dim1", "1"))
+        .timeRange(startTs, nowTs)
+      .limit(Integer.MAX_VALUE)
+      .build();
+
+    // The start of the query is older than the seconds retained, so it is queried in minutes
+    List<ResolutionInterval> plan = cube.planStitchedQuery(query);
+    Assert.assertEquals(60, plan.get(0).getResolution());
+    Assert.assertEquals(startTs / 60 * 60, plan.get(0).getStartTs());
+    Assert.assertEquals(1, plan.get(plan.size() - 1).getResolution());
+    Assert.assertEquals(nowTs, plan.get(plan.size() - 1).getEndTs());
+  }
+
+  @Test
+  public void testStitchedQuery() throws Exception {
+    DefaultCube cube = (DefaultCube) getCube("myStitchedCube", new int[] {1, 60, 3600},
+                                             ImmutableMap.of("agg1", new DefaultAggregation(ImmutableList.of("dim1"))));
+
+    // one increment every 10 seconds for three hours and a bit
+    for (long ts = 0; ts < 11000; ts += 10) {
+      writeInc(cube, "metric1", ts, 1, "1");
+    }
+
+    CubeQuery query = CubeQuery.builder()
+      .select()
+        .measurement("metric1", AggregationFunction.SUM)
+      .from("agg1").resolution(1, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.of("dim1", "1"))
+        .timeRange(30, 10900)
+      .limit(Integer.MAX_VALUE)
+      .build();
+
+    List<ResolutionInterval> plan = cube.planStitchedQuery(query);
+    Assert.assertEquals(DefaultCube.planStitchedQuery(ImmutableList.of(1, 60, 3600), 1, 30, 10900), plan);
+
+    Collection<TimeSeries> single = cube.query(query);
+    Collection<TimeSeries> stitched = cube.query(query, plan);
+    Assert.assertEquals(1, single.size());
+    Assert.assertEquals(1, stitched.size());
+
+    // The same total is aggregated from far fewer values
+    List<TimeValue> singleValues = single.iterator().next().getTimeValues();
+    List<TimeValue> stitchedValues = stitched.iterator().next().getTimeValues();
+    Assert.assertEquals(sum(singleValues), sum(stitchedValues));
+    Assert.assertEquals(1088, singleValues.size());
+    // 3 seconds, 59 minutes, 2 hours, 1 minute and 5 seconds
+    Assert.assertEquals(70, stitchedValues.size());
+    Assert.assertEquals(timeValues(30, 1, 40, 1, 50, 1, 60, 6), stitchedValues.subList(0, 4));
+    Assert.assertEquals(timeValues(3540, 6, 3600, 360, 7200, 360, 10800, 6, 10860, 1),
+                        stitchedValues.subList(61, 66));
+    Assert.assertEquals(timeValues(10900, 1), stitchedValues.subList(69, 70));
+
+    // The limit applies to the stitched time series
+    query = CubeQuery.builder()
+      .select()
+        .measurement("metric1", AggregationFunction.SUM)
+      .from("agg1").resolution(1, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.of("dim1", "1"))
+        .timeRange(30, 10900)
+      .limit(5)
+      .build();
+    Assert.assertEquals(timeValues(30, 1, 40, 1, 50, 1, 60, 6, 120, 6),
+                        cube.query(query, plan).iterator().next().getTimeValues());
+  }
+
+  @Test
+  public void testSketches() throws Exception {
+    Cube cube = getCube("mySketchCube", new int[] {1, 100},
+                        ImmutableMap.of("agg1", new DefaultAggregation(ImmutableList.of("dim1"))));
+
+    // For each dimension value, one user and one latency per second, added one fact at a time so that the sketches
+    // are merged with the stored ones
+    for (long ts = 0; ts < 200; ts++) {
+      cube.add(new CubeFact(ts).addDimensionValue("dim1", "a")
+                 .addMeasurement("users", MeasureType.DISTINCT, ts % 50)
+                 .addMeasurement("latency", MeasureType.DISTRIBUTION, ts % 100));
+      cube.add(new CubeFact(ts).addDimensionValue("dim1", "b")
+                 .addMeasurement("users", MeasureType.DISTINCT, ts % 50 + 25)
+                 .addMeasurement("latency", MeasureType.DISTRIBUTION, ts % 100 + 1000));
+    }
+
+    // Sketches of both dimension values are merged at query time: users 0 to 74, latencies 0 to 99 and 1000 to 1099
+    CubeQuery query = CubeQuery.builder()
+      .select()
+        .measurement("users", AggregationFunction.DISTINCT_COUNT)
+        .measurement("latency", AggregationFunction.P50)
+      .from("agg1").resolution(100, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.<String, String>of())
+        .timeRange(0, 199)
+      .limit(Integer.MAX_VALUE)
+      .build();
+    Map<String, List<TimeValue>> result = toMap(cube.query(query));
+    assertApproximately(timeValues(0, 75, 100, 75), result.get("users"));
+    assertApproximately(timeValues(0, 99, 100, 99), result.get("latency"));
+
+    query = CubeQuery.builder()
+      .select()
+        .measurement("latency", AggregationFunction.P99)
+      .from("agg1").resolution(100, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.<String, String>of())
+        .timeRange(0, 199)
+      .limit(Integer.MAX_VALUE)
+      .build();
+    assertApproximately(timeValues(0, 1097, 100, 1097), toMap(cube.query(query)).get("latency"));
+
+    // Grouped by dimension value
+    query = CubeQuery.builder()
+      .select()
+        .measurement("users", AggregationFunction.DISTINCT_COUNT)
+      .from("agg1").resolution(100, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.<String, String>of())
+        .timeRange(0, 199)
+      .groupBy()
+        .dimensions(ImmutableList.of("dim1"))
+      .limit(Integer.MAX_VALUE)
+      .build();
+    Collection<TimeSeries> grouped = cube.query(query);
+    Assert.assertEquals(2, grouped.size());
+    for (TimeSeries timeSeries : grouped) {
+      assertApproximately(timeValues(0, 50, 100, 50), timeSeries.getTimeValues());
+    }
+
+    // Sketches in the finest resolution
+    query = CubeQuery.builder()
+      .select()
+        .measurement("users", AggregationFunction.DISTINCT_COUNT)
+      .from("agg1").resolution(1, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.<String, String>of())
+        .timeRange(5, 6)
+      .limit(Integer.MAX_VALUE)
+      .build();
+    Assert.assertEquals(timeValues(5, 2, 6, 2), toMap(cube.query(query)).get("users"));
+  }
+
+  @Test
+  public void testSketchFunctionMismatch() throws Exception {
+    Cube cube = getCube("myMismatchCube", new int[] {1},
+                        ImmutableMap.of("agg1", new DefaultAggregation(ImmutableList.of("dim1"))));
+    cube.add(new CubeFact(1).addDimensionValue("dim1", "a")
+               .addMeasurement("users", MeasureType.DISTINCT, 1)
+               .addMeasurement("latency", MeasureType.DISTRIBUTION, 10)
+               .addMeasurement("events", MeasureType.COUNTER, 5)
+               .addMeasurement("size", MeasureType.GAUGE, 8));
+
+    assertQueryFails(cube, "users", AggregationFunction.SUM);
+    assertQueryFails(cube, "latency", AggregationFunction.LATEST);
+    assertQueryFails(cube, "latency", AggregationFunction.DISTINCT_COUNT);
+    assertQueryFails(cube, "users", AggregationFunction.P99);
+    assertQueryFails(cube, "events", AggregationFunction.P99);
+    assertQueryFails(cube, "events", AggregationFunction.DISTINCT_COUNT);
+    assertQueryFails(cube, "size", AggregationFunction.P50);
+
+    // the matching functions still work
+    Assert.assertEquals(timeValues(1, 5), toMap(cube.query(query("events", AggregationFunction.SUM))).get("events"));
+    Assert.assertEquals(timeValues(1, 8), toMap(cube.query(query("size", AggregationFunction.LATEST))).get("size"));
+    Assert.assertEquals(timeValues(1, 1),
+                        toMap(cube.query(query("users", AggregationFunction.DISTINCT_COUNT))).get("users"));
+    Assert.assertEquals(timeValues(1, 10), toMap(cube.query(query("latency", AggregationFunction.P99))).get("latency"));
+  }
+
+  /**
+   * Measures the cost of adding distinct and distribution measurements compared to counters, one fact per program
+   * per second as the metrics processor does. It is not run by default. To run it:
+   *
+   * <pre>
+   *   mvn test -Dtest=DefaultCubeTest#testSketchAddBenchmark -Dcdap.test.benchmark=true
+   * </pre>
+   */
+  @Test
+  public void testSketchAddBenchmark() throws Exception {
+    Assume.assumeTrue(Boolean.getBoolean("cdap.test.benchmark"));
+
+    int programs = 100;
+    int seconds = 600;
+    for (MeasureType type : new MeasureType[] {MeasureType.COUNTER, MeasureType.DISTINCT, MeasureType.DISTRIBUTION}) {
+      Cube cube = getCube("mySketchBenchmarkCube" + type, new int[] {1, 60, 3600, Integer.MAX_VALUE},
+                          ImmutableMap.of("agg1", new DefaultAggregation(ImmutableList.of("dim1"))));
+      long startNanos = System.nanoTime();
+      for (int second = 0; second < seconds; second++) {
+        List<CubeFact> facts = Lists.newArrayListWithCapacity(programs);
+        for (int program = 0; program < programs; program++) {
+          facts.add(new CubeFact(second).addDimensionValue("dim1", "program" + program)
+                      .addMeasurement("value", type, second * program));
+        }
+        cube.add(facts);
+      }
+      long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      LOG.info("Added {} {} facts in {} ms, {} facts/s", programs * seconds, type, millis,
+               programs * seconds * 1000L / millis);
+    }
+  }
+
+  @Test
+  public void testParallelScan() throws Exception {
+    DefaultCube cube = (DefaultCube) getCube("myParallelScanCube", new int[] {60},
+                                             ImmutableMap.of("agg1", new DefaultAggregation(ImmutableList.of("dim1"))));
+    // three hours of minute metrics, so that the scan is split in three row time bases
+    int minutes = 3 * 60;
+    for (int minute = 0; minute < minutes; minute++) {
+      for (int program = 0; program < 3; program++) {
+        cube.add(new CubeFact(minute * 60).addDimensionValue("dim1", "program" + program)
+                   .addMeasurement("events", MeasureType.COUNTER, program + minute)
+                   .addMeasurement("users", MeasureType.DISTINCT, minute % 10));
+      }
+    }
+
+    CubeQuery query = CubeQuery.builder()
+      .select()
+        .measurement("events", AggregationFunction.SUM)
+        .measurement("users", AggregationFunction.DISTINCT_COUNT)
+      .from("agg1").resolution(60, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.<String, String>of())
+        .timeRange(30 * 60, minutes * 60 - 1)
+      .groupBy()
+        .dimensions(ImmutableList.of("dim1"))
+      .limit(Integer.MAX_VALUE)
+      .build();
+    Set<TimeSeries> expected = ImmutableSet.copyOf(cube.query(query));
+    Assert.assertEquals(6, expected.size());
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      for (int maxScanSplits : new int[] {2, 3, 10}) {
+        cube.setScanExecutor(executor, maxScanSplits);
+        Assert.assertEquals(expected, ImmutableSet.copyOf(cube.query(query)));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testParallelScanSkewed() throws Exception {
+    DefaultCube cube = (DefaultCube) getCube("mySkewedScanCube", new int[] {60},
+                                             ImmutableMap.of("agg1", new DefaultAggregation(ImmutableList.of("dim1"))));
+    // three hours of minute metrics, with most programs reporting in the second hour only, so that most of the
+    // records are in one of the splits
+    for (int minute = 0; minute < 3 * 60; minute++) {
+      int programs = minute / 60 == 1 ? 100 : 2;
+      for (int program = 0; program < programs; program++) {
+        cube.add(new CubeFact(minute * 60).addDimensionValue("dim1", "program" + program)
+                   .addMeasurement("events", MeasureType.COUNTER, program + minute));
+      }
+    }
+
+    CubeQuery query = CubeQuery.builder()
+      .select()
+        .measurement("events", AggregationFunction.SUM)
+      .from("agg1").resolution(60, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.<String, String>of())
+        .timeRange(0, 3 * 60 * 60 - 1)
+      .groupBy()
+        .dimensions(ImmutableList.of("dim1"))
+      .limit(Integer.MAX_VALUE)
+      .build();
+    Set<TimeSeries> all = ImmutableSet.copyOf(cube.query(query));
+    Assert.assertEquals(100, all.size());
+
+    // one record per program and hour, the limit is reached in the second hour
+    cube.setMaxRecordsToScan(50);
+    Set<TimeSeries> expected = ImmutableSet.copyOf(cube.query(query));
+    Assert.assertEquals(48, expected.size());
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      for (int maxScanSplits : new int[] {2, 3, 10}) {
+        cube.setScanExecutor(executor, maxScanSplits);
+        Assert.assertEquals(expected, ImmutableSet.copyOf(cube.query(query)));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Compares scanning a day of minute metrics of a thousand programs in a single thread and in parallel. It is not
+   * run by default. To run it:
+   *
+   * <pre>
+   *   mvn test -Dtest=DefaultCubeTest#testParallelScanBenchmark -Dcdap.test.benchmark=true
+   * </pre>
+   */
+  @Test
+  public void testParallelScanBenchmark() throws Exception {
+    Assume.assumeTrue(Boolean.getBoolean("cdap.test.benchmark"));
+
+    DefaultCube cube = (DefaultCube) getCube("myParallelCube", new int[] {60},
+                                             ImmutableMap.of("agg1", new DefaultAggregation(ImmutableList.of("dim1"))));
+    int programs = 1000;
+    int minutes = 24 * 60;
+    long startNanos = System.nanoTime();
+    for (int minute = 0; minute < minutes; minute++) {
+      List<CubeFact> facts = Lists.newArrayListWithCapacity(programs);
+      for (int program = 0; program < programs; program++) {
+        facts.add(new CubeFact(minute * 60).addDimensionValue("dim1", "program" + program)
+                    .addMeasurement("events", MeasureType.COUNTER, program + minute));
+      }
+      cube.add(facts);
+    }
+    LOG.info("Added {} facts in {} ms", programs * minutes,
+             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+    CubeQuery query = CubeQuery.builder()
+      .select()
+        .measurement("events", AggregationFunction.SUM)
+      .from("agg1").resolution(60, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.<String, String>of())
+        .timeRange(0, minutes * 60 - 1)
+      .groupBy()
+        .dimensions(ImmutableList.of("dim1"))
+      .limit(Integer.MAX_VALUE)
+      .build();
+
+    startNanos = System.nanoTime();
+    Set<TimeSeries> expected = ImmutableSet.copyOf(cube.query(query));
+    long singleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    Assert.assertEquals(programs, expected.size());
+    Assert.assertEquals(minutes, expected.iterator().next().getTimeValues().size());
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      cube.setScanExecutor(executor, 4);
+      startNanos = System.nanoTime();
+      Set<TimeSeries> actual = ImmutableSet.copyOf(cube.query(query));
+      long parallelMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+      Assert.assertEquals(expected, actual);
+      LOG.info("Queried {} time series in {} ms in a single thread, {} ms in parallel",
+               programs, singleMillis, parallelMillis);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private CubeQuery query(String measureName, AggregationFunction function) {
+    return CubeQuery.builder()
+      .select()
+        .measurement(measureName, function)
+      .from("agg1").resolution(1, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.<String, String>of())
+        .timeRange(0, 10)
+      .limit(Integer.MAX_VALUE)
+      .build();
+  }
+
+  private void assertQueryFails(Cube cube, String measureName, AggregationFunction function) throws Exception {
+    try {
+      cube.query(query(measureName, function));
+      Assert.fail("Expected " + function + " on " + measureName + " to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private Map<String, List<TimeValue>> toMap(Collection<TimeSeries> timeSeries) {
+    Map<String, List<TimeValue>> result = Maps.newHashMap();
+    for (TimeSeries series : timeSeries) {
+      result.put(series.getMeasureName(), series.getTimeValues());
+    }
+    return result;
+  }
+
+  /**
+   * Asserts that the given time values have the expected timestamps, and values within 2% of the expected ones.
+   */
+  private void assertApproximately(List<TimeValue> expected, List<TimeValue> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+      Assert.assertEquals(expected.get(i).getValue(), actual.get(i).getValue(),
+                          Math.max(1, expected.get(i).getValue() * 0.02));
+    }
+  }
+
+  private long sum(List<TimeValue> timeValues) {
+    long sum = 0;
+    for (TimeValue timeValue : timeValues) {
+      sum += timeValue.getValue();
+    }
+    return sum;
+  }
 }
@@ -36,6 +36,7 @@ import co.cask.tephra.TransactionAware;
 import co.cask.tephra.TransactionContext;
 import co.cask.tephra.TransactionExecutor;
 import co.cask.tephra.inmemory.InMemoryTxSystemClient;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -45,6 +46,7 @@ import com.google.common.collect.Sets;
 import org.apache.twill.filesystem.Location;
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -63,6 +65,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -874,6 +877,93 @@ public class PartitionedFileSetTest {
 
   }
 
+  @Test
+  public void testGetPartitionsWithConditionsOnTrailingFields() throws Exception {
+    final PartitionedFileSet dataset = dsFrameworkUtil.getInstance(pfsInstance);
+
+    // add enough partitions for each value of the leading fields, so that scanning skips over many rows
+    final Set<BasicPartition> allPartitionDetails = Sets.newHashSet();
+    dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        for (String s : new String[] { "a", "ab", "b" }) {
+          for (int i = -20; i < 20; i++) {
+            for (long l = 0; l < 40; l++) {
+              PartitionKey key = PartitionKey.builder().addField("s", s).addField("i", i).addField("l", l).build();
+              PartitionOutput output = dataset.getPartitionOutput(key);
+              output.addPartition();
+              allPartitionDetails.add(new BasicPartition((PartitionedFileSetDataset) dataset,
+                                                         output.getRelativePath(), output.getPartitionKey()));
+            }
+          }
+        }
+      }
+    });
+
+    List<PartitionFilter> filters = ImmutableList.of(
+      PartitionFilter.builder().addValueCondition("l", 7L).build(),
+      PartitionFilter.builder().addRangeCondition("l", 5L, 10L).build(),
+      PartitionFilter.builder().addRangeCondition("l", 35L, null).build(),
+      PartitionFilter.builder().addValueCondition("i", -3).addRangeCondition("l", null, 3L).build(),
+      PartitionFilter.builder().addRangeCondition("i", -10, 10).addRangeCondition("l", 20L, 22L).build(),
+      PartitionFilter.builder().addValueCondition("s", "ab").addRangeCondition("l", 39L, 100L).build(),
+      PartitionFilter.builder().addRangeCondition("s", "a", "b").addValueCondition("i", 19).build(),
+      PartitionFilter.builder().addRangeCondition("s", "a", "b").addValueCondition("l", 0L).build(),
+      PartitionFilter.builder().addRangeCondition("i", 0, null).addValueCondition("l", 100L).build()
+    );
+    testAllFilters(dataset, allPartitionDetails, filters);
+  }
+
+  /**
+   * Compares listing the partitions that match a condition on the last field of the partitioning, which skips over
+   * the rows that cannot match, with listing all partitions, in a dataset with 100k partitions. It is not run by
+   * default. To run it:
+   *
+   * <pre>
+   *   mvn test -Dtest=PartitionedFileSetTest#testGetPartitionsBenchmark -Dcdap.test.benchmark=true
+   * </pre>
+   */
+  @Test
+  public void testGetPartitionsBenchmark() throws Exception {
+    Assume.assumeTrue(Boolean.getBoolean("cdap.test.benchmark"));
+
+    final PartitionedFileSet dataset = dsFrameworkUtil.getInstance(pfsInstance);
+    long startNanos = System.nanoTime();
+    for (int s = 0; s < 10; s++) {
+      final String sValue = "s" + s;
+      dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          for (int i = 0; i < 100; i++) {
+            for (long l = 0; l < 100; l++) {
+              PartitionKey key = PartitionKey.builder().addField("s", sValue).addField("i", i).addField("l", l).build();
+              dataset.getPartitionOutput(key).addPartition();
+            }
+          }
+        }
+      });
+    }
+    LOG.info("Added 100000 partitions in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+    final PartitionFilter filter = PartitionFilter.builder().addValueCondition("l", 7L).build();
+    for (int run = 0; run < 3; run++) {
+      dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          long startNanos = System.nanoTime();
+          Assert.assertEquals(1000, dataset.getPartitions(filter).size());
+          long filteredMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+          startNanos = System.nanoTime();
+          Assert.assertEquals(100000, dataset.getPartitions(null).size());
+          long allMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+          LOG.info("Listed the 1000 partitions that match {} in {} ms, all 100000 partitions in {} ms",
+                   filter, filteredMillis, allMillis);
+        }
+      });
+    }
+  }
+
   private void testAllFilters(PartitionedFileSet dataset,
                               Set<BasicPartition> allPartitionDetails,
                               List<PartitionFilter> filters) throws Exception {
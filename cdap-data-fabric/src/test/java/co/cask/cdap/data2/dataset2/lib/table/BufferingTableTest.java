@@ -18,11 +18,15 @@ package co.cask.cdap.data2.dataset2.lib.table;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DatasetAdmin;
+import co.cask.cdap.api.dataset.DatasetContext;
+import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.api.metrics.MetricsCollector;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.dataset2.TableAssert;
 import co.cask.tephra.Transaction;
 import co.cask.tephra.TransactionAware;
@@ -36,6 +40,11 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * unit-test
@@ -43,6 +52,11 @@ import java.util.NavigableMap;
  */
 public abstract class BufferingTableTest<T extends BufferingTable> extends TableConcurrentTest<T> {
 
+  /**
+   * Returns a table with the given dataset properties, for testing table properties such as the buffer spill threshold.
+   */
+  protected abstract T getTable(DatasetContext datasetContext, String name, DatasetProperties props) throws Exception;
+
   @Test
   public void testRollingBackAfterExceptionDuringPersist() throws Exception {
     DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE);
@@ -498,6 +512,210 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
     }
   }
 
+  /**
+   * Tests that changes persisted at transaction checkpoints are visible to the transaction, are part of its change
+   * set, and are undone when the transaction is rolled back.
+   */
+  @Test
+  public void testCheckpoint() throws Exception {
+    String testCheckpoint = "testCheckpoint";
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, testCheckpoint);
+    admin.create();
+    try {
+      Transaction tx1 = txClient.startShort();
+      BufferingTable table1 = getTable(CONTEXT1, testCheckpoint);
+      table1.startTx(tx1);
+      table1.put(R1, a(C1, C2), a(V1, V2));
+      tx1 = checkpoint(table1, tx1);
+      // changes persisted at the checkpoint are visible, and can be overwritten after it
+      TableAssert.assertRow(a(C1, V1, C2, V2), table1.get(R1));
+      table1.put(R1, a(C1), a(V3));
+      table1.put(R2, a(C1), a(V1));
+      tx1 = checkpoint(table1, tx1);
+      table1.delete(R1, a(C2));
+      TableAssert.assertRow(a(C1, V3), table1.get(R1));
+      TableAssert.assertRow(a(C1, V1), table1.get(R2));
+
+      // a concurrent transaction must not see the checkpointed changes
+      Transaction tx2 = txClient.startShort();
+      BufferingTable table2 = getTable(CONTEXT1, testCheckpoint);
+      table2.startTx(tx2);
+      TableAssert.assertRow(a(), table2.get(R1));
+      table2.put(R2, a(C2), a(V2));
+      Assert.assertTrue(txClient.canCommit(tx2, table2.getTxChanges()));
+      Assert.assertTrue(table2.commitTx());
+      Assert.assertTrue(txClient.commit(tx2));
+      table2.postTxCommit();
+
+      // the change set includes the rows persisted at the checkpoints, so tx1 conflicts with tx2 on R2
+      Assert.assertEquals(2, table1.getTxChanges().size());
+      Assert.assertFalse(txClient.canCommit(tx1, table1.getTxChanges()));
+      Assert.assertTrue(table1.rollbackTx());
+      txClient.abort(tx1);
+
+      // none of the changes of tx1 must be visible, including the ones persisted at the checkpoints
+      Transaction tx3 = txClient.startShort();
+      table1.startTx(tx3);
+      TableAssert.assertRow(a(), table1.get(R1));
+      TableAssert.assertRow(a(C2, V2), table1.get(R2));
+
+      // commit a transaction with a checkpoint
+      table1.put(R1, a(C1), a(V1));
+      tx3 = checkpoint(table1, tx3);
+      table1.put(R3, a(C1), a(V1));
+      Assert.assertTrue(txClient.canCommit(tx3, table1.getTxChanges()));
+      Assert.assertTrue(table1.commitTx());
+      Assert.assertTrue(txClient.commit(tx3));
+      table1.postTxCommit();
+
+      Transaction tx4 = txClient.startShort();
+      table2.startTx(tx4);
+      TableAssert.assertRow(a(C1, V1), table2.get(R1));
+      TableAssert.assertRow(a(C2, V2), table2.get(R2));
+      TableAssert.assertRow(a(C1, V1), table2.get(R3));
+    } finally {
+      admin.drop();
+    }
+  }
+
+  /**
+   * Tests that the keys of the changes persisted at checkpoints are spilled to local disk if spilling is enabled,
+   * rather than kept in memory until the transaction ends, and that they are still part of the change set and undone
+   * on rollback.
+   */
+  @Test
+  public void testCheckpointSpill() throws Exception {
+    String testCheckpointSpill = "testCheckpointSpill";
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, testCheckpointSpill);
+    admin.create();
+    try {
+      DatasetProperties spillProps = DatasetProperties.builder()
+        .add(Constants.Dataset.TABLE_BUFFER_SPILL_THRESHOLD, "1048576")
+        .build();
+      final AtomicLong spills = new AtomicLong();
+      MetricsCollector metricsCollector = new MetricsCollector() {
+        @Override
+        public void increment(String metricName, long value) {
+          if (Constants.Metrics.Name.Dataset.BUFFER_SPILL_COUNT.equals(metricName)) {
+            spills.addAndGet(value);
+          }
+        }
+
+        @Override
+        public void gauge(String metricName, long value) {
+          // no-op
+        }
+      };
+
+      for (boolean commit : new boolean[] { false, true }) {
+        T table = getTable(CONTEXT1, testCheckpointSpill, spillProps);
+        table.setMetricsCollector(metricsCollector);
+        Transaction tx = txClient.startShort();
+        table.startTx(tx);
+        for (int i = 0; i < 10; i++) {
+          for (int j = 0; j < 100; j++) {
+            table.put(Bytes.toBytes("r" + (i * 100 + j)), C1, Bytes.toBytes(1L));
+          }
+          // the buffer is far below the spill threshold, but the checkpointed keys are spilled anyway
+          long spillsBefore = spills.get();
+          tx = checkpoint(table, tx);
+          Assert.assertEquals(spillsBefore + 1, spills.get());
+        }
+        table.put(Bytes.toBytes("r1000"), C1, Bytes.toBytes(1L));
+        Assert.assertEquals(1001, toRows(table.getTxChanges()).size());
+        Assert.assertEquals(1L, Bytes.toLong(table.get(Bytes.toBytes("r999"), C1)));
+
+        Assert.assertTrue(table.commitTx());
+        if (commit) {
+          Assert.assertTrue(txClient.canCommit(tx, table.getTxChanges()));
+          Assert.assertTrue(txClient.commit(tx));
+          table.postTxCommit();
+        } else {
+          Assert.assertTrue(table.rollbackTx());
+          txClient.abort(tx);
+        }
+
+        tx = txClient.startShort();
+        table.startTx(tx);
+        Assert.assertEquals(commit ? 1001 : 0, toMap(table).size());
+        Assert.assertTrue(txClient.commit(tx));
+      }
+    } finally {
+      admin.drop();
+    }
+  }
+
+  private Transaction checkpoint(BufferingTable table, Transaction tx) throws Exception {
+    // same sequence of calls as in TransactionContext.checkpoint()
+    Assert.assertTrue(table.commitTx());
+    Transaction checkpoint = txClient.checkpoint(tx);
+    table.updateTx(checkpoint);
+    return checkpoint;
+  }
+
+  /**
+   * Tests that the scan hints do not change the rows returned by a scan.
+   */
+  @Test
+  public void testScanWithHints() throws Exception {
+    String testScanWithHints = "testScanWithHints";
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, testScanWithHints);
+    admin.create();
+    try {
+      Transaction tx1 = txClient.startShort();
+      BufferingTable table = getTable(CONTEXT1, testScanWithHints);
+      table.startTx(tx1);
+      for (int i = 0; i < 10; i++) {
+        table.put(Bytes.toBytes("row" + i), a(C1, C2, C3), a(V1, V2, V3));
+      }
+      Assert.assertTrue(txClient.canCommit(tx1, table.getTxChanges()));
+      Assert.assertTrue(table.commitTx());
+      Assert.assertTrue(txClient.commit(tx1));
+      table.postTxCommit();
+
+      Transaction tx2 = txClient.startShort();
+      table.startTx(tx2);
+      // buffered changes are merged with the persisted rows as usual
+      table.put(Bytes.toBytes("row5"), a(C4), a(V4));
+
+      List<Row> expected = scanAll(table.scan(new Scan(Bytes.toBytes("row2"), Bytes.toBytes("row9"))));
+      Assert.assertEquals(7, expected.size());
+      Scan scan = new Scan(Bytes.toBytes("row2"), Bytes.toBytes("row9"))
+        .setCaching(2)
+        .setBatch(1)
+        .setMaxResultSize(1024)
+        .setCacheBlocks(true);
+      List<Row> actual = scanAll(table.scan(scan));
+      Assert.assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        Assert.assertArrayEquals(expected.get(i).getRow(), actual.get(i).getRow());
+        TableAssert.assertColumns(actual.get(i), expected.get(i).getColumns().keySet().toArray(new byte[0][]),
+                                  expected.get(i).getColumns().values().toArray(new byte[0][]));
+      }
+      TableAssert.assertRow(actual.get(3), Bytes.toBytes("row5"), a(C1, C2, C3, C4), a(V1, V2, V3, V4));
+
+      // a scan that reads fewer rows than the caching can be closed early
+      try (Scanner scanner = table.scan(new Scan(null, null).setCaching(3))) {
+        Assert.assertArrayEquals(Bytes.toBytes("row0"), scanner.next().getRow());
+      }
+    } finally {
+      admin.drop();
+    }
+  }
+
+  private List<Row> scanAll(Scanner scanner) {
+    List<Row> rows = new ArrayList<>();
+    try {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        rows.add(row);
+      }
+    } finally {
+      scanner.close();
+    }
+    return rows;
+  }
+
   private void verify123(BufferingTable table) throws Exception {
     byte[] row = new byte[] {1};
     byte[] col = new byte[] {2};
@@ -537,6 +755,247 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
     Assert.assertNull(scan.next());
   }
 
+  /**
+   * Tests that a transaction that spills its buffer to disk sees and persists the same data as one that does not.
+   */
+  @Test
+  public void testBufferSpill() throws Exception {
+    DatasetAdmin spilledAdmin = getTableAdmin(CONTEXT1, "spilled");
+    DatasetAdmin bufferedAdmin = getTableAdmin(CONTEXT1, "buffered");
+    spilledAdmin.create();
+    bufferedAdmin.create();
+    try {
+      DatasetProperties spillProps = DatasetProperties.builder()
+        .add(Constants.Dataset.TABLE_BUFFER_SPILL_THRESHOLD, "1024")
+        .build();
+      final AtomicLong spills = new AtomicLong();
+      MetricsCollector metricsCollector = new MetricsCollector() {
+        @Override
+        public void increment(String metricName, long value) {
+          if (Constants.Metrics.Name.Dataset.BUFFER_SPILL_COUNT.equals(metricName)) {
+            spills.addAndGet(value);
+          }
+        }
+
+        @Override
+        public void gauge(String metricName, long value) {
+          // no-op
+        }
+      };
+
+      Random random = new Random(0);
+      for (boolean commit : new boolean[] { true, false }) {
+        T spilled = getTable(CONTEXT1, "spilled", spillProps);
+        spilled.setMetricsCollector(metricsCollector);
+        T buffered = getTable(CONTEXT1, "buffered");
+
+        Transaction tx = txClient.startShort();
+        spilled.startTx(tx);
+        buffered.startTx(tx);
+        for (int i = 0; i < 2000; i++) {
+          byte[] row = Bytes.toBytes("r" + random.nextInt(100));
+          byte[] column = Bytes.toBytes("c" + random.nextInt(10));
+          switch (random.nextInt(5)) {
+            case 0:
+              spilled.delete(row, column);
+              buffered.delete(row, column);
+              break;
+            case 1:
+              spilled.delete(row);
+              buffered.delete(row);
+              break;
+            case 2:
+              Assert.assertEquals(buffered.incrementAndGet(row, column, 1L),
+                                  spilled.incrementAndGet(row, column, 1L));
+              break;
+            default:
+              long value = random.nextLong();
+              spilled.put(row, column, Bytes.toBytes(value));
+              buffered.put(row, column, Bytes.toBytes(value));
+          }
+          if (i % 100 == 0) {
+            assertSameContent(buffered, spilled);
+          }
+        }
+        assertSameContent(buffered, spilled);
+        Assert.assertEquals(toRows(buffered.getTxChanges()), toRows(spilled.getTxChanges()));
+
+        Assert.assertTrue(spilled.commitTx());
+        Assert.assertTrue(buffered.commitTx());
+        if (commit) {
+          Assert.assertTrue(txClient.canCommit(tx, spilled.getTxChanges()));
+          Assert.assertTrue(txClient.commit(tx));
+          spilled.postTxCommit();
+          buffered.postTxCommit();
+        } else {
+          Assert.assertTrue(spilled.rollbackTx());
+          Assert.assertTrue(buffered.rollbackTx());
+          txClient.abort(tx);
+        }
+
+        // verify the persisted data in a new transaction
+        tx = txClient.startShort();
+        spilled = getTable(CONTEXT1, "spilled", spillProps);
+        buffered = getTable(CONTEXT1, "buffered");
+        spilled.startTx(tx);
+        buffered.startTx(tx);
+        assertSameContent(buffered, spilled);
+        Assert.assertFalse(toMap(spilled).isEmpty());
+        Assert.assertTrue(txClient.commit(tx));
+      }
+      Assert.assertTrue(spills.get() > 0);
+    } finally {
+      spilledAdmin.drop();
+      bufferedAdmin.drop();
+    }
+  }
+
+  /**
+   * Tests that the latencies of the persistent store operations and the buffered and persisted reads are reported.
+   */
+  @Test
+  public void testLatencyMetrics() throws Exception {
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, "latencies");
+    admin.create();
+    try {
+      final Map<String, Long> increments = new TreeMap<>();
+      final Map<String, Long> gauges = new TreeMap<>();
+      MetricsCollector metricsCollector = new MetricsCollector() {
+        @Override
+        public void increment(String metricName, long value) {
+          Long current = increments.get(metricName);
+          increments.put(metricName, current == null ? value : current + value);
+        }
+
+        @Override
+        public void gauge(String metricName, long value) {
+          gauges.put(metricName, value);
+        }
+      };
+      T table = getTable(CONTEXT1, "latencies",
+                         DatasetProperties.builder().add(Constants.Dataset.TABLE_LATENCY_METRICS, "true").build());
+      table.setMetricsCollector(metricsCollector);
+      byte[] row = Bytes.toBytes("r1");
+
+      Transaction tx = txClient.startShort();
+      table.startTx(tx);
+      table.put(row, Bytes.toBytes("c1"), Bytes.toBytes(1L));
+      Assert.assertTrue(txClient.canCommit(tx, table.getTxChanges()));
+      Assert.assertTrue(table.commitTx());
+      Assert.assertTrue(txClient.commit(tx));
+      table.postTxCommit();
+      // the first transaction always reports, with the latency counted in one of the buckets
+      String persist = Constants.Metrics.Name.Dataset.STORE_LATENCY_PREFIX + "persist";
+      Assert.assertEquals(Long.valueOf(1), increments.get(persist + ".count"));
+      Assert.assertNotNull(increments.get(persist + ".total.us"));
+      Assert.assertEquals(1, getLatencyBucketsTotal(increments, persist));
+
+      tx = txClient.startShort();
+      table.startTx(tx);
+      // a read of a row that is not buffered, then one that is answered from the buffer only
+      Assert.assertArrayEquals(Bytes.toBytes(1L), table.get(row, Bytes.toBytes("c1")));
+      table.put(row, Bytes.toBytes("c2"), Bytes.toBytes(2L));
+      Assert.assertArrayEquals(Bytes.toBytes(2L), table.get(row, Bytes.toBytes("c2")));
+      try (Scanner scanner = table.scan(null, null)) {
+        Assert.assertNotNull(scanner.next());
+      }
+      // persisted changes are undone when the transaction is aborted
+      Assert.assertTrue(table.commitTx());
+      Assert.assertTrue(table.rollbackTx());
+      txClient.abort(tx);
+      Assert.assertEquals(Long.valueOf(1), increments.get(Constants.Metrics.Name.Dataset.READ_PERSISTED_COUNT));
+      Assert.assertEquals(Long.valueOf(1), increments.get(Constants.Metrics.Name.Dataset.READ_BUFFERED_COUNT));
+
+      // latencies recorded since the last report are reported on close
+      String prefix = Constants.Metrics.Name.Dataset.STORE_LATENCY_PREFIX;
+      Assert.assertNull(increments.get(prefix + "get.count"));
+      table.close();
+      for (String operation : new String[] { "get", "scan", "undo" }) {
+        Assert.assertEquals(Long.valueOf(1), increments.get(prefix + operation + ".count"));
+        Assert.assertEquals(1, getLatencyBucketsTotal(increments, prefix + operation));
+      }
+      Assert.assertEquals(Long.valueOf(2), increments.get(persist + ".count"));
+      Assert.assertEquals(2, getLatencyBucketsTotal(increments, persist));
+      // only counters, which can be summed across tables and processes
+      Assert.assertTrue(gauges.isEmpty());
+
+      // no latencies are recorded if the property is not set
+      increments.clear();
+      table = getTable(CONTEXT1, "latencies");
+      table.setMetricsCollector(metricsCollector);
+      tx = txClient.startShort();
+      table.startTx(tx);
+      table.put(row, Bytes.toBytes("c3"), Bytes.toBytes(3L));
+      Assert.assertTrue(table.commitTx());
+      Assert.assertTrue(txClient.commit(tx));
+      table.postTxCommit();
+      table.close();
+      Assert.assertTrue(gauges.isEmpty());
+      for (String metricName : increments.keySet()) {
+        Assert.assertFalse(metricName, metricName.startsWith(prefix));
+      }
+    } finally {
+      admin.drop();
+    }
+  }
+
+  /**
+   * Returns the sum of the histogram bucket counters of the given latency metric.
+   */
+  private long getLatencyBucketsTotal(Map<String, Long> increments, String latencyMetric) {
+    long total = 0;
+    for (Map.Entry<String, Long> increment : increments.entrySet()) {
+      if (increment.getKey().startsWith(latencyMetric + ".le.") ||
+        increment.getKey().startsWith(latencyMetric + ".gt.")) {
+        total += increment.getValue();
+      }
+    }
+    return total;
+  }
+
+  private void assertSameContent(BufferingTable expected, BufferingTable actual) throws Exception {
+    Map<String, Map<String, Long>> expectedContent = toMap(expected);
+    Assert.assertEquals(expectedContent, toMap(actual));
+    for (int i = 0; i < 100; i += 7) {
+      byte[] row = Bytes.toBytes("r" + i);
+      Assert.assertEquals(toMap(expected.get(row)), toMap(actual.get(row)));
+      Assert.assertEquals(toMap(expected.get(row, Bytes.toBytes("c2"), Bytes.toBytes("c7"), 3)),
+                          toMap(actual.get(row, Bytes.toBytes("c2"), Bytes.toBytes("c7"), 3)));
+    }
+  }
+
+  private Map<String, Map<String, Long>> toMap(BufferingTable table) throws Exception {
+    Map<String, Map<String, Long>> result = new TreeMap<>();
+    try (Scanner scanner = table.scan(null, null)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        result.put(Bytes.toString(row.getRow()), toMap(row));
+      }
+    }
+    return result;
+  }
+
+  private Map<String, Long> toMap(Row row) {
+    Map<String, Long> result = new TreeMap<>();
+    for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
+      // scans return columns deleted in the current transaction with a null value
+      if (column.getValue() == null) {
+        continue;
+      }
+      result.put(Bytes.toString(column.getKey()), Bytes.toLong(column.getValue()));
+    }
+    return result;
+  }
+
+  private Set<String> toRows(Iterable<byte[]> changes) {
+    // change keys are prefixed with the table name, while the rows all are "r" followed by a number
+    Set<String> result = new TreeSet<>();
+    for (byte[] change : changes) {
+      result.add(Bytes.toString(change).replaceFirst(".*(r[0-9]+)$", "$1"));
+    }
+    return result;
+  }
+
   // This class looks weird, this is what we have to do to override persist method to make it throw exception in the
   // middle. NOTE: We want to test how every implementation of BufferingTable handles undoing changes in this
   // case, otherwise we would just test the method of BufferingTable directly.
@@ -569,6 +1028,12 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
       delegate.undo(persisted);
     }
 
+    @Override
+    protected void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted,
+                        long writePointer) throws Exception {
+      delegate.undo(persisted, writePointer);
+    }
+
     @Override
     protected NavigableMap<byte[], byte[]> getPersisted(byte[] row, byte[][] columns) throws Exception {
       return delegate.getPersisted(row, columns);
@@ -592,6 +1057,12 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
       super.startTx(tx);
       delegate.startTx(tx);
     }
+
+    @Override
+    public void updateTx(Transaction tx) {
+      super.updateTx(tx);
+      delegate.updateTx(tx);
+    }
   }
 
 }
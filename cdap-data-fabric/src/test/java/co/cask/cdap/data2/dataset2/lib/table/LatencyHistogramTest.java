@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    Assert.assertEquals(20, LatencyHistogram.BUCKETS);
+    Assert.assertEquals("le.10us", LatencyHistogram.getBucketName(0));
+    Assert.assertEquals("le.500us", LatencyHistogram.getBucketName(5));
+    Assert.assertEquals("le.10000000us", LatencyHistogram.getBucketName(LatencyHistogram.BUCKETS - 2));
+    Assert.assertEquals("gt.10000000us", LatencyHistogram.getBucketName(LatencyHistogram.BUCKETS - 1));
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    // negative values count as zero, and bounds are inclusive
+    histogram.record(-5);
+    histogram.record(0);
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(10));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(10) + 1);
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(300));
+    histogram.record(TimeUnit.SECONDS.toNanos(10));
+    histogram.record(TimeUnit.SECONDS.toNanos(10) + 1);
+    histogram.record(Long.MAX_VALUE);
+
+    Assert.assertEquals(8, histogram.getCount());
+    Assert.assertEquals(3, histogram.getCount(0));
+    Assert.assertEquals(1, histogram.getCount(1));
+    Assert.assertEquals(1, histogram.getCount(5));
+    Assert.assertEquals(1, histogram.getCount(LatencyHistogram.BUCKETS - 2));
+    Assert.assertEquals(2, histogram.getCount(LatencyHistogram.BUCKETS - 1));
+  }
+
+  @Test
+  public void testCounts() {
+    Random random = new Random(0);
+    LatencyHistogram histogram = new LatencyHistogram();
+    long total = 0;
+    for (int i = 0; i < 100000; i++) {
+      // Exponentially distributed around 100 microseconds, with a tail of slow operations
+      long latency = (long) (-Math.log(1 - random.nextDouble()) * 100000);
+      if (random.nextInt(100) == 0) {
+        latency *= 1000;
+      }
+      histogram.record(latency);
+      total += latency;
+    }
+
+    Assert.assertEquals(100000, histogram.getCount());
+    Assert.assertEquals(total, histogram.getTotalNanos());
+    long bucketed = 0;
+    for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+      bucketed += histogram.getCount(i);
+    }
+    Assert.assertEquals(histogram.getCount(), bucketed);
+  }
+
+  @Test
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 1000; i++) {
+      histogram.record(i * 1000);
+    }
+    histogram.reset();
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getTotalNanos());
+    for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+      Assert.assertEquals(0, histogram.getCount(i));
+    }
+
+    histogram.record(5000);
+    Assert.assertEquals(1, histogram.getCount(0));
+  }
+}
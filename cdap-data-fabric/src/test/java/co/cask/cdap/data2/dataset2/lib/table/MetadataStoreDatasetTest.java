@@ -19,15 +19,23 @@ package co.cask.cdap.data2.dataset2.lib.table;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.common.io.Codec;
 import co.cask.cdap.data2.dataset2.DatasetFrameworkTestUtil;
+import co.cask.cdap.internal.app.store.RunRecordMeta;
+import co.cask.cdap.internal.app.store.RunRecordMetaCodec;
 import co.cask.cdap.proto.Id;
+import co.cask.cdap.proto.ProgramRunStatus;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import org.junit.Assert;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -127,6 +135,82 @@ public class MetadataStoreDatasetTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testValueCache() throws Exception {
+    Id.DatasetInstance storeTable = Id.DatasetInstance.from(DatasetFrameworkTestUtil.NAMESPACE_ID, "testValueCache");
+    dsFrameworkUtil.createInstance(Table.class.getName(), storeTable, DatasetProperties.EMPTY);
+
+    Table table = dsFrameworkUtil.getInstance(storeTable);
+    DecodedValueCache cache = new DecodedValueCache(1024 * 1024, ImmutableSet.of(String.class));
+    MetadataStoreDataset metadataStoreDataset = new MetadataStoreDataset(table, cache);
+
+    MDSKey key = new MDSKey.Builder().add("k").build();
+    metadataStoreDataset.write(key, "v1");
+    metadataStoreDataset.write(new MDSKey.Builder().add(1).build(), 1);
+
+    // First read decodes, the second read is served from the cache with the same instance
+    String first = metadataStoreDataset.get(key, String.class);
+    String second = metadataStoreDataset.get(key, String.class);
+    Assert.assertEquals("v1", first);
+    Assert.assertSame(first, second);
+    Assert.assertEquals(1, cache.getMissCount());
+    Assert.assertEquals(1, cache.getHitCount());
+
+    // Types not registered as cacheable are always decoded
+    Assert.assertEquals(1, (int) metadataStoreDataset.get(new MDSKey.Builder().add(1).build(), Integer.class));
+    Assert.assertEquals(1, cache.getMissCount());
+
+    // Updated values must never be served from the cache, even if written through a different instance
+    new MetadataStoreDataset(table).write(key, "v2");
+    Assert.assertEquals("v2", metadataStoreDataset.get(key, String.class));
+    Assert.assertEquals(ImmutableList.of("v2"), metadataStoreDataset.<String>list(key, String.class));
+    Assert.assertEquals(2, cache.getMissCount());
+    Assert.assertEquals(2, cache.getHitCount());
+  }
+
+  @Test
+  public void testBinaryCodec() throws Exception {
+    Id.DatasetInstance storeTable = Id.DatasetInstance.from(DatasetFrameworkTestUtil.NAMESPACE_ID, "testBinaryCodec");
+    dsFrameworkUtil.createInstance(Table.class.getName(), storeTable, DatasetProperties.EMPTY);
+
+    Table table = dsFrameworkUtil.getInstance(storeTable);
+    MetadataStoreDataset jsonStore = new MetadataStoreDataset(table);
+    MetadataStoreDataset binaryStore = new MetadataStoreDataset(
+      table, null, ImmutableMap.<Type, Codec<?>>of(RunRecordMeta.class, new RunRecordMetaCodec()));
+
+    RunRecordMeta running = new RunRecordMeta("run1", 10L, null, ProgramRunStatus.RUNNING,
+                                              ImmutableMap.of("k", "v"), null, null);
+    RunRecordMeta completed = new RunRecordMeta("run2", 10L, 20L, ProgramRunStatus.COMPLETED,
+                                                null, ImmutableMap.of("s", "a"), "twill");
+
+    // Rows written as JSON are still read by a store that writes the type in binary
+    MDSKey jsonKey = new MDSKey.Builder().add("json").build();
+    jsonStore.write(jsonKey, running);
+    Assert.assertEquals(running, binaryStore.get(jsonKey, RunRecordMeta.class));
+
+    // Binary rows are read back with all their fields
+    MDSKey binaryKey = new MDSKey.Builder().add("binary").build();
+    for (RunRecordMeta record : ImmutableList.of(running, completed)) {
+      binaryStore.write(binaryKey, record);
+      Assert.assertEquals(0, table.get(binaryKey.getKey(), Bytes.toBytes("c"))[0]);
+      RunRecordMeta decoded = binaryStore.get(binaryKey, RunRecordMeta.class);
+      Assert.assertEquals(record, decoded);
+      Assert.assertEquals(record.getSystemArgs(), decoded.getSystemArgs());
+    }
+    // Scans decode JSON and binary rows alike
+    Assert.assertEquals(ImmutableSet.of(running, completed),
+                        ImmutableSet.copyOf(binaryStore.<RunRecordMeta>list(new MDSKey.Builder().build(),
+                                                                            RunRecordMeta.class)));
+
+    // A store without the codec cannot decode binary rows
+    try {
+      jsonStore.get(binaryKey, RunRecordMeta.class);
+      Assert.fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
   private static class ScanFunction implements Function<MetadataStoreDataset.KeyValue<Integer>, Boolean> {
     private final List<Integer> values = new ArrayList<>();
     private final int limit;
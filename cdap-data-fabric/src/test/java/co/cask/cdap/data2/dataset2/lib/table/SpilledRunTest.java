@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class SpilledRunTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testProcessDirSweep() throws Exception {
+    File spillDir = TMP_FOLDER.newFolder();
+
+    // left behind by a process that crashed after locking its directory
+    File crashed = new File(spillDir, "spill-crashed");
+    Assert.assertTrue(crashed.mkdirs());
+    Assert.assertTrue(new File(crashed, "lock").createNewFile());
+    Assert.assertTrue(new File(crashed, "run-0").createNewFile());
+
+    // left behind by a process that crashed before creating its lock file
+    File unlocked = new File(spillDir, "spill-unlocked");
+    Assert.assertTrue(unlocked.mkdirs());
+    Assert.assertTrue(unlocked.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+    // possibly created by a process that is starting up, and not a spill directory
+    File starting = new File(spillDir, "spill-starting");
+    Assert.assertTrue(starting.mkdirs());
+    File other = new File(spillDir, "other");
+    Assert.assertTrue(other.mkdirs());
+
+    File processDir = SpilledRun.getProcessDir(spillDir);
+    Assert.assertEquals(spillDir, processDir.getParentFile());
+    Assert.assertTrue(new File(processDir, "lock").isFile());
+    Assert.assertFalse(crashed.exists());
+    Assert.assertFalse(unlocked.exists());
+    Assert.assertTrue(starting.exists());
+    Assert.assertTrue(other.exists());
+
+    // the directory is created once per process
+    Assert.assertEquals(processDir, SpilledRun.getProcessDir(spillDir));
+  }
+
+  @Test
+  public void testLockedProcessDirKept() throws Exception {
+    File spillDir = TMP_FOLDER.newFolder();
+    File live = new File(spillDir, "spill-live");
+    Assert.assertTrue(live.mkdirs());
+    try (FileChannel channel = new RandomAccessFile(new File(live, "lock"), "rw").getChannel()) {
+      // keep the lock referenced, otherwise the JVM forgets about it once it is garbage collected
+      FileLock lock = channel.tryLock();
+      Assert.assertNotNull(lock);
+      Assert.assertTrue(live.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+      File processDir = SpilledRun.getProcessDir(spillDir);
+      Assert.assertNotEquals(live, processDir);
+      Assert.assertTrue(new File(live, "lock").exists());
+      Assert.assertTrue(lock.isValid());
+    }
+  }
+}
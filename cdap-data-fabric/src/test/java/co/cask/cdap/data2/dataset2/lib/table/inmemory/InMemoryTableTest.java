@@ -16,19 +16,40 @@
 
 package co.cask.cdap.data2.dataset2.lib.table.inmemory;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DatasetAdmin;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.DatasetSpecification;
 import co.cask.cdap.api.dataset.table.ConflictDetection;
+import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTableTest;
+import co.cask.tephra.Transaction;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collection;
 
 /**
  *
  */
 public class InMemoryTableTest extends BufferingTableTest<InMemoryTable> {
 
-  private static final CConfiguration cConf = CConfiguration.create();
+  @ClassRule
+  public static TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static CConfiguration cConf;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, tmpFolder.newFolder().getAbsolutePath());
+  }
 
   @Override
   protected InMemoryTable getTable(DatasetContext datasetContext, String name,
@@ -36,6 +57,15 @@ public class InMemoryTableTest extends BufferingTableTest<InMemoryTable> {
     return new InMemoryTable(datasetContext, name, ConflictDetection.valueOf(conflictLevel.name()), cConf);
   }
 
+  @Override
+  protected InMemoryTable getTable(DatasetContext datasetContext, String name,
+                                   DatasetProperties props) throws Exception {
+    DatasetSpecification spec = DatasetSpecification.builder(name, "table")
+      .properties(props.getProperties())
+      .build();
+    return new InMemoryTable(datasetContext, spec, cConf);
+  }
+
   @Override
   protected DatasetAdmin getTableAdmin(DatasetContext datasetContext, String name,
                                        DatasetProperties ignored) throws Exception {
@@ -46,4 +76,52 @@ public class InMemoryTableTest extends BufferingTableTest<InMemoryTable> {
   protected boolean isReadlessIncrementSupported() {
     return false;
   }
+
+  @Test
+  public void testHashedTxChanges() throws Exception {
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, "hashed");
+    admin.create();
+    try {
+      for (ConflictDetection level : new ConflictDetection[] { ConflictDetection.ROW, ConflictDetection.COLUMN }) {
+        for (int bits : new int[] { 64, 128 }) {
+          DatasetSpecification spec = DatasetSpecification.builder("hashed", "table")
+            .property(Table.PROPERTY_CONFLICT_LEVEL, level.name())
+            .property(Constants.Dataset.TABLE_CONFLICT_HASH_BITS, String.valueOf(bits))
+            .build();
+          InMemoryTable table1 = new InMemoryTable(CONTEXT1, spec, cConf);
+          InMemoryTable table2 = new InMemoryTable(CONTEXT1, spec, cConf);
+          InMemoryTable table3 = new InMemoryTable(CONTEXT1, spec, cConf);
+
+          Transaction tx1 = txClient.startShort();
+          Transaction tx2 = txClient.startShort();
+          Transaction tx3 = txClient.startShort();
+          table1.startTx(tx1);
+          table2.startTx(tx2);
+          table3.startTx(tx3);
+          table1.put(Bytes.toBytes("r1"), Bytes.toBytes("c1"), Bytes.toBytes(1L));
+          table1.put(Bytes.toBytes("r1"), Bytes.toBytes("c2"), Bytes.toBytes(1L));
+          table2.put(Bytes.toBytes("r1"), Bytes.toBytes("c1"), Bytes.toBytes(2L));
+          table3.put(Bytes.toBytes("r2"), Bytes.toBytes("c1"), Bytes.toBytes(3L));
+
+          Collection<byte[]> changes = table1.getTxChanges();
+          Assert.assertEquals(level == ConflictDetection.ROW ? 1 : 2, changes.size());
+          for (byte[] change : changes) {
+            Assert.assertEquals(bits / Byte.SIZE, change.length);
+          }
+
+          // the hashes still detect the conflict on the same row and column, but not between different rows
+          Assert.assertTrue(txClient.canCommit(tx1, changes));
+          Assert.assertTrue(table1.commitTx());
+          Assert.assertTrue(txClient.commit(tx1));
+          Assert.assertFalse(txClient.canCommit(tx2, table2.getTxChanges()));
+          txClient.abort(tx2);
+          Assert.assertTrue(txClient.canCommit(tx3, table3.getTxChanges()));
+          Assert.assertTrue(table3.commitTx());
+          Assert.assertTrue(txClient.commit(tx3));
+        }
+      }
+    } finally {
+      admin.drop();
+    }
+  }
 }
@@ -81,6 +81,16 @@ public class LevelDBTableTest extends BufferingTableTest<LevelDBTable> {
     return new LevelDBTable(datasetContext, name, service, cConf, spec);
   }
 
+  @Override
+  protected LevelDBTable getTable(DatasetContext datasetContext, String name,
+                                  DatasetProperties props) throws IOException {
+    DatasetSpecification spec = DatasetSpecification
+      .builder(name, "table")
+      .properties(props.getProperties())
+      .build();
+    return new LevelDBTable(datasetContext, name, service, cConf, spec);
+  }
+
   @Override
   protected LevelDBTableAdmin getTableAdmin(DatasetContext datasetContext, String name,
                                             DatasetProperties ignored) throws IOException {
@@ -474,6 +474,58 @@ public class FactTableTest {
     assertScan(table, expected, scan);
   }
 
+  @Test
+  public void testSplitScan() throws Exception {
+    InMemoryTableService.create("SplitEntityTable");
+    InMemoryTableService.create("SplitDataTable");
+    int resolution = 1;
+    int rollTimebaseInterval = 10;
+
+    FactTable table = new FactTable(new InMemoryMetricsTable("SplitDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("SplitEntityTable")),
+                                    resolution, rollTimebaseInterval);
+
+    for (int ts = 0; ts < 100; ts++) {
+      writeInc(table, "metric1", ts, ts, "dim1", "value1", "dim2", "value2");
+      writeInc(table, "metric1", ts, 2 * ts, "dim1", "value2", "dim2", "value2");
+    }
+
+    // 10 time bases split in 4 scans of whole time bases, except at the ends of the time range
+    FactScan scan = new FactScan(5, 94, "metric1", dimValues("dim1", null, "dim2", "value2"));
+    List<FactScan> splits = table.split(scan, 4);
+    long[][] expectedRanges = {{5, 29}, {30, 59}, {60, 89}, {90, 94}};
+    Assert.assertEquals(expectedRanges.length, splits.size());
+    for (int i = 0; i < expectedRanges.length; i++) {
+      FactScan split = splits.get(i);
+      Assert.assertEquals(expectedRanges[i][0], split.getStartTs());
+      Assert.assertEquals(expectedRanges[i][1], split.getEndTs());
+
+      // each split reads the values of its time range only
+      long[] values = new long[(int) (split.getEndTs() - split.getStartTs() + 1)];
+      for (int k = 0; k < values.length; k++) {
+        values[k] = split.getStartTs() + k;
+      }
+      long[] doubledValues = new long[values.length];
+      for (int k = 0; k < values.length; k++) {
+        doubledValues[k] = 2 * values[k];
+      }
+      Table<String, List<DimensionValue>, List<TimeValue>> expected = HashBasedTable.create();
+      expected.put("metric1", dimValues("dim1", "value1", "dim2", "value2"),
+                   timeValues(split.getStartTs(), resolution, values));
+      expected.put("metric1", dimValues("dim1", "value2", "dim2", "value2"),
+                   timeValues(split.getStartTs(), resolution, doubledValues));
+      assertScan(table, expected, split);
+    }
+
+    // no more splits than time bases
+    Assert.assertEquals(10, table.split(scan, 100).size());
+
+    // scans within a single time base or with a single split are not split
+    Assert.assertEquals(ImmutableList.of(scan), table.split(scan, 1));
+    scan = new FactScan(21, 28, "metric1", dimValues("dim1", null, "dim2", "value2"));
+    Assert.assertEquals(ImmutableList.of(scan), table.split(scan, 4));
+  }
+
   @Test
   public void testMaxResolution() throws Exception {
     // we use Integer.MAX_VALUE as resolution to compute all-time total values
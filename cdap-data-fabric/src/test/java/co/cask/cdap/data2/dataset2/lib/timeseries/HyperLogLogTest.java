@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.timeseries;
+
+import co.cask.cdap.api.common.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class HyperLogLogTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HyperLogLogTest.class);
+
+  @Test
+  public void testAccuracy() {
+    for (int distinct : new int[] {1, 10, 100, 1000, 10000, 100000, 1000000}) {
+      HyperLogLog sketch = new HyperLogLog();
+      // Every value is added twice, duplicates must not count
+      for (int i = 0; i < distinct; i++) {
+        sketch.add(i);
+        sketch.add(i);
+      }
+      Assert.assertEquals("Estimate for " + distinct, distinct, sketch.estimate(), Math.max(1, distinct * 0.05));
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    HyperLogLog first = new HyperLogLog();
+    HyperLogLog second = new HyperLogLog();
+    HyperLogLog union = new HyperLogLog();
+    for (int i = 0; i < 20000; i++) {
+      first.add(i);
+      union.add(i);
+    }
+    for (int i = 10000; i < 40000; i++) {
+      second.add(i);
+      union.add(i);
+    }
+
+    // Merging gives exactly the sketch of the union
+    Assert.assertArrayEquals(union.toBytes(), first.merge(second).toBytes());
+    Assert.assertEquals(40000, first.estimate(), 2000);
+  }
+
+  @Test
+  public void testSerialization() {
+    HyperLogLog sketch = new HyperLogLog();
+    Assert.assertEquals(0, HyperLogLog.fromBytes(sketch.toBytes()).estimate());
+
+    // Sketches of few values are small
+    for (int i = 0; i < 100; i++) {
+      sketch.add(i);
+    }
+    byte[] bytes = sketch.toBytes();
+    Assert.assertTrue("Sparse sketch of size " + bytes.length, bytes.length < 400);
+    Assert.assertArrayEquals(bytes, HyperLogLog.fromBytes(bytes).toBytes());
+    Assert.assertEquals(sketch.estimate(), HyperLogLog.fromBytes(bytes).estimate());
+
+    // Sketches of many values take one byte per register
+    for (int i = 0; i < 100000; i++) {
+      sketch.add(i);
+    }
+    bytes = sketch.toBytes();
+    Assert.assertEquals(4098, bytes.length);
+    Assert.assertArrayEquals(bytes, HyperLogLog.fromBytes(bytes).toBytes());
+    Assert.assertEquals(sketch.estimate(), HyperLogLog.fromBytes(bytes).estimate());
+
+    try {
+      HyperLogLog.fromBytes(Bytes.toBytes(100L));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testThroughput() {
+    int count = 1000000;
+    HyperLogLog sketch = new HyperLogLog();
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      sketch.add(i);
+    }
+    long addNanos = System.nanoTime() - startNanos;
+
+    byte[] bytes = sketch.toBytes();
+    int merges = 10000;
+    HyperLogLog merged = new HyperLogLog();
+    startNanos = System.nanoTime();
+    for (int i = 0; i < merges; i++) {
+      merged.merge(HyperLogLog.fromBytes(bytes));
+    }
+    long mergeNanos = System.nanoTime() - startNanos;
+
+    Assert.assertEquals(sketch.estimate(), merged.estimate());
+    LOG.info("Added {} values in {} ms, merged {} serialized sketches in {} ms",
+             count, TimeUnit.NANOSECONDS.toMillis(addNanos), merges, TimeUnit.NANOSECONDS.toMillis(mergeNanos));
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.timeseries;
+
+import co.cask.cdap.api.common.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class QuantileSketchTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(QuantileSketchTest.class);
+
+  private static final double[] QUANTILES = {0, 0.01, 0.25, 0.5, 0.9, 0.95, 0.99, 1};
+
+  @Test
+  public void testAccuracy() {
+    Random random = new Random(0);
+
+    // Uniform, exponential and heavy tailed distributions
+    long[] uniform = new long[100000];
+    long[] exponential = new long[100000];
+    long[] pareto = new long[100000];
+    for (int i = 0; i < uniform.length; i++) {
+      uniform[i] = random.nextInt(1000000);
+      exponential[i] = (long) (-Math.log(1 - random.nextDouble()) * 1000);
+      pareto[i] = (long) (10 / Math.pow(1 - random.nextDouble(), 1 / 1.5));
+    }
+    verifyQuantiles(uniform);
+    verifyQuantiles(exponential);
+    verifyQuantiles(pareto);
+  }
+
+  @Test
+  public void testNegativeAndZero() {
+    long[] values = new long[2001];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i - 1000;
+    }
+    verifyQuantiles(values);
+
+    QuantileSketch sketch = new QuantileSketch();
+    Assert.assertEquals(0, sketch.getQuantile(0.5));
+    sketch.add(0).add(0).add(0);
+    Assert.assertEquals(0, sketch.getQuantile(0.99));
+  }
+
+  @Test
+  public void testMerge() {
+    QuantileSketch first = new QuantileSketch();
+    QuantileSketch second = new QuantileSketch();
+    QuantileSketch all = new QuantileSketch();
+    for (int i = 0; i < 10000; i++) {
+      first.add(i);
+      all.add(i);
+      second.add(i * 100);
+      all.add(i * 100);
+    }
+
+    // Merging gives exactly the sketch of all the values
+    first.merge(second);
+    Assert.assertArrayEquals(all.toBytes(), first.toBytes());
+    Assert.assertEquals(20000, first.getCount());
+    for (double quantile : QUANTILES) {
+      Assert.assertEquals(all.getQuantile(quantile), first.getQuantile(quantile));
+    }
+  }
+
+  @Test
+  public void testSerialization() {
+    QuantileSketch sketch = new QuantileSketch();
+    Assert.assertEquals(0, QuantileSketch.fromBytes(sketch.toBytes()).getCount());
+
+    for (int i = -1000; i < 1000000; i += 7) {
+      sketch.add(i);
+    }
+    byte[] bytes = sketch.toBytes();
+    QuantileSketch copy = QuantileSketch.fromBytes(bytes);
+    Assert.assertArrayEquals(bytes, copy.toBytes());
+    Assert.assertEquals(sketch.getCount(), copy.getCount());
+    for (double quantile : QUANTILES) {
+      Assert.assertEquals(sketch.getQuantile(quantile), copy.getQuantile(quantile));
+    }
+
+    try {
+      QuantileSketch.fromBytes(Bytes.toBytes(100L));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testThroughput() {
+    int count = 1000000;
+    Random random = new Random(0);
+    QuantileSketch sketch = new QuantileSketch();
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      sketch.add(random.nextInt(1000000));
+    }
+    long addNanos = System.nanoTime() - startNanos;
+
+    byte[] bytes = sketch.toBytes();
+    int merges = 10000;
+    QuantileSketch merged = new QuantileSketch();
+    startNanos = System.nanoTime();
+    for (int i = 0; i < merges; i++) {
+      merged.merge(QuantileSketch.fromBytes(bytes));
+    }
+    long mergeNanos = System.nanoTime() - startNanos;
+
+    Assert.assertEquals((long) count * merges, merged.getCount());
+    Assert.assertEquals(sketch.getQuantile(0.99), merged.getQuantile(0.99));
+    LOG.info("Added {} values in {} ms, merged {} serialized sketches of {} bytes in {} ms",
+             count, TimeUnit.NANOSECONDS.toMillis(addNanos), merges, bytes.length,
+             TimeUnit.NANOSECONDS.toMillis(mergeNanos));
+  }
+
+  /**
+   * Verifies that the quantiles estimated by a sketch of the given values are within the relative accuracy.
+   */
+  private void verifyQuantiles(long[] values) {
+    QuantileSketch sketch = new QuantileSketch();
+    for (long value : values) {
+      sketch.add(value);
+    }
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    for (double quantile : QUANTILES) {
+      long expected = sorted[(int) (quantile * (sorted.length - 1))];
+      // 1% relative accuracy, plus rounding to a whole number
+      Assert.assertEquals("Quantile " + quantile, expected, sketch.getQuantile(quantile),
+                          Math.abs(expected) * 0.01 + 1);
+    }
+  }
+}
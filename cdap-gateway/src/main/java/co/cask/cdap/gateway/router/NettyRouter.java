@@ -16,14 +16,19 @@
 
 package co.cask.cdap.gateway.router;
 
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.common.ServiceBindException;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.conf.SConfiguration;
+import co.cask.cdap.gateway.router.handlers.BackendConnectionPool;
 import co.cask.cdap.gateway.router.handlers.HttpRequestHandler;
 import co.cask.cdap.gateway.router.handlers.HttpStatusRequestHandler;
 import co.cask.cdap.gateway.router.handlers.IdleEventProcessor;
 import co.cask.cdap.gateway.router.handlers.SecurityAuthenticationHttpHandler;
+import co.cask.cdap.proto.Id;
 import co.cask.cdap.security.auth.AccessTokenTransformer;
 import co.cask.cdap.security.auth.TokenValidator;
 import co.cask.cdap.security.tools.SSLHandlerFactory;
@@ -99,10 +104,14 @@ public class NettyRouter extends AbstractIdleService {
   private final boolean sslEnabled;
   private final SSLHandlerFactory sslHandlerFactory;
   private final int connectionTimeout;
+  private final int backendConnectionPoolSize;
+  private final int backendMaxConnections;
 
+  private volatile MetricsContext metricsContext;
   private Timer timer;
   private ServerBootstrap serverBootstrap;
   private ClientBootstrap clientBootstrap;
+  private BackendConnectionPool connectionPool;
   private DiscoveryServiceClient discoveryServiceClient;
 
   @Inject
@@ -154,10 +163,22 @@ public class NettyRouter extends AbstractIdleService {
       this.sslHandlerFactory = null;
     }
     this.connectionTimeout = cConf.getInt(Constants.Router.CONNECTION_TIMEOUT_SECS);
+    this.backendConnectionPoolSize = cConf.getInt(Constants.Router.BACKEND_CONNECTION_POOL_SIZE);
+    this.backendMaxConnections = cConf.getInt(Constants.Router.BACKEND_MAX_CONNECTIONS);
+    this.metricsContext = new NoopMetricsContext();
     LOG.info("Using connection timeout: {}", connectionTimeout);
+    LOG.info("Using backend connection pool size: {}", backendConnectionPoolSize);
+    LOG.info("Using maximum backend connections: {}", backendMaxConnections);
     LOG.info("Service to Port Mapping - {}", this.serviceToPortMap);
   }
 
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsContext = metricsCollectionService.getContext(
+      ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, Id.Namespace.SYSTEM.getId(),
+                      Constants.Metrics.Tag.COMPONENT, Constants.Service.ROUTER));
+  }
+
   @Override
   protected void startUp() throws Exception {
     ChannelUpstreamHandler connectionTracker = new SimpleChannelUpstreamHandler() {
@@ -220,6 +241,13 @@ public class NettyRouter extends AbstractIdleService {
     return serviceLookup;
   }
 
+  /**
+   * Returns the pool of backend connections, which is only available while the router is running.
+   */
+  public BackendConnectionPool getBackendConnectionPool() {
+    return connectionPool;
+  }
+
   private ExecutorService createExecutorService(int threadPoolSize, String name) {
     return Executors.newFixedThreadPool(threadPoolSize,
                                         new ThreadFactoryBuilder()
@@ -258,7 +286,7 @@ public class NettyRouter extends AbstractIdleService {
           }
           // for now there's only one hardcoded rule, but if there will be more, we may want it generic and configurable
           pipeline.addLast("http-request-handler",
-                           new HttpRequestHandler(clientBootstrap, serviceLookup, ImmutableList.<ProxyRule>of()));
+                           new HttpRequestHandler(connectionPool, serviceLookup, ImmutableList.<ProxyRule>of()));
           return pipeline;
         }
       }
@@ -329,6 +357,9 @@ public class NettyRouter extends AbstractIdleService {
     });
 
     clientBootstrap.setOption("bufferFactory", new DirectChannelBufferFactory());
+
+    connectionPool = new BackendConnectionPool(clientBootstrap, backendConnectionPoolSize, backendMaxConnections);
+    connectionPool.setMetricsContext(metricsContext);
   }
 
   private boolean isSSLEnabled() {
@@ -0,0 +1,386 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router.handlers;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.common.HandlerException;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.Queue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * A pool of keep-alive connections to backend services, shared by all inbound connections of the router.
+ *
+ * <p>
+ * An inbound connection acquires a backend connection when it first routes a request to a backend, and keeps using
+ * it for later requests to the same backend. When the inbound connection is closed, the backend connection is
+ * returned to the pool if it has no response in progress and the backend agreed to keep it alive, so that the next
+ * inbound connection can skip the TCP handshake.
+ * </p>
+ *
+ * <p>
+ * Keep-alive is tracked separately for the two hops. HTTP/1.1 requests are always sent to the backend as keep-alive,
+ * and if the client asked for its connection to be closed, the router closes the client connection once the
+ * response is forwarded. Responses are forwarded as raw bytes, so their {@code Connection} header is passed through
+ * as is, and the router ignores any request that the client sends after asking for the close. If a pooled
+ * connection turns out to be closed by the backend before any response arrives, the request is sent once more on a
+ * new connection, provided the request has no chunked body. The same applies to GET, HEAD and OPTIONS requests that
+ * get no response until the connection idle timeout, see {@link IdleEventProcessor}.
+ * </p>
+ *
+ * <p>
+ * At most {@code maxIdleConnections} idle connections are kept per backend; more connections are closed when they
+ * are released. At most {@code maxConnections} connections, idle or in use, are opened per backend; requests that
+ * need a new connection beyond that fail with {@code 503 Service Unavailable}. Pooled connections are evicted by the
+ * idle timeout of the client pipeline, like any other backend connection.
+ * </p>
+ */
+public final class BackendConnectionPool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BackendConnectionPool.class);
+
+  private final ClientBootstrap clientBootstrap;
+  private final int maxIdleConnections;
+  private final int maxConnections;
+  private final ConcurrentMap<InetSocketAddress, Backend> backends;
+  private final AtomicInteger hits;
+  private final AtomicInteger misses;
+  private volatile MetricsContext metricsContext;
+
+  /**
+   * Creates a new pool.
+   *
+   * @param clientBootstrap the bootstrap for connecting to backends
+   * @param maxIdleConnections maximum number of idle connections to keep per backend; {@code 0} disables pooling
+   * @param maxConnections maximum number of connections to open per backend; {@code 0} or less means no limit
+   */
+  public BackendConnectionPool(ClientBootstrap clientBootstrap, int maxIdleConnections, int maxConnections) {
+    this.clientBootstrap = clientBootstrap;
+    this.maxIdleConnections = Math.max(0, maxIdleConnections);
+    this.maxConnections = maxConnections <= 0 ? Integer.MAX_VALUE : maxConnections;
+    this.backends = new ConcurrentHashMap<>();
+    this.hits = new AtomicInteger();
+    this.misses = new AtomicInteger();
+    this.metricsContext = new NoopMetricsContext();
+  }
+
+  /**
+   * Sets the {@link MetricsContext} for emitting the pool hit and miss counts and the backend connect latency.
+   */
+  public void setMetricsContext(MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
+  }
+
+  /**
+   * Returns the number of times a connection was taken from the pool.
+   */
+  public int getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of times a new connection had to be made.
+   */
+  public int getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the number of open connections to the given backend, both idle and in use.
+   */
+  public int getConnections(InetSocketAddress address) {
+    Backend backend = backends.get(address);
+    return backend == null ? 0 : backend.connections.get();
+  }
+
+  /**
+   * Acquires a connection to the given backend for the given inbound channel, either from the pool or by
+   * connecting to the backend.
+   *
+   * @return a future that is completed when the channel is connected
+   * @throws HandlerException with status {@code 503} if the maximum number of connections to the backend is reached
+   */
+  ChannelFuture acquire(InetSocketAddress address, Channel inboundChannel) {
+    Backend backend = getBackend(address);
+    // Most recently used first, so that connections beyond the actual demand stay idle and get evicted
+    Channel channel = backend.idleChannels.pollFirst();
+    while (channel != null) {
+      if (channel.isConnected()) {
+        channel.getPipeline().get(OutboundHandler.class).setInboundChannel(inboundChannel);
+        channel.getPipeline().get(ConnectionTracker.class).reused();
+        hits.incrementAndGet();
+        metricsContext.increment("router.backend.pool.hits", 1);
+        return Channels.succeededFuture(channel);
+      }
+      channel = backend.idleChannels.pollFirst();
+    }
+
+    ChannelFuture future = connect(backend, inboundChannel);
+    misses.incrementAndGet();
+    metricsContext.increment("router.backend.pool.misses", 1);
+    return future;
+  }
+
+  /**
+   * Acquires a new connection to the given backend for the given inbound channel, without taking one from the pool.
+   * This is for sending a request again after a pooled connection was found closed.
+   *
+   * @return a future that is completed when the channel is connected
+   * @throws HandlerException with status {@code 503} if the maximum number of connections to the backend is reached
+   */
+  ChannelFuture reconnect(InetSocketAddress address, Channel inboundChannel) {
+    metricsContext.increment("router.backend.pool.retries", 1);
+    return connect(getBackend(address), inboundChannel);
+  }
+
+  /**
+   * Releases a connection acquired by {@link #acquire(InetSocketAddress, Channel)}. The connection is either put back
+   * to the pool or closed.
+   */
+  void release(Channel channel) {
+    ConnectionTracker tracker = channel.getPipeline().get(ConnectionTracker.class);
+    if (!channel.isConnected() || tracker == null || !tracker.isReusable()) {
+      HttpRequestHandler.closeOnFlush(channel);
+      return;
+    }
+
+    BlockingDeque<Channel> channels = getBackend(tracker.address).idleChannels;
+    if (!channels.offerFirst(channel)) {
+      HttpRequestHandler.closeOnFlush(channel);
+      return;
+    }
+    // If the channel got closed concurrently, its close listener might not have seen it in the pool
+    if (!channel.isConnected()) {
+      channels.remove(channel);
+    }
+  }
+
+  /**
+   * Returns the request to send again on a new connection, if the given channel was taken from the pool and got
+   * closed by the backend before a response arrived; otherwise returns {@code null}.
+   */
+  @Nullable
+  static HttpRequest getRetryRequest(Channel channel) {
+    ConnectionTracker tracker = channel.getPipeline().get(ConnectionTracker.class);
+    return tracker == null ? null : tracker.getRetryRequest();
+  }
+
+  private Backend getBackend(InetSocketAddress address) {
+    Backend backend = backends.get(address);
+    if (backend == null) {
+      backend = new Backend(address, maxIdleConnections);
+      Backend existing = backends.putIfAbsent(address, backend);
+      backend = existing == null ? backend : existing;
+    }
+    return backend;
+  }
+
+  private ChannelFuture connect(final Backend backend, Channel inboundChannel) {
+    int connections;
+    do {
+      connections = backend.connections.get();
+      if (connections >= maxConnections) {
+        metricsContext.increment("router.backend.connect.rejects", 1);
+        throw new HandlerException(HttpResponseStatus.SERVICE_UNAVAILABLE,
+                                   String.format("Too many connections to backend %s", backend.address));
+      }
+    } while (!backend.connections.compareAndSet(connections, connections + 1));
+
+    final long startNanos = System.nanoTime();
+    ChannelFuture connectFuture = clientBootstrap.connect(backend.address);
+    final Channel outboundChannel = connectFuture.getChannel();
+
+    final OutboundHandler outboundHandler = new OutboundHandler(inboundChannel);
+    outboundChannel.getPipeline().addAfter("request-encoder", "outbound-handler", outboundHandler);
+    if (maxIdleConnections > 0) {
+      outboundChannel.getPipeline().addAfter("response-decoder", "connection-tracker",
+                                             new ConnectionTracker(backend.address, outboundHandler));
+    }
+
+    outboundChannel.getCloseFuture().addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture future) throws Exception {
+        backend.connections.decrementAndGet();
+        backend.idleChannels.remove(outboundChannel);
+
+        final Channel inboundChannel = outboundHandler.getInboundChannel();
+        inboundChannel.getPipeline().execute(new Runnable() {
+          @Override
+          public void run() {
+            // When the outbound channel closed,
+            // close the inbound channel as well if it carries the in-flight request,
+            // unless the request can be sent again on a new connection
+            if (outboundChannel.equals(inboundChannel.getAttachment())) {
+              HttpRequestHandler requestHandler = inboundChannel.getPipeline().get(HttpRequestHandler.class);
+              if (requestHandler == null || !requestHandler.retry(outboundChannel)) {
+                HttpRequestHandler.closeOnFlush(inboundChannel);
+              }
+            }
+          }
+        });
+      }
+    });
+
+    connectFuture.addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture future) throws Exception {
+        if (future.isSuccess()) {
+          metricsContext.increment("router.backend.connects", 1);
+          metricsContext.increment("router.backend.connect.ms",
+                                   TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } else {
+          LOG.debug("Failed to connect to backend {}", backend.address, future.getCause());
+          metricsContext.increment("router.backend.connect.failures", 1);
+        }
+      }
+    });
+    return connectFuture;
+  }
+
+  /**
+   * The idle connections and the number of open connections of a backend.
+   */
+  private static final class Backend {
+
+    private final InetSocketAddress address;
+    private final BlockingDeque<Channel> idleChannels;
+    private final AtomicInteger connections;
+
+    Backend(InetSocketAddress address, int maxIdleConnections) {
+      this.address = address;
+      this.idleChannels = new LinkedBlockingDeque<>(Math.max(1, maxIdleConnections));
+      this.connections = new AtomicInteger();
+    }
+  }
+
+  /**
+   * Tracks the requests and responses on a backend connection to tell whether it can be reused, and handles the
+   * keep-alive of the two hops. It sits after the response decoder, so that it sees decoded responses and requests
+   * before they are encoded.
+   */
+  private static final class ConnectionTracker extends SimpleChannelHandler {
+
+    private final InetSocketAddress address;
+    private final OutboundHandler outboundHandler;
+    // Whether the client asked to keep its connection alive, for each request without a complete response
+    private final Queue<Boolean> pendingResponses = new ConcurrentLinkedQueue<>();
+    private volatile boolean keepAlive = true;
+    private volatile boolean reused;
+    private volatile HttpRequest retryRequest;
+    private boolean chunkedResponse;
+
+    ConnectionTracker(InetSocketAddress address, OutboundHandler outboundHandler) {
+      this.address = address;
+      this.outboundHandler = outboundHandler;
+    }
+
+    /**
+     * Returns {@code true} if the connection has no response in progress and the backend keeps it alive.
+     */
+    boolean isReusable() {
+      return keepAlive && pendingResponses.isEmpty();
+    }
+
+    /**
+     * Marks the connection as taken from the pool, so that the first request on it can be sent again if the backend
+     * closed the connection in the meantime.
+     */
+    void reused() {
+      reused = true;
+      retryRequest = null;
+    }
+
+    @Nullable
+    HttpRequest getRetryRequest() {
+      return retryRequest;
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+      Object message = e.getMessage();
+      if (message instanceof HttpRequest) {
+        HttpRequest request = (HttpRequest) message;
+        boolean clientKeepAlive = HttpHeaders.isKeepAlive(request);
+        if (HttpVersion.HTTP_1_1.equals(request.getProtocolVersion())
+          && !request.containsHeader(HttpHeaders.Names.UPGRADE)) {
+          // The client connection is closed by the router, hence the backend connection can be kept
+          HttpHeaders.setKeepAlive(request, true);
+        } else {
+          keepAlive = keepAlive && clientKeepAlive;
+        }
+        // Only the first request on a reused connection, without a chunked body, is sent again
+        retryRequest = reused && pendingResponses.isEmpty() && !request.isChunked() ? request : null;
+        reused = false;
+        pendingResponses.add(clientKeepAlive);
+      }
+      ctx.sendDownstream(e);
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+      retryRequest = null;
+      Object message = e.getMessage();
+      if (message instanceof HttpResponse) {
+        HttpResponse response = (HttpResponse) message;
+        // An interim response is followed by the actual response
+        if (!HttpResponseStatus.CONTINUE.equals(response.getStatus())) {
+          keepAlive = keepAlive && HttpHeaders.isKeepAlive(response);
+          chunkedResponse = response.isChunked();
+          if (!chunkedResponse) {
+            responseCompleted();
+          }
+        }
+      } else if (message instanceof HttpChunk && chunkedResponse && ((HttpChunk) message).isLast()) {
+        chunkedResponse = false;
+        responseCompleted();
+      }
+      ctx.sendUpstream(e);
+    }
+
+    private void responseCompleted() {
+      Boolean clientKeepAlive = pendingResponses.poll();
+      if (clientKeepAlive != null && !clientKeepAlive) {
+        outboundHandler.closeInboundAfterForward();
+      }
+    }
+  }
+}
@@ -23,7 +23,6 @@ import co.cask.cdap.gateway.router.RouterServiceLookup;
 import com.google.common.collect.Queues;
 import com.google.common.io.Closeables;
 import org.apache.twill.discovery.Discoverable;
-import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
@@ -36,6 +35,7 @@ import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
@@ -61,7 +61,7 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(HttpRequestHandler.class);
 
-  private final ClientBootstrap clientBootstrap;
+  private final BackendConnectionPool connectionPool;
   private final RouterServiceLookup serviceLookup;
   // Data structure is used to clean up the channel futures on connection close.
   private final Map<WrappedDiscoverable, MessageSender> discoveryLookup;
@@ -69,12 +69,13 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
   private final AtomicInteger exceptionsHandled = new AtomicInteger(0);
   private MessageSender chunkSender;
+  private boolean closeRequested;
   private volatile boolean channelClosed;
 
-  public HttpRequestHandler(ClientBootstrap clientBootstrap,
+  public HttpRequestHandler(BackendConnectionPool connectionPool,
                             RouterServiceLookup serviceLookup,
                             List<ProxyRule> proxyRules) {
-    this.clientBootstrap = clientBootstrap;
+    this.connectionPool = connectionPool;
     this.serviceLookup = serviceLookup;
     this.discoveryLookup = new HashMap<>();
     this.proxyRules = proxyRules;
@@ -99,9 +100,16 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
       chunkSender.send(msg);
 
     } else if (msg instanceof HttpRequest) {
+      // The connection is closed after the response to a request that asked for it, hence drop later requests
+      if (closeRequested) {
+        LOG.trace("Ignoring request after connection close is requested on {}", inboundChannel);
+        return;
+      }
+
       // Discover and forward event.
       HttpRequest request = (HttpRequest) msg;
       request = applyProxyRules(request);
+      closeRequested = !HttpHeaders.isKeepAlive(request);
 
       // Suspend incoming traffic until connected to the outbound service.
       inboundChannel.setReadable(false);
@@ -113,30 +121,12 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
       if (sender == null || !sender.isConnected()) {
         InetSocketAddress address = discoverable.getSocketAddress();
 
-        ChannelFuture future = clientBootstrap.connect(address);
-        final Channel outboundChannel = future.getChannel();
-        outboundChannel.getPipeline().addAfter("request-encoder",
-                                               "outbound-handler", new OutboundHandler(inboundChannel));
-        sender = new MessageSender(inboundChannel, future);
+        ChannelFuture future = connectionPool.acquire(address, inboundChannel);
+        sender = new MessageSender(connectionPool, address, inboundChannel, future);
         discoveryLookup.put(discoverable, sender);
 
         // Remember the in-flight outbound channel
-        inboundChannel.setAttachment(outboundChannel);
-        outboundChannel.getCloseFuture().addListener(new ChannelFutureListener() {
-          @Override
-          public void operationComplete(ChannelFuture future) throws Exception {
-            inboundChannel.getPipeline().execute(new Runnable() {
-              @Override
-              public void run() {
-                // When the outbound channel closed,
-                // close the inbound channel as well if it carries the in-flight request
-                if (outboundChannel.equals(inboundChannel.getAttachment())) {
-                  closeOnFlush(inboundChannel);
-                }
-              }
-            });
-          }
-        });
+        inboundChannel.setAttachment(future.getChannel());
       }
 
       // Send the message.
@@ -194,7 +184,7 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
   @Override
   public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-    // Close all event sender
+    // Close all event sender, which returns the backend connections to the pool if they can be reused
     LOG.trace("Channel closed {}", ctx.getChannel());
     for (Closeable c : discoveryLookup.values()) {
       Closeables.closeQuietly(c);
@@ -203,6 +193,35 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
     super.channelClosed(ctx, e);
   }
 
+  /**
+   * Sends the in-flight request again on a new backend connection, if the given backend connection was taken from
+   * the pool and got closed by the backend before responding. This is called from the I/O thread of the inbound
+   * channel.
+   *
+   * @return {@code true} if the request is sent again; {@code false} if the inbound channel should be closed
+   */
+  boolean retry(Channel outboundChannel) {
+    HttpRequest request = BackendConnectionPool.getRetryRequest(outboundChannel);
+    if (request == null || channelClosed) {
+      return false;
+    }
+    for (MessageSender sender : discoveryLookup.values()) {
+      if (outboundChannel.equals(sender.getChannel())) {
+        LOG.debug("Backend connection {} is closed, sending request {} {} on a new connection",
+                  outboundChannel, request.getMethod(), request.getUri());
+        try {
+          sender.reconnect();
+        } catch (HandlerException e) {
+          LOG.debug("Failed to reconnect to backend", e);
+          return false;
+        }
+        sender.send(request);
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Closes the specified channel after all queued write requests are flushed.
    */
@@ -240,23 +259,40 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
    * channel callback.
    */
   private static final class MessageSender implements Closeable {
+    private final BackendConnectionPool connectionPool;
+    private final InetSocketAddress address;
     private final Channel inBoundChannel;
-    private final ChannelFuture channelFuture;
     private final Queue<OutboundMessage> messages;
     private final AtomicBoolean writer;
+    private volatile ChannelFuture channelFuture;
 
-    private MessageSender(Channel inBoundChannel, ChannelFuture channelFuture) {
+    private MessageSender(BackendConnectionPool connectionPool, InetSocketAddress address,
+                          Channel inBoundChannel, ChannelFuture channelFuture) {
+      this.connectionPool = connectionPool;
+      this.address = address;
       this.inBoundChannel = inBoundChannel;
       this.channelFuture = channelFuture;
       this.messages = Queues.newConcurrentLinkedQueue();
       this.writer = new AtomicBoolean(false);
     }
 
+    private Channel getChannel() {
+      return channelFuture.getChannel();
+    }
+
     private boolean isConnected() {
       return channelFuture.getChannel().isConnected();
     }
 
+    /**
+     * Switches to a new connection to the same backend, for sending a request again.
+     */
+    private void reconnect() {
+      channelFuture = connectionPool.reconnect(address, inBoundChannel);
+    }
+
     private void send(Object msg) {
+      ChannelFuture channelFuture = this.channelFuture;
       // Attach the outbound channel to the inbound to indicate the in-flight request outbound.
       inBoundChannel.setAttachment(channelFuture.getChannel());
 
@@ -308,7 +344,11 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
     @Override
     public void close() throws IOException {
-      closeOnFlush(channelFuture.getChannel());
+      if (channelFuture.isSuccess()) {
+        connectionPool.release(channelFuture.getChannel());
+      } else {
+        closeOnFlush(channelFuture.getChannel());
+      }
     }
   }
 
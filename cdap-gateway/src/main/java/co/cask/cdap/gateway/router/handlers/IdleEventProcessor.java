@@ -16,10 +16,12 @@
 
 package co.cask.cdap.gateway.router.handlers;
 
+import com.google.common.collect.ImmutableSet;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.timeout.IdleState;
@@ -28,19 +30,32 @@ import org.jboss.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
+
 /**
  * Handles states when a channel has been idle for a configured time interval, by closing the channel if an
- * HTTP Request is not in progress.
+ * HTTP Request is not in progress. A connection taken from the {@link BackendConnectionPool} is also closed if it got
+ * no response at all to a GET, HEAD or OPTIONS request, since the backend may have stopped serving the connection
+ * without closing it; the request is then sent once more on a new connection.
  */
 public class IdleEventProcessor extends IdleStateAwareChannelHandler {
   private static final Logger LOG = LoggerFactory.getLogger(IdleEventProcessor.class);
+  private static final Set<HttpMethod> SAFE_METHODS = ImmutableSet.of(HttpMethod.GET, HttpMethod.HEAD,
+                                                                      HttpMethod.OPTIONS);
   private boolean requestInProgress;
 
   @Override
   public void channelIdle(ChannelHandlerContext ctx, IdleStateEvent e) throws Exception {
     if (IdleState.ALL_IDLE == e.getState()) {
       if (requestInProgress) {
-        LOG.trace("Request is in progress, so not closing channel.");
+        HttpRequest retryRequest = BackendConnectionPool.getRetryRequest(ctx.getChannel());
+        if (retryRequest != null && SAFE_METHODS.contains(retryRequest.getMethod())) {
+          LOG.debug("No response on reused connection '{}' for request {} {}. Closing the channel to retry.",
+                    ctx.getChannel(), retryRequest.getMethod(), retryRequest.getUri());
+          ctx.getChannel().close();
+        } else {
+          LOG.trace("Request is in progress, so not closing channel.");
+        }
       } else {
         // No data has been sent or received for a while. Close channel.
         Channel channel = ctx.getChannel();
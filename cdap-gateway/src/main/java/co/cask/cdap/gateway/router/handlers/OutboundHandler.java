@@ -34,22 +34,54 @@ import org.slf4j.LoggerFactory;
 public class OutboundHandler extends SimpleChannelUpstreamHandler {
   private static final Logger LOG = LoggerFactory.getLogger(OutboundHandler.class);
 
-  private final Channel inboundChannel;
+  private volatile Channel inboundChannel;
+  private boolean closeInbound;
 
   public OutboundHandler(Channel inboundChannel) {
     this.inboundChannel = inboundChannel;
   }
 
+  /**
+   * Returns the inbound channel that responses are currently forwarded to.
+   */
+  Channel getInboundChannel() {
+    return inboundChannel;
+  }
+
+  /**
+   * Forwards responses to the given inbound channel, when a pooled connection is reused for another client.
+   */
+  void setInboundChannel(Channel inboundChannel) {
+    this.inboundChannel = inboundChannel;
+  }
+
+  /**
+   * Closes the inbound channel after the message being received is forwarded to it. This is called by handlers
+   * further up the pipeline, when the client asked to close its connection after the response.
+   */
+  void closeInboundAfterForward() {
+    closeInbound = true;
+  }
+
   @Override
   public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
-    // write the channel buffer to inbound channel
+    Channel inboundChannel = this.inboundChannel;
     ChannelBuffer wrappedMessage = ChannelBuffers.wrappedBuffer((ChannelBuffer) event.getMessage());
-    Channels.write(inboundChannel, wrappedMessage);
+    // Let the handlers up the pipeline see the message first, so that the connection state is updated
+    // before the client gets the response
     super.messageReceived(ctx, event);
+
+    // write the channel buffer to inbound channel
+    Channels.write(inboundChannel, wrappedMessage);
+    if (closeInbound) {
+      closeInbound = false;
+      HttpRequestHandler.closeOnFlush(inboundChannel);
+    }
   }
 
   @Override
   public void channelInterestChanged(ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+    final Channel inboundChannel = this.inboundChannel;
     inboundChannel.getPipeline().execute(new Runnable() {
       @Override
       public void run() {
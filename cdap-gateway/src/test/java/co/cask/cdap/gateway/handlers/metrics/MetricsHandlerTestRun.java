@@ -556,6 +556,123 @@ public class MetricsHandlerTestRun extends MetricsSuiteTestBase {
     metricStore.delete(deleteQuery);
   }
 
+  @Test
+  public void testStitchedResolutions() throws Exception {
+    Map<String, String> sliceBy = getFlowletContext("stitched", "WordCount1", "WordCounter", "run1", "splitter");
+    // start of the last hour, so that the seconds queried are still retained
+    long base = (TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - 60) / 3600 * 3600;
+    for (long ts : new long[] {10, 70, 3610, 7230, 7235}) {
+      metricStore.add(new MetricValues(sliceBy, "reads", base + ts, 1, MetricType.COUNTER));
+    }
+
+    // seconds up to the first minute, minutes up to the first hour, one hour and seconds after that
+    String timeRange = "&start=" + (base + 5) + "&end=" + (base + 7236);
+    String url = "/v3/metrics/query?" + getTags("stitched", "WordCount1", "WordCounter", "splitter") +
+      "&metric=system.reads&stitch=true" + timeRange;
+    MetricQueryResult queryResult = post(url, MetricQueryResult.class);
+    Assert.assertEquals("1s", queryResult.getResolution());
+    MetricQueryResult.TimeValue[] data = queryResult.getSeries()[0].getData();
+    Assert.assertEquals(5, data.length);
+    long[] expectedTimes = {10, 60, 3600, 7230, 7235};
+    for (int i = 0; i < data.length; i++) {
+      Assert.assertEquals(base + expectedTimes[i], data[i].getTime());
+      Assert.assertEquals(1, data[i].getValue());
+    }
+
+    MetricQueryResult.QueryInterval[] queryPlan = queryResult.getQueryPlan();
+    Assert.assertEquals(4, queryPlan.length);
+    verifyQueryInterval(queryPlan[0], "1s", base + 5, base + 59, 55);
+    verifyQueryInterval(queryPlan[1], "60s", base + 60, base + 3599, 59);
+    verifyQueryInterval(queryPlan[2], "3600s", base + 3600, base + 7199, 1);
+    verifyQueryInterval(queryPlan[3], "1s", base + 7200, base + 7236, 37);
+
+    // with auto resolution all resolutions are used, with minute resolution no seconds are used
+    url = "/v3/metrics/query?" + getTags("stitched", "WordCount1", "WordCounter", "splitter") +
+      "&metric=system.reads&stitch=true&resolution=auto" + timeRange;
+    queryResult = post(url, MetricQueryResult.class);
+    Assert.assertEquals(4, queryResult.getQueryPlan().length);
+    url = "/v3/metrics/query?" + getTags("stitched", "WordCount1", "WordCounter", "splitter") +
+      "&metric=system.reads&stitch=true&resolution=1m" + timeRange;
+    queryResult = post(url, MetricQueryResult.class);
+    Assert.assertEquals(3, queryResult.getQueryPlan().length);
+    verifyTimeSeries(queryResult.getSeries()[0], 3, 4);
+
+    // the seconds of the same time range a day ago have expired, so minutes are used for them
+    url = "/v3/metrics/query?" + getTags("stitched", "WordCount1", "WordCounter", "splitter") +
+      "&metric=system.reads&stitch=true&start=" + (base - 86400 + 5) + "&end=" + (base - 86400 + 7236);
+    queryResult = post(url, MetricQueryResult.class);
+    queryPlan = queryResult.getQueryPlan();
+    verifyQueryInterval(queryPlan[0], "60s", base - 86400, base - 86400 + 59, 1);
+    verifyQueryInterval(queryPlan[queryPlan.length - 1], "60s", base - 86400 + 7200, base - 86400 + 7259, 1);
+
+    // not stitched queries have no query plan
+    url = "/v3/metrics/query?" + getTags("stitched", "WordCount1", "WordCounter", "splitter") +
+      "&metric=system.reads" + timeRange;
+    queryResult = post(url, MetricQueryResult.class);
+    Assert.assertNull(queryResult.getQueryPlan());
+  }
+
+  @Test
+  public void testSketchFunctions() throws Exception {
+    Map<String, String> sliceBy = getFlowletContext("sketch", "WordCount1", "WordCounter", "run1", "splitter");
+    for (int i = 1; i <= 100; i++) {
+      metricStore.add(new MetricValues(sliceBy, "users", i, i % 7, MetricType.DISTINCT));
+      metricStore.add(new MetricValues(sliceBy, "latency", i, i * 10, MetricType.DISTRIBUTION));
+      metricStore.add(new MetricValues(sliceBy, "reads", i, 1, MetricType.COUNTER));
+    }
+
+    String url = "/v3/metrics/query?" + getTags("sketch", "WordCount1", "WordCounter", "splitter") +
+      "&metric=system.users&aggregate=true&function=distinct_count";
+    MetricQueryResult queryResult = post(url, MetricQueryResult.class);
+    Assert.assertEquals(7, queryResult.getSeries()[0].getData()[0].getValue());
+
+    // the 50th and 99th values of 10 to 1000, within 1%
+    url = "/v3/metrics/query?" + getTags("sketch", "WordCount1", "WordCounter", "splitter") +
+      "&metric=system.latency&aggregate=true&function=p50";
+    queryResult = post(url, MetricQueryResult.class);
+    Assert.assertEquals(500, queryResult.getSeries()[0].getData()[0].getValue(), 5);
+    url = "/v3/metrics/query?" + getTags("sketch", "WordCount1", "WordCounter", "splitter") +
+      "&metric=system.latency&aggregate=true&function=p99";
+    queryResult = post(url, MetricQueryResult.class);
+    Assert.assertEquals(990, queryResult.getSeries()[0].getData()[0].getValue(), 10);
+
+    // time range query in the minute resolution
+    url = "/v3/metrics/query?" + getTags("sketch", "WordCount1", "WordCounter", "splitter") +
+      "&metric=system.users&function=distinct_count&resolution=1m&start=0&end=119";
+    queryResult = post(url, MetricQueryResult.class);
+    MetricQueryResult.TimeValue[] data = queryResult.getSeries()[0].getData();
+    Assert.assertEquals(2, data.length);
+    Assert.assertEquals(7, data[0].getValue());
+    Assert.assertEquals(7, data[1].getValue());
+
+    HttpResponse response = doPost("/v3/metrics/query?" +
+                                     getTags("sketch", "WordCount1", "WordCounter", "splitter") +
+                                     "&metric=system.users&aggregate=true&function=median", null);
+    Assert.assertEquals(400, response.getStatusLine().getStatusCode());
+
+    // functions that don't match the type of the metric
+    assertSketchFunctionRejected("system.users", "sum");
+    assertSketchFunctionRejected("system.latency", "sum");
+    assertSketchFunctionRejected("system.latency", "distinct_count");
+    assertSketchFunctionRejected("system.reads", "p99");
+    assertSketchFunctionRejected("system.reads", "distinct_count");
+  }
+
+  private void assertSketchFunctionRejected(String metric, String function) throws Exception {
+    HttpResponse response = doPost("/v3/metrics/query?" +
+                                     getTags("sketch", "WordCount1", "WordCounter", "splitter") +
+                                     "&metric=" + metric + "&aggregate=true&function=" + function, null);
+    Assert.assertEquals(400, response.getStatusLine().getStatusCode());
+  }
+
+  private void verifyQueryInterval(MetricQueryResult.QueryInterval interval, String resolution,
+                                   long startTime, long endTime, long buckets) {
+    Assert.assertEquals(resolution, interval.getResolution());
+    Assert.assertEquals(startTime, interval.getStartTime());
+    Assert.assertEquals(endTime, interval.getEndTime());
+    Assert.assertEquals(buckets, interval.getBuckets());
+  }
+
   private void verifyGroupByResult(String url, List<TimeSeriesResult> groupByResult) throws Exception {
     MetricQueryResult result = post(url, MetricQueryResult.class);
     Assert.assertEquals(groupByResult.size(), result.getSeries().length);
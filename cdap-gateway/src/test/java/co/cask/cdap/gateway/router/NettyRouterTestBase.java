@@ -56,7 +56,9 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
@@ -83,6 +85,7 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import javax.net.SocketFactory;
@@ -399,6 +402,109 @@ public abstract class NettyRouterTestBase {
     Assert.assertEquals(times, defaultServer1.getNumRequests() + defaultServer2.getNumRequests());
   }
 
+  @Test(timeout = 10000)
+  public void testBackendConnectionReuse() throws Exception {
+    defaultServer2.cancelRegistration();
+
+    URI uri = new URI(resolveURI(Constants.Router.GATEWAY_DISCOVERY_NAME, "/v2/ping"));
+    int times = 10;
+    for (int i = 0; i < times; i++) {
+      // Each client makes a keep-alive request and then closes the connection
+      Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort());
+      try {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Assert.assertEquals("HTTP/1.1 200 OK\r", makeRequest(uri, out, socket.getInputStream()));
+      } finally {
+        socket.close();
+      }
+      // Give the router a moment to return the backend connection to the pool
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+
+    // All requests should go through the same backend connection
+    Assert.assertEquals(times, defaultServer1.getNumRequests());
+    Assert.assertEquals(1, defaultServer1.getNumConnectionsOpened());
+    Assert.assertEquals(0, defaultServer1.getNumConnectionsClosed());
+  }
+
+  @Test(timeout = 10000)
+  public void testBackendConnectionReuseWithClientClose() throws Exception {
+    defaultServer2.cancelRegistration();
+
+    URI uri = new URI(resolveURI(Constants.Router.GATEWAY_DISCOVERY_NAME, "/v2/ping"));
+    int times = 5;
+    for (int i = 0; i < times; i++) {
+      // Each client asks for its connection to be closed after the response
+      Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort());
+      try {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        InputStream inputStream = socket.getInputStream();
+        Assert.assertEquals("HTTP/1.1 200 OK\r", makeRequest(uri, out, inputStream, false));
+        // The router closes the client connection
+        Assert.assertEquals(-1, inputStream.read());
+      } finally {
+        socket.close();
+      }
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+
+    // The backend connection is still kept alive and reused
+    Assert.assertEquals(times, defaultServer1.getNumRequests());
+    Assert.assertEquals(1, defaultServer1.getNumConnectionsOpened());
+    Assert.assertEquals(0, defaultServer1.getNumConnectionsClosed());
+  }
+
+  @Test(timeout = 10000)
+  public void testStaleBackendConnectionRetry() throws Exception {
+    defaultServer2.cancelRegistration();
+
+    URI uri = new URI(resolveURI(Constants.Router.GATEWAY_DISCOVERY_NAME, "/v2/ping"));
+    for (int i = 0; i < 2; i++) {
+      if (i == 1) {
+        // The backend closes the pooled connection when the next request arrives on it
+        defaultServer1.closeOnNextRequest();
+      }
+      Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort());
+      try {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Assert.assertEquals("HTTP/1.1 200 OK\r", makeRequest(uri, out, socket.getInputStream()));
+      } finally {
+        socket.close();
+      }
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+
+    // The second request is sent again on a new connection
+    Assert.assertEquals(2, defaultServer1.getNumRequests());
+    Assert.assertEquals(2, defaultServer1.getNumConnectionsOpened());
+    Assert.assertEquals(1, defaultServer1.getNumConnectionsClosed());
+  }
+
+  @Test(timeout = 10000)
+  public void testUnresponsiveBackendConnectionRetry() throws Exception {
+    defaultServer2.cancelRegistration();
+
+    URI uri = new URI(resolveURI(Constants.Router.GATEWAY_DISCOVERY_NAME, "/v2/ping"));
+    for (int i = 0; i < 2; i++) {
+      if (i == 1) {
+        // The backend ignores the next request on the pooled connection, without closing it
+        defaultServer1.dropNextRequest();
+      }
+      Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort());
+      try {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Assert.assertEquals("HTTP/1.1 200 OK\r", makeRequest(uri, out, socket.getInputStream()));
+      } finally {
+        socket.close();
+      }
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+
+    // After the idle timeout, the second request is sent again on a new connection
+    Assert.assertEquals(2, defaultServer1.getNumRequests());
+    Assert.assertEquals(2, defaultServer1.getNumConnectionsOpened());
+  }
+
   // have a timeout of 10 seconds, in case the final call to reader.read hangs (in the case that connection isn't
   // disconnected)
   @Test(timeout = 10000)
@@ -432,11 +538,16 @@ public abstract class NettyRouterTestBase {
   }
 
   private String makeRequest(URI uri, PrintWriter out, InputStream inputStream) throws IOException {
+    return makeRequest(uri, out, inputStream, true);
+  }
+
+  private String makeRequest(URI uri, PrintWriter out, InputStream inputStream,
+                             boolean keepAlive) throws IOException {
 
     //Send request
     out.print("GET " + uri.getPath() + " HTTP/1.1\r\n" +
                 "Host: " + uri.getHost() + "\r\n" +
-                "Connection: keep-alive\r\n\r\n");
+                "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n");
     out.flush();
 
     byte[] buffer = new byte[1024];
@@ -584,6 +695,8 @@ public abstract class NettyRouterTestBase {
     private final AtomicInteger numRequests = new AtomicInteger(0);
     private final AtomicInteger numConnectionsOpened = new AtomicInteger(0);
     private final AtomicInteger numConnectionsClosed = new AtomicInteger(0);
+    private final AtomicBoolean closeOnNextRequest = new AtomicBoolean();
+    private final AtomicBoolean dropNextRequest = new AtomicBoolean();
 
     private NettyHttpService httpService;
     private Cancellable cancelDiscovery;
@@ -604,6 +717,19 @@ public abstract class NettyRouterTestBase {
         @Nullable
         @Override
         public ChannelPipeline apply(ChannelPipeline input) {
+          input.addFirst("request-breaker", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+              if (closeOnNextRequest.compareAndSet(true, false)) {
+                e.getChannel().close();
+                return;
+              }
+              if (dropNextRequest.compareAndSet(true, false)) {
+                return;
+              }
+              super.messageReceived(ctx, e);
+            }
+          });
           input.addLast("connection-counter", new SimpleChannelHandler() {
             @Override
             public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
@@ -650,6 +776,22 @@ public abstract class NettyRouterTestBase {
       numRequests.set(0);
       numConnectionsOpened.set(0);
       numConnectionsClosed.set(0);
+      closeOnNextRequest.set(false);
+      dropNextRequest.set(false);
+    }
+
+    /**
+     * Makes the server close the connection on which the next request arrives, without responding.
+     */
+    public void closeOnNextRequest() {
+      closeOnNextRequest.set(true);
+    }
+
+    /**
+     * Makes the server ignore the next request, without responding or closing the connection.
+     */
+    public void dropNextRequest() {
+      dropNextRequest.set(true);
     }
 
     public void registerServer() {
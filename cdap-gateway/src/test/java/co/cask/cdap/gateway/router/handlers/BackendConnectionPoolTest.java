@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router.handlers;
+
+import co.cask.cdap.common.HandlerException;
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.http.AbstractHttpHandler;
+import co.cask.http.HttpResponder;
+import co.cask.http.NettyHttpService;
+import com.google.common.collect.ImmutableList;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+
+/**
+ * Tests for {@link BackendConnectionPool}.
+ */
+public class BackendConnectionPoolTest {
+
+  private static NettyHttpService httpService;
+  private static ClientBootstrap clientBootstrap;
+
+  @BeforeClass
+  public static void init() {
+    httpService = NettyHttpService.builder()
+      .setHost("127.0.0.1")
+      .setPort(0)
+      .addHttpHandlers(ImmutableList.of(new PingHandler()))
+      .build();
+    httpService.startAndWait();
+
+    clientBootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
+                                                                            Executors.newCachedThreadPool()));
+    clientBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+      @Override
+      public ChannelPipeline getPipeline() throws Exception {
+        ChannelPipeline pipeline = Channels.pipeline();
+        pipeline.addLast("request-encoder", new HttpRequestEncoder());
+        pipeline.addLast("response-decoder", new HttpResponseDecoder());
+        return pipeline;
+      }
+    });
+  }
+
+  @AfterClass
+  public static void finish() {
+    clientBootstrap.releaseExternalResources();
+    httpService.stopAndWait();
+  }
+
+  @Test
+  public void testMaxConnections() throws Exception {
+    final InetSocketAddress address = httpService.getBindAddress();
+    final BackendConnectionPool pool = new BackendConnectionPool(clientBootstrap, 1, 2);
+
+    // A channel standing in for the inbound connection of the router
+    Channel inboundChannel = clientBootstrap.connect(address).await().getChannel();
+    try {
+      Channel channel1 = pool.acquire(address, inboundChannel).await().getChannel();
+      Channel channel2 = pool.acquire(address, inboundChannel).await().getChannel();
+      Assert.assertTrue(channel1.isConnected());
+      Assert.assertTrue(channel2.isConnected());
+      Assert.assertEquals(2, pool.getConnections(address));
+
+      // No more connection can be made
+      try {
+        pool.acquire(address, inboundChannel);
+        Assert.fail("Expected connection limit to be reached");
+      } catch (HandlerException e) {
+        Assert.assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, e.getFailureStatus());
+      }
+      Assert.assertEquals(2, pool.getMisses());
+
+      // An idle connection counts towards the limit, but can be taken from the pool
+      pool.release(channel1);
+      Assert.assertSame(channel1, pool.acquire(address, inboundChannel).getChannel());
+      Assert.assertEquals(1, pool.getHits());
+
+      // Once a connection is closed, a new one can be made
+      channel2.close().await();
+      Tasks.waitFor(1, new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return pool.getConnections(address);
+        }
+      }, 5, TimeUnit.SECONDS, 50, TimeUnit.MILLISECONDS);
+      Channel channel3 = pool.acquire(address, inboundChannel).await().getChannel();
+      Assert.assertTrue(channel3.isConnected());
+      Assert.assertEquals(2, pool.getConnections(address));
+
+      channel1.close().await();
+      channel3.close().await();
+    } finally {
+      inboundChannel.close().await();
+    }
+  }
+
+  /**
+   * Handler for the backend service.
+   */
+  public static final class PingHandler extends AbstractHttpHandler {
+
+    @GET
+    @Path("/ping")
+    public void ping(HttpRequest request, HttpResponder responder) {
+      responder.sendStatus(HttpResponseStatus.OK);
+    }
+  }
+}
@@ -111,6 +111,7 @@ public class UpgradeTool {
   private final ExistingEntitySystemMetadataWriter existingEntitySystemMetadataWriter;
   private final DatasetServiceManager datasetServiceManager;
   private final NamespaceStore nsStore;
+  private final ArtifactStore artifactStore;
 
   /**
    * Set of Action available in this tool.
@@ -166,6 +167,7 @@ public class UpgradeTool {
     });
     this.existingEntitySystemMetadataWriter = injector.getInstance(ExistingEntitySystemMetadataWriter.class);
     this.datasetServiceManager = injector.getInstance(DatasetServiceManager.class);
+    this.artifactStore = injector.getInstance(ArtifactStore.class);
   }
 
   private Injector createInjector() throws Exception {
@@ -389,6 +391,8 @@ public class UpgradeTool {
       metadataStore.deleteAllIndexes();
       LOG.info("Re-building metadata indexes...");
       metadataStore.rebuildIndexes();
+      LOG.info("Building plugin index of artifacts...");
+      artifactStore.upgradePluginIndex();
     } finally {
       datasetServiceManager.shutDown();
     }
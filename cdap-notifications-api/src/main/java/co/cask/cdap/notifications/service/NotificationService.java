@@ -20,6 +20,7 @@ import co.cask.cdap.notifications.feeds.NotificationFeedException;
 import co.cask.cdap.notifications.feeds.NotificationFeedManager;
 import co.cask.cdap.notifications.feeds.NotificationFeedNotFoundException;
 import co.cask.cdap.proto.Id;
+import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Service;
 import org.apache.twill.common.Cancellable;
@@ -61,6 +62,22 @@ public interface NotificationService extends Service {
   <N> ListenableFuture<N> publish(Id.NotificationFeed feed, N notification, Type notificationType)
     throws NotificationException;
 
+  /**
+   * Send a batch of Notifications asynchronously, using as few requests to the Notification system as possible.
+   * The {@code notificationType} is used to serialize all the notifications passed to the Notification system.
+   *
+   * @param notifications notifications to send, keyed by the {@link Id.NotificationFeed} where to publish them
+   * @param notificationType type to use to serialize the notifications in the Notification system
+   * @param <N> Type of the notifications to send
+   * @return a {@link ListenableFuture} describing the state of the async send operation, which completes once all
+   * the notifications have been sent
+   * @throws NotificationFeedException in case of any error regarding one of the feeds
+   * @throws NotificationException in case of any error when publishing the notifications
+   */
+  <N> ListenableFuture<Multimap<Id.NotificationFeed, N>> publish(Multimap<Id.NotificationFeed, N> notifications,
+                                                                 Type notificationType)
+    throws NotificationException;
+
   /**
    * Subscribe to the notification received on the {@code feed}, and handle the notifications with the {@code handler}.
    * Before this call is made, the {@code feed} has to be created using the
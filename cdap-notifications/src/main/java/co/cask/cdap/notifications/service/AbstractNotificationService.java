@@ -39,6 +39,8 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Executor;
 
 /**
@@ -48,6 +50,11 @@ import java.util.concurrent.Executor;
 public abstract class AbstractNotificationService extends UncaughtExceptionIdleService implements NotificationService {
   private static final Logger LOG = LoggerFactory.getLogger(InMemoryNotificationService.class);
 
+  // Gson is thread safe, hence a single instance is shared for encoding and decoding all notifications
+  protected static final Gson GSON = new GsonBuilder()
+    .enableComplexMapKeySerialization()
+    .create();
+
   private final Multimap<Id.NotificationFeed, NotificationCaller<?>> subscribers;
 
   private final DatasetFramework dsFramework;
@@ -74,14 +81,10 @@ public abstract class AbstractNotificationService extends UncaughtExceptionIdleS
     transactionSystemClient.stopAndWait();
   }
 
-  protected Gson createGson() {
-    return new GsonBuilder()
-      .enableComplexMapKeySerialization()
-      .create();
-  }
-
   /**
    * Called when a notification is received on a feed, to push it to all the handlers that subscribed to the feed.
+   * The notification is decoded once per notification type, and the decoded object is shared by all the handlers
+   * expecting that type.
    *
    * @param feed {@link Id.NotificationFeed} of the notification
    * @param notificationJson notification as a json object
@@ -92,10 +95,21 @@ public abstract class AbstractNotificationService extends UncaughtExceptionIdleS
     synchronized (subscribers) {
       callers = ImmutableList.copyOf(callers);
     }
+    if (callers.isEmpty()) {
+      return;
+    }
+
+    Id.Namespace namespaceId = Id.Namespace.from(feed.getNamespaceId());
+    NotificationContext context = new BasicNotificationContext(namespaceId, dsFramework, transactionSystemClient);
+    Map<Type, Object> decoded = new HashMap<>();
     for (NotificationCaller caller : callers) {
-      Object notification = createGson().fromJson(notificationJson, caller.getNotificationType());
-      Id.Namespace namespaceId = Id.Namespace.from(feed.getNamespaceId());
-      caller.received(notification, new BasicNotificationContext(namespaceId, dsFramework, transactionSystemClient));
+      Type notificationType = caller.getNotificationType();
+      Object notification = decoded.get(notificationType);
+      if (notification == null) {
+        notification = GSON.fromJson(notificationJson, notificationType);
+        decoded.put(notificationType, notification);
+      }
+      caller.received(notification, context);
     }
   }
 
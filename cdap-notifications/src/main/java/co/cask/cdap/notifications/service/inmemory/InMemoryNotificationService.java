@@ -22,6 +22,7 @@ import co.cask.cdap.notifications.feeds.NotificationFeedManager;
 import co.cask.cdap.notifications.service.AbstractNotificationService;
 import co.cask.cdap.notifications.service.NotificationException;
 import co.cask.cdap.proto.Id;
+import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -29,6 +30,7 @@ import com.google.inject.Inject;
 import org.apache.twill.common.Threads;
 
 import java.lang.reflect.Type;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 
@@ -66,9 +68,26 @@ public class InMemoryNotificationService extends AbstractNotificationService {
     return executorService.submit(new Callable<N>() {
       @Override
       public N call() throws Exception {
-        notificationReceived(feed, createGson().toJsonTree(notification, notificationType));
+        notificationReceived(feed, GSON.toJsonTree(notification, notificationType));
         return notification;
       }
     });
   }
+
+  @Override
+  public <N> ListenableFuture<Multimap<Id.NotificationFeed, N>> publish(
+    final Multimap<Id.NotificationFeed, N> notifications, final Type notificationType) throws NotificationException {
+    if (executorService == null) {
+      throw new IllegalStateException("Publish attempted before Notification service is started.");
+    }
+    return executorService.submit(new Callable<Multimap<Id.NotificationFeed, N>>() {
+      @Override
+      public Multimap<Id.NotificationFeed, N> call() throws Exception {
+        for (Map.Entry<Id.NotificationFeed, N> entry : notifications.entries()) {
+          notificationReceived(entry.getKey(), GSON.toJsonTree(entry.getValue(), notificationType));
+        }
+        return notifications;
+      }
+    });
+  }
 }
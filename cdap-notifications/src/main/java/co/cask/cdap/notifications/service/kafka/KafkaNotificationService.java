@@ -28,7 +28,10 @@ import co.cask.cdap.notifications.service.NotificationException;
 import co.cask.cdap.notifications.service.NotificationHandler;
 import co.cask.cdap.notifications.service.NotificationService;
 import co.cask.cdap.proto.Id;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -47,7 +50,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -108,26 +114,58 @@ public class KafkaNotificationService extends AbstractNotificationService {
     return publishingExecutor.submit(new Callable<N>() {
       @Override
       public N call() throws Exception {
-        try {
-          KafkaMessage message = new KafkaMessage(KafkaNotificationUtils.getMessageKey(feed),
-                                                  createGson().toJsonTree(notification, notificationType));
-          ByteBuffer bb = KafkaMessageCodec.encode(message);
+        send(ImmutableMultimap.of(feed, notification), notificationType);
+        return notification;
+      }
+    });
+  }
 
-          TopicPartition topicPartition = KafkaNotificationUtils.getKafkaTopicPartition(notificationTopic, feed);
-          KafkaPublisher.Preparer preparer = kafkaPublisher.prepare(topicPartition.getTopic());
-          preparer.add(bb, message.getMessageKey());
+  @Override
+  public <N> ListenableFuture<Multimap<Id.NotificationFeed, N>> publish(
+    final Multimap<Id.NotificationFeed, N> notifications, final Type notificationType) throws NotificationException {
+    LOG.trace("Publishing {} notifications on feeds {}", notifications.size(), notifications.keySet());
+    return publishingExecutor.submit(new Callable<Multimap<Id.NotificationFeed, N>>() {
+      @Override
+      public Multimap<Id.NotificationFeed, N> call() throws Exception {
+        send(notifications, notificationType);
+        return notifications;
+      }
+    });
+  }
 
-          try {
-            preparer.send().get();
-            return notification;
-          } catch (ExecutionException e) {
-            throw new NotificationException(e.getCause());
-          }
-        } catch (IOException e) {
-          throw new NotificationException(e);
+  /**
+   * Sends notifications to Kafka and waits for the sends to complete. The notifications of all the feeds that map
+   * to the same topic are sent in one request.
+   */
+  private void send(Multimap<Id.NotificationFeed, ?> notifications, Type notificationType)
+    throws NotificationException, InterruptedException {
+    Map<String, KafkaPublisher.Preparer> preparers = new HashMap<>();
+    try {
+      for (Map.Entry<Id.NotificationFeed, ?> entry : notifications.entries()) {
+        Id.NotificationFeed feed = entry.getKey();
+        KafkaMessage message = new KafkaMessage(KafkaNotificationUtils.getMessageKey(feed),
+                                                GSON.toJsonTree(entry.getValue(), notificationType));
+        String topic = KafkaNotificationUtils.getKafkaTopicPartition(notificationTopic, feed).getTopic();
+        KafkaPublisher.Preparer preparer = preparers.get(topic);
+        if (preparer == null) {
+          preparer = kafkaPublisher.prepare(topic);
+          preparers.put(topic, preparer);
         }
+        preparer.add(KafkaMessageCodec.encode(message), message.getMessageKey());
       }
-    });
+    } catch (IOException e) {
+      throw new NotificationException(e);
+    }
+
+    List<ListenableFuture<Integer>> futures = new ArrayList<>(preparers.size());
+    for (KafkaPublisher.Preparer preparer : preparers.values()) {
+      futures.add(preparer.send());
+    }
+    try {
+      Futures.allAsList(futures).get();
+    } catch (ExecutionException e) {
+      throw new NotificationException(e.getCause());
+    }
   }
 
   @Override
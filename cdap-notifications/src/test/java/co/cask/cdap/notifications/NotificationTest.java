@@ -57,7 +57,9 @@ import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import com.google.inject.AbstractModule;
@@ -318,6 +320,67 @@ public abstract class NotificationTest {
                ImmutableSet.of(FEED1), 1, SimpleNotification.class, Functions.<SimpleNotification>identity());
   }
 
+  @Test
+  public void batchPublishTest() throws Exception {
+    Assert.assertTrue(feedManager.createFeed(FEED1));
+    Assert.assertTrue(feedManager.createFeed(FEED2));
+    try {
+      Multimap<Id.NotificationFeed, SimpleNotification> published = LinkedListMultimap.create();
+      for (int i = 0; i < 5; i++) {
+        published.put(FEED1, new SimpleNotification(0, String.format("%s-%d", FEED1, i)));
+        published.put(FEED2, new SimpleNotification(0, String.format("%s-%d", FEED2, i)));
+      }
+
+      // Two subscribers on the first feed and one on the second one
+      final CountDownLatch latch = new CountDownLatch(15);
+      List<Queue<SimpleNotification>> receivedQueues = Lists.newArrayList();
+      List<Cancellable> cancellables = Lists.newArrayList();
+      try {
+        for (Id.NotificationFeed feedId : ImmutableList.of(FEED1, FEED1, FEED2)) {
+          final Queue<SimpleNotification> receivedQueue = new ConcurrentLinkedQueue<>();
+          receivedQueues.add(receivedQueue);
+          cancellables.add(notificationService.subscribe(feedId, new NotificationHandler<SimpleNotification>() {
+            @Override
+            public Type getNotificationType() {
+              return SimpleNotification.class;
+            }
+
+            @Override
+            public void received(SimpleNotification notification, NotificationContext notificationContext) {
+              receivedQueue.offer(notification);
+              latch.countDown();
+            }
+          }));
+        }
+
+        // Give the subscriber some time to prepare for published messages before starting the publisher
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        Assert.assertSame(published,
+                          notificationService.publish(published, SimpleNotification.class).get(10, TimeUnit.SECONDS));
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        List<SimpleNotification> received1 = ImmutableList.copyOf(receivedQueues.get(0));
+        List<SimpleNotification> received2 = ImmutableList.copyOf(receivedQueues.get(1));
+        Assert.assertEquals(published.get(FEED1), received1);
+        Assert.assertEquals(published.get(FEED1), received2);
+        Assert.assertEquals(published.get(FEED2), ImmutableList.copyOf(receivedQueues.get(2)));
+
+        // Subscribers of the same notification type share the decoded notification
+        for (int i = 0; i < received1.size(); i++) {
+          Assert.assertSame(received1.get(i), received2.get(i));
+        }
+      } finally {
+        for (Cancellable cancellable : cancellables) {
+          cancellable.cancel();
+        }
+      }
+    } finally {
+      feedManager.deleteFeed(FEED1);
+      feedManager.deleteFeed(FEED2);
+    }
+  }
+
   /**
    * Testing publishers/subscribers interaction.
    *
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.proto;
 
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Interpolator;
 
 import java.util.List;
@@ -33,6 +34,7 @@ public class MetricQueryRequest {
   List<String> metrics;
   List<String> groupBy;
   TimeRange timeRange;
+  AggregationFunction function;
 
   public MetricQueryRequest(Map<String, String> tags, List<String> metrics, List<String> groupBy) {
     this.tags = tags;
@@ -56,9 +58,26 @@ public class MetricQueryRequest {
     return timeRange;
   }
 
+  /**
+   * Returns the function to aggregate the values of each metric with, which is
+   * {@link AggregationFunction#SUM} unless set otherwise.
+   */
+  public AggregationFunction getFunction() {
+    return function == null ? AggregationFunction.SUM : function;
+  }
+
+  public void setFunction(@Nullable AggregationFunction function) {
+    this.function = function;
+  }
+
   public void setTimeRange(@Nullable Long start, @Nullable Long end, @Nullable Integer count,
                            @Nullable Integer resolution,  @Nullable Interpolator interpolator) {
-    timeRange = new TimeRange(start, end, count, resolution, interpolator);
+    setTimeRange(start, end, count, resolution, interpolator, false);
+  }
+
+  public void setTimeRange(@Nullable Long start, @Nullable Long end, @Nullable Integer count,
+                           @Nullable Integer resolution,  @Nullable Interpolator interpolator, boolean stitched) {
+    timeRange = new TimeRange(start, end, count, resolution, interpolator, stitched);
   }
 
   /**
@@ -70,13 +89,28 @@ public class MetricQueryRequest {
     private Integer count;
     private Integer resolutionInSeconds;
     private Interpolator interpolator;
+    private boolean stitched;
 
     public TimeRange(Long start, Long end, Integer count, Integer resolutionInSeconds, Interpolator interpolator) {
+      this(start, end, count, resolutionInSeconds, interpolator, false);
+    }
+
+    public TimeRange(Long start, Long end, Integer count, Integer resolutionInSeconds, Interpolator interpolator,
+                     boolean stitched) {
       this.startTs = start;
       this.endTs = end;
       this.count = count;
       this.resolutionInSeconds = resolutionInSeconds;
       this.interpolator = interpolator;
+      this.stitched = stitched;
+    }
+
+    /**
+     * Returns {@code true} if coarser resolutions than the one of the query are used for the intervals they fully
+     * cover.
+     */
+    public boolean isStitched() {
+      return stitched;
     }
 
     public Interpolator getInterpolate() {
@@ -17,6 +17,7 @@
 package co.cask.cdap.proto;
 
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Represents metric query result. This is used for decorating REST API output.
@@ -26,12 +27,22 @@ public final class MetricQueryResult {
   private final long endTime;
   private final TimeSeries[] series;
   private final String resolution;
+  private final QueryInterval[] queryPlan;
 
   public MetricQueryResult(long startTime, long endTime, TimeSeries[] series, int resolution) {
+    this(startTime, endTime, series, resolution, null);
+  }
+
+  /**
+   * Creates the result of a query that stitched the results of the intervals in the given query plan.
+   */
+  public MetricQueryResult(long startTime, long endTime, TimeSeries[] series, int resolution,
+                           @Nullable QueryInterval[] queryPlan) {
     this.startTime = startTime;
     this.endTime = endTime;
     this.series = series;
     this.resolution = String.valueOf(resolution) + "s";
+    this.queryPlan = queryPlan;
   }
 
   public long getStartTime() {
@@ -50,6 +61,11 @@ public final class MetricQueryResult {
     return resolution;
   }
 
+  @Nullable
+  public QueryInterval[] getQueryPlan() {
+    return queryPlan;
+  }
+
   /**
    * Represents time series of a metric. This is used for decorating REST API output.
    */
@@ -77,6 +93,40 @@ public final class MetricQueryResult {
     }
   }
 
+  /**
+   * Represents a time range that was queried in a single resolution, with the number of resolution buckets in it.
+   * This is used for decorating REST API output.
+   */
+  public static final class QueryInterval {
+    private final String resolution;
+    private final long startTime;
+    private final long endTime;
+    private final long buckets;
+
+    public QueryInterval(int resolution, long startTime, long endTime, long buckets) {
+      this.resolution = String.valueOf(resolution) + "s";
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.buckets = buckets;
+    }
+
+    public String getResolution() {
+      return resolution;
+    }
+
+    public long getStartTime() {
+      return startTime;
+    }
+
+    public long getEndTime() {
+      return endTime;
+    }
+
+    public long getBuckets() {
+      return buckets;
+    }
+  }
+
   /**
    * Represents time value of a metric. This is used for decorating REST API output.
    */
@@ -48,6 +48,11 @@ class BatchReadableRDD[K: ClassTag, V: ClassTag](@transient sc: SparkContext,
     inputSplits.zipWithIndex.map(t => new BatchReadablePartition(id, t._2, t._1)).toArray
   }
 
+  override protected def getPreferredLocations(partition: Partition): Seq[String] = {
+    // Locality hints of the split, e.g. the hosts of the region servers for HBase tables
+    Option(partition.asInstanceOf[BatchReadablePartition].split.getLocations).map(_.toSeq).getOrElse(Nil)
+  }
+
   override def compute(partition: Partition, context: TaskContext): Iterator[(K, V)] = {
     val inputMetrics = context.taskMetrics.inputMetrics
     val split = partition.asInstanceOf[BatchReadablePartition].split
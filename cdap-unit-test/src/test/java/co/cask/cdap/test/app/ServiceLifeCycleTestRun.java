@@ -55,14 +55,20 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Unit test for testing service handler lifecycle.
@@ -87,6 +93,7 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
     System.setProperty(ServiceHttpServer.THREAD_POOL_SIZE, "1");
     System.setProperty(ServiceHttpServer.THREAD_KEEP_ALIVE_SECONDS, "1");
     System.setProperty(ServiceHttpServer.HANDLER_CLEANUP_PERIOD_MILLIS, "100");
+    System.setProperty(ServiceHttpServer.HANDLER_IDLE_TIMEOUT_MILLIS, "1000");
 
     try {
       ApplicationManager appManager = deployWithArtifact(ServiceLifecycleApp.class, artifactJar);
@@ -99,7 +106,7 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
       int handlerHashCode = states.keySet().iterator().next();
       Assert.assertEquals(ImmutableList.of("INIT"), ImmutableList.copyOf(states.get(handlerHashCode)));
 
-      // Sleep for 3 seconds for the thread going IDLE, gets terminated and cleanup
+      // Sleep for 3 seconds for the thread going IDLE, gets terminated and the idle handler gets cleanup
       TimeUnit.SECONDS.sleep(3);
 
       states = getStates(serviceManager);
@@ -123,6 +130,7 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
       System.clearProperty(ServiceHttpServer.THREAD_POOL_SIZE);
       System.clearProperty(ServiceHttpServer.THREAD_KEEP_ALIVE_SECONDS);
       System.clearProperty(ServiceHttpServer.HANDLER_CLEANUP_PERIOD_MILLIS);
+      System.clearProperty(ServiceHttpServer.HANDLER_IDLE_TIMEOUT_MILLIS);
     }
   }
 
@@ -132,6 +140,7 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
     System.setProperty(ServiceHttpServer.THREAD_POOL_SIZE, "1");
     System.setProperty(ServiceHttpServer.THREAD_KEEP_ALIVE_SECONDS, "1");
     System.setProperty(ServiceHttpServer.HANDLER_CLEANUP_PERIOD_MILLIS, "100");
+    System.setProperty(ServiceHttpServer.HANDLER_IDLE_TIMEOUT_MILLIS, "1000");
 
     try {
       ApplicationManager appManager = deployWithArtifact(ServiceLifecycleApp.class, artifactJar);
@@ -139,7 +148,7 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
       final ServiceManager serviceManager = appManager.getServiceManager("test").start();
 
       // Make 5 consecutive calls, there should be one handler instance being created,
-      // since there is only one handler thread.
+      // since each call returns the instance to the pool before the next one checks it out.
       Multimap<Integer, String> states = null;
       for (int i = 0; i < 5; i++) {
         states = getStates(serviceManager);
@@ -156,7 +165,7 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
       final Multimap<Integer, String> lastStates = states;
 
 
-      // TTL for the thread is 1 second, hence sleep for 2 second to make sure the thread is gone
+      // TTL for the thread and the idle handler is 1 second, hence sleep for 2 second to make sure both are gone
       TimeUnit.SECONDS.sleep(2);
 
       Tasks.waitFor(true, new Callable<Boolean>() {
@@ -166,7 +175,7 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
           System.gc();
           Multimap<Integer, String> newStates = getStates(serviceManager);
 
-          // Should expect size be 3. An INIT and a DESTROY from the collected handler
+          // Should expect size be 3. An INIT and a DESTROY from the destroyed handler
           // and an INIT for the new handler that just handle the getState call
           if (newStates.size() != 3) {
             return false;
@@ -182,6 +191,7 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
       System.clearProperty(ServiceHttpServer.THREAD_POOL_SIZE);
       System.clearProperty(ServiceHttpServer.THREAD_KEEP_ALIVE_SECONDS);
       System.clearProperty(ServiceHttpServer.HANDLER_CLEANUP_PERIOD_MILLIS);
+      System.clearProperty(ServiceHttpServer.HANDLER_IDLE_TIMEOUT_MILLIS);
     }
   }
 
@@ -261,10 +271,10 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
         Assert.assertEquals(200, future.get().intValue());
       }
 
-      // Query the queue size metrics. Expect the maximum be 6.
-      // This is because only the six from the concurrent upload will get captured added back to the queue,
-      // while the one created for the getState() call will be stated in the thread cache, but not in the queue.
-      Tasks.waitFor(6L, new Callable<Long>() {
+      // Query the pool size metrics. Expect the maximum be 7.
+      // This is because the six from the concurrent upload get added back to the pool once the uploads complete,
+      // in addition to the one created for the getState() call, which is returned to the pool after each call.
+      Tasks.waitFor(7L, new Callable<Long>() {
         @Override
         public Long call() throws Exception {
           Map<String, String> context = ImmutableMap.of(
@@ -408,6 +418,114 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
     }
   }
 
+  @Test
+  public void testHandlerPoolWarmUp() throws Exception {
+    System.setProperty(ServiceHttpServer.HANDLER_POOL_MIN_SIZE, "3");
+
+    try {
+      ApplicationManager appManager = deployWithArtifact(ServiceLifecycleApp.class, artifactJar);
+      ServiceManager serviceManager = appManager.getServiceManager("test").start();
+
+      // The minimum number of instances are initialized before the first request, which uses one of them
+      Multimap<Integer, String> states = getStates(serviceManager);
+      Assert.assertEquals(3, states.keySet().size());
+      for (int key : states.keySet()) {
+        Assert.assertEquals(ImmutableList.of("INIT"), ImmutableList.copyOf(states.get(key)));
+      }
+    } finally {
+      System.clearProperty(ServiceHttpServer.HANDLER_POOL_MIN_SIZE);
+    }
+  }
+
+  @Test
+  public void testHandlerPoolWaits() throws Exception {
+    System.setProperty(ServiceHttpServer.HANDLER_POOL_MAX_SIZE, "2");
+    System.setProperty(ServiceHttpServer.HANDLER_CHECKOUT_TIMEOUT_MILLIS, "30000");
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      ApplicationManager appManager = deployWithArtifact(ServiceLifecycleApp.class, artifactJar);
+      final ServiceManager serviceManager = appManager.getServiceManager("test").start();
+      Assert.assertEquals(1, getStates(serviceManager).keySet().size());
+
+      // Two uploads hold both instances until they complete
+      CountDownLatch uploadLatch = new CountDownLatch(1);
+      List<ListenableFuture<Integer>> completions = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        completions.add(slowUpload(serviceManager, "PUT", "upload", uploadLatch));
+      }
+
+      // Wait until a request has to wait for an instance
+      Tasks.waitFor(true, new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          try {
+            getStates(serviceManager, 500);
+            return false;
+          } catch (SocketTimeoutException e) {
+            return true;
+          }
+        }
+      }, 10, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+
+      Future<Multimap<Integer, String>> statesFuture = executor.submit(new Callable<Multimap<Integer, String>>() {
+        @Override
+        public Multimap<Integer, String> call() throws Exception {
+          return getStates(serviceManager);
+        }
+      });
+      try {
+        statesFuture.get(1, TimeUnit.SECONDS);
+        Assert.fail("Expected the request to wait for an instance");
+      } catch (TimeoutException e) {
+        // expected
+      }
+
+      // Once the uploads complete, the waiting request gets one of the two instances, without creating another
+      uploadLatch.countDown();
+      Futures.successfulAsList(completions).get(10, TimeUnit.SECONDS);
+      for (ListenableFuture<Integer> future : completions) {
+        Assert.assertEquals(200, future.get().intValue());
+      }
+      Assert.assertEquals(2, statesFuture.get(10, TimeUnit.SECONDS).keySet().size());
+    } finally {
+      executor.shutdownNow();
+      System.clearProperty(ServiceHttpServer.HANDLER_POOL_MAX_SIZE);
+      System.clearProperty(ServiceHttpServer.HANDLER_CHECKOUT_TIMEOUT_MILLIS);
+    }
+  }
+
+  @Test
+  public void testHandlerCheckoutTimeout() throws Exception {
+    System.setProperty(ServiceHttpServer.HANDLER_POOL_MAX_SIZE, "1");
+    System.setProperty(ServiceHttpServer.HANDLER_CHECKOUT_TIMEOUT_MILLIS, "500");
+
+    try {
+      ApplicationManager appManager = deployWithArtifact(ServiceLifecycleApp.class, artifactJar);
+      final ServiceManager serviceManager = appManager.getServiceManager("test").start();
+
+      // An upload holds the only instance until it completes, so other requests fail once the checkout times out
+      CountDownLatch uploadLatch = new CountDownLatch(1);
+      ListenableFuture<Integer> completion = slowUpload(serviceManager, "PUT", "upload", uploadLatch);
+      Tasks.waitFor(HttpURLConnection.HTTP_UNAVAILABLE, new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return getResponseCode(serviceManager, "states");
+        }
+      }, 10, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+
+      uploadLatch.countDown();
+      Assert.assertEquals(200, completion.get(10, TimeUnit.SECONDS).intValue());
+
+      // The instance is returned to the pool and used by the next request
+      Multimap<Integer, String> states = getStates(serviceManager);
+      Assert.assertEquals(1, states.keySet().size());
+    } finally {
+      System.clearProperty(ServiceHttpServer.HANDLER_POOL_MAX_SIZE);
+      System.clearProperty(ServiceHttpServer.HANDLER_CHECKOUT_TIMEOUT_MILLIS);
+    }
+  }
+
   @Test
   public void testInvalidResponder() throws Exception {
     ApplicationManager appManager = deployWithArtifact(ServiceLifecycleApp.class, artifactJar);
@@ -468,10 +586,20 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
    * the value is a list of state changes for that handler instance.
    */
   private Multimap<Integer, String> getStates(ServiceManager serviceManager) throws Exception {
+    return getStates(serviceManager, 0);
+  }
+
+  /**
+   * Returns the handler state change as a Multimap, failing with a {@link SocketTimeoutException} if the response
+   * does not arrive within the given time, unless it is 0.
+   */
+  private Multimap<Integer, String> getStates(ServiceManager serviceManager, int readTimeoutMillis) throws Exception {
     URL url = serviceManager.getServiceURL(10, TimeUnit.SECONDS).toURI().resolve("states").toURL();
 
     Multimap<Integer, String> result = LinkedListMultimap.create();
-    try (InputStream is = url.openConnection().getInputStream()) {
+    URLConnection urlConn = url.openConnection();
+    urlConn.setReadTimeout(readTimeoutMillis);
+    try (InputStream is = urlConn.getInputStream()) {
       List<ImmutablePair<Integer, String>> states = GSON.fromJson(new InputStreamReader(is, Charsets.UTF_8),
                                                                   STATES_TYPE);
       for (ImmutablePair<Integer, String> pair : states) {
@@ -481,6 +609,16 @@ public class ServiceLifeCycleTestRun extends TestFrameworkTestBase {
     return result;
   }
 
+  private int getResponseCode(ServiceManager serviceManager, String endpoint) throws Exception {
+    URL url = serviceManager.getServiceURL(10, TimeUnit.SECONDS).toURI().resolve(endpoint).toURL();
+    HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
+    try {
+      return urlConn.getResponseCode();
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+
   private ListenableFuture<Integer> slowUpload(final ServiceManager serviceManager,
                                                final String method,
                                                final String endpoint,
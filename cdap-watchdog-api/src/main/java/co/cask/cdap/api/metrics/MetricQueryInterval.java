@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.api.metrics;
+
+import co.cask.cdap.api.annotation.Beta;
+
+/**
+ * Represents a time range, with both ends inclusive, that is queried in a single resolution as part of a
+ * stitched {@link MetricDataQuery}.
+ */
+@Beta
+public final class MetricQueryInterval {
+  private final int resolution;
+  private final long startTs;
+  private final long endTs;
+
+  public MetricQueryInterval(int resolution, long startTs, long endTs) {
+    this.resolution = resolution;
+    this.startTs = startTs;
+    this.endTs = endTs;
+  }
+
+  public int getResolution() {
+    return resolution;
+  }
+
+  public long getStartTs() {
+    return startTs;
+  }
+
+  public long getEndTs() {
+    return endTs;
+  }
+
+  /**
+   * Returns the number of resolution buckets that start in this interval, which is the maximum number of values
+   * a time series can have in it.
+   */
+  public long getBucketCount() {
+    return endTs / resolution - (startTs + resolution - 1) / resolution + 1;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    MetricQueryInterval other = (MetricQueryInterval) o;
+    return resolution == other.resolution && startTs == other.startTs && endTs == other.endTs;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = resolution;
+    result = 31 * result + (int) (startTs ^ (startTs >>> 32));
+    return 31 * result + (int) (endTs ^ (endTs >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return resolution + "s[" + startTs + ", " + endTs + "]";
+  }
+}
@@ -17,6 +17,7 @@
 package co.cask.cdap.api.metrics;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Stores and provides access to metrics data.
@@ -50,6 +51,22 @@ public interface MetricStore {
    */
   Collection<MetricTimeSeries> query(MetricDataQuery query);
 
+  /**
+   * Plans a query that stitches the results of multiple resolutions: the coarsest resolution for the time intervals
+   * it fully covers, and finer resolutions for the rest, down to the resolution of the query.
+   * @param query query to plan
+   * @return intervals to query with {@link #query(MetricDataQuery, List)}, in time order
+   */
+  List<MetricQueryInterval> planStitchedQuery(MetricDataQuery query);
+
+  /**
+   * Queries metrics data by querying each of the given intervals in its own resolution, and stitching the results.
+   * @param query query to execute; its time range and resolution are taken from the intervals
+   * @param plan intervals to query, as returned by {@link #planStitchedQuery(MetricDataQuery)}
+   * @return time series that satisfy the query, with the time values of all the intervals
+   */
+  Collection<MetricTimeSeries> query(MetricDataQuery query, List<MetricQueryInterval> plan);
+
   /**
    * Deletes all metric data before given timestamp. Used for applying TTL policy.
    * @param timestamp time up to which to delete metrics data, in ms since epoch
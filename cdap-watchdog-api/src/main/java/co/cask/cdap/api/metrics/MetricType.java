@@ -16,9 +16,17 @@
 package co.cask.cdap.api.metrics;
 
 /**
- * MetricType - COUNTER or GAUGE type
+ * MetricType - COUNTER, GAUGE, DISTINCT or DISTRIBUTION type
  */
 public enum MetricType {
   COUNTER,
-  GAUGE
+  GAUGE,
+  /**
+   * Each value identifies an element, to query the approximate number of distinct elements.
+   */
+  DISTINCT,
+  /**
+   * Each value is an observation, to query approximate percentiles of.
+   */
+  DISTRIBUTION
 }
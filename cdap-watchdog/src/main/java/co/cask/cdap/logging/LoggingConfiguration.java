@@ -35,6 +35,11 @@ public final class LoggingConfiguration {
 
   // Used only in Distributed mode
   public static final String NUM_PARTITIONS = "log.publish.num.partitions";
+  public static final String LOG_PUBLISH_QUEUE_SIZE = "log.publish.queue.size";
+  public static final String LOG_PUBLISH_BATCH_SIZE = "log.publish.batch.size";
+  public static final String LOG_PUBLISH_OVERFLOW_POLICY = "log.publish.overflow.policy";
+  public static final String LOG_PUBLISH_SAMPLE_RATE = "log.publish.sample.rate";
+  public static final String LOG_PUBLISH_CALLER_DATA_LEVEL = "log.publish.caller.data.level";
   public static final String KAFKA_SEED_BROKERS = "kafka.seed.brokers";
   public static final String LOG_SAVER_EVENT_BUCKET_INTERVAL_MS = "log.saver.event.bucket.interval.ms";
   public static final String LOG_SAVER_MAXIMUM_INMEMORY_EVENT_BUCKETS = "log.saver.event.max.inmemory.buckets";
@@ -55,6 +60,11 @@ public final class LoggingConfiguration {
   public static final String DEFAULT_KAFKA_PRODUCER_TYPE = "async";
   public static final long DEFAULT_KAFKA_PROCUDER_BUFFER_MS = 1000;
   public static final String DEFAULT_NUM_PARTITIONS = "10";
+  public static final int DEFAULT_LOG_PUBLISH_QUEUE_SIZE = 8192;
+  public static final int DEFAULT_LOG_PUBLISH_BATCH_SIZE = 500;
+  public static final String DEFAULT_LOG_PUBLISH_OVERFLOW_POLICY = "block";
+  public static final int DEFAULT_LOG_PUBLISH_SAMPLE_RATE = 10;
+  public static final String DEFAULT_LOG_PUBLISH_CALLER_DATA_LEVEL = "OFF";
   public static final int DEFAULT_LOG_CLEANUP_RUN_INTERVAL_MINS = 24 * 60;
 
   public static final long DEFAULT_LOG_SAVER_EVENT_BUCKET_INTERVAL_MS = 1 * 1000;
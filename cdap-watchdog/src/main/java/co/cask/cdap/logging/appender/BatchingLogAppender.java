@@ -0,0 +1,310 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.spi.FilterReply;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.Constants;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LogAppender} that hands log messages over to a background thread, which publishes them in batches.
+ * <p>
+ * The calling thread only captures the data that cannot be collected later, which is the formatted message and
+ * MDC, plus the caller data for events at or above the configured level, since collecting caller data requires
+ * walking the stack of the calling thread. Everything else, including serialization, happens on the publisher
+ * thread. Once the queue is filled beyond {@link #DISCARDING_THRESHOLD}, the {@link OverflowPolicy} decides which
+ * messages are still accepted.
+ * </p>
+ */
+public abstract class BatchingLogAppender extends LogAppender {
+
+  /**
+   * Fraction of the queue capacity at which the {@link OverflowPolicy} starts to discard messages.
+   */
+  public static final double DISCARDING_THRESHOLD = 0.8;
+
+  /**
+   * Decides which messages are accepted once the queue is filled beyond {@link #DISCARDING_THRESHOLD}.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Accept all messages. Callers block while the queue is full.
+     */
+    BLOCK,
+
+    /**
+     * Discard TRACE and DEBUG messages. Callers of other levels block while the queue is full.
+     */
+    DROP_DEBUG_FIRST,
+
+    /**
+     * Accept only one out of every sample rate messages below WARN, and discard them if the queue is full. Callers
+     * of WARN and ERROR block while the queue is full.
+     */
+    SAMPLE
+  }
+
+  private static final long POLL_INTERVAL_MILLIS = 100;
+  private static final long STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+  // Same limit as AppenderBase on repeated status messages
+  private static final int ALLOWED_REPEATS = 5;
+
+  private final BlockingQueue<LogMessage> queue;
+  private final int batchSize;
+  private final int discardingThreshold;
+  private final OverflowPolicy overflowPolicy;
+  private final int sampleRate;
+  private final Level callerDataLevel;
+  private final AtomicLong sampleCounter;
+  private final AtomicLong dropped;
+  // Prevents a thread from appending again while appending, e.g. when a filter or the appender itself logs
+  private final ThreadLocal<Boolean> guard = new ThreadLocal<>();
+  private volatile int statusRepeatCount;
+  private volatile int exceptionCount;
+  private volatile MetricsContext metricsContext;
+  private volatile Thread publisherThread;
+  private volatile boolean running;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param queueSize maximum number of messages waiting to be published
+   * @param batchSize maximum number of messages published at once
+   * @param overflowPolicy the {@link OverflowPolicy} to apply when the queue is filling up
+   * @param sampleRate one out of this many messages is kept by the {@link OverflowPolicy#SAMPLE} policy
+   * @param callerDataLevel minimum level of the events to capture caller data for
+   */
+  protected BatchingLogAppender(int queueSize, int batchSize, OverflowPolicy overflowPolicy,
+                                int sampleRate, Level callerDataLevel) {
+    Preconditions.checkArgument(queueSize > 0, "Queue size must be positive: %s", queueSize);
+    Preconditions.checkArgument(batchSize > 0, "Batch size must be positive: %s", batchSize);
+    Preconditions.checkArgument(sampleRate > 0, "Sample rate must be positive: %s", sampleRate);
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.batchSize = batchSize;
+    this.discardingThreshold = (int) (queueSize * DISCARDING_THRESHOLD);
+    this.overflowPolicy = overflowPolicy;
+    this.sampleRate = sampleRate;
+    this.callerDataLevel = callerDataLevel;
+    this.sampleCounter = new AtomicLong();
+    this.dropped = new AtomicLong();
+  }
+
+  /**
+   * Sets the {@link MetricsContext} for emitting metrics about the queue depth, batch sizes and dropped messages.
+   */
+  public void setMetricsContext(@Nullable MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
+  }
+
+  /**
+   * Publishes a batch of log messages. This method is always called from the same thread.
+   *
+   * @param messages the messages to publish, in the order they were logged
+   */
+  protected abstract void publish(List<LogMessage> messages) throws Exception;
+
+  @Override
+  public void start() {
+    running = true;
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        runPublisher();
+      }
+    }, "log-publisher-" + getName());
+    thread.setDaemon(true);
+    publisherThread = thread;
+    thread.start();
+    super.start();
+  }
+
+  /**
+   * Stops accepting messages and waits for the messages already queued to be published.
+   */
+  @Override
+  public void stop() {
+    super.stop();
+    running = false;
+    Thread thread = publisherThread;
+    if (thread == null || thread == Thread.currentThread()) {
+      return;
+    }
+    try {
+      thread.join(STOP_TIMEOUT_MILLIS);
+      if (thread.isAlive()) {
+        addWarn("Timeout while publishing remaining " + queue.size() + " log messages. Stop publishing.");
+        thread.interrupt();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Appends without holding the appender lock, since messages are only handed over to a thread-safe queue, so that
+   * logging threads do not wait for each other. Otherwise the same as {@link AppenderBase#doAppend(Object)}.
+   */
+  @Override
+  public void doAppend(ILoggingEvent eventObject) {
+    if (Boolean.TRUE.equals(guard.get())) {
+      return;
+    }
+
+    try {
+      guard.set(Boolean.TRUE);
+      if (!isStarted()) {
+        if (statusRepeatCount++ < ALLOWED_REPEATS) {
+          addWarn("Attempted to append to non started appender [" + getName() + "].");
+        }
+        return;
+      }
+      if (getFilterChainDecision(eventObject) == FilterReply.DENY) {
+        return;
+      }
+      append(eventObject);
+    } catch (Exception e) {
+      if (exceptionCount++ < ALLOWED_REPEATS) {
+        addError("Appender [" + getName() + "] failed to append.", e);
+      }
+    } finally {
+      guard.set(Boolean.FALSE);
+    }
+  }
+
+  @Override
+  protected final void append(LogMessage logMessage) {
+    ILoggingEvent event = logMessage.getLoggingEvent();
+    Level level = event.getLevel() == null ? Level.ERROR : event.getLevel();
+    if (level.isGreaterOrEqual(callerDataLevel)) {
+      // Caller data is computed lazily from the stack of the current thread
+      event.getCallerData();
+    }
+    logMessage.prepareForDeferredProcessing();
+
+    // Appenders wrapped by another appender may be used without being started, hence publish directly
+    if (publisherThread == null) {
+      try {
+        publish(Collections.singletonList(logMessage));
+      } catch (Exception e) {
+        addError("Failed to publish log message.", e);
+      }
+      return;
+    }
+
+    try {
+      if (!enqueue(logMessage, level)) {
+        dropped.incrementAndGet();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      dropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * Returns the total number of messages discarded so far.
+   */
+  @VisibleForTesting
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  private boolean enqueue(LogMessage logMessage, Level level) throws InterruptedException {
+    if (queue.size() >= discardingThreshold) {
+      switch (overflowPolicy) {
+        case DROP_DEBUG_FIRST:
+          if (!level.isGreaterOrEqual(Level.INFO)) {
+            return false;
+          }
+          break;
+        case SAMPLE:
+          if (!level.isGreaterOrEqual(Level.WARN)) {
+            return sampleCounter.getAndIncrement() % sampleRate == 0 && queue.offer(logMessage);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    // The publisher thread must never block on its own queue, e.g. if publishing a batch logs an error
+    if (Thread.currentThread() == publisherThread) {
+      return queue.offer(logMessage);
+    }
+    while (!queue.offer(logMessage, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+      if (!running) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void runPublisher() {
+    List<LogMessage> batch = new ArrayList<>(batchSize);
+    long reportedDrops = 0;
+    while (running || !queue.isEmpty()) {
+      try {
+        LogMessage message = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (message == null) {
+          continue;
+        }
+        batch.add(message);
+        queue.drainTo(batch, batchSize - 1);
+      } catch (InterruptedException e) {
+        // Interrupted by stop() after the timeout, remaining messages are discarded
+        break;
+      }
+
+      try {
+        publish(batch);
+      } catch (Throwable t) {
+        addError("Failed to publish " + batch.size() + " log messages.", t);
+      }
+
+      long drops = dropped.get();
+      emitMetrics(batch.size(), drops - reportedDrops);
+      reportedDrops = drops;
+      batch.clear();
+    }
+  }
+
+  private void emitMetrics(int batchSize, long drops) {
+    MetricsContext context = metricsContext;
+    if (context == null) {
+      return;
+    }
+    context.gauge(Constants.Metrics.Name.Log.PUBLISH_QUEUE_SIZE, queue.size());
+    context.gauge(Constants.Metrics.Name.Log.PUBLISH_BATCH_SIZE, batchSize);
+    if (drops > 0) {
+      context.increment(Constants.Metrics.Name.Log.PUBLISH_DROPPED, drops);
+    }
+  }
+}
@@ -16,21 +16,31 @@
 
 package co.cask.cdap.logging.appender.kafka;
 
+import ch.qos.logback.classic.Level;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.common.conf.CConfiguration;
-import co.cask.cdap.logging.appender.LogAppender;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.logging.LoggingConfiguration;
+import co.cask.cdap.logging.appender.BatchingLogAppender;
 import co.cask.cdap.logging.appender.LogMessage;
+import co.cask.cdap.proto.Id;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Log appender that publishes log messages to Kafka.
+ * Log appender that publishes log messages to Kafka. Messages are serialized and published in batches from a
+ * background thread, and the Kafka producer groups each batch by partition.
  */
-public final class KafkaLogAppender extends LogAppender {
+public final class KafkaLogAppender extends BatchingLogAppender {
   private static final Logger LOG = LoggerFactory.getLogger(KafkaLogAppender.class);
 
   private static final String APPENDER_NAME = "KafkaLogAppender";
@@ -41,6 +51,16 @@ public final class KafkaLogAppender extends LogAppender {
 
   @Inject
   KafkaLogAppender(CConfiguration cConf) {
+    super(cConf.getInt(LoggingConfiguration.LOG_PUBLISH_QUEUE_SIZE,
+                       LoggingConfiguration.DEFAULT_LOG_PUBLISH_QUEUE_SIZE),
+          cConf.getInt(LoggingConfiguration.LOG_PUBLISH_BATCH_SIZE,
+                       LoggingConfiguration.DEFAULT_LOG_PUBLISH_BATCH_SIZE),
+          OverflowPolicy.valueOf(cConf.get(LoggingConfiguration.LOG_PUBLISH_OVERFLOW_POLICY,
+                                           LoggingConfiguration.DEFAULT_LOG_PUBLISH_OVERFLOW_POLICY).toUpperCase()),
+          cConf.getInt(LoggingConfiguration.LOG_PUBLISH_SAMPLE_RATE,
+                       LoggingConfiguration.DEFAULT_LOG_PUBLISH_SAMPLE_RATE),
+          Level.toLevel(cConf.get(LoggingConfiguration.LOG_PUBLISH_CALLER_DATA_LEVEL,
+                                  LoggingConfiguration.DEFAULT_LOG_PUBLISH_CALLER_DATA_LEVEL), Level.OFF));
     setName(APPENDER_NAME);
     addInfo("Initializing KafkaLogAppender...");
 
@@ -54,14 +74,30 @@ public final class KafkaLogAppender extends LogAppender {
     addInfo("Successfully initialized KafkaLogAppender.");
   }
 
+  /**
+   * Sets the {@link MetricsCollectionService} for emitting metrics about the publishing of log messages.
+   */
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    setMetricsContext(metricsCollectionService.getContext(
+      ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, Id.Namespace.SYSTEM.getId(),
+                      Constants.Metrics.Tag.COMPONENT, APPENDER_NAME)));
+  }
+
   @Override
-  protected void append(LogMessage logMessage) {
-    try {
-      byte [] bytes = loggingEventSerializer.toBytes(logMessage.getLoggingEvent(), logMessage.getLoggingContext());
-      producer.publish(logMessage.getLoggingContext().getLogPartition(), bytes);
-    } catch (Throwable t) {
-      LOG.error("Got exception while serializing log event {}.", logMessage.getLoggingEvent(), t);
+  protected void publish(List<LogMessage> messages) {
+    // Keeps the order of all messages, since messages with different keys may end up in the same Kafka partition
+    ListMultimap<String, byte[]> partitionMessages = LinkedListMultimap.create();
+    for (LogMessage logMessage : messages) {
+      try {
+        partitionMessages.put(logMessage.getLoggingContext().getLogPartition(),
+                              loggingEventSerializer.toBytes(logMessage.getLoggingEvent(),
+                                                             logMessage.getLoggingContext()));
+      } catch (Throwable t) {
+        LOG.error("Got exception while serializing log event {}.", logMessage.getLoggingEvent(), t);
+      }
     }
+    producer.publish(partitionMessages);
   }
 
   @Override
@@ -24,26 +24,40 @@ import com.google.common.base.Throwables;
 import kafka.utils.VerifiableProperties;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.EncoderFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
 /**
  * Avro serializer for ILoggingEvent.
+ * <p>
+ * Events are written directly in the binary encoding of the log schema and read back the same way, without
+ * building {@link GenericRecord}s in between. The output buffer, encoder, decoder and datum reader are created
+ * once per thread and reused for every event, hence an instance can be shared by multiple threads.
+ * </p>
  */
 public final class LoggingEventSerializer {
+
+  // Buffers that grew beyond this size for an unusually large event are not kept for reuse
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
   private final LogSchema logSchema;
+  private final ThreadLocal<Codec> codecs;
 
   public LoggingEventSerializer() throws IOException {
     this.logSchema = new LogSchema();
+    this.codecs = new ThreadLocal<Codec>() {
+      @Override
+      protected Codec initialValue() {
+        return new Codec(logSchema.getAvroSchema());
+      }
+    };
   }
 
   public LoggingEventSerializer(VerifiableProperties props) throws IOException {
@@ -55,35 +69,25 @@ public final class LoggingEventSerializer {
   }
 
   public byte[] toBytes(ILoggingEvent loggingEvent, LoggingContext loggingContext) {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
-    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
-    GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(logSchema.getAvroSchema());
     try {
-      writer.write(LoggingEvent.encode(logSchema.getAvroSchema(), loggingEvent, loggingContext), encoder);
+      return codecs.get().encode(loggingEvent, loggingContext);
     } catch (IOException e) {
       throw Throwables.propagate(e);
     }
-    return out.toByteArray();
   }
 
   public ILoggingEvent fromBytes(ByteBuffer buffer) {
-    return LoggingEvent.decode(toGenericRecord(buffer));
+    try {
+      return LoggingEvent.decode(codecs.get().getDecoder(buffer));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
   }
 
   public GenericRecord toGenericRecord(ByteBuffer buffer) {
-    ByteArrayInputStream in;
-    if (buffer.hasArray()) {
-      in = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset(), buffer.limit());
-    } else {
-      byte [] bytes = new byte[buffer.limit()];
-      buffer.get(bytes);
-      in = new ByteArrayInputStream(bytes);
-    }
-
-    BinaryDecoder decoder = DecoderFactory.get().directBinaryDecoder(in, null);
-    GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>(logSchema.getAvroSchema());
+    Codec codec = codecs.get();
     try {
-      return reader.read(null, decoder);
+      return codec.datumReader.read(null, codec.getDecoder(buffer));
     } catch (IOException e) {
       throw Throwables.propagate(e);
     }
@@ -92,4 +96,45 @@ public final class LoggingEventSerializer {
   public ILoggingEvent fromGenericRecord(GenericRecord datum) {
     return LoggingEvent.decode(datum);
   }
+
+  /**
+   * The reusable encoding and decoding state of a single thread.
+   */
+  private static final class Codec {
+    private final GenericDatumReader<GenericRecord> datumReader;
+    private ByteArrayOutputStream output;
+    private BinaryEncoder encoder;
+    private BinaryDecoder decoder;
+
+    Codec(Schema schema) {
+      this.datumReader = new GenericDatumReader<>(schema);
+      this.output = new ByteArrayOutputStream();
+      this.encoder = EncoderFactory.get().directBinaryEncoder(output, null);
+    }
+
+    byte[] encode(ILoggingEvent loggingEvent, LoggingContext loggingContext) throws IOException {
+      output.reset();
+      try {
+        LoggingEvent.encode(encoder, loggingEvent, loggingContext);
+        return output.toByteArray();
+      } finally {
+        if (output.size() > MAX_RETAINED_BUFFER_SIZE) {
+          output = new ByteArrayOutputStream();
+          encoder = EncoderFactory.get().directBinaryEncoder(output, encoder);
+        }
+      }
+    }
+
+    BinaryDecoder getDecoder(ByteBuffer buffer) {
+      if (buffer.hasArray()) {
+        decoder = DecoderFactory.get().binaryDecoder(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                                                     buffer.remaining(), decoder);
+      } else {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        decoder = DecoderFactory.get().binaryDecoder(bytes, decoder);
+      }
+      return decoder;
+    }
+  }
 }
@@ -19,12 +19,16 @@ package co.cask.cdap.logging.appender.kafka;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.logging.LoggingConfiguration;
+import com.google.common.collect.Multimap;
 import kafka.javaapi.producer.Producer;
 import kafka.producer.KeyedMessage;
 import kafka.producer.ProducerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -65,6 +69,28 @@ public final class SimpleKafkaProducer {
     }
   }
 
+  /**
+   * Publishes a batch of messages with one call to the Kafka producer.
+   *
+   * @param messages messages to publish, keyed by partition key; the messages are published in the iteration order
+   *                 of the entries
+   */
+  public void publish(Multimap<String, byte[]> messages) {
+    if (messages.isEmpty()) {
+      return;
+    }
+    List<KeyedMessage<String, byte[]>> data = new ArrayList<>(messages.size());
+    for (Map.Entry<String, byte[]> entry : messages.entries()) {
+      data.add(new KeyedMessage<>(kafkaTopic, entry.getKey(), entry.getValue()));
+    }
+    try {
+      producer.send(data);
+    } catch (Throwable t) {
+      LOG.error("Exception when trying to publish {} log messages to kafka with keys {} and topic {}",
+                data.size(), messages.keySet(), kafkaTopic, t);
+    }
+  }
+
   public void stop() {
     producer.close();
   }
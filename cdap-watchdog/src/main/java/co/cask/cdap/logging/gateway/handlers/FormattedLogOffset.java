@@ -36,7 +36,10 @@ public class FormattedLogOffset {
   }
 
   public static String formatLogOffset(LogOffset logOffset) {
-    return Joiner.on(SEPARATOR).join(logOffset.getKafkaOffset(), logOffset.getTime());
+    if (logOffset.getSequence() == LogOffset.NO_SEQUENCE) {
+      return Joiner.on(SEPARATOR).join(logOffset.getKafkaOffset(), logOffset.getTime());
+    }
+    return Joiner.on(SEPARATOR).join(logOffset.getKafkaOffset(), logOffset.getTime(), logOffset.getSequence());
   }
 
   public static LogOffset parseLogOffset(String offsetStr) {
@@ -45,8 +48,11 @@ public class FormattedLogOffset {
     }
 
     Iterable<String> splits = Splitter.on(SEPARATOR).split(offsetStr);
-    Preconditions.checkArgument(Iterables.size(splits) == 2, "Invalid offset provided: %s", offsetStr);
+    // The sequence is only present for events read from log files
+    int size = Iterables.size(splits);
+    Preconditions.checkArgument(size == 2 || size == 3, "Invalid offset provided: %s", offsetStr);
 
-    return new LogOffset(Long.valueOf(Iterables.get(splits, 0)), Long.valueOf(Iterables.get(splits, 1)));
+    return new LogOffset(Long.valueOf(Iterables.get(splits, 0)), Long.valueOf(Iterables.get(splits, 1)),
+                         size == 3 ? Integer.valueOf(Iterables.get(splits, 2)) : LogOffset.NO_SEQUENCE);
   }
 }
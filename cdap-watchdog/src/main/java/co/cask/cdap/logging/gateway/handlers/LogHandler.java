@@ -210,7 +210,12 @@ public class LogHandler extends AbstractHttpHandler {
       }
     }
 
-    ReadRange adjusted = new ReadRange(fromTimeMillis, toTimeMillis, readRange.getKafkaOffset());
+    // Only keep the sequence of a bound that is still the event it came from
+    int fromSequence = fromTimeMillis == readRange.getFromMillis() ? readRange.getFromSequence()
+      : LogOffset.NO_SEQUENCE;
+    int toSequence = toTimeMillis == readRange.getToMillis() ? readRange.getToSequence() : LogOffset.NO_SEQUENCE;
+    ReadRange adjusted = new ReadRange(fromTimeMillis, fromSequence, toTimeMillis, toSequence,
+                                       readRange.getKafkaOffset());
     LOG.trace("Original read range: {}. Adjusted read range: {}", readRange, adjusted);
     return adjusted;
   }
@@ -18,13 +18,17 @@ package co.cask.cdap.logging.gateway.handlers.store;
 
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.app.RunIds;
+import co.cask.cdap.common.io.Codec;
 import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
 import co.cask.cdap.data2.dataset2.lib.table.MetadataStoreDataset;
 import co.cask.cdap.internal.app.store.RunRecordMeta;
+import co.cask.cdap.internal.app.store.RunRecordMetaCodec;
 import co.cask.cdap.proto.Id;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 
+import java.lang.reflect.Type;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -38,7 +42,8 @@ public class AppMetadataStore extends MetadataStoreDataset {
   public static final String TYPE_RUN_RECORD_SUSPENDED = "runRecordSuspended";
 
   public AppMetadataStore(Table table) {
-    super(table);
+    // Must decode the run records that cdap-app-fabric AppMetadataStore writes in binary
+    super(table, null, ImmutableMap.<Type, Codec<?>>of(RunRecordMeta.class, new RunRecordMetaCodec()));
   }
 
   // TODO: getRun is duplicated from cdap-app-fabric AppMetadataStore class.
@@ -23,6 +23,7 @@ import co.cask.cdap.data2.security.Impersonator;
 import co.cask.cdap.logging.filter.Filter;
 import co.cask.cdap.logging.serialize.LoggingEvent;
 import co.cask.cdap.proto.id.NamespaceId;
+import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -39,6 +40,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -48,6 +50,12 @@ import java.util.concurrent.Callable;
 public class AvroFileReader {
   private static final Logger LOG = LoggerFactory.getLogger(AvroFileReader.class);
   private static final long DEFAULT_SKIP_LEN = 10 * 1024 * 1024;
+  private static final Filter NO_MATCH_FILTER = new Filter() {
+    @Override
+    public boolean match(ILoggingEvent event) {
+      return false;
+    }
+  };
 
   private final Schema schema;
 
@@ -55,8 +63,19 @@ public class AvroFileReader {
     this.schema = schema;
   }
 
-  public void readLog(Location file, Filter logFilter, long fromTimeMs, long toTimeMs,
-                      int maxEvents, Callback callback, NamespaceId namespaceId, Impersonator impersonator) {
+  /**
+   * Reads the events of a file, in order, starting at the given time.
+   *
+   * @param fromTimeMs time of the first event to read
+   * @param fromSequence events at {@code fromTimeMs} with a sequence up to this one are skipped, none if it is
+   *                     {@link LogOffset#NO_SEQUENCE}
+   * @param toTimeMs time at which to stop reading, exclusive
+   * @param sequenceBase number of events with the time of the first event of this file at the end of the previous
+   *                     file, which the sequences of the events of that millisecond in this file start from
+   */
+  public void readLog(Location file, Filter logFilter, long fromTimeMs, int fromSequence, long toTimeMs,
+                      int maxEvents, Callback callback, Supplier<Integer> sequenceBase,
+                      NamespaceId namespaceId, Impersonator impersonator) {
     try {
       DataFileReader<GenericRecord> dataFileReader = createReader(file, namespaceId, impersonator);
       try {
@@ -80,25 +99,41 @@ public class AvroFileReader {
             }
           }
 
-          // We're now likely past the record with fromTimeMs, rewind to the previous sync point
+          // We're now likely past the record with fromTimeMs, rewind to the previous sync point. Either it is
+          // the start of the file, or its first event is before fromTimeMs, so that all the events of fromTimeMs
+          // are read and their sequences are exact.
           dataFileReader.sync(prevPrevSyncPos);
           LOG.trace("Final sync pos {}", prevPrevSyncPos);
 
           // Start reading events from file
           int count = 0;
           long prevTimestamp = -1;
+          int sequence = 0;
+          boolean firstMillis = prevPrevSyncPos == 0;
           while (dataFileReader.hasNext()) {
             loggingEvent = LoggingEvent.decode(dataFileReader.next(datum));
-            if (loggingEvent.getTimeStamp() >= fromTimeMs && logFilter.match(loggingEvent)) {
-              ++count;
-              if ((count > maxEvents || loggingEvent.getTimeStamp() >= toTimeMs)
-                && loggingEvent.getTimeStamp() != prevTimestamp) {
+            long timestamp = loggingEvent.getTimeStamp();
+            if (timestamp == prevTimestamp) {
+              sequence++;
+            } else {
+              firstMillis = firstMillis && prevTimestamp == -1;
+              prevTimestamp = timestamp;
+              sequence = 0;
+            }
+            if (timestamp >= toTimeMs) {
+              break;
+            }
+            if (timestamp < fromTimeMs) {
+              continue;
+            }
+            int eventSequence = firstMillis ? sequenceBase.get() + sequence : sequence;
+            if ((timestamp > fromTimeMs || eventSequence > fromSequence) && logFilter.match(loggingEvent)) {
+              if (++count > maxEvents) {
                 break;
               }
               callback.handle(new LogEvent(loggingEvent,
-                                           new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, loggingEvent.getTimeStamp())));
+                                           new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, timestamp, eventSequence)));
             }
-            prevTimestamp = loggingEvent.getTimeStamp();
           }
         }
       } finally {
@@ -114,7 +149,18 @@ public class AvroFileReader {
     }
   }
 
-  public Collection<LogEvent> readLogPrev(Location file, Filter logFilter, long fromTimeMs, final int maxEvents,
+  /**
+   * Reads the last events of a file before the given time.
+   *
+   * @param toTimeMs time of the last event to read
+   * @param toSequence only the events at {@code toTimeMs} with a sequence below this one are read, none if it is
+   *                   {@link LogOffset#NO_SEQUENCE}
+   * @param sequenceBase number of events with the time of the first event of this file at the end of the previous
+   *                     file, which the sequences of the events of that millisecond in this file start from
+   * @return the events read, in order
+   */
+  public Collection<LogEvent> readLogPrev(Location file, Filter logFilter, long toTimeMs, int toSequence,
+                                          final int maxEvents, Supplier<Integer> sequenceBase,
                                           NamespaceId namespaceId, Impersonator impersonator) {
     try {
       DataFileReader<GenericRecord> dataFileReader = createReader(file, namespaceId, impersonator);
@@ -124,10 +170,6 @@ public class AvroFileReader {
           return ImmutableList.of();
         }
 
-        List<List<LogEvent>> logSegments = Lists.newArrayList();
-        List<LogEvent> logSegment;
-        int count = 0;
-
         // Calculate skipLen based on fileLength
         long length = file.length();
         LOG.trace("Got file length {}", length);
@@ -139,36 +181,87 @@ public class AvroFileReader {
         // For open file, endPosition sync marker is unknown so start from file length and read till the actual eof
         dataFileReader.sync(length);
         long finalSync = dataFileReader.previousSync();
-        logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, -1);
+        LogSegment logSegments = readToEndSyncPosition(dataFileReader, logFilter, toTimeMs, -1);
 
-        if (!logSegment.isEmpty()) {
-          logSegments.add(logSegment);
-          count = count + logSegment.size();
-        }
-
-        LOG.trace("Read logevents {} from position {}", count, finalSync);
+        LOG.trace("Read logevents {} from position {}", logSegments.events.size(), finalSync);
 
         long startPosition = finalSync;
         long endPosition = startPosition;
         long currentSync;
 
-        while (startPosition > 0 && count < maxEvents) {
+        while (startPosition > 0 && countExact(logSegments, toTimeMs, toSequence) < maxEvents) {
           // Skip to sync position less than current sync position
           startPosition = skipToPosition(dataFileReader, startPosition, endPosition, skipLen);
           currentSync = dataFileReader.previousSync();
-          logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, endPosition);
+          LogSegment logSegment = readToEndSyncPosition(dataFileReader, logFilter, toTimeMs, endPosition);
+          logSegments = logSegment.append(logSegments);
+          LOG.trace("Read logevents {} from position {} to endPosition {}",
+                    logSegments.events.size(), currentSync, endPosition);
+
+          endPosition = currentSync;
+        }
 
-          if (!logSegment.isEmpty()) {
-            logSegments.add(logSegment);
-            count = count + logSegment.size();
+        if (startPosition == 0 && !logSegments.firstMillisEvents.isEmpty()) {
+          // Read from the start of the file, so the events of the first millisecond follow the previous file
+          int base = sequenceBase.get();
+          for (SequencedEvent event : logSegments.firstMillisEvents) {
+            event.sequence += base;
           }
-          LOG.trace("Read logevents {} from position {} to endPosition {}", count, currentSync, endPosition);
+        }
 
-          endPosition = currentSync;
+        List<LogEvent> logEvents = new ArrayList<>();
+        for (SequencedEvent event : logSegments.events) {
+          if (isBefore(event, toTimeMs, toSequence)) {
+            logEvents.add(new LogEvent(event.loggingEvent,
+                                       new LogOffset(LogOffset.INVALID_KAFKA_OFFSET,
+                                                     event.loggingEvent.getTimeStamp(), event.sequence)));
+          }
+        }
+        int skip = logEvents.size() >= maxEvents ? logEvents.size() - maxEvents : 0;
+        return Lists.newArrayList(Iterables.skip(logEvents, skip));
+      } finally {
+        try {
+          dataFileReader.close();
+        } catch (IOException e) {
+          LOG.error("Got exception while closing log file {}", file, e);
+        }
+      }
+    } catch (Exception e) {
+      LOG.error("Got exception while reading log file {}", file, e);
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Returns the number of events with the given time at the end of a file.
+   */
+  public int countLast(Location file, long timeMs, NamespaceId namespaceId, Impersonator impersonator) {
+    try {
+      DataFileReader<GenericRecord> dataFileReader = createReader(file, namespaceId, impersonator);
+      try {
+        if (!dataFileReader.hasNext()) {
+          return 0;
+        }
+
+        long length = file.length();
+        long skipLen = length / 10;
+        if (skipLen > DEFAULT_SKIP_LEN || skipLen <= 0) {
+          skipLen = DEFAULT_SKIP_LEN;
         }
 
-        int skip = count >= maxEvents ? count - maxEvents : 0;
-        return Lists.newArrayList(Iterables.skip(Iterables.concat(Lists.reverse(logSegments)), skip));
+        dataFileReader.sync(length);
+        long startPosition = dataFileReader.previousSync();
+        long endPosition = startPosition;
+        // Events of other files never match, only the sequences are needed
+        LogSegment logSegments = readToEndSyncPosition(dataFileReader, NO_MATCH_FILTER, timeMs, -1);
+        while (startPosition > 0 && (logSegments.firstTimestamp == -1 || logSegments.firstTimestamp == timeMs)) {
+          startPosition = skipToPosition(dataFileReader, startPosition, endPosition, skipLen);
+          long currentSync = dataFileReader.previousSync();
+          logSegments = readToEndSyncPosition(dataFileReader, NO_MATCH_FILTER, timeMs, endPosition)
+            .append(logSegments);
+          endPosition = currentSync;
+        }
+        return logSegments.lastTimestamp == timeMs ? logSegments.lastCount : 0;
       } finally {
         try {
           dataFileReader.close();
@@ -182,13 +275,32 @@ public class AvroFileReader {
     }
   }
 
+  /**
+   * Returns the number of events before the given bound whose sequences are known to be exact, that is which are
+   * after the first millisecond read.
+   */
+  private int countExact(LogSegment logSegment, long toTimeMs, int toSequence) {
+    int count = 0;
+    for (SequencedEvent event : logSegment.events) {
+      if (event.loggingEvent.getTimeStamp() > logSegment.firstTimestamp && isBefore(event, toTimeMs, toSequence)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private boolean isBefore(SequencedEvent event, long toTimeMs, int toSequence) {
+    long timestamp = event.loggingEvent.getTimeStamp();
+    return timestamp < toTimeMs || (timestamp == toTimeMs && event.sequence < toSequence);
+  }
+
   /**
    *  Read current block in Avro file from current block sync marker to next block sync marker
    */
-  private List<LogEvent> readToEndSyncPosition(DataFileReader<GenericRecord> dataFileReader, Filter logFilter,
-                                               long fromTimeMs, long endSyncPosition) throws IOException {
+  private LogSegment readToEndSyncPosition(DataFileReader<GenericRecord> dataFileReader, Filter logFilter,
+                                           long toTimeMs, long endSyncPosition) throws IOException {
 
-    List<LogEvent> logSegment = new ArrayList<>();
+    LogSegment logSegment = new LogSegment();
     GenericRecord datum = null;
     long currentSyncPosition = dataFileReader.previousSync();
     // Read till the end if endSyncPosition is not known (in case of open file)
@@ -197,21 +309,17 @@ public class AvroFileReader {
       datum = dataFileReader.next(datum);
       ILoggingEvent loggingEvent = LoggingEvent.decode(datum);
 
-      // Stop when reached fromTimeMs
-      if (loggingEvent.getTimeStamp() > fromTimeMs) {
+      // Stop when reached toTimeMs
+      if (loggingEvent.getTimeStamp() > toTimeMs) {
         break;
       }
 
-      if (logFilter.match(loggingEvent)) {
-        logSegment.add(new LogEvent(loggingEvent,
-                                    new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, loggingEvent.getTimeStamp())));
-      }
+      logSegment.add(loggingEvent, logFilter.match(loggingEvent));
       currentSyncPosition = dataFileReader.previousSync();
     }
 
     return logSegment;
   }
-
   /**
    * Starting from currentSyncPosition, move backwards by skipLen number of positions in each iteration to
    * find out a sync position less than currentSyncPosition
@@ -234,6 +342,74 @@ public class AvroFileReader {
                                 new GenericDatumReader<GenericRecord>(schema));
   }
 
+  /**
+   * A log event with its position among the events of the same millisecond.
+   */
+  private static final class SequencedEvent {
+    private final ILoggingEvent loggingEvent;
+    private int sequence;
+
+    SequencedEvent(ILoggingEvent loggingEvent, int sequence) {
+      this.loggingEvent = loggingEvent;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Consecutive events of a file, with the matching events and their sequences counted from the first event. As
+   * events are sorted by time, the sequences are exact except for the events of the first millisecond, which may
+   * also have been logged at the end of the previous segment.
+   */
+  private static final class LogSegment {
+    private final LinkedList<SequencedEvent> events = new LinkedList<>();
+    // Matching events with the first timestamp
+    private final List<SequencedEvent> firstMillisEvents = new ArrayList<>();
+    private long firstTimestamp = -1;
+    private long lastTimestamp = -1;
+    // Number of events with the last timestamp
+    private int lastCount;
+
+    void add(ILoggingEvent loggingEvent, boolean match) {
+      long timestamp = loggingEvent.getTimeStamp();
+      lastCount = timestamp == lastTimestamp ? lastCount + 1 : 1;
+      lastTimestamp = timestamp;
+      if (firstTimestamp == -1) {
+        firstTimestamp = timestamp;
+      }
+      if (match) {
+        SequencedEvent event = new SequencedEvent(loggingEvent, lastCount - 1);
+        events.add(event);
+        if (timestamp == firstTimestamp) {
+          firstMillisEvents.add(event);
+        }
+      }
+    }
+
+    /**
+     * Appends the segment that follows this one in the file, and returns the merged segment.
+     */
+    LogSegment append(LogSegment next) {
+      if (firstTimestamp == -1) {
+        return next;
+      }
+      if (next.firstTimestamp == -1) {
+        return this;
+      }
+      if (next.firstTimestamp == lastTimestamp) {
+        for (SequencedEvent event : next.firstMillisEvents) {
+          event.sequence += lastCount;
+        }
+        if (firstTimestamp == lastTimestamp) {
+          firstMillisEvents.addAll(next.firstMillisEvents);
+        }
+      }
+      lastCount = next.lastTimestamp == lastTimestamp ? lastCount + next.lastCount : next.lastCount;
+      lastTimestamp = next.lastTimestamp;
+      events.addAll(next.events);
+      return this;
+    }
+  }
+
   /**
    * An implementation of Avro SeekableInput over Location.
    */
@@ -28,8 +28,11 @@ import co.cask.cdap.logging.write.FileMetaDataManager;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
@@ -40,6 +43,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
 
 /**
@@ -80,7 +84,9 @@ public class FileLogReader implements LogReader {
     try {
       Filter logFilter = new AndFilter(ImmutableList.of(LoggingContextHelper.createFilter(loggingContext),
                                                         filter));
-      long fromTimeMs = readRange.getFromMillis() + 1;
+      // Without a sequence, the events of the millisecond of the offset are all skipped
+      long fromTimeMs = readRange.getFromSequence() == LogOffset.NO_SEQUENCE ?
+        readRange.getFromMillis() + 1 : readRange.getFromMillis();
 
       LOG.trace("Using fromTimeMs={}, readRange={}", fromTimeMs, readRange);
       NavigableMap<Long, Location> sortedFiles = fileMetaDataManager.listFiles(loggingContext);
@@ -88,13 +94,17 @@ public class FileLogReader implements LogReader {
         return;
       }
 
-      List<Location> filesInRange = getFilesInRange(sortedFiles, readRange.getFromMillis(), readRange.getToMillis());
+      // The events of fromTimeMs can start in the file before the one that starts at fromTimeMs
+      NavigableMap<Long, Location> filesInRange = getFileMapInRange(sortedFiles, fromTimeMs - 1,
+                                                                    readRange.getToMillis());
       AvroFileReader logReader = new AvroFileReader(schema);
       NamespaceId namespaceId = LoggingContextHelper.getNamespaceId(loggingContext);
-      for (Location file : filesInRange) {
-        LOG.trace("Reading file {}", file);
-        logReader.readLog(file, logFilter, fromTimeMs,
-                          Long.MAX_VALUE, maxEvents - callback.getCount(), callback, namespaceId, impersonator);
+      for (Map.Entry<Long, Location> file : filesInRange.entrySet()) {
+        LOG.trace("Reading file {}", file.getValue());
+        logReader.readLog(file.getValue(), logFilter, fromTimeMs, readRange.getFromSequence(), Long.MAX_VALUE,
+                          maxEvents - callback.getCount(), callback,
+                          getSequenceBase(logReader, sortedFiles, file.getKey(), namespaceId), namespaceId,
+                          impersonator);
         if (callback.getCount() >= maxEvents) {
           break;
         }
@@ -118,18 +128,24 @@ public class FileLogReader implements LogReader {
         return;
       }
 
-      long fromTimeMs = readRange.getToMillis() - 1;
+      long toTimeMs = readRange.getToMillis();
 
-      LOG.trace("Using fromTimeMs={}, readRange={}", fromTimeMs, readRange);
-      List<Location> filesInRange = getFilesInRange(sortedFiles, readRange.getFromMillis(), readRange.getToMillis());
+      LOG.trace("Using toTimeMs={}, readRange={}", toTimeMs, readRange);
+      // With a sequence, the file that starts at toTimeMs can have events before the offset
+      NavigableMap<Long, Location> filesInRange =
+        getFileMapInRange(sortedFiles, readRange.getFromMillis(),
+                          readRange.getToSequence() == LogOffset.NO_SEQUENCE ? toTimeMs : toTimeMs + 1);
       List<Collection<LogEvent>> logSegments = Lists.newLinkedList();
       AvroFileReader logReader = new AvroFileReader(schema);
       int count = 0;
       NamespaceId namespaceId = LoggingContextHelper.getNamespaceId(loggingContext);
-      for (Location file : Lists.reverse(filesInRange)) {
-        LOG.trace("Reading file {}", file);
+      for (Map.Entry<Long, Location> file : filesInRange.descendingMap().entrySet()) {
+        LOG.trace("Reading file {}", file.getValue());
 
-        Collection<LogEvent> events = logReader.readLogPrev(file, logFilter, fromTimeMs, maxEvents - count,
+        Collection<LogEvent> events = logReader.readLogPrev(file.getValue(), logFilter, toTimeMs,
+                                                            readRange.getToSequence(), maxEvents - count,
+                                                            getSequenceBase(logReader, sortedFiles, file.getKey(),
+                                                                            namespaceId),
                                                             namespaceId, impersonator);
         logSegments.add(events);
         count += events.size();
@@ -161,12 +177,15 @@ public class FileLogReader implements LogReader {
         return;
       }
 
-      List<Location> filesInRange = getFilesInRange(sortedFiles, fromTimeMs, toTimeMs);
+      // The events of fromTimeMs can start in the file before the one that starts at fromTimeMs
+      NavigableMap<Long, Location> filesInRange = getFileMapInRange(sortedFiles, fromTimeMs - 1, toTimeMs);
       AvroFileReader avroFileReader = new AvroFileReader(schema);
       NamespaceId namespaceId = LoggingContextHelper.getNamespaceId(loggingContext);
-      for (Location file : filesInRange) {
-        LOG.trace("Reading file {}", file);
-        avroFileReader.readLog(file, logFilter, fromTimeMs, toTimeMs, Integer.MAX_VALUE, callback,
+      for (Map.Entry<Long, Location> file : filesInRange.entrySet()) {
+        LOG.trace("Reading file {}", file.getValue());
+        avroFileReader.readLog(file.getValue(), logFilter, fromTimeMs, LogOffset.NO_SEQUENCE, toTimeMs,
+                               Integer.MAX_VALUE, callback,
+                               getSequenceBase(avroFileReader, sortedFiles, file.getKey(), namespaceId),
                                namespaceId, impersonator);
       }
     } catch (Throwable e) {
@@ -175,8 +194,30 @@ public class FileLogReader implements LogReader {
     }
   }
 
+  /**
+   * Returns the number of events at the start time of a file that were logged at the end of the previous file,
+   * which is computed only if needed.
+   */
+  private Supplier<Integer> getSequenceBase(final AvroFileReader logReader,
+                                            final NavigableMap<Long, Location> sortedFiles, final long fileTimeMs,
+                                            final NamespaceId namespaceId) {
+    return Suppliers.memoize(new Supplier<Integer>() {
+      @Override
+      public Integer get() {
+        Map.Entry<Long, Location> previousFile = sortedFiles.lowerEntry(fileTimeMs);
+        return previousFile == null ? 0 : logReader.countLast(previousFile.getValue(), fileTimeMs,
+                                                                namespaceId, impersonator);
+      }
+    });
+  }
+
   @VisibleForTesting
   static List<Location> getFilesInRange(NavigableMap<Long, Location> sortedFiles, long fromTimeMs, long toTimeMs) {
+    return ImmutableList.copyOf(getFileMapInRange(sortedFiles, fromTimeMs, toTimeMs).values());
+  }
+
+  private static NavigableMap<Long, Location> getFileMapInRange(NavigableMap<Long, Location> sortedFiles,
+                                                                long fromTimeMs, long toTimeMs) {
     // Get a list of files to read based on fromMillis and toMillis.
     // Each file is associated with the time of the first log message in it.
     // Let c be the file with the largest timestamp smaller than readRange.getFromMillis().
@@ -189,9 +230,9 @@ public class FileLogReader implements LogReader {
       // deleted, in case of old program runs. For such requests both the start and toTimeMs
       // will fall outside the range sortedFiles. In that case return empty list.
       if (start > toTimeMs) {
-        return ImmutableList.of();
+        return ImmutableSortedMap.of();
       }
     }
-    return ImmutableList.copyOf(sortedFiles.subMap(start, toTimeMs).values());
+    return sortedFiles.subMap(start, true, toTimeMs, false);
   }
 }
@@ -91,7 +91,11 @@ public class KafkaLogReader implements LogReader {
     try {
       // If Kafka offset is not valid, then we might be rolling over from file while reading.
       // Try to get the offset corresponding to fromOffset.getTime()
+      // Otherwise the offset alone marks where to continue, since events logged in the same millisecond
+      // as the last returned event must not be skipped.
+      long fromTimeMs = -1;
       if (readRange.getKafkaOffset() == LogOffset.INVALID_KAFKA_OFFSET) {
+        fromTimeMs = readRange.getFromMillis();
         readRange = new ReadRange(readRange.getFromMillis(), readRange.getToMillis(),
                                   kafkaConsumer.fetchOffsetBefore(readRange.getFromMillis()));
       }
@@ -109,7 +113,7 @@ public class KafkaLogReader implements LogReader {
       }
 
       KafkaCallback kafkaCallback = new KafkaCallback(logFilter, serializer, latestOffset, maxEvents, callback,
-                                                      readRange.getFromMillis());
+                                                      fromTimeMs);
 
       fetchLogEvents(kafkaConsumer, kafkaCallback, startOffset, latestOffset, maxEvents, readRange);
     } catch (Throwable e) {
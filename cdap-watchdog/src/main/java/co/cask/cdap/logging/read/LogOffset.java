@@ -25,13 +25,26 @@ public class LogOffset {
   public static final long LATEST_KAFKA_OFFSET = -1;
   public static final LogOffset LATEST_OFFSET = new LogOffset(-1, LATEST_KAFKA_OFFSET);
   public static final long INVALID_KAFKA_OFFSET = -10000;
+  public static final int NO_SEQUENCE = -1;
 
   private final long kafkaOffset;
   private final long time;
+  private final int sequence;
 
   public LogOffset(long kafkaOffset, long time) {
+    this(kafkaOffset, time, NO_SEQUENCE);
+  }
+
+  /**
+   * @param kafkaOffset Kafka offset of the event, or {@link #INVALID_KAFKA_OFFSET} for an event read from a log file
+   * @param time time of the event
+   * @param sequence position of the event among the events logged in the same millisecond, used to tell apart
+   *                 events with the same time in log files, or {@link #NO_SEQUENCE} if not known
+   */
+  public LogOffset(long kafkaOffset, long time, int sequence) {
     this.kafkaOffset = kafkaOffset;
     this.time = time;
+    this.sequence = sequence;
   }
 
   public long getKafkaOffset() {
@@ -42,11 +55,16 @@ public class LogOffset {
     return time;
   }
 
+  public int getSequence() {
+    return sequence;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
       .add("kafkaOffset", kafkaOffset)
       .add("time", time)
+      .add("sequence", sequence)
       .toString();
   }
 }
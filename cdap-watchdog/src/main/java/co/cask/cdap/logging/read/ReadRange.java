@@ -25,12 +25,25 @@ public class ReadRange {
   public static final ReadRange LATEST = new ReadRange(-1, Long.MAX_VALUE, LogOffset.LATEST_KAFKA_OFFSET);
 
   private final long fromMillis;
+  private final int fromSequence;
   private final long toMillis;
+  private final int toSequence;
   private final long kafkaOffset;
 
   public ReadRange(long fromMillis, long toMillis, long kafkaOffset) {
+    this(fromMillis, LogOffset.NO_SEQUENCE, toMillis, LogOffset.NO_SEQUENCE, kafkaOffset);
+  }
+
+  /**
+   * Creates a range bounded by the given events. The sequences tell apart the events logged in the same
+   * millisecond as a bound, see {@link LogOffset#getSequence()}. With {@link LogOffset#NO_SEQUENCE}, no event of that
+   * millisecond is in the range.
+   */
+  public ReadRange(long fromMillis, int fromSequence, long toMillis, int toSequence, long kafkaOffset) {
     this.fromMillis = fromMillis;
+    this.fromSequence = fromSequence;
     this.toMillis = toMillis;
+    this.toSequence = toSequence;
     this.kafkaOffset = kafkaOffset;
   }
 
@@ -38,10 +51,18 @@ public class ReadRange {
     return fromMillis;
   }
 
+  public int getFromSequence() {
+    return fromSequence;
+  }
+
   public long getToMillis() {
     return toMillis;
   }
 
+  public int getToSequence() {
+    return toSequence;
+  }
+
   public long getKafkaOffset() {
     return kafkaOffset;
   }
@@ -50,21 +71,25 @@ public class ReadRange {
     if (logOffset == LogOffset.LATEST_OFFSET) {
       return ReadRange.LATEST;
     }
-    return new ReadRange(logOffset.getTime(), Long.MAX_VALUE, logOffset.getKafkaOffset());
+    return new ReadRange(logOffset.getTime(), logOffset.getSequence(), Long.MAX_VALUE, LogOffset.NO_SEQUENCE,
+                         logOffset.getKafkaOffset());
   }
 
   public static ReadRange createToRange(LogOffset logOffset) {
     if (logOffset == LogOffset.LATEST_OFFSET) {
       return ReadRange.LATEST;
     }
-    return new ReadRange(-1, logOffset.getTime(), logOffset.getKafkaOffset());
+    return new ReadRange(-1, LogOffset.NO_SEQUENCE, logOffset.getTime(), logOffset.getSequence(),
+                         logOffset.getKafkaOffset());
   }
 
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
       .add("fromMillis", fromMillis)
+      .add("fromSequence", fromSequence)
       .add("toMillis", toMillis)
+      .add("toSequence", toSequence)
       .add("kafkaOffset", kafkaOffset)
       .toString();
   }
@@ -20,6 +20,12 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Serializer for CallerData.
@@ -51,4 +57,29 @@ public final class CallerDataSerializer {
     }
     return null;
   }
+
+  public static void encode(Encoder encoder, StackTraceElement[] stackTraceElements) throws IOException {
+    if (!Util.writeNullIndex(encoder, stackTraceElements)) {
+      encoder.writeArrayStart();
+      encoder.setItemCount(stackTraceElements.length);
+      for (StackTraceElement stackTraceElement : stackTraceElements) {
+        encoder.startItem();
+        StackTraceElementSerializer.encode(encoder, stackTraceElement);
+      }
+      encoder.writeArrayEnd();
+    }
+  }
+
+  public static StackTraceElement[] decode(Decoder decoder) throws IOException {
+    if (Util.readNullIndex(decoder)) {
+      return null;
+    }
+    List<StackTraceElement> stackTraceElements = new ArrayList<>();
+    for (long count = decoder.readArrayStart(); count > 0; count = decoder.arrayNext()) {
+      for (long i = 0; i < count; i++) {
+        stackTraceElements.add(StackTraceElementSerializer.decode(decoder));
+      }
+    }
+    return stackTraceElements.toArray(new StackTraceElement[stackTraceElements.size()]);
+  }
 }
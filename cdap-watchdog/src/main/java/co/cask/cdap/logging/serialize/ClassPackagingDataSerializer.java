@@ -20,6 +20,10 @@ import ch.qos.logback.classic.spi.ClassPackagingData;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
 
 import static co.cask.cdap.logging.serialize.Util.stringOrNull;
 
@@ -49,4 +53,22 @@ public final class ClassPackagingDataSerializer {
     }
     return null;
   }
+
+  public static void encode(Encoder encoder, ClassPackagingData classPackagingData) throws IOException {
+    if (!Util.writeNullIndex(encoder, classPackagingData)) {
+      Util.writeStringOrNull(encoder, classPackagingData.getCodeLocation());
+      Util.writeStringOrNull(encoder, classPackagingData.getVersion());
+      encoder.writeBoolean(classPackagingData.isExact());
+    }
+  }
+
+  public static ClassPackagingData decode(Decoder decoder) throws IOException {
+    if (Util.readNullIndex(decoder)) {
+      return null;
+    }
+    String codeLocation = Util.readStringOrNull(decoder);
+    String version = Util.readStringOrNull(decoder);
+    boolean exact = decoder.readBoolean();
+    return new ClassPackagingData(codeLocation, version, exact);
+  }
 }
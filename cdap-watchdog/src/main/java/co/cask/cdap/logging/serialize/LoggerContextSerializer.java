@@ -20,7 +20,10 @@ import ch.qos.logback.classic.spi.LoggerContextVO;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
 
+import java.io.IOException;
 import java.util.Map;
 
 import static co.cask.cdap.logging.serialize.Util.stringOrNull;
@@ -52,4 +55,22 @@ public final class LoggerContextSerializer {
     }
     return null;
   }
+
+  public static void encode(Encoder encoder, LoggerContextVO context) throws IOException {
+    if (!Util.writeNullIndex(encoder, context)) {
+      Util.writeStringOrNull(encoder, context.getName());
+      LoggingEvent.encodeMdcMap(encoder, context.getPropertyMap(), null);
+      encoder.writeLong(context.getBirthTime());
+    }
+  }
+
+  public static LoggerContextVO decode(Decoder decoder) throws IOException {
+    if (Util.readNullIndex(decoder)) {
+      return null;
+    }
+    String name = Util.readStringOrNull(decoder);
+    Map<String, String> propertyMap = LoggingEvent.decodeMdcMap(decoder);
+    long birthTime = decoder.readLong();
+    return new LoggerContextVO(name, propertyMap, birthTime);
+  }
 }
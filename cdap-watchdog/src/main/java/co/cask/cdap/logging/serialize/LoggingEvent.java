@@ -27,11 +27,16 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
 import org.apache.avro.reflect.Nullable;
 import org.slf4j.Marker;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import static co.cask.cdap.common.logging.LoggingContext.SystemTag;
@@ -205,6 +210,49 @@ public final class LoggingEvent implements ILoggingEvent {
     return datum;
   }
 
+  /**
+   * Writes the given event in the binary encoding of the log schema, without creating an intermediate
+   * {@link GenericRecord}. The result is the same as writing the record returned by
+   * {@link #encode(Schema, ILoggingEvent, LoggingContext)} with a {@link org.apache.avro.generic.GenericDatumWriter}.
+   */
+  public static void encode(Encoder encoder, ILoggingEvent event, LoggingContext loggingContext) throws IOException {
+    event.prepareForDeferredProcessing();
+
+    Map<String, String> mdc = event.getMDCPropertyMap();
+    if (loggingContext == null) {
+      throw new IllegalStateException(String.format("Logging context not setup correctly for MDC %s", mdc));
+    }
+
+    // Fields are written in the order of the schema
+    encoder.writeLong(event.getTimeStamp());
+    encoder.writeInt(event.getLevel() == null ? Level.ERROR_INT : event.getLevel().toInt());
+    encodeMdcMap(encoder, mdc, loggingContext.getSystemTagsMap());
+    // Marker is not serialized
+    Util.writeNullIndex(encoder, null);
+    Util.writeStringOrNull(encoder, event.getThreadName());
+    Util.writeStringOrNull(encoder, event.getMessage());
+
+    Object[] argumentArray = event.getArgumentArray();
+    if (!Util.writeNullIndex(encoder, argumentArray)) {
+      encoder.writeArrayStart();
+      encoder.setItemCount(argumentArray.length);
+      for (Object obj : argumentArray) {
+        encoder.startItem();
+        Util.writeStringOrNull(encoder, obj == null ? null : obj.toString());
+      }
+      encoder.writeArrayEnd();
+    }
+
+    Util.writeStringOrNull(encoder, event.getFormattedMessage());
+    Util.writeStringOrNull(encoder, event.getLoggerName());
+    LoggerContextSerializer.encode(encoder, event.getLoggerContextVO());
+    ThrowableProxySerializer.encode(encoder, event.getThrowableProxy());
+
+    boolean hasCallerData = event.hasCallerData();
+    encoder.writeBoolean(hasCallerData);
+    CallerDataSerializer.encode(encoder, hasCallerData ? event.getCallerData() : null);
+  }
+
   static Map<String, String> generateContextMdc(LoggingContext loggingContext, Map<String, String> mdc) {
     if (loggingContext == null) {
       throw new IllegalStateException(String.format("Logging context not setup correctly for MDC %s", mdc));
@@ -235,6 +283,53 @@ public final class LoggingEvent implements ILoggingEvent {
     return encodeMap;
   }
 
+  /**
+   * Writes the given MDC map, followed by the given system tags, with the same filtering as
+   * {@link #generateContextMdc(LoggingContext, Map)}. The system tags may be {@code null}.
+   */
+  static void encodeMdcMap(Encoder encoder, Map<String, String> mdc,
+                           Map<String, SystemTag> systemTagMap) throws IOException {
+    Map<String, SystemTag> systemTags = systemTagMap == null ? Collections.<String, SystemTag>emptyMap() : systemTagMap;
+
+    // The number of entries has to be known upfront, hence the MDC map is iterated twice
+    int count = systemTags.size();
+    int i = 0;
+    for (Map.Entry<String, String> entry : mdc.entrySet()) {
+      if (i++ > MAX_MDC_TAGS) {
+        break;
+      }
+      if (isEncodedMdcKey(entry.getKey(), systemTags)) {
+        count++;
+      }
+    }
+
+    encoder.writeIndex(1);
+    encoder.writeMapStart();
+    encoder.setItemCount(count);
+    i = 0;
+    for (Map.Entry<String, String> entry : mdc.entrySet()) {
+      if (i++ > MAX_MDC_TAGS) {
+        break;
+      }
+      if (isEncodedMdcKey(entry.getKey(), systemTags)) {
+        encoder.startItem();
+        encoder.writeString(entry.getKey() == null ? MDC_NULL_KEY : entry.getKey());
+        Util.writeStringOrNull(encoder, entry.getValue());
+      }
+    }
+    for (Map.Entry<String, SystemTag> entry : systemTags.entrySet()) {
+      encoder.startItem();
+      encoder.writeString(entry.getKey());
+      Util.writeStringOrNull(encoder, entry.getValue().getValue());
+    }
+    encoder.writeMapEnd();
+  }
+
+  private static boolean isEncodedMdcKey(String key, Map<String, SystemTag> systemTags) {
+    // Any tag beginning with . is reserved, and system tags take precedence over MDC entries
+    return key == null || (!key.startsWith(".") && !systemTags.containsKey(key));
+  }
+
   @SuppressWarnings("unchecked")
   public static ILoggingEvent decode(GenericRecord datum) {
     LoggingEvent loggingEvent = new LoggingEvent();
@@ -260,6 +355,39 @@ public final class LoggingEvent implements ILoggingEvent {
     return loggingEvent;
   }
 
+  /**
+   * Reads an event written in the binary encoding of the log schema, without creating an intermediate
+   * {@link GenericRecord}.
+   */
+  public static ILoggingEvent decode(Decoder decoder) throws IOException {
+    LoggingEvent loggingEvent = new LoggingEvent();
+    loggingEvent.timestamp = decoder.readLong();
+    loggingEvent.level = decoder.readInt();
+    loggingEvent.mdc = decodeMdcMap(decoder);
+    // Marker is an empty record, hence there is nothing to read other than the union index
+    Util.readNullIndex(decoder);
+    loggingEvent.threadName = Util.readStringOrNull(decoder);
+    loggingEvent.message = Util.readStringOrNull(decoder);
+
+    if (!Util.readNullIndex(decoder)) {
+      List<String> arguments = new ArrayList<>();
+      for (long count = decoder.readArrayStart(); count > 0; count = decoder.arrayNext()) {
+        for (long i = 0; i < count; i++) {
+          arguments.add(Util.readStringOrNull(decoder));
+        }
+      }
+      loggingEvent.argumentArray = arguments.toArray(new String[arguments.size()]);
+    }
+
+    loggingEvent.formattedMessage = Util.readStringOrNull(decoder);
+    loggingEvent.loggerName = Util.readStringOrNull(decoder);
+    loggingEvent.loggerContextVO = LoggerContextSerializer.decode(decoder);
+    loggingEvent.throwableProxy = ThrowableProxySerializer.decode(decoder);
+    loggingEvent.hasCallerData = decoder.readBoolean();
+    loggingEvent.callerData = CallerDataSerializer.decode(decoder);
+    return loggingEvent;
+  }
+
   static Map<String, String> decodeMdcMap(Map<?, ?> map) {
     if (map == null) {
       return null;
@@ -275,6 +403,21 @@ public final class LoggingEvent implements ILoggingEvent {
     return stringMap;
   }
 
+  static Map<String, String> decodeMdcMap(Decoder decoder) throws IOException {
+    if (Util.readNullIndex(decoder)) {
+      return null;
+    }
+
+    Map<String, String> stringMap = Maps.newHashMap();
+    for (long count = decoder.readMapStart(); count > 0; count = decoder.mapNext()) {
+      for (long i = 0; i < count; i++) {
+        String key = decoder.readString();
+        stringMap.put(key.equals(MDC_NULL_KEY) ? null : key, Util.readStringOrNull(decoder));
+      }
+    }
+    return stringMap;
+  }
+
   @Override
   public String toString() {
     return "LoggingEvent{" +
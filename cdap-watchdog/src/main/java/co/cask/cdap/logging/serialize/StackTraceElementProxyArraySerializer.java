@@ -21,6 +21,12 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Serializer for an array of StackTraceElementProxies.
@@ -52,4 +58,29 @@ public final class StackTraceElementProxyArraySerializer {
     }
     return null;
   }
+
+  public static void encode(Encoder encoder, StackTraceElementProxy[] stackTraceElementProxies) throws IOException {
+    if (!Util.writeNullIndex(encoder, stackTraceElementProxies)) {
+      encoder.writeArrayStart();
+      encoder.setItemCount(stackTraceElementProxies.length);
+      for (StackTraceElementProxy ste : stackTraceElementProxies) {
+        encoder.startItem();
+        StackTraceElementProxySerializer.encode(encoder, ste);
+      }
+      encoder.writeArrayEnd();
+    }
+  }
+
+  public static StackTraceElementProxy[] decode(Decoder decoder) throws IOException {
+    if (Util.readNullIndex(decoder)) {
+      return null;
+    }
+    List<StackTraceElementProxy> stackTraceElementProxies = new ArrayList<>();
+    for (long count = decoder.readArrayStart(); count > 0; count = decoder.arrayNext()) {
+      for (long i = 0; i < count; i++) {
+        stackTraceElementProxies.add(StackTraceElementProxySerializer.decode(decoder));
+      }
+    }
+    return stackTraceElementProxies.toArray(new StackTraceElementProxy[stackTraceElementProxies.size()]);
+  }
 }
@@ -21,6 +21,10 @@ import ch.qos.logback.classic.spi.StackTraceElementProxy;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
 
 /**
  * Serializer for StackTraceElementProxy.
@@ -47,4 +51,19 @@ public final class StackTraceElementProxySerializer {
     }
     return stackTraceElementProxy;
   }
+
+  public static void encode(Encoder encoder, StackTraceElementProxy stackTraceElementProxy) throws IOException {
+    StackTraceElementSerializer.encode(encoder, stackTraceElementProxy.getStackTraceElement());
+    ClassPackagingDataSerializer.encode(encoder, stackTraceElementProxy.getClassPackagingData());
+  }
+
+  public static StackTraceElementProxy decode(Decoder decoder) throws IOException {
+    StackTraceElement ste = StackTraceElementSerializer.decode(decoder);
+    ClassPackagingData cpd = ClassPackagingDataSerializer.decode(decoder);
+    StackTraceElementProxy stackTraceElementProxy = new StackTraceElementProxy(ste);
+    if (cpd != null) {
+      stackTraceElementProxy.setClassPackagingData(cpd);
+    }
+    return stackTraceElementProxy;
+  }
 }
@@ -19,6 +19,10 @@ package co.cask.cdap.logging.serialize;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
 
 import static co.cask.cdap.logging.serialize.Util.stringOrNull;
 
@@ -51,4 +55,24 @@ public class StackTraceElementSerializer {
     }
     return null;
   }
+
+  public static void encode(Encoder encoder, StackTraceElement stackTraceElement) throws IOException {
+    if (!Util.writeNullIndex(encoder, stackTraceElement)) {
+      Util.writeStringOrNull(encoder, stackTraceElement.getClassName());
+      Util.writeStringOrNull(encoder, stackTraceElement.getMethodName());
+      Util.writeStringOrNull(encoder, stackTraceElement.getFileName());
+      encoder.writeInt(stackTraceElement.getLineNumber());
+    }
+  }
+
+  public static StackTraceElement decode(Decoder decoder) throws IOException {
+    if (Util.readNullIndex(decoder)) {
+      return null;
+    }
+    String declaringClass = Util.readStringOrNull(decoder);
+    String methodName = Util.readStringOrNull(decoder);
+    String fileName = Util.readStringOrNull(decoder);
+    int lineNumber = decoder.readInt();
+    return new StackTraceElement(declaringClass, methodName, fileName, lineNumber);
+  }
 }
@@ -21,6 +21,12 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Serializer for ThrowableProxyArray.
@@ -52,4 +58,29 @@ public final class ThrowableProxyArraySerializer {
     }
     return null;
   }
+
+  public static void encode(Encoder encoder, IThrowableProxy[] throwableProxies) throws IOException {
+    if (!Util.writeNullIndex(encoder, throwableProxies)) {
+      encoder.writeArrayStart();
+      encoder.setItemCount(throwableProxies.length);
+      for (IThrowableProxy tp : throwableProxies) {
+        encoder.startItem();
+        ThrowableProxySerializer.encode(encoder, tp);
+      }
+      encoder.writeArrayEnd();
+    }
+  }
+
+  public static IThrowableProxy[] decode(Decoder decoder) throws IOException {
+    if (Util.readNullIndex(decoder)) {
+      return null;
+    }
+    List<IThrowableProxy> throwableProxies = new ArrayList<>();
+    for (long count = decoder.readArrayStart(); count > 0; count = decoder.arrayNext()) {
+      for (long i = 0; i < count; i++) {
+        throwableProxies.add(ThrowableProxySerializer.decode(decoder));
+      }
+    }
+    return throwableProxies.toArray(new IThrowableProxy[throwableProxies.size()]);
+  }
 }
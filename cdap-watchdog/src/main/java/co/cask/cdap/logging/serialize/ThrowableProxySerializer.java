@@ -22,6 +22,10 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
 
 import static co.cask.cdap.logging.serialize.Util.stringOrNull;
 
@@ -65,4 +69,28 @@ public final class ThrowableProxySerializer {
     }
     return null;
   }
+
+  public static void encode(Encoder encoder, IThrowableProxy throwableProxy) throws IOException {
+    if (!Util.writeNullIndex(encoder, throwableProxy)) {
+      Util.writeStringOrNull(encoder, throwableProxy.getClassName());
+      Util.writeStringOrNull(encoder, throwableProxy.getMessage());
+      encoder.writeInt(throwableProxy.getCommonFrames());
+      StackTraceElementProxyArraySerializer.encode(encoder, throwableProxy.getStackTraceElementProxyArray());
+      ThrowableProxySerializer.encode(encoder, throwableProxy.getCause());
+      ThrowableProxyArraySerializer.encode(encoder, throwableProxy.getSuppressed());
+    }
+  }
+
+  public static IThrowableProxy decode(Decoder decoder) throws IOException {
+    if (Util.readNullIndex(decoder)) {
+      return null;
+    }
+    String className = Util.readStringOrNull(decoder);
+    String message = Util.readStringOrNull(decoder);
+    int commonFramesCount = decoder.readInt();
+    StackTraceElementProxy[] steArray = StackTraceElementProxyArraySerializer.decode(decoder);
+    IThrowableProxy cause = ThrowableProxySerializer.decode(decoder);
+    IThrowableProxy[] suppressed = ThrowableProxyArraySerializer.decode(decoder);
+    return new ThrowableProxyImpl(cause, className, commonFramesCount, message, steArray, suppressed);
+  }
 }
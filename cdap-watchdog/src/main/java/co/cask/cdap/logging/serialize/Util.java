@@ -16,6 +16,12 @@
 
 package co.cask.cdap.logging.serialize;
 
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
+import javax.annotation.Nullable;
+
 /**
  * Utility functions for serialization.
  */
@@ -25,4 +31,53 @@ public final class Util {
   public static String stringOrNull(Object obj) {
     return obj == null ? null : obj.toString();
   }
+
+  /**
+   * Writes a value of the union type {@code ["null", "string"]}.
+   */
+  public static void writeStringOrNull(Encoder encoder, @Nullable String value) throws IOException {
+    if (!writeNullIndex(encoder, value)) {
+      encoder.writeString(value);
+    }
+  }
+
+  /**
+   * Reads a value of the union type {@code ["null", "string"]}.
+   */
+  @Nullable
+  public static String readStringOrNull(Decoder decoder) throws IOException {
+    if (readNullIndex(decoder)) {
+      return null;
+    }
+    return decoder.readString();
+  }
+
+  /**
+   * Writes the branch index of a union type with {@code "null"} as first branch, followed by the null value if the
+   * given value is {@code null}.
+   *
+   * @return {@code true} if the value is {@code null}, hence nothing else needs to be written
+   */
+  static boolean writeNullIndex(Encoder encoder, @Nullable Object value) throws IOException {
+    if (value == null) {
+      encoder.writeIndex(0);
+      encoder.writeNull();
+      return true;
+    }
+    encoder.writeIndex(1);
+    return false;
+  }
+
+  /**
+   * Reads the branch index of a union type with {@code "null"} as first branch.
+   *
+   * @return {@code true} if the value is {@code null}, hence nothing else needs to be read
+   */
+  static boolean readNullIndex(Decoder decoder) throws IOException {
+    if (decoder.readIndex() == 0) {
+      decoder.readNull();
+      return true;
+    }
+    return false;
+  }
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.query;
+
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import co.cask.cdap.api.metrics.MetricDataQuery;
+import co.cask.cdap.api.metrics.MetricStore;
+import co.cask.cdap.api.metrics.MetricTimeSeries;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes {@link MetricDataQuery} against a {@link MetricStore}, caching the results of time range queries.
+ *
+ * <p>
+ * Results are cached per query, ignoring the time range, and only for the resolution buckets that are complete,
+ * which are the buckets that ended at least {@code settleSeconds} ago, so that metrics that are still being
+ * processed are not missed. A query that starts within the cached time range is served from the cache up to
+ * the end of the cached range, and only the rest of the time range is queried from the {@link MetricStore}.
+ * Aggregate queries and queries with interpolation are not cached, as their results depend on the whole time range.
+ * Cached results are discarded {@link #MAX_AGE_SECONDS} after they were first queried, so that metrics that are
+ * deleted or that are emitted with old timestamps are eventually seen. Since metrics are deleted by other services
+ * through their own {@link MetricStore}, the cache cannot be cleared on delete, which is why it is disabled by
+ * default.
+ * </p>
+ */
+final class MetricQueryCache {
+
+  static final long MAX_AGE_SECONDS = TimeUnit.MINUTES.toSeconds(10);
+
+  private static final Joiner.MapJoiner MAP_JOINER = Joiner.on(',').withKeyValueSeparator(":").useForNull("*");
+
+  private final MetricStore metricStore;
+  private final long settleSeconds;
+  private final Cache<String, CachedResult> cache;
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private volatile MetricsContext metricsContext;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param metricStore the store to query
+   * @param maxSize maximum number of queries to cache results for; {@code 0} disables caching
+   * @param settleSeconds number of seconds after the end of a resolution bucket for its metrics to be cached
+   */
+  MetricQueryCache(MetricStore metricStore, int maxSize, long settleSeconds) {
+    this.metricStore = metricStore;
+    this.settleSeconds = settleSeconds;
+    this.cache = maxSize <= 0 ? null : CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .<String, CachedResult>build();
+    this.hits = new AtomicLong();
+    this.misses = new AtomicLong();
+    this.metricsContext = new NoopMetricsContext();
+  }
+
+  /**
+   * Sets the {@link MetricsContext} for emitting the cache hit and miss counts.
+   */
+  void setMetricsContext(MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
+  }
+
+  /**
+   * Returns the number of queries that were served partly from the cache.
+   */
+  long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of cacheable queries that were not served from the cache.
+   */
+  long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Executes the given query.
+   */
+  Collection<MetricTimeSeries> query(MetricDataQuery query) {
+    return query(query, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+  }
+
+  /**
+   * Executes the given query, with the given current time in seconds.
+   */
+  Collection<MetricTimeSeries> query(MetricDataQuery query, long currentTime) {
+    int resolution = query.getResolution();
+    if (cache == null || query.getInterpolator() != null || resolution == Integer.MAX_VALUE) {
+      return metricStore.query(query);
+    }
+
+    long startTs = query.getStartTs();
+    long endTs = query.getEndTs();
+    // Buckets starting before this time are complete
+    long settledTs = Math.min((currentTime - settleSeconds) / resolution * resolution, endTs + 1);
+    if (settledTs <= startTs) {
+      return metricStore.query(query);
+    }
+
+    String key = getCacheKey(query);
+    CachedResult cached = cache.getIfPresent(key);
+    if (cached == null || cached.startTs > startTs || cached.endTs <= startTs
+      || currentTime - cached.createTime > MAX_AGE_SECONDS) {
+      misses.incrementAndGet();
+      metricsContext.increment("metrics.query.cache.misses", 1);
+
+      // Query without limit to cache all the values, then apply the limit of the query
+      Collection<MetricTimeSeries> result = metricStore.query(withTimeRange(query, startTs, endTs));
+      Map<Map.Entry<String, Map<String, String>>, List<TimeValue>> settledSeries = Maps.newLinkedHashMap();
+      addTimeValues(settledSeries, result, startTs, settledTs);
+      cache.put(key, new CachedResult(startTs, settledTs, currentTime, toTimeSeries(settledSeries)));
+      return applyLimit(result, query.getLimit());
+    }
+
+    hits.incrementAndGet();
+    metricsContext.increment("metrics.query.cache.hits", 1);
+
+    Map<Map.Entry<String, Map<String, String>>, List<TimeValue>> series = Maps.newLinkedHashMap();
+    addTimeValues(series, cached.series, startTs, Math.min(cached.endTs, endTs + 1));
+    if (cached.endTs <= endTs) {
+      Collection<MetricTimeSeries> tail = metricStore.query(withTimeRange(query, cached.endTs, endTs));
+      addTimeValues(series, tail, cached.endTs, endTs + 1);
+
+      if (settledTs > cached.endTs) {
+        // Extend the cached range, keeping at most one extra time range worth of older buckets
+        long newStartTs = Math.max(cached.startTs, startTs - (endTs - startTs));
+        Map<Map.Entry<String, Map<String, String>>, List<TimeValue>> newSeries = Maps.newLinkedHashMap();
+        addTimeValues(newSeries, cached.series, newStartTs, cached.endTs);
+        addTimeValues(newSeries, tail, cached.endTs, settledTs);
+        cache.put(key, new CachedResult(newStartTs, settledTs, cached.createTime, toTimeSeries(newSeries)));
+      }
+    }
+    return applyLimit(toTimeSeries(series), query.getLimit());
+  }
+
+  /**
+   * Returns a query that is the same as the given query except for the time range, and without limit.
+   */
+  private MetricDataQuery withTimeRange(MetricDataQuery query, long startTs, long endTs) {
+    return new MetricDataQuery(startTs, endTs, query.getResolution(), Integer.MAX_VALUE, query.getMetrics(),
+                               query.getSliceByTags(), query.getGroupByTags(), null);
+  }
+
+  /**
+   * Limits the number of values of each of the given time series, the same way as the {@link MetricStore} does.
+   */
+  private Collection<MetricTimeSeries> applyLimit(Collection<MetricTimeSeries> series, int limit) {
+    // At least one value is returned, same as the MetricStore
+    int maxValues = Math.max(1, limit);
+    List<MetricTimeSeries> result = Lists.newArrayListWithCapacity(series.size());
+    for (MetricTimeSeries timeSeries : series) {
+      if (timeSeries.getTimeValues().size() > maxValues) {
+        timeSeries = new MetricTimeSeries(timeSeries.getMetricName(), timeSeries.getTagValues(),
+                                          timeSeries.getTimeValues().subList(0, maxValues));
+      }
+      result.add(timeSeries);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the key for caching the results of the given query, which is the same for queries that only differ in
+   * time range.
+   */
+  private String getCacheKey(MetricDataQuery query) {
+    return new StringBuilder()
+      .append(query.getResolution()).append('|')
+      .append(MAP_JOINER.join(new TreeMap<>(query.getMetrics()))).append('|')
+      .append(MAP_JOINER.join(new TreeMap<>(query.getSliceByTags()))).append('|')
+      .append(Joiner.on(',').join(query.getGroupByTags()))
+      .toString();
+  }
+
+  /**
+   * Adds the time values of the given time series that are in the given time range to the given map.
+   *
+   * @param startTs start of the time range, inclusive
+   * @param endTs end of the time range, exclusive
+   */
+  private void addTimeValues(Map<Map.Entry<String, Map<String, String>>, List<TimeValue>> result,
+                             Collection<MetricTimeSeries> series, long startTs, long endTs) {
+    for (MetricTimeSeries timeSeries : series) {
+      Map.Entry<String, Map<String, String>> seriesKey = Maps.immutableEntry(timeSeries.getMetricName(),
+                                                                             timeSeries.getTagValues());
+      List<TimeValue> timeValues = result.get(seriesKey);
+      for (TimeValue timeValue : timeSeries.getTimeValues()) {
+        if (timeValue.getTimestamp() < startTs || timeValue.getTimestamp() >= endTs) {
+          continue;
+        }
+        if (timeValues == null) {
+          timeValues = Lists.newArrayList();
+          result.put(seriesKey, timeValues);
+        }
+        timeValues.add(timeValue);
+      }
+    }
+  }
+
+  private Collection<MetricTimeSeries> toTimeSeries(Map<Map.Entry<String, Map<String, String>>,
+                                                           List<TimeValue>> series) {
+    List<MetricTimeSeries> result = Lists.newArrayListWithCapacity(series.size());
+    for (Map.Entry<Map.Entry<String, Map<String, String>>, List<TimeValue>> entry : series.entrySet()) {
+      result.add(new MetricTimeSeries(entry.getKey().getKey(), entry.getKey().getValue(), entry.getValue()));
+    }
+    return result;
+  }
+
+  /**
+   * The cached results of a query for the time range from {@code startTs}, inclusive, to {@code endTs}, exclusive.
+   * The {@code createTime} is the time when the results were first queried from the {@link MetricStore}.
+   */
+  private static final class CachedResult {
+    private final long startTs;
+    private final long endTs;
+    private final long createTime;
+    private final Collection<MetricTimeSeries> series;
+
+    private CachedResult(long startTs, long endTs, long createTime, Collection<MetricTimeSeries> series) {
+      this.startTs = startTs;
+      this.endTs = endTs;
+      this.createTime = createTime;
+      this.series = ImmutableList.copyOf(series);
+    }
+  }
+}
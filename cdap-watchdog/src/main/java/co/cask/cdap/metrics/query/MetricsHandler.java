@@ -21,20 +21,28 @@ import co.cask.cdap.api.dataset.lib.cube.Interpolator;
 import co.cask.cdap.api.dataset.lib.cube.Interpolators;
 import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.api.metrics.MetricDataQuery;
+import co.cask.cdap.api.metrics.MetricQueryInterval;
 import co.cask.cdap.api.metrics.MetricSearchQuery;
 import co.cask.cdap.api.metrics.MetricStore;
 import co.cask.cdap.api.metrics.MetricTimeSeries;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.utils.TimeMathParser;
+import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.MetricQueryRequest;
 import co.cask.cdap.proto.MetricQueryResult;
 import co.cask.cdap.proto.MetricTagValue;
 import co.cask.http.AbstractHttpHandler;
+import co.cask.http.HandlerContext;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -44,6 +52,7 @@ import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
@@ -54,6 +63,11 @@ import org.slf4j.LoggerFactory;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.ws.rs.POST;
@@ -79,10 +93,16 @@ public class MetricsHandler extends AbstractHttpHandler {
   private static final String PARAM_MAX_INTERPOLATE_GAP = "maxInterpolateGap";
   private static final String PARAM_AGGREGATE = "aggregate";
   private static final String PARAM_AUTO_RESOLUTION = "auto";
+  private static final String PARAM_STITCH = "stitch";
+  private static final String PARAM_FUNCTION = "function";
 
   public static final String ANY_TAG_VALUE = "*";
 
   private final MetricStore metricStore;
+  private final MetricQueryCache queryCache;
+  private final int batchThreads;
+  private volatile MetricsContext metricsContext;
+  private ExecutorService batchExecutor;
 
   private static final Map<String, String> tagNameToHuman;
   private static final Map<String, String> humanToTagName;
@@ -127,8 +147,37 @@ public class MetricsHandler extends AbstractHttpHandler {
   }
 
   @Inject
-  public MetricsHandler(MetricStore metricStore) {
+  public MetricsHandler(CConfiguration cConf, MetricStore metricStore) {
     this.metricStore = metricStore;
+    this.queryCache = new MetricQueryCache(metricStore, cConf.getInt(Constants.Metrics.QUERY_CACHE_SIZE, 0),
+                                           cConf.getLong(Constants.Metrics.QUERY_CACHE_SETTLE_SECONDS, 60L));
+    this.batchThreads = cConf.getInt(Constants.Metrics.QUERY_BATCH_THREADS, 10);
+    this.metricsContext = new NoopMetricsContext();
+  }
+
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsContext = metricsCollectionService.getContext(
+      ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, Id.Namespace.SYSTEM.getId(),
+                      Constants.Metrics.Tag.COMPONENT, Constants.Service.METRICS));
+    queryCache.setMetricsContext(metricsContext);
+  }
+
+  @Override
+  public void init(HandlerContext context) {
+    super.init(context);
+    if (batchThreads > 1) {
+      batchExecutor = Executors.newFixedThreadPool(batchThreads,
+                                                   Threads.createDaemonThreadFactory("metrics-batch-query-%d"));
+    }
+  }
+
+  @Override
+  public void destroy(HandlerContext context) {
+    if (batchExecutor != null) {
+      batchExecutor.shutdownNow();
+    }
+    super.destroy(context);
   }
 
   @POST
@@ -200,12 +249,11 @@ public class MetricsHandler extends AbstractHttpHandler {
 
         LOG.trace("Received Queries {}", queries);
 
-        Map<String, MetricQueryResult> queryFinalResponse = Maps.newHashMap();
+        Map<String, MetricQueryRequest> queryRequests = Maps.newHashMap();
         for (Map.Entry<String, QueryRequestFormat> query : queries.entrySet()) {
-          MetricQueryRequest queryRequest = getQueryRequestFromFormat(query.getValue());
-          queryFinalResponse.put(query.getKey(), executeQuery(queryRequest));
+          queryRequests.put(query.getKey(), getQueryRequestFromFormat(query.getValue()));
         }
-        responder.sendJson(HttpResponseStatus.OK, queryFinalResponse);
+        responder.sendJson(HttpResponseStatus.OK, executeQueries(queryRequests));
       } catch (IllegalArgumentException e) {
         LOG.warn("Invalid request", e);
         responder.sendString(HttpResponseStatus.BAD_REQUEST, e.getMessage());
@@ -218,6 +266,48 @@ public class MetricsHandler extends AbstractHttpHandler {
     }
   }
 
+  /**
+   * Executes the given queries, in parallel if there is more than one.
+   *
+   * @return a map from the key of each query to its result
+   */
+  private Map<String, MetricQueryResult> executeQueries(Map<String, MetricQueryRequest> queryRequests)
+    throws Exception {
+    Map<String, MetricQueryResult> results = Maps.newHashMap();
+    if (batchExecutor == null || queryRequests.size() <= 1) {
+      for (Map.Entry<String, MetricQueryRequest> query : queryRequests.entrySet()) {
+        results.put(query.getKey(), executeQuery(query.getValue()));
+      }
+      return results;
+    }
+
+    Map<String, Future<MetricQueryResult>> futures = Maps.newHashMap();
+    try {
+      for (final Map.Entry<String, MetricQueryRequest> query : queryRequests.entrySet()) {
+        futures.put(query.getKey(), batchExecutor.submit(new Callable<MetricQueryResult>() {
+          @Override
+          public MetricQueryResult call() throws Exception {
+            return executeQuery(query.getValue());
+          }
+        }));
+      }
+      for (Map.Entry<String, Future<MetricQueryResult>> future : futures.entrySet()) {
+        try {
+          results.put(future.getKey(), future.getValue().get());
+        } catch (ExecutionException e) {
+          Throwables.propagateIfPossible(e.getCause(), Exception.class);
+          throw e;
+        }
+      }
+      return results;
+    } finally {
+      // No need to finish the other queries if one of them failed
+      for (Future<MetricQueryResult> future : futures.values()) {
+        future.cancel(true);
+      }
+    }
+  }
+
   private MetricQueryRequest getQueryRequestFromFormat(QueryRequestFormat queryRequestFormat) {
     Map<String, List<String>> queryParams = Maps.newHashMap();
 
@@ -228,6 +318,7 @@ public class MetricsHandler extends AbstractHttpHandler {
     MetricQueryRequest queryRequest = new MetricQueryRequest(queryRequestFormat.getTags(),
                                                  queryRequestFormat.getMetrics(), queryRequestFormat.getGroupBy());
     setTimeRangeInQueryRequest(queryRequest, queryParams);
+    setFunctionInQueryRequest(queryRequest, queryParams);
     return queryRequest;
   }
 
@@ -247,10 +338,27 @@ public class MetricsHandler extends AbstractHttpHandler {
   private MetricQueryResult executeQuery(HttpRequest request, Map<String, String> sliceByTags,
                                          List<String> groupByTags, List<String> metrics) throws Exception {
     MetricQueryRequest queryRequest = new MetricQueryRequest(sliceByTags, metrics, groupByTags);
-    setTimeRangeInQueryRequest(queryRequest, new QueryStringDecoder(request.getUri()).getParameters());
+    Map<String, List<String>> queryParams = new QueryStringDecoder(request.getUri()).getParameters();
+    setTimeRangeInQueryRequest(queryRequest, queryParams);
+    setFunctionInQueryRequest(queryRequest, queryParams);
     return executeQuery(queryRequest);
   }
 
+  /**
+   * Sets the aggregation function of the query, which is needed to query metrics of type
+   * {@link co.cask.cdap.api.metrics.MetricType#DISTINCT} or {@link co.cask.cdap.api.metrics.MetricType#DISTRIBUTION}.
+   */
+  private void setFunctionInQueryRequest(MetricQueryRequest request, Map<String, List<String>> queryParams) {
+    if (queryParams.containsKey(PARAM_FUNCTION)) {
+      String function = queryParams.get(PARAM_FUNCTION).get(0);
+      try {
+        request.setFunction(AggregationFunction.valueOf(function.toUpperCase()));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown aggregation function: " + function, e);
+      }
+    }
+  }
+
   private void setTimeRangeInQueryRequest(MetricQueryRequest request, Map<String, List<String>> queryTimeParams) {
     Long start =
       queryTimeParams.containsKey(PARAM_START_TIME) ?
@@ -264,8 +372,17 @@ public class MetricsHandler extends AbstractHttpHandler {
       queryTimeParams.containsKey(PARAM_AGGREGATE) && queryTimeParams.get(PARAM_AGGREGATE).get(0).equals("true") ||
         ((start == null) && (end == null));
 
-    Integer resolution = queryTimeParams.containsKey(PARAM_RESOLUTION) ?
-      getResolution(queryTimeParams.get(PARAM_RESOLUTION).get(0), start, end) : 1;
+    boolean stitched =
+      queryTimeParams.containsKey(PARAM_STITCH) && queryTimeParams.get(PARAM_STITCH).get(0).equals("true");
+
+    // For stitched queries the resolution is the finest one to use, so with auto resolution, all resolutions are used
+    Integer resolution = 1;
+    if (queryTimeParams.containsKey(PARAM_RESOLUTION)) {
+      String resolutionParam = queryTimeParams.get(PARAM_RESOLUTION).get(0);
+      if (!stitched || !resolutionParam.equals(PARAM_AUTO_RESOLUTION)) {
+        resolution = getResolution(resolutionParam, start, end);
+      }
+    }
 
     Interpolator interpolator = null;
     if (queryTimeParams.containsKey(PARAM_INTERPOLATE)) {
@@ -291,7 +408,7 @@ public class MetricsHandler extends AbstractHttpHandler {
     if (aggregate) {
       request.setTimeRange(0L, 0L, 1, Integer.MAX_VALUE, null);
     } else {
-      request.setTimeRange(start, end, count, resolution, interpolator);
+      request.setTimeRange(start, end, count, resolution, interpolator, stitched);
     }
   }
 
@@ -336,10 +453,22 @@ public class MetricsHandler extends AbstractHttpHandler {
 
     MetricDataQuery query = new MetricDataQuery(timeRange.getStart(), timeRange.getEnd(),
                                                 timeRange.getResolutionInSeconds(),
-                                                timeRange.getCount(), toMetrics(queryRequest.getMetrics()),
+                                                timeRange.getCount(),
+                                                toMetrics(queryRequest.getMetrics(), queryRequest.getFunction()),
                                                 tagsSliceBy, transformGroupByTags(queryRequest.getGroupBy()),
                                                 timeRange.getInterpolate());
-    Collection<MetricTimeSeries> queryResult = metricStore.query(query);
+    long startNanos = System.nanoTime();
+    Collection<MetricTimeSeries> queryResult;
+    List<MetricQueryInterval> queryPlan = null;
+    if (timeRange.isStitched()) {
+      queryPlan = metricStore.planStitchedQuery(query);
+      queryResult = metricStore.query(query, queryPlan);
+    } else {
+      queryResult = queryCache.query(query);
+    }
+    metricsContext.increment("metrics.query.count", 1);
+    metricsContext.increment("metrics.query.latency.ms",
+                             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
 
     long endTime = timeRange.getEnd();
     if (timeRange.getResolutionInSeconds() == Integer.MAX_VALUE && endTime == 0) {
@@ -347,14 +476,14 @@ public class MetricsHandler extends AbstractHttpHandler {
       endTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
     }
 
-    return decorate(queryResult, timeRange.getStart(), endTime, timeRange.getResolutionInSeconds());
+    return decorate(queryResult, timeRange.getStart(), endTime, timeRange.getResolutionInSeconds(), queryPlan);
   }
 
-  private Map<String, AggregationFunction> toMetrics(List<String> metrics) {
+  private Map<String, AggregationFunction> toMetrics(List<String> metrics, AggregationFunction function) {
     Map<String, AggregationFunction> result = Maps.newHashMap();
     for (String metric : metrics) {
       // todo: figure out metric type
-      result.put(metric, AggregationFunction.SUM);
+      result.put(metric, function);
     }
     return result;
   }
@@ -467,7 +596,7 @@ public class MetricsHandler extends AbstractHttpHandler {
   }
 
   private MetricQueryResult decorate(Collection<MetricTimeSeries> series, long startTs, long endTs,
-                                     int resolution) {
+                                     int resolution, @Nullable List<MetricQueryInterval> queryPlan) {
     MetricQueryResult.TimeSeries[] serieses = new MetricQueryResult.TimeSeries[series.size()];
     int i = 0;
     for (MetricTimeSeries timeSeries : series) {
@@ -475,7 +604,17 @@ public class MetricsHandler extends AbstractHttpHandler {
       serieses[i++] = new MetricQueryResult.TimeSeries(timeSeries.getMetricName(),
                                                        tagNamesToHuman(timeSeries.getTagValues()), timeValues);
     }
-    return new MetricQueryResult(startTs, endTs, serieses, resolution);
+    if (queryPlan == null) {
+      return new MetricQueryResult(startTs, endTs, serieses, resolution);
+    }
+
+    MetricQueryResult.QueryInterval[] intervals = new MetricQueryResult.QueryInterval[queryPlan.size()];
+    i = 0;
+    for (MetricQueryInterval interval : queryPlan) {
+      intervals[i++] = new MetricQueryResult.QueryInterval(interval.getResolution(), interval.getStartTs(),
+                                                           interval.getEndTs(), interval.getBucketCount());
+    }
+    return new MetricQueryResult(startTs, endTs, serieses, resolution, intervals);
   }
 
   private Map<String, String> tagNamesToHuman(Map<String, String> tagValues) {
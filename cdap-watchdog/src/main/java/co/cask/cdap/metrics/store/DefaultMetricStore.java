@@ -16,7 +16,6 @@
 
 package co.cask.cdap.metrics.store;
 
-import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
@@ -27,20 +26,22 @@ import co.cask.cdap.api.dataset.lib.cube.Measurement;
 import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
 import co.cask.cdap.api.metrics.MetricDataQuery;
 import co.cask.cdap.api.metrics.MetricDeleteQuery;
+import co.cask.cdap.api.metrics.MetricQueryInterval;
 import co.cask.cdap.api.metrics.MetricSearchQuery;
 import co.cask.cdap.api.metrics.MetricStore;
 import co.cask.cdap.api.metrics.MetricTimeSeries;
-import co.cask.cdap.api.metrics.MetricType;
 import co.cask.cdap.api.metrics.MetricValue;
 import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.dataset2.lib.cube.Aggregation;
 import co.cask.cdap.data2.dataset2.lib.cube.AggregationAlias;
 import co.cask.cdap.data2.dataset2.lib.cube.DefaultAggregation;
 import co.cask.cdap.data2.dataset2.lib.cube.DefaultCube;
 import co.cask.cdap.data2.dataset2.lib.cube.FactTableSupplier;
+import co.cask.cdap.data2.dataset2.lib.cube.ResolutionInterval;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
@@ -51,6 +52,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -58,6 +60,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -85,7 +90,7 @@ public class DefaultMetricStore implements MetricStore {
                                                          Constants.Metrics.Tag.WORKFLOW_RUN_ID)));
 
   private final int resolutions[];
-  private final Supplier<Cube> cube;
+  private final Supplier<DefaultCube> cube;
   private MetricsContext metricsContext;
 
 
@@ -198,13 +203,19 @@ public class DefaultMetricStore implements MetricStore {
   }
 
   @Inject
-  public DefaultMetricStore(final MetricDatasetFactory dsFactory) {
+  public DefaultMetricStore(final MetricDatasetFactory dsFactory, CConfiguration cConf) {
     // 1 sec, 1 min, 1 hour and "all time totals"
-    this(dsFactory, new int[] {1, 60, 3600, TOTALS_RESOLUTION});
+    this(dsFactory, new int[] {1, 60, 3600, TOTALS_RESOLUTION}, cConf.getInt(Constants.Metrics.QUERY_SCAN_THREADS),
+         getRetention(cConf, new int[] {1, 60, 3600}));
   }
 
   // NOTE: should never be used apart from data migration during cdap upgrade
   public DefaultMetricStore(final MetricDatasetFactory dsFactory, final int resolutions[]) {
+    this(dsFactory, resolutions, 0, ImmutableMap.<Integer, Long>of());
+  }
+
+  private DefaultMetricStore(final MetricDatasetFactory dsFactory, final int resolutions[], final int scanThreads,
+                             final Map<Integer, Long> retentionSeconds) {
     this.resolutions = resolutions;
     final FactTableSupplier factTableSupplier = new FactTableSupplier() {
       @Override
@@ -213,16 +224,40 @@ public class DefaultMetricStore implements MetricStore {
         return dsFactory.getOrCreateFactTable(resolution);
       }
     };
-    this.cube = Suppliers.memoize(new Supplier<Cube>() {
+    this.cube = Suppliers.memoize(new Supplier<DefaultCube>() {
       @Override
-      public Cube get() {
+      public DefaultCube get() {
         DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS);
         cube.setMetricsCollector(metricsContext);
+        cube.setRetention(retentionSeconds);
+        if (scanThreads > 0) {
+          // Threads are shared by all queries, and only kept while queries are executed
+          ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            scanThreads, scanThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            Threads.createDaemonThreadFactory("metrics-query-scan-%d"));
+          executor.allowCoreThreadTimeOut(true);
+          cube.setScanExecutor(executor, scanThreads);
+        }
         return cube;
       }
     });
   }
 
+  /**
+   * Returns the number of seconds the data of each of the given resolutions is retained for, as configured for the
+   * TTL of its fact table. Resolutions without a TTL are not in the returned map.
+   */
+  private static Map<Integer, Long> getRetention(CConfiguration cConf, int[] resolutions) {
+    Map<Integer, Long> retention = Maps.newHashMap();
+    for (int resolution : resolutions) {
+      long ttl = cConf.getLong(Constants.Metrics.RETENTION_SECONDS + "." + resolution + ".seconds", -1);
+      if (ttl > 0) {
+        retention.put(resolution, ttl);
+      }
+    }
+    return retention;
+  }
+
   @Override
   public void setMetricsContext(MetricsContext metricsContext) {
     this.metricsContext = metricsContext;
@@ -242,7 +277,8 @@ public class DefaultMetricStore implements MetricStore {
       // todo improve this logic?
       for (MetricValue metric : metricValue.getMetrics()) {
         String measureName = (scope == null ? "system." : scope + ".") + metric.getName();
-        MeasureType type = metric.getType() == MetricType.COUNTER ? MeasureType.COUNTER : MeasureType.GAUGE;
+        // MetricType and MeasureType have the same constants
+        MeasureType type = MeasureType.valueOf(metric.getType().name());
         metrics.add(new Measurement(measureName, type, metric.getValue()));
       }
 
@@ -256,7 +292,28 @@ public class DefaultMetricStore implements MetricStore {
 
   @Override
   public Collection<MetricTimeSeries> query(MetricDataQuery query) {
-    Collection<TimeSeries> cubeResult = cube.get().query(buildCubeQuery(query));
+    return toMetricTimeSeries(cube.get().query(buildCubeQuery(query)));
+  }
+
+  @Override
+  public List<MetricQueryInterval> planStitchedQuery(MetricDataQuery query) {
+    List<MetricQueryInterval> result = Lists.newArrayList();
+    for (ResolutionInterval interval : cube.get().planStitchedQuery(buildCubeQuery(query))) {
+      result.add(new MetricQueryInterval(interval.getResolution(), interval.getStartTs(), interval.getEndTs()));
+    }
+    return result;
+  }
+
+  @Override
+  public Collection<MetricTimeSeries> query(MetricDataQuery query, List<MetricQueryInterval> plan) {
+    List<ResolutionInterval> intervals = Lists.newArrayListWithCapacity(plan.size());
+    for (MetricQueryInterval interval : plan) {
+      intervals.add(new ResolutionInterval(interval.getResolution(), interval.getStartTs(), interval.getEndTs()));
+    }
+    return toMetricTimeSeries(cube.get().query(buildCubeQuery(query), intervals));
+  }
+
+  private Collection<MetricTimeSeries> toMetricTimeSeries(Collection<TimeSeries> cubeResult) {
     List<MetricTimeSeries> result = Lists.newArrayList();
     for (TimeSeries timeSeries : cubeResult) {
       result.add(new MetricTimeSeries(timeSeries.getMeasureName(),
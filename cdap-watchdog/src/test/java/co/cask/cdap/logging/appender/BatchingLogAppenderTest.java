@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+import co.cask.cdap.common.logging.LoggingContext;
+import co.cask.cdap.common.logging.logback.TestLoggingContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link BatchingLogAppender}.
+ */
+public class BatchingLogAppenderTest {
+
+  private static final LoggingContext LOGGING_CONTEXT = new TestLoggingContext("ns", "app", "run", "instance");
+
+  @Test(timeout = 20000)
+  public void testBatching() throws Exception {
+    RecordingAppender appender = new RecordingAppender(100, 10, BatchingLogAppender.OverflowPolicy.BLOCK, 1,
+                                                       Level.OFF);
+    appender.start();
+    try {
+      // Hold up the publisher, so that the following messages queue up
+      appender.append(createMessage(Level.INFO, "first"));
+      appender.publishStarted.await();
+
+      for (int i = 0; i < 25; i++) {
+        appender.append(createMessage(Level.INFO, "message" + i));
+      }
+      appender.publishBlocked.countDown();
+    } finally {
+      appender.stop();
+    }
+
+    // The queued messages are published in batches of at most the batch size, in order
+    Assert.assertEquals(26, appender.messages.size());
+    Assert.assertEquals("first", appender.messages.get(0).getMessage());
+    for (int i = 0; i < 25; i++) {
+      Assert.assertEquals("message" + i, appender.messages.get(i + 1).getMessage());
+    }
+    Assert.assertEquals(1, (int) appender.batchSizes.get(0));
+    for (int batchSize : appender.batchSizes) {
+      Assert.assertTrue(batchSize <= 10);
+    }
+    Assert.assertTrue(appender.batchSizes.size() < 26);
+    Assert.assertEquals(0, appender.getDroppedCount());
+  }
+
+  @Test(timeout = 20000)
+  public void testDropDebugFirst() throws Exception {
+    RecordingAppender appender = new RecordingAppender(10, 10, BatchingLogAppender.OverflowPolicy.DROP_DEBUG_FIRST,
+                                                       1, Level.OFF);
+    appender.start();
+    try {
+      appender.append(createMessage(Level.INFO, "first"));
+      appender.publishStarted.await();
+
+      // Fill the queue up to the threshold
+      for (int i = 0; i < 8; i++) {
+        appender.append(createMessage(Level.DEBUG, "debug" + i));
+      }
+      // Beyond the threshold, only debug messages are dropped
+      appender.append(createMessage(Level.DEBUG, "dropped"));
+      appender.append(createMessage(Level.TRACE, "dropped"));
+      appender.append(createMessage(Level.INFO, "info"));
+      Assert.assertEquals(2, appender.getDroppedCount());
+      appender.publishBlocked.countDown();
+    } finally {
+      appender.stop();
+    }
+
+    Assert.assertEquals(10, appender.messages.size());
+    Assert.assertEquals("info", appender.messages.get(9).getMessage());
+  }
+
+  @Test(timeout = 20000)
+  public void testSample() throws Exception {
+    RecordingAppender appender = new RecordingAppender(10, 10, BatchingLogAppender.OverflowPolicy.SAMPLE,
+                                                       3, Level.OFF);
+    appender.start();
+    try {
+      appender.append(createMessage(Level.INFO, "first"));
+      appender.publishStarted.await();
+
+      for (int i = 0; i < 8; i++) {
+        appender.append(createMessage(Level.INFO, "info" + i));
+      }
+      // Beyond the threshold, one out of three messages below WARN is kept
+      for (int i = 0; i < 3; i++) {
+        appender.append(createMessage(Level.INFO, "sampled" + i));
+      }
+      Assert.assertEquals(2, appender.getDroppedCount());
+      // Messages of WARN and above are always kept
+      appender.append(createMessage(Level.WARN, "warn"));
+      // A sampled message is dropped if the queue is full
+      appender.append(createMessage(Level.INFO, "sampled3"));
+      Assert.assertEquals(3, appender.getDroppedCount());
+      appender.publishBlocked.countDown();
+    } finally {
+      appender.stop();
+    }
+
+    Assert.assertEquals(11, appender.messages.size());
+    Assert.assertEquals("sampled0", appender.messages.get(9).getMessage());
+    Assert.assertEquals("warn", appender.messages.get(10).getMessage());
+  }
+
+  @Test(timeout = 20000)
+  public void testCallerData() throws Exception {
+    RecordingAppender appender = new RecordingAppender(10, 10, BatchingLogAppender.OverflowPolicy.BLOCK,
+                                                       1, Level.WARN);
+    appender.start();
+    appender.publishBlocked.countDown();
+    try {
+      appender.append(createMessage(Level.INFO, "info"));
+      appender.append(createMessage(Level.WARN, "warn"));
+    } finally {
+      appender.stop();
+    }
+
+    // Caller data is only captured for messages at or above the configured level
+    Assert.assertFalse(appender.messages.get(0).hasCallerData());
+    Assert.assertTrue(appender.messages.get(1).hasCallerData());
+  }
+
+  @Test(timeout = 20000)
+  public void testAppendGuards() throws Exception {
+    final RecordingAppender appender = new RecordingAppender(10, 10, BatchingLogAppender.OverflowPolicy.BLOCK,
+                                                             1, Level.OFF);
+    // A filter that logs through the same appender, and denies some messages
+    appender.addFilter(new Filter<ILoggingEvent>() {
+      @Override
+      public FilterReply decide(ILoggingEvent event) {
+        appender.append(createMessage(Level.INFO, "reentrant"));
+        return event.getMessage().equals("denied") ? FilterReply.DENY : FilterReply.NEUTRAL;
+      }
+    });
+    appender.publishBlocked.countDown();
+
+    appender.append(createMessage(Level.INFO, "not started"));
+    appender.start();
+    try {
+      appender.append(createMessage(Level.INFO, "denied"));
+      appender.append(createMessage(Level.INFO, "accepted"));
+    } finally {
+      appender.stop();
+    }
+
+    Assert.assertEquals(1, appender.messages.size());
+    Assert.assertEquals("accepted", appender.messages.get(0).getMessage());
+  }
+
+  private LoggingEvent createMessage(Level level, String message) {
+    LoggingEvent event = new LoggingEvent(getClass().getName(), new LoggerContext().getLogger("test"),
+                                          level, message, null, null);
+    event.setThreadName("thread");
+    return event;
+  }
+
+  /**
+   * A {@link BatchingLogAppender} that records the published messages. The first batch is held up until
+   * {@link #publishBlocked} is released.
+   */
+  private static final class RecordingAppender extends BatchingLogAppender {
+
+    private final List<LogMessage> messages = new CopyOnWriteArrayList<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final CountDownLatch publishStarted = new CountDownLatch(1);
+    private final CountDownLatch publishBlocked = new CountDownLatch(1);
+
+    RecordingAppender(int queueSize, int batchSize, OverflowPolicy overflowPolicy, int sampleRate,
+                      Level callerDataLevel) {
+      super(queueSize, batchSize, overflowPolicy, sampleRate, callerDataLevel);
+      setName("recording");
+    }
+
+    void append(LoggingEvent event) {
+      doAppend(new LogMessage(event, LOGGING_CONTEXT));
+    }
+
+    @Override
+    protected void publish(List<LogMessage> batch) throws Exception {
+      publishStarted.countDown();
+      publishBlocked.await(10, TimeUnit.SECONDS);
+      messages.addAll(batch);
+      batchSizes.add(batch.size());
+    }
+  }
+}
@@ -16,6 +16,8 @@
 
 package co.cask.cdap.logging.appender.file;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.LoggingEvent;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
@@ -32,18 +34,22 @@ import co.cask.cdap.data2.security.UnsupportedUGIProvider;
 import co.cask.cdap.logging.LoggingConfiguration;
 import co.cask.cdap.logging.appender.LogAppender;
 import co.cask.cdap.logging.appender.LogAppenderInitializer;
+import co.cask.cdap.logging.appender.LogMessage;
 import co.cask.cdap.logging.appender.LoggingTester;
 import co.cask.cdap.logging.context.FlowletLoggingContext;
 import co.cask.cdap.logging.filter.Filter;
 import co.cask.cdap.logging.guice.LoggingModules;
 import co.cask.cdap.logging.read.FileLogReader;
 import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.read.LogOffset;
 import co.cask.cdap.logging.read.ReadRange;
+import co.cask.cdap.logging.write.FileMetaDataManager;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
 import co.cask.cdap.security.authorization.AuthorizationTestModule;
 import co.cask.tephra.TransactionManager;
 import co.cask.tephra.runtime.TransactionModules;
+import com.google.common.base.Strings;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -58,6 +64,7 @@ import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -68,6 +75,12 @@ public class TestFileLogging {
   @ClassRule
   public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
 
+  // Logs written with only a few distinct timestamps, each spread over several blocks and some over two files
+  private static final LoggingContext SAME_TIME_CONTEXT =
+    new FlowletLoggingContext("TFL_NS_1", "APP_1", "FLOW_2", "FLOWLET_1", "RUN1", "INSTANCE1");
+  private static final int SAME_TIME_EVENTS = 400;
+  private static final int EVENTS_PER_MILLIS = 10;
+
   private static Injector injector;
   private static TransactionManager txManager;
 
@@ -77,6 +90,7 @@ public class TestFileLogging {
     final CConfiguration cConf = CConfiguration.create();
     cConf.set(Constants.CFG_LOCAL_DATA_DIR, TMP_FOLDER.newFolder().getAbsolutePath());
     cConf.setInt(LoggingConfiguration.LOG_MAX_FILE_SIZE_BYTES, 20 * 1024);
+    cConf.setInt(LoggingConfiguration.LOG_FILE_SYNC_INTERVAL_BYTES, 4 * 1024);
     String logBaseDir = cConf.get(LoggingConfiguration.LOG_BASE_DIR) + "/" + TestFileLogging.class.getSimpleName();
     cConf.set(LoggingConfiguration.LOG_BASE_DIR, logBaseDir);
 
@@ -110,6 +124,18 @@ public class TestFileLogging {
     LoggingTester loggingTester = new LoggingTester();
     loggingTester.generateLogs(logger, new FlowletLoggingContext("TFL_NS_1", "APP_1", "FLOW_1", "FLOWLET_1",
                                                                  "RUN1", "INSTANCE1"));
+
+    // Forty milliseconds of logs. Files are keyed by the time of their first event, so a file must not hold a whole
+    // millisecond
+    ch.qos.logback.classic.Logger sameTimeLogger = (ch.qos.logback.classic.Logger) logger;
+    long timestamp = System.currentTimeMillis();
+    for (int i = 0; i < SAME_TIME_EVENTS; i++) {
+      LoggingEvent event = new LoggingEvent(TestFileLogging.class.getName(), sameTimeLogger, Level.INFO,
+                                            "Same time log message {} " + Strings.repeat("x", 100), null,
+                                            new Object[] { i });
+      event.setTimeStamp(timestamp + i / EVENTS_PER_MILLIS);
+      appender.doAppend(new LogMessage(event, SAME_TIME_CONTEXT));
+    }
     appender.stop();
   }
 
@@ -145,61 +171,94 @@ public class TestFileLogging {
     List<LogEvent> allEvents = logCallback1.getEvents();
     Assert.assertEquals(60, allEvents.size());
 
-    LoggingTester.LogCallback logCallback2 = new LoggingTester.LogCallback();
-    logTail.getLog(loggingContext, allEvents.get(10).getLoggingEvent().getTimeStamp(),
-                   allEvents.get(15).getLoggingEvent().getTimeStamp(), Filter.EMPTY_FILTER, logCallback2);
-    List<LogEvent> events = logCallback2.getEvents();
-    Assert.assertEquals(5, events.size());
-    Assert.assertEquals(allEvents.get(10).getLoggingEvent().getFormattedMessage(),
-                        events.get(0).getLoggingEvent().getFormattedMessage());
-    Assert.assertEquals(allEvents.get(14).getLoggingEvent().getFormattedMessage(),
-                        events.get(4).getLoggingEvent().getFormattedMessage());
-
-    LoggingTester.LogCallback logCallback3 = new LoggingTester.LogCallback();
-    logTail.getLog(loggingContext, allEvents.get(0).getLoggingEvent().getTimeStamp(),
-                   allEvents.get(59).getLoggingEvent().getTimeStamp(), Filter.EMPTY_FILTER, logCallback3);
-    events = logCallback3.getEvents();
-    Assert.assertEquals(59, events.size());
-    Assert.assertEquals(allEvents.get(0).getLoggingEvent().getFormattedMessage(),
-                        events.get(0).getLoggingEvent().getFormattedMessage());
-    Assert.assertEquals(allEvents.get(58).getLoggingEvent().getFormattedMessage(),
-                        events.get(58).getLoggingEvent().getFormattedMessage());
-
-    LoggingTester.LogCallback logCallback4 = new LoggingTester.LogCallback();
-    logTail.getLog(loggingContext, allEvents.get(12).getLoggingEvent().getTimeStamp(),
-                   allEvents.get(41).getLoggingEvent().getTimeStamp(), Filter.EMPTY_FILTER, logCallback4);
-    events = logCallback4.getEvents();
-    Assert.assertEquals(29, events.size());
-    Assert.assertEquals(allEvents.get(12).getLoggingEvent().getFormattedMessage(),
-                        events.get(0).getLoggingEvent().getFormattedMessage());
-    Assert.assertEquals(allEvents.get(40).getLoggingEvent().getFormattedMessage(),
-                        events.get(28).getLoggingEvent().getFormattedMessage());
-
-    LoggingTester.LogCallback logCallback5 = new LoggingTester.LogCallback();
-    logTail.getLog(loggingContext, allEvents.get(22).getLoggingEvent().getTimeStamp(),
-                   allEvents.get(38).getLoggingEvent().getTimeStamp(), Filter.EMPTY_FILTER, logCallback5);
-    events = logCallback5.getEvents();
-    Assert.assertEquals(16, events.size());
-    Assert.assertEquals(allEvents.get(22).getLoggingEvent().getFormattedMessage(),
-                        events.get(0).getLoggingEvent().getFormattedMessage());
-    Assert.assertEquals(allEvents.get(37).getLoggingEvent().getFormattedMessage(),
-                        events.get(15).getLoggingEvent().getFormattedMessage());
-
-    LoggingTester.LogCallback logCallback6 = new LoggingTester.LogCallback();
-    logTail.getLog(loggingContext, allEvents.get(41).getLoggingEvent().getTimeStamp(),
-                   allEvents.get(59).getLoggingEvent().getTimeStamp(), Filter.EMPTY_FILTER, logCallback6);
-    events = logCallback6.getEvents();
-    Assert.assertEquals(18, events.size());
-    Assert.assertEquals(allEvents.get(41).getLoggingEvent().getFormattedMessage(),
-                        events.get(0).getLoggingEvent().getFormattedMessage());
-    Assert.assertEquals(allEvents.get(58).getLoggingEvent().getFormattedMessage(),
-                        events.get(17).getLoggingEvent().getFormattedMessage());
+    assertGetLog(logTail, loggingContext, allEvents, 10, 15);
+    assertGetLog(logTail, loggingContext, allEvents, 0, 59);
+    assertGetLog(logTail, loggingContext, allEvents, 12, 41);
+    assertGetLog(logTail, loggingContext, allEvents, 22, 38);
+    assertGetLog(logTail, loggingContext, allEvents, 41, 59);
 
     // Try with null run id, should get all logs for FLOW_1
     LoggingContext loggingContext1 = new FlowletLoggingContext("TFL_NS_1", "APP_1", "FLOW_1", "", null, "INSTANCE1");
     LoggingTester.LogCallback logCallback7 = new LoggingTester.LogCallback();
     logTail.getLog(loggingContext1, 0, Long.MAX_VALUE, Filter.EMPTY_FILTER, logCallback7);
-    events = logCallback7.getEvents();
+    List<LogEvent> events = logCallback7.getEvents();
     Assert.assertEquals(100, events.size());
   }
+
+  @Test
+  public void testSameTimestamp() throws Exception {
+    // The events of the same millisecond are split across files
+    FileMetaDataManager fileMetaDataManager = injector.getInstance(FileMetaDataManager.class);
+    Assert.assertTrue(fileMetaDataManager.listFiles(SAME_TIME_CONTEXT).size() > 1);
+
+    FileLogReader logReader = injector.getInstance(FileLogReader.class);
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < SAME_TIME_EVENTS; i++) {
+      expected.add(i);
+    }
+
+    // Page backward from the end, then forward from the start, every event must be read exactly once
+    List<Integer> prev = new ArrayList<>();
+    ReadRange readRange = ReadRange.LATEST;
+    while (true) {
+      LoggingTester.LogCallback logCallback = new LoggingTester.LogCallback();
+      logReader.getLogPrev(SAME_TIME_CONTEXT, readRange, 7, Filter.EMPTY_FILTER, logCallback);
+      if (logCallback.getCount() == 0) {
+        break;
+      }
+      prev.addAll(0, getMessageIds(logCallback.getEvents()));
+      readRange = ReadRange.createToRange(logCallback.getFirstOffset());
+    }
+    Assert.assertEquals(expected, prev);
+
+    LoggingTester.LogCallback firstCallback = new LoggingTester.LogCallback();
+    logReader.getLogNext(SAME_TIME_CONTEXT, new ReadRange(0, Long.MAX_VALUE, LogOffset.INVALID_KAFKA_OFFSET), 1,
+                         Filter.EMPTY_FILTER, firstCallback);
+    List<Integer> next = new ArrayList<>(getMessageIds(firstCallback.getEvents()));
+    readRange = ReadRange.createFromRange(firstCallback.getLastOffset());
+    while (true) {
+      LoggingTester.LogCallback logCallback = new LoggingTester.LogCallback();
+      logReader.getLogNext(SAME_TIME_CONTEXT, readRange, 7, Filter.EMPTY_FILTER, logCallback);
+      if (logCallback.getCount() == 0) {
+        break;
+      }
+      next.addAll(getMessageIds(logCallback.getEvents()));
+      readRange = ReadRange.createFromRange(logCallback.getLastOffset());
+    }
+    Assert.assertEquals(expected, next);
+  }
+
+  private List<Integer> getMessageIds(List<LogEvent> events) {
+    List<Integer> ids = new ArrayList<>();
+    for (LogEvent event : events) {
+      // The message is "Same time log message <id> ..."
+      ids.add(Integer.valueOf(event.getLoggingEvent().getFormattedMessage().split(" ")[4]));
+    }
+    return ids;
+  }
+
+  /**
+   * Reads the logs between the times of two of the given events, and checks that they are all the given events in
+   * that range. Several events can have the same time, so the range may not start and end at the given events.
+   */
+  private void assertGetLog(FileLogReader logTail, LoggingContext loggingContext, List<LogEvent> allEvents,
+                            int from, int to) throws Exception {
+    long fromTimeMs = allEvents.get(from).getLoggingEvent().getTimeStamp();
+    long toTimeMs = allEvents.get(to).getLoggingEvent().getTimeStamp();
+    List<String> expected = new ArrayList<>();
+    for (LogEvent event : allEvents) {
+      long timestamp = event.getLoggingEvent().getTimeStamp();
+      if (timestamp >= fromTimeMs && timestamp < toTimeMs) {
+        expected.add(event.getLoggingEvent().getFormattedMessage());
+      }
+    }
+
+    LoggingTester.LogCallback logCallback = new LoggingTester.LogCallback();
+    logTail.getLog(loggingContext, fromTimeMs, toTimeMs, Filter.EMPTY_FILTER, logCallback);
+    List<String> actual = new ArrayList<>();
+    for (LogEvent event : logCallback.getEvents()) {
+      actual.add(event.getLoggingEvent().getFormattedMessage());
+    }
+    Assert.assertEquals(expected, actual);
+  }
 }
@@ -48,12 +48,14 @@ import co.cask.cdap.logging.filter.Filter;
 import co.cask.cdap.logging.read.AvroFileReader;
 import co.cask.cdap.logging.read.FileLogReader;
 import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.read.LogOffset;
 import co.cask.cdap.logging.serialize.LogSchema;
 import co.cask.cdap.logging.write.FileMetaDataManager;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.test.SlowTests;
 import co.cask.tephra.TransactionManager;
 import com.google.common.base.Function;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -505,8 +507,8 @@ public class LogSaverPluginTest extends KafkaTestBase {
         LogCallback logCallback = new LogCallback();
         logCallback.init();
         NamespaceId namespaceId = LoggingContextHelper.getNamespaceId(loggingContext);
-        logReader.readLog(latestFile, Filter.EMPTY_FILTER, 0, Long.MAX_VALUE, Integer.MAX_VALUE, logCallback,
-                          namespaceId, impersonator);
+        logReader.readLog(latestFile, Filter.EMPTY_FILTER, 0, LogOffset.NO_SEQUENCE, Long.MAX_VALUE,
+                          Integer.MAX_VALUE, logCallback, Suppliers.ofInstance(0), namespaceId, impersonator);
         logCallback.close();
         List<LogEvent> events = logCallback.getEvents();
         if (events.size() > 0) {
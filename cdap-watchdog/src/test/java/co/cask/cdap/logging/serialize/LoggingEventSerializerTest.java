@@ -24,13 +24,19 @@ import ch.qos.logback.classic.spi.ThrowableProxy;
 import co.cask.cdap.common.logging.LoggingContextAccessor;
 import co.cask.cdap.common.logging.logback.TestLoggingContext;
 import co.cask.cdap.logging.appender.kafka.LoggingEventSerializer;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import kafka.utils.VerifiableProperties;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.util.Map;
 
@@ -65,6 +71,70 @@ public class LoggingEventSerializerTest {
 
   @Test
   public void testSerialization() throws Exception {
+    LoggingEventSerializer serializer = new LoggingEventSerializer(new VerifiableProperties());
+    ch.qos.logback.classic.spi.LoggingEvent iLoggingEvent = createLoggingEvent();
+
+    // Serialize
+    LoggingEvent event = new LoggingEvent(iLoggingEvent);
+    byte [] serializedBytes = serializer.toBytes(event, LoggingContextAccessor.getLoggingContext());
+
+    // De-serialize
+    ILoggingEvent actualEvent = serializer.fromBytes(ByteBuffer.wrap(serializedBytes));
+    System.out.println(actualEvent);
+    assertLoggingEventEquals(iLoggingEvent, actualEvent);
+  }
+
+  @Test
+  public void testGenericRecordCompatibility() throws Exception {
+    LoggingEventSerializer serializer = new LoggingEventSerializer(new VerifiableProperties());
+    ch.qos.logback.classic.spi.LoggingEvent iLoggingEvent = createLoggingEvent();
+
+    // Events written directly are readable as GenericRecord, which is what the log saver writes to files
+    byte[] serializedBytes = serializer.toBytes(iLoggingEvent, LoggingContextAccessor.getLoggingContext());
+    GenericRecord record = serializer.toGenericRecord(ByteBuffer.wrap(serializedBytes));
+    assertLoggingEventEquals(iLoggingEvent, serializer.fromGenericRecord(record));
+
+    // Events written from a GenericRecord are readable directly
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
+    new GenericDatumWriter<GenericRecord>(serializer.getAvroSchema()).write(
+      LoggingEvent.encode(serializer.getAvroSchema(), iLoggingEvent, LoggingContextAccessor.getLoggingContext()),
+      encoder);
+    assertLoggingEventEquals(iLoggingEvent, serializer.fromBytes(ByteBuffer.wrap(out.toByteArray())));
+
+    // Decoding honors the position of the buffer
+    byte[] padded = new byte[serializedBytes.length + 10];
+    System.arraycopy(serializedBytes, 0, padded, 5, serializedBytes.length);
+    ByteBuffer buffer = ByteBuffer.wrap(padded, 5, serializedBytes.length).slice();
+    assertLoggingEventEquals(iLoggingEvent, serializer.fromBytes(buffer));
+  }
+
+  @Test
+  public void testBufferReuse() throws Exception {
+    LoggingEventSerializer serializer = new LoggingEventSerializer(new VerifiableProperties());
+    ch.qos.logback.classic.spi.LoggingEvent largeEvent = new ch.qos.logback.classic.spi.LoggingEvent();
+    largeEvent.setLevel(Level.INFO);
+    largeEvent.setThreadName("large");
+    largeEvent.setMessage(Strings.repeat("large message ", 10000));
+    largeEvent.setTimeStamp(10000000L);
+
+    // Alternate between large and small events, so that the reused buffer is both grown and reset
+    for (int i = 0; i < 5; i++) {
+      ch.qos.logback.classic.spi.LoggingEvent smallEvent = new ch.qos.logback.classic.spi.LoggingEvent();
+      smallEvent.setLevel(Level.WARN);
+      smallEvent.setThreadName("thread-" + i);
+      smallEvent.setMessage("message " + i);
+      smallEvent.setTimeStamp(i);
+
+      byte[] largeBytes = serializer.toBytes(largeEvent, LoggingContextAccessor.getLoggingContext());
+      byte[] smallBytes = serializer.toBytes(smallEvent, LoggingContextAccessor.getLoggingContext());
+      Assert.assertTrue(smallBytes.length < largeBytes.length);
+      assertLoggingEventEquals(smallEvent, serializer.fromBytes(ByteBuffer.wrap(smallBytes)));
+      assertLoggingEventEquals(largeEvent, serializer.fromBytes(ByteBuffer.wrap(largeBytes)));
+    }
+  }
+
+  private ch.qos.logback.classic.spi.LoggingEvent createLoggingEvent() {
     Map<String, String> mdcMap = Maps.newHashMap();
     mdcMap.put("mdc1", "mdc-val1");
     mdcMap.put("mdc2", null);
@@ -75,7 +145,6 @@ public class LoggingEventSerializerTest {
     contextMap.put("p2", null);
     contextMap.put(null, null);
 
-    LoggingEventSerializer serializer = new LoggingEventSerializer(new VerifiableProperties());
     ch.qos.logback.classic.spi.LoggingEvent iLoggingEvent = new ch.qos.logback.classic.spi.LoggingEvent();
     iLoggingEvent.setThreadName("threadName1");
     iLoggingEvent.setLevel(Level.INFO);
@@ -102,15 +171,7 @@ public class LoggingEventSerializerTest {
     iLoggingEvent.setMarker(null);
     iLoggingEvent.getMDCPropertyMap().putAll(mdcMap);
     iLoggingEvent.setTimeStamp(1234567890L);
-
-    // Serialize
-    LoggingEvent event = new LoggingEvent(iLoggingEvent);
-    byte [] serializedBytes = serializer.toBytes(event, LoggingContextAccessor.getLoggingContext());
-
-    // De-serialize
-    ILoggingEvent actualEvent = serializer.fromBytes(ByteBuffer.wrap(serializedBytes));
-    System.out.println(actualEvent);
-    assertLoggingEventEquals(iLoggingEvent, actualEvent);
+    return iLoggingEvent;
   }
 
   @Test
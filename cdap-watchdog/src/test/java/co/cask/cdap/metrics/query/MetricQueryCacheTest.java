@@ -0,0 +1,266 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.query;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.Interpolators;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import co.cask.cdap.api.metrics.MetricDataQuery;
+import co.cask.cdap.api.metrics.MetricDeleteQuery;
+import co.cask.cdap.api.metrics.MetricQueryInterval;
+import co.cask.cdap.api.metrics.MetricSearchQuery;
+import co.cask.cdap.api.metrics.MetricStore;
+import co.cask.cdap.api.metrics.MetricTimeSeries;
+import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ *
+ */
+public class MetricQueryCacheTest {
+
+  @Test
+  public void testTimeRangeCaching() {
+    TestMetricStore store = new TestMetricStore();
+    for (long ts = 0; ts < 250; ts++) {
+      store.add("n1", ts, ts);
+      store.add("n2", ts, ts * 2);
+    }
+
+    MetricQueryCache cache = new MetricQueryCache(store, 10, 30);
+
+    // Query from 100 to 200 at time 260, all buckets are settled and get cached
+    MetricDataQuery query = createQuery(100, 200, "n1");
+    assertSameResult(store.query(query), cache.query(query, 260));
+    Assert.assertEquals(0, cache.getHits());
+    Assert.assertEquals(1, cache.getMisses());
+
+    // Query from 110 to 249 at time 270, only buckets starting from 201 should be queried from the store
+    store.queries.clear();
+    query = createQuery(110, 249, "n1");
+    Collection<MetricTimeSeries> result = cache.query(query, 270);
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(ImmutableList.of(201L), store.queries);
+    assertSameResult(store.query(query), result);
+
+    // Buckets up to 239 are cached now, new data in unsettled buckets are still queried
+    store.add("n1", 245, 1000);
+    store.queries.clear();
+    query = createQuery(120, 249, "n1");
+    result = cache.query(query, 270);
+    Assert.assertEquals(2, cache.getHits());
+    Assert.assertEquals(ImmutableList.of(240L), store.queries);
+    assertSameResult(store.query(query), result);
+
+    // The limit of the query applies to the values from the cache
+    query = createQuery(120, 249, "n1", 5);
+    result = cache.query(query, 270);
+    Assert.assertEquals(3, cache.getHits());
+    Assert.assertEquals(5, result.iterator().next().getTimeValues().size());
+    assertSameResult(store.query(query), result);
+
+    // Query that starts before the cached range is not served from the cache
+    store.queries.clear();
+    query = createQuery(50, 200, "n1");
+    assertSameResult(store.query(query), cache.query(query, 270));
+    Assert.assertEquals(3, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+    Assert.assertEquals(ImmutableList.of(50L, 50L), store.queries);
+
+    // Query on a different metric is cached separately
+    query = createQuery(100, 200, "n2");
+    assertSameResult(store.query(query), cache.query(query, 270));
+    Assert.assertEquals(3, cache.getMisses());
+
+    // Queries with interpolation are not cached
+    query = new MetricDataQuery(100, 200, 1, -1, ImmutableMap.of("n1", AggregationFunction.SUM),
+                                ImmutableMap.<String, String>of(), ImmutableList.<String>of(),
+                                new Interpolators.Step());
+    cache.query(query, 270);
+    cache.query(query, 270);
+    Assert.assertEquals(3, cache.getHits());
+    Assert.assertEquals(3, cache.getMisses());
+
+    // Cached results are discarded after some time
+    query = createQuery(100, 200, "n2");
+    assertSameResult(store.query(query), cache.query(query, 270 + MetricQueryCache.MAX_AGE_SECONDS + 1));
+    Assert.assertEquals(4, cache.getMisses());
+  }
+
+  @Test
+  public void testCacheDisabled() {
+    TestMetricStore store = new TestMetricStore();
+    store.add("n1", 10, 1);
+
+    MetricQueryCache cache = new MetricQueryCache(store, 0, 30);
+    MetricDataQuery query = createQuery(0, 100, "n1");
+    assertSameResult(store.query(query), cache.query(query, 1000));
+    assertSameResult(store.query(query), cache.query(query, 1000));
+    Assert.assertEquals(0, cache.getHits());
+    Assert.assertEquals(0, cache.getMisses());
+  }
+
+  @Test
+  public void testQueryAfterDelete() throws Exception {
+    TestMetricStore store = new TestMetricStore();
+    for (long ts = 0; ts < 100; ts++) {
+      store.add("n1", ts, ts);
+    }
+
+    // With the default configuration, deleted metrics are never served from the cache
+    MetricQueryCache cache = new MetricQueryCache(store, CConfiguration.create().getInt(
+      Constants.Metrics.QUERY_CACHE_SIZE), 30);
+    MetricDataQuery query = createQuery(0, 99, "n1");
+    Assert.assertFalse(cache.query(query, 200).isEmpty());
+    store.delete(new MetricDeleteQuery(0, 99, ImmutableList.of("n1"), ImmutableMap.<String, String>of()));
+    Assert.assertTrue(cache.query(query, 200).isEmpty());
+
+    // If the cache is enabled, deleted metrics are seen once the cached results expire
+    for (long ts = 0; ts < 100; ts++) {
+      store.add("n1", ts, ts);
+    }
+    cache = new MetricQueryCache(store, 10, 30);
+    Assert.assertFalse(cache.query(query, 200).isEmpty());
+    store.delete(new MetricDeleteQuery(0, 99, ImmutableList.of("n1"), ImmutableMap.<String, String>of()));
+    Assert.assertTrue(cache.query(query, 200 + MetricQueryCache.MAX_AGE_SECONDS + 1).isEmpty());
+  }
+
+  private MetricDataQuery createQuery(long startTs, long endTs, String metricName) {
+    return createQuery(startTs, endTs, metricName, (int) (endTs - startTs + 1));
+  }
+
+  private MetricDataQuery createQuery(long startTs, long endTs, String metricName, int limit) {
+    return new MetricDataQuery(startTs, endTs, 1, limit, ImmutableMap.of(metricName, AggregationFunction.SUM),
+                               ImmutableMap.<String, String>of(), ImmutableList.<String>of(), null);
+  }
+
+  private void assertSameResult(Collection<MetricTimeSeries> expected, Collection<MetricTimeSeries> actual) {
+    Assert.assertEquals(Sets.newHashSet(expected), Sets.newHashSet(actual));
+  }
+
+  /**
+   * A {@link MetricStore} that keeps metrics of resolution one second in memory and records the start time of the
+   * queries.
+   */
+  private static final class TestMetricStore implements MetricStore {
+
+    private final Map<String, NavigableMap<Long, Long>> metrics = Maps.newHashMap();
+    private final List<Long> queries = Lists.newArrayList();
+
+    void add(String metricName, long ts, long value) {
+      NavigableMap<Long, Long> values = metrics.get(metricName);
+      if (values == null) {
+        values = Maps.newTreeMap();
+        metrics.put(metricName, values);
+      }
+      values.put(ts, value);
+    }
+
+    @Override
+    public Collection<MetricTimeSeries> query(MetricDataQuery query) {
+      queries.add(query.getStartTs());
+      List<MetricTimeSeries> result = Lists.newArrayList();
+      for (String metricName : query.getMetrics().keySet()) {
+        NavigableMap<Long, Long> values = metrics.get(metricName);
+        if (values == null) {
+          continue;
+        }
+        List<TimeValue> timeValues = Lists.newArrayList();
+        for (Map.Entry<Long, Long> entry : values.subMap(query.getStartTs(), true,
+                                                         query.getEndTs(), true).entrySet()) {
+          timeValues.add(new TimeValue(entry.getKey(), entry.getValue()));
+          if (timeValues.size() >= query.getLimit()) {
+            break;
+          }
+        }
+        if (!timeValues.isEmpty()) {
+          result.add(new MetricTimeSeries(metricName, ImmutableMap.<String, String>of(), timeValues));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public List<MetricQueryInterval> planStitchedQuery(MetricDataQuery query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<MetricTimeSeries> query(MetricDataQuery query, List<MetricQueryInterval> plan) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setMetricsContext(MetricsContext metricsContext) {
+      // No-op
+    }
+
+    @Override
+    public void add(MetricValues metricValues) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void add(Collection<? extends MetricValues> metricValues) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteBefore(long timestamp) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(MetricDeleteQuery query) throws Exception {
+      for (String metricName : query.getMetricNames()) {
+        NavigableMap<Long, Long> values = metrics.get(metricName);
+        if (values != null) {
+          values.subMap(query.getStartTs(), true, query.getEndTs(), true).clear();
+        }
+      }
+    }
+
+    @Override
+    public void deleteAll() throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<TagValue> findNextAvailableTags(MetricSearchQuery query) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<String> findMetricNames(MetricSearchQuery query) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+  }
+}